@@ -0,0 +1,67 @@
+-- Create the archive tables for order history and the index the archiver scans
+-- Run this script on the checkout_service database before starting the new version
+-- (requires innodb_file_per_table, the default since MySQL 5.6)
+
+USE checkout_service;
+
+-- OrderArchive picks the oldest orders with this index
+CREATE INDEX idx_orders_created ON orders (created_at, id);
+
+-- Orders older than orders.archive.after are moved here, oldest first.
+-- Compressed pages: archived rows are written once and rarely read.
+-- Partitioned by year so a year of history can be dropped or moved with one ALTER;
+-- every unique key of a partitioned table must include created_at, hence the primary key.
+-- No foreign keys: MySQL does not allow them on partitioned tables.
+CREATE TABLE orders_archive (
+    id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    total_amount DOUBLE NOT NULL,
+    idempotency_key VARCHAR(64) DEFAULT NULL,
+    created_at DATETIME(6) NOT NULL,
+    -- kept so the summary view of archived history needs no item scan
+    item_count INT NOT NULL,
+    PRIMARY KEY (id, created_at),
+    -- Order history pages walk this index newest first
+    KEY idx_orders_archive_user_created (user_id, created_at, id)
+) ENGINE=InnoDB ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8
+PARTITION BY RANGE COLUMNS (created_at) (
+    PARTITION p2024 VALUES LESS THAN ('2025-01-01'),
+    PARTITION p2025 VALUES LESS THAN ('2026-01-01'),
+    PARTITION p2026 VALUES LESS THAN ('2027-01-01'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- Items carry their order's created_at so they sit in the same yearly partition
+CREATE TABLE order_items_archive (
+    id BIGINT NOT NULL,
+    order_id BIGINT NOT NULL,
+    product_id VARCHAR(255) NOT NULL,
+    merchant_id VARCHAR(255) NOT NULL,
+    quantity INT NOT NULL,
+    price DOUBLE NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id, created_at),
+    KEY idx_order_items_archive_order (order_id)
+) ENGINE=InnoDB ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8
+PARTITION BY RANGE COLUMNS (created_at) (
+    PARTITION p2024 VALUES LESS THAN ('2025-01-01'),
+    PARTITION p2025 VALUES LESS THAN ('2026-01-01'),
+    PARTITION p2026 VALUES LESS THAN ('2027-01-01'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- Users with at least one archived order; order history only reads the archive for them
+CREATE TABLE order_archive_users (
+    user_id BIGINT NOT NULL,
+    PRIMARY KEY (user_id)
+) ENGINE=InnoDB;
+
+-- Each new year, split pmax on both tables, e.g.:
+-- ALTER TABLE orders_archive REORGANIZE PARTITION pmax INTO
+--     (PARTITION p2027 VALUES LESS THAN ('2028-01-01'), PARTITION pmax VALUES LESS THAN (MAXVALUE));
+
+-- Verify the changes
+SHOW CREATE TABLE orders_archive;
+SHOW CREATE TABLE order_items_archive;
+
+SELECT 'Migration completed successfully!' AS status;
@@ -0,0 +1,23 @@
+-- Add created_at and the order history index to the orders table
+-- Run this script on the checkout_service database before starting the new version
+
+USE checkout_service;
+
+-- Add created_at column
+ALTER TABLE orders
+ADD COLUMN created_at DATETIME(6) DEFAULT NULL AFTER total_amount;
+
+-- Orders placed before this column existed have no creation time;
+-- give them one older than any real order so they page last, in id order
+UPDATE orders SET created_at = '2000-01-01 00:00:00' WHERE created_at IS NULL;
+
+ALTER TABLE orders
+MODIFY COLUMN created_at DATETIME(6) NOT NULL;
+
+-- Order history pages walk this index newest first
+CREATE INDEX idx_orders_user_created ON orders (user_id, created_at, id);
+
+-- Verify the changes
+DESCRIBE orders;
+
+SELECT 'Migration completed successfully!' AS status;
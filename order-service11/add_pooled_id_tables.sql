@@ -0,0 +1,22 @@
+-- Create the id allocation tables for orders, order_items and outbox_events
+-- Run this script on the checkout_service database before starting the new version
+-- (without it Hibernate creates the tables starting at 1, colliding with existing ids)
+
+USE checkout_service;
+
+-- MySQL has no sequences; Hibernate reads and bumps one row per table, 50 ids at a time
+CREATE TABLE orders_seq (next_val BIGINT);
+INSERT INTO orders_seq SELECT COALESCE(MAX(id), 0) + 100 FROM orders;
+
+CREATE TABLE order_items_seq (next_val BIGINT);
+INSERT INTO order_items_seq SELECT COALESCE(MAX(id), 0) + 100 FROM order_items;
+
+CREATE TABLE outbox_events_seq (next_val BIGINT);
+INSERT INTO outbox_events_seq SELECT COALESCE(MAX(id), 0) + 100 FROM outbox_events;
+
+-- Verify the changes
+SELECT 'orders' AS seq, next_val FROM orders_seq
+UNION ALL SELECT 'order_items', next_val FROM order_items_seq
+UNION ALL SELECT 'outbox_events', next_val FROM outbox_events_seq;
+
+SELECT 'Migration completed successfully!' AS status;
@@ -1,13 +1,18 @@
 package com.ecommerce.cart_order_service.Controller;
 
+import com.ecommerce.cart_order_service.Model.CartBatchRequest;
 import com.ecommerce.cart_order_service.Model.CartItems;
 import com.ecommerce.cart_order_service.Service.CartItemsService;
+import com.ecommerce.cart_order_service.Service.ProductCatalog;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/cart")
@@ -17,6 +22,13 @@ public class CartItemsController {
     @Autowired
     private CartItemsService cartService;
 
+    @Autowired
+    private ProductCatalog productCatalog;
+
+    // Shared with product-service (product.change.secret); empty turns invalidation off
+    @Value("${catalog.invalidate.secret:}")
+    private String invalidateSecret;
+
     @PostMapping("/add")
     public ResponseEntity<?> addToCart(
             @RequestHeader("Authorization") String authHeader,
@@ -25,10 +37,17 @@ public class CartItemsController {
     }
 
     @GetMapping("/get/{userId}")
-    public ResponseEntity<List<CartItems>> getCart(
+    public ResponseEntity<?> getCart(
             @RequestHeader("Authorization") String authHeader,
             @PathVariable("userId") Long userId) {
-        return ResponseEntity.ok(cartService.getCart(authHeader, userId));
+        return cartService.getCart(authHeader, userId);
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<?> applyBatch(
+            @RequestHeader("Authorization") String authHeader,
+            @Valid @RequestBody CartBatchRequest request) {
+        return cartService.applyBatch(authHeader, request);
     }
 
     @PutMapping("/update")
@@ -51,4 +70,17 @@ public class CartItemsController {
             @PathVariable("userId") Long userId) {
         return cartService.clearCart(authHeader, userId);
     }
+
+    // Called by product-service when a product's price or stock changes
+    @PostMapping("/catalog/invalidate")
+    public ResponseEntity<?> invalidateProduct(
+            @RequestHeader(value = "X-Catalog-Secret", required = false) String secret,
+            @RequestBody Map<String, String> body) {
+        if (invalidateSecret.isEmpty() || secret == null || !MessageDigest.isEqual(
+                invalidateSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(403).body(Map.of("error", "Invalid catalog secret"));
+        }
+        productCatalog.invalidate(body.get("productId"));
+        return ResponseEntity.noContent().build();
+    }
 }
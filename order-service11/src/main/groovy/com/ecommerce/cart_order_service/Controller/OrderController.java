@@ -1,33 +1,69 @@
 package com.ecommerce.cart_order_service.Controller;
 
 import com.ecommerce.cart_order_service.Model.Order;
+import com.ecommerce.cart_order_service.Service.IdempotencyKeys;
 import com.ecommerce.cart_order_service.Service.OrderService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/orders")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = "X-Next-Cursor")
 public class OrderController {
 
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private IdempotencyKeys idempotencyKeys;
+
+    // With an Idempotency-Key, a retry gets the first response back instead of placing a second order
     @PostMapping("/checkout")
-    public ResponseEntity<?> checkout(
+    public CompletableFuture<ResponseEntity<?>> checkout(
             @RequestHeader("Authorization") String authHeader,
+            @RequestHeader(value = "Reservation-Id", required = false) String reservationId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Valid @RequestBody Order order) {
-        return orderService.placeOrder(authHeader, order);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return CompletableFuture.completedFuture(orderService.placeOrder(authHeader, reservationId, null, order));
+        }
+        if (idempotencyKey.length() > 64) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.of("error", "Idempotency-Key too long")));
+        }
+        return idempotencyKeys.execute(order.getUserId() + ":" + idempotencyKey, order,
+                () -> orderService.placeOrder(authHeader, reservationId, idempotencyKey, order));
+    }
+
+    // Checkout start; send the Reservation-Id back on /checkout
+    @PostMapping("/reservations")
+    public ResponseEntity<?> reserve(
+            @RequestHeader("Authorization") String authHeader,
+            @Valid @RequestBody Order order) {
+        return orderService.reserve(authHeader, order);
+    }
+
+    @DeleteMapping("/reservations/{reservationId}")
+    public ResponseEntity<?> cancelReservation(
+            @RequestHeader("Authorization") String authHeader,
+            @PathVariable("reservationId") String reservationId,
+            @RequestParam("userId") Long userId) {
+        return orderService.cancelReservation(authHeader, reservationId, userId);
     }
 
+    // Newest first; pass the X-Next-Cursor response header back as cursor for the next page
     @GetMapping("/{userId}")
-    public ResponseEntity<List<Order>> getOrders(
+    public ResponseEntity<?> getOrders(
             @RequestHeader("Authorization") String authHeader,
-            @PathVariable("userId") Long userId) {
-        return ResponseEntity.ok(orderService.getOrders(authHeader, userId));
+            @PathVariable("userId") Long userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "view", defaultValue = "full") String view) {
+        return orderService.getOrders(authHeader, userId, cursor, size, "summary".equalsIgnoreCase(view));
     }
 }
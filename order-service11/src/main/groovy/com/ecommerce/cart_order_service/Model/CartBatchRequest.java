@@ -0,0 +1,28 @@
+package com.ecommerce.cart_order_service.Model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+
+import java.util.List;
+
+// Body of POST /cart/batch
+public record CartBatchRequest(
+        @NotNull(message = "User ID cannot be null")
+        @Positive(message = "User ID must be a positive number")
+        Long userId,
+
+        @NotEmpty(message = "At least one operation is required")
+        @Size(max = 100, message = "At most 100 operations per batch")
+        List<@Valid @NotNull Operation> operations) {
+
+    /**
+     * {@code add} adds {@code quantity} to the line, {@code update} sets it
+     * (adding the line if it is not in the cart) and {@code remove} drops it.
+     */
+    public record Operation(
+            @NotBlank(message = "Operation cannot be blank") String op,
+            @NotBlank(message = "Product ID cannot be blank") String productId,
+            Long merchantId,
+            Integer quantity) {
+    }
+}
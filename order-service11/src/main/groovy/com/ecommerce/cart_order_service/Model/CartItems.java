@@ -36,7 +36,7 @@ public class CartItems {
     @Column(nullable = false)
     private int quantity;
 
-    @DecimalMin(value = "0.01", message = "Price must be greater than 0")
+    // Set from the product catalog; a price sent by the client is ignored
     @Column(nullable = false)
     private double price;
 }
@@ -0,0 +1,16 @@
+package com.ecommerce.cart_order_service.Model;
+
+// Cart item priced from the product catalog; available is false once the product or offer is gone
+public record CartLine(
+        Long id,
+        Long userId,
+        String productId,
+        Long merchantId,
+        int quantity,
+        double price,
+        double lineTotal,
+        String name,
+        String imageUrl,
+        int stock,
+        boolean available) {
+}
@@ -1,8 +1,10 @@
 package com.ecommerce.cart_order_service.Model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import lombok.*;
+import java.time.Instant;
 import java.util.List;
 
 @Data
@@ -10,11 +12,21 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "orders")
+@Table(name = "orders",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_orders_user_idempotency_key", columnNames = {"user_id", "idempotency_key"}),
+        indexes = {
+                // Order history pages walk this index newest first
+                @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id"),
+                // OrderArchive finds the oldest orders with this one
+                @Index(name = "idx_orders_created", columnList = "created_at, id")
+        })
 public class Order {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids (a table on MySQL, read once per 50 rows) let Hibernate batch the inserts; IDENTITY cannot
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     @NotNull(message = "User ID cannot be null")
@@ -22,15 +34,31 @@ public class Order {
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
-    @NotNull(message = "Total amount cannot be null")
-    @DecimalMin(value = "0.01", message = "Total amount must be greater than 0")
+    // Priced from the catalog at checkout; whatever the client sends is overwritten
     @Column(name = "total_amount", nullable = false)
     private Double totalAmount;
 
+    // Idempotency-Key of the checkout that created the order; backs up IdempotencyKeys after eviction or a restart
+    @JsonIgnore
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    // Loaded on demand; order history fetches the items of a whole page in one query
     @OneToMany(
             cascade = CascadeType.ALL,
-            fetch = FetchType.EAGER
+            fetch = FetchType.LAZY
     )
-    @JoinColumn(name = "order_id", nullable = false)
+    // order_id goes into the item INSERT, so no follow-up UPDATE per item
+    @JoinColumn(name = "order_id", nullable = false, updatable = false)
     private List<com.ecommerce.cart_order_service.Model.OrderItems> items;
+
+    @PrePersist
+    void onCreate() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+    }
 }
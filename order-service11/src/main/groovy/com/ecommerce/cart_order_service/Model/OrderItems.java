@@ -13,7 +13,8 @@ import lombok.*;
 public class OrderItems {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_items_seq")
+    @SequenceGenerator(name = "order_items_seq", sequenceName = "order_items_seq", allocationSize = 50)
     private Long id;
 
     @NotNull(message = "Product ID cannot be blank")
@@ -29,8 +30,7 @@ public class OrderItems {
     @Column(nullable = false)
     private Integer quantity;
 
-    @NotNull(message = "Price cannot be null")
-    @DecimalMin(value = "0.01", inclusive = true, message = "Price must be greater than 0")
+    // The offer's price at checkout; whatever the client sends is overwritten
     @Column(nullable = false)
     private Double price;
 }
@@ -0,0 +1,7 @@
+package com.ecommerce.cart_order_service.Model;
+
+import java.time.Instant;
+
+// Order history row without the items
+public record OrderSummary(Long id, Double totalAmount, Instant createdAt, Integer itemCount) {
+}
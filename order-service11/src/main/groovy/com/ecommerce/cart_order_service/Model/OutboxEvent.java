@@ -0,0 +1,62 @@
+package com.ecommerce.cart_order_service.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * A side effect of an order, written in the order's transaction and
+ * delivered afterwards by OutboxRelay.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+public class OutboxEvent {
+
+    public enum Type { ORDER_PLACED, STOCK_DECREMENT, ORDER_CONFIRMATION }
+
+    public enum Status { PENDING, PUBLISHED, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+    @SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 32)
+    private Type type;
+
+    // The order this event belongs to
+    @Column(name = "aggregate_id", nullable = false)
+    private Long aggregateId;
+
+    // JSON request body sent to the downstream service
+    @Lob
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "published_at")
+    private Instant publishedAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+}
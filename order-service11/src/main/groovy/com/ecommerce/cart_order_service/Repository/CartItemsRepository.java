@@ -2,12 +2,21 @@ package com.ecommerce.cart_order_service.Repository;
 
 import com.ecommerce.cart_order_service.Model.CartItems;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface CartItemsRepository extends JpaRepository<CartItems, Long> {
     List<CartItems> findByUserId(Long userId);
+    List<CartItems> findByUserIdIn(Collection<Long> userIds);
     Optional<CartItems> findByUserIdAndProductIdAndMerchantId(Long userId, String productId, Long merchantId);
     void deleteByUserIdAndProductIdAndMerchantId(Long userId, String productId, Long merchantId);
-    void deleteByUserId(Long userId);
+
+    // One DELETE statement instead of loading the cart and deleting item by item
+    @Modifying
+    @Query("delete from CartItems c where c.userId = :userId")
+    void deleteByUserId(@Param("userId") Long userId);
 }
@@ -1,9 +1,40 @@
 package com.ecommerce.cart_order_service.Repository;
 
 import com.ecommerce.cart_order_service.Model.Order;
+import com.ecommerce.cart_order_service.Model.OrderSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUserId(Long userId);
+
+    Optional<Order> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    // Keyset page: orders strictly older than (createdAt, id), newest first
+    @Query("select o from Order o where o.userId = :userId"
+            + " and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.id < :id))"
+            + " order by o.createdAt desc, o.id desc")
+    List<Order> findPageBefore(@Param("userId") Long userId,
+                               @Param("createdAt") Instant createdAt,
+                               @Param("id") Long id,
+                               Pageable page);
+
+    @Query("select new com.ecommerce.cart_order_service.Model.OrderSummary(o.id, o.totalAmount, o.createdAt, size(o.items))"
+            + " from Order o where o.userId = :userId"
+            + " and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.id < :id))"
+            + " order by o.createdAt desc, o.id desc")
+    List<OrderSummary> findSummaryPageBefore(@Param("userId") Long userId,
+                                             @Param("createdAt") Instant createdAt,
+                                             @Param("id") Long id,
+                                             Pageable page);
+
+    @Query("select distinct o from Order o left join fetch o.items where o.id in :ids")
+    List<Order> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,31 @@
+package com.ecommerce.cart_order_service.Repository;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2), so relays on several instances never claim the same rows
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from OutboxEvent e where e.status = :status and e.type in :types and e.nextAttemptAt <= :now order by e.id")
+    List<OutboxEvent> findDueForUpdate(@Param("status") OutboxEvent.Status status,
+                                       @Param("types") Collection<OutboxEvent.Type> types,
+                                       @Param("now") Instant now,
+                                       Pageable page);
+
+    long countByTypeAndStatus(OutboxEvent.Type type, OutboxEvent.Status status);
+
+    List<OutboxEvent> findByTypeAndStatus(OutboxEvent.Type type, OutboxEvent.Status status);
+}
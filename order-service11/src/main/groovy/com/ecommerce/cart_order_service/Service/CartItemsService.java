@@ -1,15 +1,16 @@
 package com.ecommerce.cart_order_service.Service;
 
+import com.ecommerce.cart_order_service.Model.CartBatchRequest;
 import com.ecommerce.cart_order_service.Model.CartItems;
-import com.ecommerce.cart_order_service.Repository.CartItemsRepository;
+import com.ecommerce.cart_order_service.Model.CartLine;
 import com.ecommerce.cart_order_service.util.AuthValidator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -18,17 +19,14 @@ import java.util.Optional;
 public class CartItemsService {
 
     @Autowired
-    private CartItemsRepository repo;
+    private CartStore cartStore;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private ProductCatalog productCatalog;
 
     @Autowired
     private AuthValidator authValidator;
 
-    @Value("${product.service.url}")
-    private String productServiceUrl;
-
     public ResponseEntity<?> addToCart(String authHeader, CartItems item) {
         Map<String, Object> claims = authValidator.validateToken(authHeader);
         String role = (String) claims.get("role");
@@ -37,104 +35,237 @@ public class CartItemsService {
             return ResponseEntity.status(403).body(Map.of("error", "Only END_USER can add to cart."));
         }
 
-        // Validate product existence
-        Object productData;
+        if (item.getMerchantId() == null || item.getMerchantId() <= 0) {
+            item.setMerchantId(1L);
+        }
+
+        // Validate product existence; price and stock come from the catalog, not the client
+        ProductCatalog.Product product;
         try {
-            productData = restTemplate.getForObject(
-                    productServiceUrl + "/products/" + item.getProductId(),
-                    Object.class
-            );
+            product = productCatalog.getWithOffer(item.getProductId(), item.getMerchantId());
         } catch (Exception e) {
+            product = null;
+        }
+        if (product == null) {
             return ResponseEntity.status(400).body(Map.of("error", "Invalid Product ID: " + item.getProductId()));
         }
 
-        if (item.getMerchantId() == null || item.getMerchantId() <= 0) {
-            item.setMerchantId(1L);
-        }
+        ProductCatalog.Offer offer = product.offer(item.getMerchantId());
+        int availableStock = offer != null ? offer.stock() : 0;
 
-        int availableStock = getAvailableStock(productData, item.getMerchantId());
-        Optional<CartItems> existing = repo.findByUserIdAndProductIdAndMerchantId(
-                item.getUserId(), item.getProductId(), item.getMerchantId()
-        );
+        // Read and write under the user's cart lock, so concurrent adds cannot overshoot the stock
+        return cartStore.withCart(item.getUserId(), cart -> {
+            Optional<CartItems> existing = cart.find(item.getProductId(), item.getMerchantId());
+            int currentQty = existing.map(CartItems::getQuantity).orElse(0);
+            int newQty = currentQty + item.getQuantity();
 
-        int currentQty = existing.map(CartItems::getQuantity).orElse(0);
-        int newQty = currentQty + item.getQuantity();
+            if (newQty > availableStock) {
+                return ResponseEntity.status(400).body(Map.of("error",
+                        "Not enough stock! Available: " + availableStock));
+            }
 
-        if (newQty > availableStock) {
-            return ResponseEntity.status(400).body(Map.of("error",
-                    "Not enough stock! Available: " + availableStock));
-        }
+            CartItems line = existing.orElse(item);
+            line.setQuantity(newQty);
+            line.setPrice(offer.price());
+            CartItems saved = cart.put(line);
 
-        CartItems saved;
-        if (existing.isPresent()) {
-            CartItems old = existing.get();
-            old.setQuantity(newQty);
-            old.setPrice(item.getPrice());
-            saved = repo.save(old);
-        } else {
-            saved = repo.save(item);
-        }
+            return ResponseEntity.ok(Map.of("success", true, "item", saved));
+        });
+    }
 
-        return ResponseEntity.ok(Map.of("success", true, "item", saved));
+
+    /**
+     * The cart priced at current catalog prices, with names and images, so the
+     * cart page needs no per-item product calls.
+     */
+    public ResponseEntity<?> getCart(String authHeader, Long userId) {
+        authValidator.validateToken(authHeader);
+        return cartResponse(cartStore.withCart(userId, CartStore.Cart::items), Map.of());
     }
 
+    /**
+     * Applies add/update/remove operations to one cart in one go, as for a
+     * guest cart merged at login. The products are looked up together, and if
+     * any operation is invalid none is applied. Returns the resulting cart.
+     */
+    public ResponseEntity<?> applyBatch(String authHeader, CartBatchRequest request) {
+        Map<String, Object> claims = authValidator.validateToken(authHeader);
+        if (!"END_USER".equalsIgnoreCase((String) claims.get("role"))) {
+            return ResponseEntity.status(403).body(Map.of("error", "Only END_USER can add to cart."));
+        }
 
-    private int getAvailableStock(Object productData, Long merchantId) {
+        List<CartBatchRequest.Operation> operations = request.operations();
+        Map<String, ProductCatalog.Product> products;
         try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> product = (Map<String, Object>) productData;
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> merchants =
-                    (List<Map<String, Object>>) product.get("merchants");
-
-            if (merchants != null) {
-                for (Map<String, Object> m : merchants) {
-                    long mid = Long.parseLong(m.get("merchant_id").toString());
-                    if (mid == merchantId) {
-                        return Integer.parseInt(m.get("stock").toString());
-                    }
+            products = new HashMap<>(productCatalog.getAll(operations.stream()
+                    .filter(op -> !"remove".equals(op.op()))
+                    .map(CartBatchRequest.Operation::productId)
+                    .distinct()
+                    .toList()));
+            // a merchant may have started selling a product since it was cached
+            for (CartBatchRequest.Operation op : operations) {
+                ProductCatalog.Product product = products.get(op.productId());
+                if (product != null && product.offer(merchantId(op)) == null) {
+                    products.put(op.productId(), productCatalog.getWithOffer(op.productId(), merchantId(op)));
                 }
             }
         } catch (Exception e) {
-            System.err.println("Error parsing stock: " + e.getMessage());
+            return ResponseEntity.status(503).body(Map.of("error", "Product service unavailable"));
         }
-        return 0;
+
+        return cartStore.withCart(request.userId(), cart -> {
+            // final quantity per line, 0 for removed lines; nothing is written until all operations pass
+            Map<Line, Integer> quantities = new LinkedHashMap<>();
+            Map<Line, ProductCatalog.Offer> offers = new HashMap<>();
+            List<Map<String, Object>> errors = new ArrayList<>();
+
+            for (int i = 0; i < operations.size(); i++) {
+                CartBatchRequest.Operation op = operations.get(i);
+                Line line = new Line(op.productId(), merchantId(op));
+                int current = quantities.containsKey(line)
+                        ? quantities.get(line)
+                        : cart.find(line.productId(), line.merchantId()).map(CartItems::getQuantity).orElse(0);
+
+                String error = null;
+                switch (op.op()) {
+                    case "add", "update" -> {
+                        ProductCatalog.Product product = products.get(op.productId());
+                        ProductCatalog.Offer offer = product != null ? product.offer(line.merchantId()) : null;
+                        if (op.quantity() == null || op.quantity() < 1) {
+                            error = "Quantity must be at least 1";
+                        } else if (offer == null) {
+                            error = "Invalid Product ID: " + op.productId();
+                        } else {
+                            int quantity = "add".equals(op.op()) ? current + op.quantity() : op.quantity();
+                            if (quantity > offer.stock()) {
+                                error = "Not enough stock! Available: " + offer.stock();
+                            } else {
+                                quantities.put(line, quantity);
+                                offers.put(line, offer);
+                            }
+                        }
+                    }
+                    case "remove" -> quantities.put(line, 0);
+                    default -> error = "Unknown operation: " + op.op();
+                }
+                if (error != null) {
+                    errors.add(Map.of("index", i, "productId", op.productId(), "error", error));
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                return ResponseEntity.status(400).body(Map.of("error", "No changes applied", "errors", errors));
+            }
+
+            quantities.forEach((line, quantity) -> {
+                if (quantity > 0) {
+                    cart.put(CartItems.builder()
+                            .productId(line.productId())
+                            .merchantId(line.merchantId())
+                            .quantity(quantity)
+                            .price(offers.get(line).price())
+                            .build());
+                } else if (cart.find(line.productId(), line.merchantId()).isPresent()) {
+                    cart.remove(line.productId(), line.merchantId());
+                }
+            });
+            return cartResponse(cart.items(), products);
+        });
     }
 
-    public List<CartItems> getCart(String authHeader, Long userId) {
-        authValidator.validateToken(authHeader);
-        return repo.findByUserId(userId);
+    private record Line(String productId, Long merchantId) {
+    }
+
+    private static Long merchantId(CartBatchRequest.Operation op) {
+        return op.merchantId() == null || op.merchantId() <= 0 ? 1L : op.merchantId();
+    }
+
+    // Products already looked up are passed in, so only the rest are fetched
+    private ResponseEntity<?> cartResponse(List<CartItems> items, Map<String, ProductCatalog.Product> known) {
+        Map<String, ProductCatalog.Product> products = new HashMap<>(known);
+        List<String> missing = items.stream()
+                .map(CartItems::getProductId)
+                .filter(id -> !known.containsKey(id))
+                .distinct()
+                .toList();
+        if (!missing.isEmpty()) {
+            products.putAll(productCatalog.getAll(missing));
+        }
+
+        List<CartLine> lines = new ArrayList<>(items.size());
+        double subtotal = 0;
+        for (CartItems item : items) {
+            ProductCatalog.Product product = products.get(item.getProductId());
+            ProductCatalog.Offer offer = product != null ? product.offer(item.getMerchantId()) : null;
+            double price = offer != null ? offer.price() : item.getPrice();
+            double lineTotal = price * item.getQuantity();
+            if (offer != null) {
+                subtotal += lineTotal;
+            }
+            lines.add(new CartLine(item.getId(), item.getUserId(), item.getProductId(), item.getMerchantId(),
+                    item.getQuantity(), price, lineTotal,
+                    product != null ? product.name() : null,
+                    product != null ? product.imageUrl() : null,
+                    offer != null ? offer.stock() : 0,
+                    offer != null));
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "cartItems", lines,
+                "subtotal", subtotal,
+                "itemCount", lines.size()
+        ));
     }
 
     public ResponseEntity<?> updateCart(String authHeader, CartItems item) {
         authValidator.validateToken(authHeader);
-        Optional<CartItems> existing = repo.findByUserIdAndProductIdAndMerchantId(
-                item.getUserId(), item.getProductId(), item.getMerchantId());
 
-        if (existing.isEmpty()) {
-            return ResponseEntity.status(404).body(Map.of("error", "Item not found"));
+        if (item.getMerchantId() == null || item.getMerchantId() <= 0) {
+            item.setMerchantId(1L);
+        }
+
+        // Same checks as addToCart; an unreachable catalog leaves the cart as it was
+        ProductCatalog.Product product;
+        try {
+            product = productCatalog.getWithOffer(item.getProductId(), item.getMerchantId());
+        } catch (Exception e) {
+            return ResponseEntity.status(503).body(Map.of("error", "Product service unavailable"));
+        }
+        ProductCatalog.Offer offer = product != null ? product.offer(item.getMerchantId()) : null;
+        if (offer == null) {
+            return ResponseEntity.status(400).body(Map.of("error", "Invalid Product ID: " + item.getProductId()));
         }
+        if (item.getQuantity() > offer.stock()) {
+            return ResponseEntity.status(400).body(Map.of("error", "Not enough stock! Available: " + offer.stock()));
+        }
+
+        return cartStore.withCart(item.getUserId(), cart -> {
+            Optional<CartItems> existing = cart.find(item.getProductId(), item.getMerchantId());
+            if (existing.isEmpty()) {
+                return ResponseEntity.status(404).body(Map.of("error", "Item not found"));
+            }
 
-        CartItems existingItem = existing.get();
-        existingItem.setQuantity(item.getQuantity());
-        existingItem.setPrice(item.getPrice());
-        repo.save(existingItem);
+            CartItems existingItem = existing.get();
+            existingItem.setQuantity(item.getQuantity());
+            existingItem.setPrice(offer.price());
+            cart.put(existingItem);
 
-        return ResponseEntity.ok(Map.of("success", true, "message", "Cart updated"));
+            return ResponseEntity.ok(Map.of("success", true, "message", "Cart updated"));
+        });
     }
 
-    @Transactional
     public ResponseEntity<?> removeFromCart(String authHeader, CartItems item) {
         authValidator.validateToken(authHeader);
-        repo.deleteByUserIdAndProductIdAndMerchantId(
-                item.getUserId(), item.getProductId(), item.getMerchantId());
+        cartStore.withCart(item.getUserId(), cart -> {
+            cart.remove(item.getProductId(), item.getMerchantId());
+            return null;
+        });
         return ResponseEntity.ok(Map.of("success", true, "message", "Item removed"));
     }
 
-    @Transactional
     public ResponseEntity<?> clearCart(String authHeader, Long userId) {
         authValidator.validateToken(authHeader);
-        repo.deleteByUserId(userId);
+        cartStore.clear(userId);
         return ResponseEntity.ok(Map.of("success", true, "message", "Cart cleared"));
     }
 }
@@ -0,0 +1,607 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.CartItems;
+import com.ecommerce.cart_order_service.Repository.CartItemsRepository;
+import com.ecommerce.cart_order_service.util.CartJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Write-behind store for carts. Each user's cart is kept in memory and changed
+ * under that user's lock only, so cart clicks neither wait on MySQL nor on
+ * other users. A change is acknowledged once it is in {@link CartJournal}, and
+ * changed lines are flushed to {@code cart_items} in batches every
+ * {@code cart.store.flush-interval}; repeated changes to a line in between
+ * become one write. A cart not in memory is read through from MySQL, and clean
+ * carts idle for {@code cart.store.idle-ttl} are dropped.
+ * <p>
+ * Flushing runs on its own scheduler thread, so a slow MySQL write never holds
+ * up the jobs that share Spring's scheduler.
+ * <p>
+ * A cached cart is never re-read, so a change made through another instance
+ * would be overwritten by the next flush here. Only one instance may run the
+ * store: it holds the MySQL lock {@value #OWNER_LOCK} on a connection of its
+ * own, and startup fails while another instance holds it. Scale out by routing
+ * each user to the same instance (sticky by userId) with a store per shard, not
+ * by putting instances side by side on one database.
+ */
+@Service
+public class CartStore {
+
+    @Autowired
+    private CartItemsRepository repo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CartJournal journal;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${cart.store.owner-lock:true}")
+    private boolean ownerLock;
+
+    @Value("${cart.store.flush-interval:200}")
+    private long flushInterval;
+
+    @Value("${cart.store.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    // a cart whose own lines keep failing to write is dropped after this many tries
+    @Value("${cart.store.max-flush-attempts:3}")
+    private int maxFlushAttempts;
+
+    @Value("${cart.store.idle-ttl:PT30M}")
+    private Duration idleTtl;
+
+    private static final String UPSERT =
+            "INSERT INTO cart_items (user_id, product_id, merchant_id, quantity, price) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), price = VALUES(price)";
+    private static final String DELETE_LINE =
+            "DELETE FROM cart_items WHERE user_id = ? AND product_id = ? AND merchant_id = ?";
+    private static final String DELETE_CART = "DELETE FROM cart_items WHERE user_id = ?";
+    static final String OWNER_LOCK = "cart_order_service.cart_store";
+
+    private record LineKey(String productId, Long merchantId) {
+    }
+
+    // What one flush writes for a cart: the lines as they were when it was taken
+    private record Flush(Cart cart, boolean cleared, List<CartItems> upserts, List<LineKey> deletes) {
+    }
+
+    /**
+     * One user's cart. Only usable inside {@link #withCart}, which holds its lock.
+     */
+    public static final class Cart {
+        private final Long userId;
+        private final Map<LineKey, CartItems> lines = new LinkedHashMap<>();
+        // lines changed since the last flush; a dirty key without a line is a delete
+        private final Set<LineKey> dirty = new LinkedHashSet<>();
+        // every stored line is deleted before the dirty ones are written
+        private boolean cleared;
+        private boolean loaded;
+        private boolean evicted;
+        private Flush flushing;
+        // consecutive flushes rejected for this cart's own data
+        private int failedFlushes;
+        private long lastAccessNanos = System.nanoTime();
+        private final List<String> records = new ArrayList<>();
+
+        Cart(Long userId) {
+            this.userId = userId;
+        }
+
+        public List<CartItems> items() {
+            return lines.values().stream().map(CartStore::copy).toList();
+        }
+
+        public Optional<CartItems> find(String productId, Long merchantId) {
+            return Optional.ofNullable(lines.get(new LineKey(productId, merchantId))).map(CartStore::copy);
+        }
+
+        public CartItems put(CartItems item) {
+            CartItems existing = lines.get(new LineKey(item.getProductId(), item.getMerchantId()));
+            return put(item, existing != null ? existing.getId() : null);
+        }
+
+        private CartItems put(CartItems item, Long id) {
+            CartItems line = copy(item);
+            line.setId(id);
+            line.setUserId(userId);
+            LineKey key = new LineKey(line.getProductId(), line.getMerchantId());
+            lines.put(key, line);
+            dirty.add(key);
+            records.add(putRecord(line));
+            return copy(line);
+        }
+
+        public void remove(String productId, Long merchantId) {
+            LineKey key = new LineKey(productId, merchantId);
+            lines.remove(key);
+            dirty.add(key);
+            records.add(removeRecord(userId, key));
+        }
+
+        public void clear() {
+            lines.clear();
+            dirty.clear();
+            cleared = true;
+            records.add("X " + userId);
+        }
+
+        private boolean clean() {
+            return !cleared && dirty.isEmpty() && flushing == null;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Cart> carts = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private Connection ownerConnection;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void restore() throws IOException, SQLException {
+        if (ownerLock) {
+            lockOwner();
+        }
+        int records = 0;
+        for (String record : journal.replay()) {
+            String[] parts = record.split(" ");
+            Cart cart = carts.computeIfAbsent(Long.valueOf(parts[1]), Cart::new);
+            switch (parts[0]) {
+                case "S" -> {
+                    CartItems line = parseLine(parts);
+                    cart.put(line, line.getId());
+                }
+                case "D" -> cart.remove(decode(parts[2]), Long.valueOf(parts[3]));
+                case "X" -> cart.clear();
+                default -> System.err.println("Skipping unknown cart journal record: " + record);
+            }
+            cart.records.clear();
+            dirtyUsers.add(cart.userId);
+            records++;
+        }
+        journal.start(this::liveRecords);
+        System.out.println("Replayed " + records + " cart journal records for " + dirtyUsers.size() + " users");
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cart-store-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        if (ownerConnection != null) {
+            scheduler.scheduleWithFixedDelay(this::checkOwner, 1, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        if (ownerConnection != null) {
+            Connection connection = ownerConnection;
+            try (connection; PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                statement.setString(1, OWNER_LOCK);
+                statement.executeQuery().close();
+            } catch (SQLException e) {
+                System.err.println("⚠ Could not release the cart store lock: " + e.getMessage());
+            }
+        }
+    }
+
+    // an exception escaping a scheduled run would cancel every later run
+    private void run() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("⚠ Cart flush failed: " + e.getMessage());
+        }
+    }
+
+    // The lock lives as long as its connection; a dead connection would let a second instance in unnoticed
+    private void lockOwner() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        boolean locked = false;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, OWNER_LOCK);
+            try (ResultSet rs = statement.executeQuery()) {
+                locked = rs.next() && rs.getInt(1) == 1;
+            }
+        } finally {
+            if (!locked) {
+                connection.close();
+            }
+        }
+        if (!locked) {
+            throw new IllegalStateException("Another instance holds the cart store lock " + OWNER_LOCK
+                    + "; carts are cached in memory, so only one instance may serve them");
+        }
+        ownerConnection = connection;
+    }
+
+    // Also keeps the connection from idling out, which would drop the lock
+    private void checkOwner() {
+        try (PreparedStatement statement = ownerConnection.prepareStatement("SELECT IS_USED_LOCK(?) = CONNECTION_ID()")) {
+            statement.setString(1, OWNER_LOCK);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next() && rs.getInt(1) == 1) {
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("⚠ Cart store lock connection failed: " + e.getMessage());
+        }
+        try {
+            ownerConnection.close();
+        } catch (SQLException ignored) {
+        }
+        try {
+            lockOwner();
+            System.out.println("Re-acquired the cart store lock");
+        } catch (SQLException | IllegalStateException e) {
+            System.err.println("⚠ Lost the cart store lock, another instance may be flushing carts: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs {@code action} on the user's cart under its lock, loading the cart
+     * first if it is not in memory. Returns once the changes made are journaled.
+     */
+    public <T> T withCart(Long userId, Function<Cart, T> action) {
+        while (true) {
+            Cart cart = carts.computeIfAbsent(userId, Cart::new);
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            T result;
+            synchronized (cart) {
+                // dropped by evictIdle between the lookup and the lock
+                if (cart.evicted) {
+                    continue;
+                }
+                load(cart);
+                cart.lastAccessNanos = System.nanoTime();
+                try {
+                    result = action.apply(cart);
+                } finally {
+                    // queued while locked so the journal has this user's changes in order
+                    cart.records.forEach(record -> written.add(journal.enqueue(record)));
+                    if (!cart.records.isEmpty()) {
+                        dirtyUsers.add(userId);
+                    }
+                    cart.records.clear();
+                }
+            }
+            // If the journal write fails the change is still flushed, but the caller sees the error
+            written.forEach(journal::await);
+            return result;
+        }
+    }
+
+    public void clear(Long userId) {
+        withCart(userId, cart -> {
+            cart.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Clears the cart once the current transaction commits, as when an order is
+     * placed from it. Outside a transaction it is cleared right away.
+     */
+    public void clearOnCommit(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            clear(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                clear(userId);
+            }
+        });
+    }
+
+    public void flush() {
+        List<Flush> batch = new ArrayList<>();
+        for (Iterator<Long> it = dirtyUsers.iterator(); it.hasNext(); ) {
+            Long userId = it.next();
+            it.remove();
+            Cart cart = carts.get(userId);
+            if (cart != null) {
+                synchronized (cart) {
+                    Flush flush = take(cart);
+                    if (flush != null) {
+                        batch.add(flush);
+                    }
+                }
+            }
+            if (batch.size() >= flushBatchSize) {
+                write(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.store.sweep-interval:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                if (cart.clean() && now - cart.lastAccessNanos > idleTtl.toNanos()) {
+                    cart.evicted = true;
+                    carts.remove(cart.userId, cart);
+                }
+            }
+        }
+    }
+
+    // Stored lines first, then the changes made before the cart was loaded
+    private void load(Cart cart) {
+        if (cart.loaded) {
+            return;
+        }
+        Map<LineKey, CartItems> lines = new LinkedHashMap<>();
+        if (!cart.cleared && (cart.flushing == null || !cart.flushing.cleared())) {
+            for (CartItems item : repo.findByUserId(cart.userId)) {
+                lines.put(new LineKey(item.getProductId(), item.getMerchantId()), item);
+            }
+        }
+        Set<LineKey> changed = new HashSet<>(cart.dirty);
+        if (cart.flushing != null) {
+            cart.flushing.upserts().forEach(line -> changed.add(new LineKey(line.getProductId(), line.getMerchantId())));
+            changed.addAll(cart.flushing.deletes());
+        }
+        for (LineKey key : changed) {
+            CartItems line = cart.lines.get(key);
+            if (line != null) {
+                lines.put(key, line);
+            } else {
+                lines.remove(key);
+            }
+        }
+        cart.lines.clear();
+        cart.lines.putAll(lines);
+        cart.loaded = true;
+    }
+
+    private static Flush take(Cart cart) {
+        if (!cart.cleared && cart.dirty.isEmpty()) {
+            return null;
+        }
+        List<CartItems> upserts = new ArrayList<>();
+        List<LineKey> deletes = new ArrayList<>();
+        for (LineKey key : cart.dirty) {
+            CartItems line = cart.lines.get(key);
+            if (line != null) {
+                upserts.add(copy(line));
+            } else if (!cart.cleared) {
+                deletes.add(key);
+            }
+        }
+        Flush flush = new Flush(cart, cart.cleared, upserts, deletes);
+        cart.flushing = flush;
+        cart.cleared = false;
+        cart.dirty.clear();
+        return flush;
+    }
+
+    private void write(List<Flush> batch) {
+        RuntimeException failure = tryWrite(batch);
+        if (failure == null) {
+            written(batch);
+            return;
+        }
+        if (batch.size() == 1 || !(failure instanceof DataIntegrityViolationException)) {
+            System.err.println("⚠ Cart flush failed, retrying next round: " + failure.getMessage());
+            batch.forEach(flush -> retry(flush, failure));
+            return;
+        }
+        // one cart's lines fail the whole batch; write each cart alone so the others get through
+        for (Flush flush : batch) {
+            RuntimeException e = tryWrite(List.of(flush));
+            if (e == null) {
+                written(List.of(flush));
+            } else {
+                System.err.println("⚠ Cart flush of user " + flush.cart().userId + " failed: " + e.getMessage());
+                retry(flush, e);
+            }
+        }
+    }
+
+    private RuntimeException tryWrite(List<Flush> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Object[]> clears = new ArrayList<>();
+                List<Object[]> deletes = new ArrayList<>();
+                List<Object[]> upserts = new ArrayList<>();
+                for (Flush flush : batch) {
+                    Long userId = flush.cart().userId;
+                    if (flush.cleared()) {
+                        clears.add(new Object[]{userId});
+                    }
+                    flush.deletes().forEach(key -> deletes.add(new Object[]{userId, key.productId(), key.merchantId()}));
+                    flush.upserts().forEach(line -> upserts.add(new Object[]{
+                            userId, line.getProductId(), line.getMerchantId(), line.getQuantity(), line.getPrice()}));
+                }
+                if (!clears.isEmpty()) {
+                    jdbcTemplate.batchUpdate(DELETE_CART, clears);
+                }
+                if (!deletes.isEmpty()) {
+                    jdbcTemplate.batchUpdate(DELETE_LINE, deletes);
+                }
+                if (!upserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPSERT, upserts);
+                }
+            });
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private void written(List<Flush> batch) {
+        assignIds(batch);
+        batch.forEach(flush -> {
+            synchronized (flush.cart()) {
+                flush.cart().flushing = null;
+                flush.cart().failedFlushes = 0;
+            }
+        });
+    }
+
+    /**
+     * The flushed lines are written again next round, at whatever state they have by then.
+     * Only rejections of the cart's own data count towards {@code cart.store.max-flush-attempts};
+     * while the database is unreachable the changes wait in the journal.
+     */
+    private void retry(Flush flush, RuntimeException failure) {
+        Cart cart = flush.cart();
+        synchronized (cart) {
+            cart.flushing = null;
+            if (failure instanceof DataIntegrityViolationException && ++cart.failedFlushes >= maxFlushAttempts) {
+                // the lines are dropped and the cart re-read from MySQL on next use
+                System.err.println("⚠ Dropping cart changes of user " + cart.userId + " after " + cart.failedFlushes
+                        + " rejected flushes (" + failure.getMessage() + "): " + records(flush));
+                cart.failedFlushes = 0;
+                cart.loaded = false;
+                return;
+            }
+            cart.cleared |= flush.cleared();
+            flush.upserts().forEach(line -> cart.dirty.add(new LineKey(line.getProductId(), line.getMerchantId())));
+            cart.dirty.addAll(flush.deletes());
+            dirtyUsers.add(cart.userId);
+        }
+    }
+
+    // Journal records of a dropped flush, so its changes can be re-applied by hand
+    private static List<String> records(Flush flush) {
+        List<String> records = new ArrayList<>();
+        if (flush.cleared()) {
+            records.add("X " + flush.cart().userId);
+        }
+        flush.upserts().forEach(line -> records.add(putRecord(line)));
+        flush.deletes().forEach(key -> records.add(removeRecord(flush.cart().userId, key)));
+        return records;
+    }
+
+    // New lines get their id from MySQL on insert; read it back so the cart API keeps returning ids
+    private void assignIds(List<Flush> batch) {
+        List<Long> userIds = batch.stream()
+                .filter(flush -> flush.upserts().stream().anyMatch(line -> line.getId() == null))
+                .map(flush -> flush.cart().userId)
+                .toList();
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            for (CartItems stored : repo.findByUserIdIn(userIds)) {
+                Cart cart = carts.get(stored.getUserId());
+                if (cart == null) {
+                    continue;
+                }
+                synchronized (cart) {
+                    CartItems line = cart.lines.get(new LineKey(stored.getProductId(), stored.getMerchantId()));
+                    if (line != null && line.getId() == null) {
+                        line.setId(stored.getId());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("⚠ Could not read back cart line ids: " + e.getMessage());
+        }
+    }
+
+    // Everything not yet in MySQL, for journal compaction
+    private List<String> liveRecords() {
+        List<String> records = new ArrayList<>();
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                Flush flushing = cart.flushing;
+                if (cart.cleared || (flushing != null && flushing.cleared())) {
+                    records.add("X " + cart.userId);
+                }
+                Set<LineKey> keys = new LinkedHashSet<>();
+                if (flushing != null) {
+                    flushing.upserts().forEach(line -> keys.add(new LineKey(line.getProductId(), line.getMerchantId())));
+                    keys.addAll(flushing.deletes());
+                }
+                keys.addAll(cart.dirty);
+                for (LineKey key : keys) {
+                    CartItems line = cart.lines.get(key);
+                    records.add(line != null ? putRecord(line) : removeRecord(cart.userId, key));
+                }
+            }
+        }
+        return records;
+    }
+
+    private static String putRecord(CartItems line) {
+        return "S " + line.getUserId() + ' ' + encode(line.getProductId()) + ' ' + line.getMerchantId()
+                + ' ' + line.getQuantity() + ' ' + line.getPrice() + ' ' + (line.getId() != null ? line.getId() : "-");
+    }
+
+    private static String removeRecord(Long userId, LineKey key) {
+        return "D " + userId + ' ' + encode(key.productId()) + ' ' + key.merchantId();
+    }
+
+    private static CartItems parseLine(String[] parts) {
+        return CartItems.builder()
+                .userId(Long.valueOf(parts[1]))
+                .productId(decode(parts[2]))
+                .merchantId(Long.valueOf(parts[3]))
+                .quantity(Integer.parseInt(parts[4]))
+                .price(Double.parseDouble(parts[5]))
+                .id("-".equals(parts[6]) ? null : Long.valueOf(parts[6]))
+                .build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static CartItems copy(CartItems item) {
+        return CartItems.builder()
+                .id(item.getId())
+                .userId(item.getUserId())
+                .productId(item.getProductId())
+                .merchantId(item.getMerchantId())
+                .quantity(item.getQuantity())
+                .price(item.getPrice())
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response to each {@code Idempotency-Key} for
+ * {@code idempotency.ttl}, so a retried request gets the first response back
+ * instead of running again. A duplicate that arrives while the first request
+ * is still running gets the same future and waits for its result without
+ * holding a thread.
+ * <p>
+ * Only responses below 500 are kept; after a server error or exception the key
+ * is forgotten and the next retry runs the request again.
+ */
+@Component
+public class IdempotencyKeys {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.ttl:PT24H}")
+    private Duration ttl;
+
+    @Value("${idempotency.max-keys:100000}")
+    private int maxKeys;
+
+    private static final class Entry {
+        final byte[] fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        volatile long expiresAtNanos;
+
+        Entry(byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Runs {@code request} once per key. Reusing a key with a different body is
+     * rejected with 422.
+     */
+    public CompletableFuture<ResponseEntity<?>> execute(String key, Object body,
+                                                        Supplier<ResponseEntity<?>> request) {
+        byte[] fingerprint = fingerprint(body);
+        Entry entry = new Entry(fingerprint);
+        Entry existing = entries.putIfAbsent(key, entry);
+        if (existing != null) {
+            if (!Arrays.equals(existing.fingerprint, fingerprint)) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(422).body(Map.of(
+                        "error", "Idempotency-Key was already used for a different request")));
+            }
+            return existing.response;
+        }
+
+        // Over the limit nothing is evicted early; the request runs but is not remembered
+        boolean keep = entries.size() <= maxKeys;
+        ResponseEntity<?> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+
+        if (keep && response.getStatusCode().value() < 500) {
+            entry.expiresAtNanos = System.nanoTime() + ttl.toNanos();
+        } else {
+            entries.remove(key, entry);
+        }
+        entry.response.complete(response);
+        return entry.response;
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.sweep-interval:60000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.response.isDone() && entry.expiresAtNanos - now < 0);
+    }
+
+    // SHA-256 of the JSON body, so an entry holds 32 bytes instead of the request
+    private byte[] fingerprint(Object body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint request", e);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
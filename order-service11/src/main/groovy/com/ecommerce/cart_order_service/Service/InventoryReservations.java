@@ -0,0 +1,459 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OrderItems;
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import com.ecommerce.cart_order_service.Repository.OutboxEventRepository;
+import com.ecommerce.cart_order_service.util.ReservationJournal;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-bounded stock holds taken at checkout start, so two shoppers cannot both
+ * buy the last unit. A hold is confirmed when its order commits and released
+ * when the order rolls back, the shopper abandons checkout or the hold expires.
+ * <p>
+ * Counters are kept per (productId, merchantId) and updated with CAS, so a flash
+ * sale contends only on its own SKU. Stock comes from product-service, cached per
+ * SKU for {@code reservations.stock-refresh}; the stale SKUs of an order are
+ * fetched with one {@code GET /products/batch} call, and a SKU already being
+ * fetched for another checkout waits for that call. Confirmed quantities stay counted
+ * until their STOCK_DECREMENT event has been delivered there. Holds are journaled
+ * by {@link ReservationJournal} and restored on restart.
+ */
+@Service
+public class InventoryReservations {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ReservationJournal journal;
+
+    @Autowired
+    private OutboxEventRepository outboxRepo;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${product.service.url}")
+    private String productServiceUrl;
+
+    @Value("${reservations.hold-ttl:PT10M}")
+    private Duration holdTtl;
+
+    @Value("${reservations.stock-refresh:PT5S}")
+    private Duration stockRefresh;
+
+    public record Sku(String productId, String merchantId) {
+    }
+
+    public record Hold(String id, Long userId, Map<Sku, Integer> lines, Instant expiresAt) {
+    }
+
+    public static class InsufficientStockException extends RuntimeException {
+        private final String productId;
+
+        public InsufficientStockException(String productId) {
+            super("Insufficient stock for product " + productId);
+            this.productId = productId;
+        }
+
+        public String getProductId() {
+            return productId;
+        }
+    }
+
+    private record StockSnapshot(long stock, long appliedAtFetch, long fetchedAtNanos) {
+    }
+
+    private static final class SkuState {
+        // units in live holds
+        final AtomicLong held = new AtomicLong();
+        // units in committed orders whose decrement has not reached product-service yet
+        final AtomicLong pending = new AtomicLong();
+        // units decremented in product-service since startup, to correct an older snapshot
+        final AtomicLong applied = new AtomicLong();
+        volatile StockSnapshot snapshot;
+    }
+
+    private final ConcurrentHashMap<Sku, SkuState> skus = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Hold> holds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Sku, CompletableFuture<StockSnapshot>> fetching = new ConcurrentHashMap<>();
+
+    private static final int BATCH_SIZE = 100;
+
+    @PostConstruct
+    public void restore() throws IOException {
+        for (String record : journal.replay()) {
+            String[] parts = record.split(" ");
+            switch (parts[0]) {
+                case "H" -> {
+                    Hold hold = parseHold(parts);
+                    holds.put(hold.id(), hold);
+                }
+                case "C", "R" -> holds.remove(parts[1]);
+                default -> System.err.println("Skipping unknown reservation journal record: " + record);
+            }
+        }
+
+        Instant now = Instant.now();
+        holds.values().removeIf(hold -> hold.expiresAt().isBefore(now));
+        holds.values().forEach(hold -> hold.lines().forEach((sku, qty) -> state(sku).held.addAndGet(qty)));
+
+        for (OutboxEvent event : outboxRepo.findByTypeAndStatus(OutboxEvent.Type.STOCK_DECREMENT, OutboxEvent.Status.PENDING)) {
+            StockLine line = stockLine(event);
+            if (line != null) {
+                state(line.sku()).pending.addAndGet(line.quantity());
+            }
+        }
+
+        journal.start(() -> holds.values().stream().map(InventoryReservations::holdRecord).toList());
+        System.out.println("Restored " + holds.size() + " inventory holds");
+    }
+
+    /**
+     * Holds every line of the order or none of them.
+     *
+     * @throws InsufficientStockException naming the first product that cannot be covered
+     */
+    public Hold hold(Long userId, List<OrderItems> items) {
+        Map<Sku, Integer> lines = lines(items);
+        Map<Sku, StockSnapshot> snapshots = snapshots(lines.keySet());
+        List<Map.Entry<Sku, Integer>> taken = new ArrayList<>();
+        try {
+            for (Map.Entry<Sku, Integer> line : lines.entrySet()) {
+                if (!tryHold(line.getKey(), line.getValue(), snapshots.get(line.getKey()))) {
+                    throw new InsufficientStockException(line.getKey().productId());
+                }
+                taken.add(line);
+            }
+        } catch (RuntimeException e) {
+            taken.forEach(line -> state(line.getKey()).held.addAndGet(-line.getValue()));
+            throw e;
+        }
+
+        Hold hold = new Hold(UUID.randomUUID().toString(), userId, lines, Instant.now().plus(holdTtl));
+        holds.put(hold.id(), hold);
+        try {
+            journal.append(holdRecord(hold), true);
+        } catch (RuntimeException e) {
+            release(hold.id());
+            throw e;
+        }
+        return hold;
+    }
+
+    /**
+     * The hold taken at checkout start if it is the user's, still live and covers
+     * exactly these items; otherwise a new hold, replacing the stale one.
+     */
+    public Hold holdFor(String holdId, Long userId, List<OrderItems> items) {
+        if (holdId != null) {
+            Hold existing = holds.get(holdId);
+            if (existing != null && Objects.equals(existing.userId(), userId)) {
+                if (existing.expiresAt().isAfter(Instant.now()) && existing.lines().equals(lines(items))) {
+                    return existing;
+                }
+                release(holdId);
+            }
+        }
+        return hold(userId, items);
+    }
+
+    /**
+     * Confirms the hold when the current transaction commits and releases it if
+     * it rolls back. Outside a transaction it is confirmed right away.
+     */
+    public void confirmOnCommit(Hold hold) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed(hold);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    committed(hold);
+                } else {
+                    release(hold.id());
+                }
+            }
+        });
+    }
+
+    // The order is in, so its units count as pending even if the hold expired meanwhile
+    private void committed(Hold hold) {
+        if (!confirm(hold.id())) {
+            hold.lines().forEach((sku, qty) -> state(sku).pending.addAndGet(qty));
+        }
+    }
+
+    public boolean confirm(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            return false;
+        }
+        // pending goes up before held comes down, so a concurrent hold never sees the units as free
+        hold.lines().forEach((sku, qty) -> {
+            SkuState state = state(sku);
+            state.pending.addAndGet(qty);
+            state.held.addAndGet(-qty);
+        });
+        journal.append("C " + holdId, false);
+        return true;
+    }
+
+    public boolean release(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            return false;
+        }
+        hold.lines().forEach((sku, qty) -> state(sku).held.addAndGet(-qty));
+        journal.append("R " + holdId, false);
+        return true;
+    }
+
+    public boolean release(String holdId, Long userId) {
+        Hold hold = holds.get(holdId);
+        return hold != null && Objects.equals(hold.userId(), userId) && release(holdId);
+    }
+
+    @Scheduled(fixedDelayString = "${reservations.sweep-interval:1000}")
+    public void releaseExpired() {
+        Instant now = Instant.now();
+        holds.values().stream()
+                .filter(hold -> hold.expiresAt().isBefore(now))
+                .map(Hold::id)
+                .toList()
+                .forEach(this::release);
+    }
+
+    /**
+     * Called by the outbox relay once a STOCK_DECREMENT event is published or has
+     * failed for good; either way it no longer needs to be counted here.
+     */
+    public void settled(OutboxEvent event) {
+        StockLine line = stockLine(event);
+        if (line == null) {
+            return;
+        }
+        SkuState state = state(line.sku());
+        if (event.getStatus() == OutboxEvent.Status.PUBLISHED) {
+            state.applied.addAndGet(line.quantity());
+        }
+        state.pending.addAndGet(-line.quantity());
+    }
+
+    // Units that can still be held right now
+    public long available(String productId, String merchantId) {
+        Sku sku = new Sku(productId, merchantId);
+        return available(state(sku), snapshots(List.of(sku)).get(sku));
+    }
+
+    private boolean tryHold(Sku sku, int qty, StockSnapshot snapshot) {
+        SkuState state = state(sku);
+        while (true) {
+            long held = state.held.get();
+            if (available(state, snapshot) < qty) {
+                return false;
+            }
+            if (state.held.compareAndSet(held, held + qty)) {
+                return true;
+            }
+        }
+    }
+
+    private static long available(SkuState state, StockSnapshot snapshot) {
+        // read in the reverse order of their updates so a racing confirm or delivery only ever undercounts
+        long held = state.held.get();
+        long pending = state.pending.get();
+        long appliedSince = state.applied.get() - snapshot.appliedAtFetch();
+        return snapshot.stock() - pending - held - appliedSince;
+    }
+
+    // Fresh stock for each SKU. Stale ones are fetched in one batch, except those another caller is already fetching
+    private Map<Sku, StockSnapshot> snapshots(Collection<Sku> wanted) {
+        Map<Sku, StockSnapshot> snapshots = new HashMap<>();
+        Map<Sku, CompletableFuture<StockSnapshot>> loading = new LinkedHashMap<>();
+        Map<Sku, CompletableFuture<StockSnapshot>> waiting = new HashMap<>();
+        long now = System.nanoTime();
+        for (Sku sku : wanted) {
+            StockSnapshot snapshot = state(sku).snapshot;
+            if (snapshot != null && now - snapshot.fetchedAtNanos() < stockRefresh.toNanos()) {
+                snapshots.put(sku, snapshot);
+                continue;
+            }
+            CompletableFuture<StockSnapshot> mine = new CompletableFuture<>();
+            CompletableFuture<StockSnapshot> running = fetching.putIfAbsent(sku, mine);
+            if (running == null) {
+                loading.put(sku, mine);
+            } else {
+                waiting.put(sku, running);
+            }
+        }
+        if (!loading.isEmpty()) {
+            fetch(loading);
+        }
+        loading.forEach((sku, future) -> snapshots.put(sku, await(sku, future)));
+        waiting.forEach((sku, future) -> snapshots.put(sku, await(sku, future)));
+        return snapshots;
+    }
+
+    private void fetch(Map<Sku, CompletableFuture<StockSnapshot>> loading) {
+        // read before the request, so a decrement applied while it is in flight is subtracted rather than missed
+        Map<Sku, Long> appliedAtFetch = new HashMap<>();
+        loading.keySet().forEach(sku -> appliedAtFetch.put(sku, state(sku).applied.get()));
+        try {
+            Map<String, Map<String, Object>> products = products(loading.keySet().stream().map(Sku::productId).distinct().toList());
+            long now = System.nanoTime();
+            loading.forEach((sku, future) -> {
+                StockSnapshot snapshot = new StockSnapshot(getAvailableStock(products.get(sku.productId()), sku.merchantId()),
+                        appliedAtFetch.get(sku), now);
+                state(sku).snapshot = snapshot;
+                future.complete(snapshot);
+            });
+        } catch (RuntimeException e) {
+            loading.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            loading.forEach(fetching::remove);
+        }
+    }
+
+    private StockSnapshot await(Sku sku, CompletableFuture<StockSnapshot> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            RuntimeException cause = e.getCause() instanceof RuntimeException r ? r : e;
+            StockSnapshot cached = state(sku).snapshot;
+            if (cached == null) {
+                throw cause;
+            }
+            System.err.println("Using cached stock for product " + sku.productId() + ": " + cause.getMessage());
+            return cached;
+        }
+    }
+
+    // Products by id; ids product-service does not know are missing
+    private Map<String, Map<String, Object>> products(List<String> ids) {
+        Map<String, Map<String, Object>> products = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            String url = UriComponentsBuilder.fromUriString(productServiceUrl + "/products/batch")
+                    .queryParam("ids", batch.toArray())
+                    .toUriString();
+            List<Map<String, Object>> found = restTemplate.exchange(url, HttpMethod.GET, null,
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {}).getBody();
+            if (found != null) {
+                found.forEach(product -> products.put(String.valueOf(product.get("id")), product));
+            }
+        }
+        return products;
+    }
+
+    private int getAvailableStock(Map<String, Object> product, String merchantIdStr) {
+        if (product == null) {
+            return 0;
+        }
+        try {
+            // Using @SuppressWarnings to avoid warnings for unchecked casting
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> merchants = (List<Map<String, Object>>) product.get("merchants");
+
+            // Use Long for ID parsing for better safety
+            long merchantId = Long.parseLong(merchantIdStr);
+            for (Map<String, Object> m : merchants) {
+                long mid = Long.parseLong(m.get("merchant_id").toString());
+                if (mid == merchantId) {
+                    return Integer.parseInt(m.get("stock").toString());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error parsing product stock: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private SkuState state(Sku sku) {
+        return skus.computeIfAbsent(sku, k -> new SkuState());
+    }
+
+    // Quantities per SKU; an order may list the same SKU more than once
+    private static Map<Sku, Integer> lines(List<OrderItems> items) {
+        Map<Sku, Integer> lines = new LinkedHashMap<>();
+        for (OrderItems item : items) {
+            lines.merge(new Sku(item.getProductId(), item.getMerchantId()), item.getQuantity(), Integer::sum);
+        }
+        return lines;
+    }
+
+    private record StockLine(Sku sku, int quantity) {
+    }
+
+    private StockLine stockLine(OutboxEvent event) {
+        if (event.getType() != OutboxEvent.Type.STOCK_DECREMENT) {
+            return null;
+        }
+        try {
+            JsonNode payload = objectMapper.readTree(event.getPayload());
+            Sku sku = new Sku(payload.get("productId").asText(), payload.get("merchantId").asText());
+            return new StockLine(sku, payload.get("quantity").asInt());
+        } catch (Exception e) {
+            System.err.println("Unreadable STOCK_DECREMENT event " + event.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // H <id> <userId> <expiresAtMillis> <productId>,<merchantId>,<qty>;...
+    private static String holdRecord(Hold hold) {
+        StringBuilder record = new StringBuilder("H ").append(hold.id())
+                .append(' ').append(hold.userId())
+                .append(' ').append(hold.expiresAt().toEpochMilli())
+                .append(' ');
+        hold.lines().forEach((sku, qty) -> record
+                .append(URLEncoder.encode(sku.productId(), StandardCharsets.UTF_8)).append(',')
+                .append(URLEncoder.encode(sku.merchantId(), StandardCharsets.UTF_8)).append(',')
+                .append(qty).append(';'));
+        return record.toString();
+    }
+
+    private static Hold parseHold(String[] parts) {
+        Map<Sku, Integer> lines = new LinkedHashMap<>();
+        for (String line : parts[4].split(";")) {
+            String[] fields = line.split(",");
+            lines.put(new Sku(URLDecoder.decode(fields[0], StandardCharsets.UTF_8),
+                    URLDecoder.decode(fields[1], StandardCharsets.UTF_8)), Integer.parseInt(fields[2]));
+        }
+        Long userId = "null".equals(parts[2]) ? null : Long.valueOf(parts[2]);
+        return new Hold(parts[1], userId, lines, Instant.ofEpochMilli(Long.parseLong(parts[3])));
+    }
+}
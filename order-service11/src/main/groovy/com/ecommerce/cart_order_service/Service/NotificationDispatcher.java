@@ -0,0 +1,196 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import com.ecommerce.cart_order_service.Repository.OutboxEventRepository;
+import com.ecommerce.cart_order_service.util.CircuitBreaker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends order confirmation emails from the outbox, apart from
+ * {@link OutboxRelay}, so a slow or failing email service never holds up
+ * checkout or stock decrements. Events wait in {@code outbox_events} until
+ * claimed, at most one batch at a time, and are sent on a fixed pool of
+ * {@code notifications.threads}. A batch is never larger than the pool can
+ * send within the outbox lease.
+ * <p>
+ * Dispatching runs on its own scheduler thread rather than a {@code @Scheduled}
+ * one: it waits for each batch to be sent, and would otherwise hold up the
+ * relay, cart flush and sweeps that share Spring's scheduler.
+ * <p>
+ * After {@code notifications.breaker.failure-threshold} failures in a row the
+ * circuit opens: nothing is claimed for {@code notifications.breaker.open-duration},
+ * then a single event is tried before sending resumes.
+ */
+@Component
+public class NotificationDispatcher {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxRepo;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${email.service.url}")
+    private String emailServiceUrl;
+
+    @Value("${notifications.interval:1000}")
+    private long interval;
+
+    @Value("${notifications.threads:4}")
+    private int threads;
+
+    @Value("${notifications.batch-size:50}")
+    private int batchSize;
+
+    @Value("${notifications.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${notifications.breaker.open-duration:PT30S}")
+    private Duration openDuration;
+
+    private static final Set<OutboxEvent.Type> TYPES = Set.of(OutboxEvent.Type.ORDER_CONFIRMATION);
+
+    private int claimSize;
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor executor;
+    private CircuitBreaker breaker;
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private Timer sent;
+    private Timer failed;
+    private Timer deliveryLag;
+
+    @PostConstruct
+    public void start() {
+        breaker = new CircuitBreaker(failureThreshold, openDuration);
+        claimSize = Math.min(batchSize, outboxService.leaseCapacity(threads));
+        // never more queued than one claimed batch
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(batchSize),
+                r -> {
+                    Thread t = new Thread(r, "notification-dispatcher");
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        Gauge.builder("notifications.queue.depth", queueDepth, AtomicLong::get)
+                .description("Order confirmations waiting in the outbox")
+                .register(meterRegistry);
+        Gauge.builder("notifications.in.flight", inFlight, AtomicInteger::get)
+                .register(meterRegistry);
+        Gauge.builder("notifications.circuit.open", this, d -> d.breaker.state() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .register(meterRegistry);
+        sent = Timer.builder("notifications.send").tag("outcome", "success").register(meterRegistry);
+        failed = Timer.builder("notifications.send").tag("outcome", "failure").register(meterRegistry);
+        deliveryLag = Timer.builder("notifications.delivery.lag")
+                .description("Time from checkout to the email service accepting the confirmation")
+                .register(meterRegistry);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // an exception escaping a scheduled run would cancel every later run
+    private void run() {
+        try {
+            dispatch();
+        } catch (RuntimeException e) {
+            System.err.println("⚠ Notification dispatch failed: " + e.getMessage());
+        }
+    }
+
+    public void dispatch() {
+        refreshQueueDepth();
+        while (queueDepth.get() > 0) {
+            // while open or on trial only one event is claimed, the rest stay queued in MySQL
+            boolean closed = breaker.state() == CircuitBreaker.State.CLOSED;
+            if (!closed && !breaker.allowRequest()) {
+                return;
+            }
+            List<OutboxEvent> batch = outboxService.claimBatch(TYPES, closed ? claimSize : 1);
+            if (batch.isEmpty()) {
+                if (!closed) {
+                    breaker.release();
+                }
+                return;
+            }
+
+            CompletableFuture<?>[] sends = batch.stream()
+                    .map(event -> CompletableFuture.runAsync(() -> send(event, closed), executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(sends).join();
+            outboxService.saveResults(batch);
+            refreshQueueDepth();
+
+            if (batch.size() < (closed ? claimSize : 1) || breaker.state() != CircuitBreaker.State.CLOSED) {
+                return;
+            }
+        }
+    }
+
+    private void refreshQueueDepth() {
+        queueDepth.set(outboxRepo.countByTypeAndStatus(OutboxEvent.Type.ORDER_CONFIRMATION, OutboxEvent.Status.PENDING));
+    }
+
+    private void send(OutboxEvent event, boolean checkBreaker) {
+        // opened by an earlier failure in this batch: wait out the open circuit without using up an attempt
+        if (checkBreaker && !breaker.allowRequest()) {
+            event.setNextAttemptAt(Instant.now().plus(openDuration));
+            return;
+        }
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            outboxRelay.post(emailServiceUrl + "/email/send-order-confirmation", event);
+            sent.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            breaker.recordSuccess();
+            outboxRelay.published(event);
+            deliveryLag.record(Duration.between(event.getCreatedAt(), event.getPublishedAt()));
+        } catch (Exception e) {
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            // a rejected request says nothing about the email service's health
+            if (e instanceof HttpClientErrorException) {
+                breaker.recordSuccess();
+            } else {
+                breaker.recordFailure();
+            }
+            outboxRelay.failed(event, e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+}
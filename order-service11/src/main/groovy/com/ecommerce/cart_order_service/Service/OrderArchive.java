@@ -0,0 +1,171 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.Order;
+import com.ecommerce.cart_order_service.Model.OrderItems;
+import com.ecommerce.cart_order_service.Model.OrderSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Cold tier of order history. Orders older than {@code orders.archive.after}
+ * are moved, oldest first, from {@code orders}/{@code order_items} into the
+ * compressed, yearly partitioned {@code orders_archive}/{@code order_items_archive}
+ * (see add_order_archive_tables.sql), so the hot tables and their indexes only
+ * hold recent orders.
+ * <p>
+ * Because orders are moved in (created_at, id) order, every archived order is
+ * older than every hot one, and a history page that runs out of hot orders
+ * simply continues here with the same cursor.
+ */
+@Service
+public class OrderArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchive.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${orders.archive.after:P180D}")
+    private Duration archiveAfter;
+
+    @Value("${orders.archive.batch-size:500}")
+    private int batchSize;
+
+    // bounds one run, so a large backlog does not hold the scheduler thread shared by @Scheduled jobs
+    @Value("${orders.archive.max-batches:20}")
+    private int maxBatches;
+
+    private static final String DUE =
+            "SELECT id FROM orders WHERE created_at < ? ORDER BY created_at, id LIMIT ? FOR UPDATE";
+    private static final String COPY_ORDERS =
+            "INSERT INTO orders_archive (id, user_id, total_amount, idempotency_key, created_at, item_count) " +
+            "SELECT o.id, o.user_id, o.total_amount, o.idempotency_key, o.created_at, " +
+            "(SELECT COUNT(*) FROM order_items i WHERE i.order_id = o.id) FROM orders o WHERE o.id IN (%s)";
+    // items carry their order's created_at so they land in the same yearly partition
+    private static final String COPY_ITEMS =
+            "INSERT INTO order_items_archive (id, order_id, product_id, merchant_id, quantity, price, created_at) " +
+            "SELECT i.id, i.order_id, i.product_id, i.merchant_id, i.quantity, i.price, o.created_at " +
+            "FROM order_items i JOIN orders o ON o.id = i.order_id WHERE i.order_id IN (%s)";
+    // users with archived history, so order history skips the archive for everyone else
+    private static final String MARK_USERS =
+            "INSERT IGNORE INTO order_archive_users (user_id) SELECT DISTINCT user_id FROM orders WHERE id IN (%s)";
+    private static final String HAS_ARCHIVED =
+            "SELECT COUNT(*) FROM order_archive_users WHERE user_id = ?";
+    private static final String DELETE_ITEMS = "DELETE FROM order_items WHERE order_id IN (%s)";
+    private static final String DELETE_ORDERS = "DELETE FROM orders WHERE id IN (%s)";
+
+    // Same keyset as OrderRepository.findPageBefore: strictly older than (created_at, id), newest first
+    private static final String PAGE_BEFORE =
+            "SELECT id, user_id, total_amount, created_at, item_count FROM orders_archive WHERE user_id = ? " +
+            "AND (created_at < ? OR (created_at = ? AND id < ?)) ORDER BY created_at DESC, id DESC LIMIT ?";
+    // the created_at range lets MySQL read only the partitions the page falls in
+    private static final String ITEMS_OF =
+            "SELECT id, order_id, product_id, merchant_id, quantity, price FROM order_items_archive " +
+            "WHERE order_id IN (%s) AND created_at BETWEEN ? AND ?";
+
+    /**
+     * Moves orders past {@code orders.archive.after} to the archive tables,
+     * {@code orders.archive.batch-size} orders per transaction and at most
+     * {@code orders.archive.max-batches} transactions per run; a larger
+     * backlog is worked off over the following runs.
+     */
+    @Scheduled(fixedDelayString = "${orders.archive.interval:3600000}")
+    public void archive() {
+        Instant cutoff = Instant.now().minus(archiveAfter);
+        int total = 0;
+        int batches = 0;
+        int moved;
+        try {
+            do {
+                moved = transactionTemplate.execute(status -> moveBatch(cutoff));
+                total += moved;
+            } while (moved == batchSize && ++batches < maxBatches);
+        } catch (DataAccessException e) {
+            // what was moved stays moved; the rest goes on the next run
+            log.error("Order archiving stopped after {} orders", total, e);
+            return;
+        }
+        if (moved == batchSize) {
+            log.info("Archived {} orders placed before {}, continuing with the rest next run", total, cutoff);
+        } else if (total > 0) {
+            log.info("Archived {} orders placed before {}", total, cutoff);
+        }
+    }
+
+    private int moveBatch(Instant cutoff) {
+        List<Long> ids = jdbcTemplate.queryForList(DUE, Long.class, Timestamp.from(cutoff), batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String in = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        Object[] args = ids.toArray();
+        jdbcTemplate.update(COPY_ORDERS.formatted(in), args);
+        jdbcTemplate.update(COPY_ITEMS.formatted(in), args);
+        jdbcTemplate.update(MARK_USERS.formatted(in), args);
+        jdbcTemplate.update(DELETE_ITEMS.formatted(in), args);
+        jdbcTemplate.update(DELETE_ORDERS.formatted(in), args);
+        return ids.size();
+    }
+
+    // A primary key lookup, cheaper than a history page that probes every yearly partition
+    public boolean hasArchivedOrders(Long userId) {
+        Integer count = jdbcTemplate.queryForObject(HAS_ARCHIVED, Integer.class, userId);
+        return count != null && count > 0;
+    }
+
+    public List<OrderSummary> findSummaryPageBefore(Long userId, Instant createdAt, Long id, int limit) {
+        return jdbcTemplate.query(PAGE_BEFORE, (rs, n) -> new OrderSummary(
+                        rs.getLong("id"),
+                        rs.getDouble("total_amount"),
+                        rs.getTimestamp("created_at").toInstant(),
+                        rs.getInt("item_count")),
+                userId, Timestamp.from(createdAt), Timestamp.from(createdAt), id, limit);
+    }
+
+    // Archived orders with their items, in two queries per page
+    public List<Order> findPageBefore(Long userId, Instant createdAt, Long id, int limit) {
+        List<Order> orders = jdbcTemplate.query(PAGE_BEFORE, (rs, n) -> Order.builder()
+                        .id(rs.getLong("id"))
+                        .userId(rs.getLong("user_id"))
+                        .totalAmount(rs.getDouble("total_amount"))
+                        .createdAt(rs.getTimestamp("created_at").toInstant())
+                        .items(new ArrayList<>())
+                        .build(),
+                userId, Timestamp.from(createdAt), Timestamp.from(createdAt), id, limit);
+        if (orders.isEmpty()) {
+            return orders;
+        }
+
+        Map<Long, Order> byId = orders.stream().collect(Collectors.toMap(Order::getId, o -> o));
+        List<Object> args = new ArrayList<>(byId.keySet());
+        args.add(Timestamp.from(orders.get(orders.size() - 1).getCreatedAt()));
+        args.add(Timestamp.from(orders.get(0).getCreatedAt()));
+        String in = String.join(", ", Collections.nCopies(byId.size(), "?"));
+        jdbcTemplate.query(ITEMS_OF.formatted(in), rs -> {
+            byId.get(rs.getLong("order_id")).getItems().add(OrderItems.builder()
+                    .id(rs.getLong("id"))
+                    .productId(rs.getString("product_id"))
+                    .merchantId(rs.getString("merchant_id"))
+                    .quantity(rs.getInt("quantity"))
+                    .price(rs.getDouble("price"))
+                    .build());
+        }, args.toArray());
+        return orders;
+    }
+}
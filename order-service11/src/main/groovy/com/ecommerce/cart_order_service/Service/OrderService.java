@@ -1,116 +1,278 @@
 package com.ecommerce.cart_order_service.Service;
 
 import com.ecommerce.cart_order_service.Model.Order;
-import com.ecommerce.cart_order_service.Repository.CartItemsRepository;
+import com.ecommerce.cart_order_service.Model.OrderItems;
+import com.ecommerce.cart_order_service.Model.OrderSummary;
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
 import com.ecommerce.cart_order_service.Repository.OrderRepository;
 import com.ecommerce.cart_order_service.util.AuthValidator;
 import com.ecommerce.cart_order_service.util.NotificationUtil;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
     private final OrderRepository orderRepo;
-    private final CartItemsRepository cartRepo;
-    private final RestTemplate restTemplate;
+    private final CartStore cartStore;
     private final AuthValidator authValidator;
     private final NotificationUtil notificationUtil;
+    private final OutboxService outboxService;
+    private final InventoryReservations inventoryReservations;
+    private final ProductCatalog productCatalog;
+    private final OrderArchive orderArchive;
+    private final TransactionTemplate transactionTemplate;
 
-    @Value("${product.service.url}")
-    private String productServiceUrl;
+    private static final int MAX_PAGE_SIZE = 100;
+    // Cursor of the first page: before every stored order
+    private static final Instant FIRST_PAGE = Instant.parse("9999-12-31T23:59:59Z");
 
-    @Transactional
-    public ResponseEntity<?> placeOrder(String authHeader, Order order) {
+    /**
+     * Prices the order and holds its stock before the transaction opens, since
+     * both may call product-service and no database connection should wait on
+     * it. The transaction only re-checks the idempotency key and writes.
+     */
+    public ResponseEntity<?> placeOrder(String authHeader, String reservationId, String idempotencyKey, Order order) {
         // We get the claims map here, which contains the email
         var claims = authValidator.validateToken(authHeader);
         if (!"END_USER".equalsIgnoreCase((String) claims.get("role"))) {
             return ResponseEntity.status(403).body(Map.of("error", "Only END_USER can place orders."));
         }
 
-        // --- Stock Validation Loop ---
-        for (var item : order.getItems()) {
-            Object productData = restTemplate.getForObject(
-                    productServiceUrl + "/products/" + item.getProductId(),
-                    Object.class
-            );
-
-            int availableStock = getAvailableStock(productData, item.getMerchantId());
-            if (item.getQuantity() > availableStock) {
-                return ResponseEntity.status(400).body(Map.of(
-                        "error", "Insufficient stock for product " + item.getProductId()
-                ));
+        // --- Replay ---
+        // An order already placed under this key, e.g. a retry arriving after the key store forgot it
+        if (idempotencyKey != null) {
+            var existing = orderRepo.findByUserIdAndIdempotencyKey(order.getUserId(), idempotencyKey);
+            if (existing.isPresent()) {
+                return placed(existing.get());
             }
+            order.setIdempotencyKey(idempotencyKey);
+        }
+
+        // --- Price Items ---
+        // Prices and the total are taken from the catalog, not from the client
+        ResponseEntity<?> priceError = price(order);
+        if (priceError != null) {
+            return priceError;
+        }
+
+        // --- Reserve Stock ---
+        // Uses the hold taken at checkout start when it still covers this order, otherwise holds the items now
+        InventoryReservations.Hold hold;
+        try {
+            hold = inventoryReservations.holdFor(reservationId, order.getUserId(), order.getItems());
+        } catch (InventoryReservations.InsufficientStockException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
         }
 
+        // The email comes from the claims map fetched at the top
+        String userEmail = (String) claims.get("email");
+        try {
+            return transactionTemplate.execute(status -> save(order, hold, userEmail));
+        } catch (RuntimeException e) {
+            // no-op when the rollback already released it
+            inventoryReservations.release(hold.id());
+            throw e;
+        }
+    }
+
+    private ResponseEntity<?> save(Order order, InventoryReservations.Hold hold, String userEmail) {
+        // a request with the same key may have committed while this one was pricing
+        if (order.getIdempotencyKey() != null) {
+            var existing = orderRepo.findByUserIdAndIdempotencyKey(order.getUserId(), order.getIdempotencyKey());
+            if (existing.isPresent()) {
+                inventoryReservations.release(hold.id());
+                return placed(existing.get());
+            }
+        }
+
+        // Confirmed once this transaction commits, released if it rolls back
+        inventoryReservations.confirmOnCommit(hold);
+
         // --- Save Order and Clear Cart ---
         Order savedOrder = orderRepo.save(order);
-        cartRepo.deleteByUserId(order.getUserId());
+        // The cart is cleared once the order is committed, so a failed checkout keeps it
+        cartStore.clearOnCommit(order.getUserId());
+
+        // --- Queue Side Effects ---
+        // Written in this transaction and delivered by OutboxRelay after commit,
+        // so none is lost on a crash and checkout does not wait on them
+        outboxService.record(OutboxEvent.Type.ORDER_PLACED, savedOrder.getId(), Map.of(
+                "orderId", savedOrder.getId(),
+                "userId", savedOrder.getUserId(),
+                "totalAmount", savedOrder.getTotalAmount()
+        ));
 
-        // --- Update Stock Loop ---
         for (var item : order.getItems()) {
-            try {
-                restTemplate.postForEntity(
-                        productServiceUrl + "/products/updateStock",
-                        Map.of(
-                                "productId", item.getProductId(),
-                                "merchantId", item.getMerchantId(),
-                                "quantity", item.getQuantity()
-                        ),
-                        Void.class
-                );
-            } catch (Exception e) {
-                System.err.println("⚠ Failed to update stock for " + item.getProductId());
-            }
+            outboxService.record(OutboxEvent.Type.STOCK_DECREMENT, savedOrder.getId(), Map.of(
+                    "productId", item.getProductId(),
+                    "merchantId", item.getMerchantId(),
+                    "quantity", item.getQuantity()
+            ));
         }
 
-        // --- Send Email Notification ---
-        // 1. Get the email from the claims map we fetched at the top
-        String userEmail = (String) claims.get("email");
+        outboxService.record(OutboxEvent.Type.ORDER_CONFIRMATION, savedOrder.getId(),
+                notificationUtil.orderConfirmationRequest(savedOrder, userEmail));
 
-        // 2. Call the notification utility (this is now correct)
-        notificationUtil.sendOrderConfirmation(savedOrder, userEmail);
+        return placed(savedOrder);
+    }
 
+    private ResponseEntity<?> price(Order order) {
+        Map<String, ProductCatalog.Product> products = productCatalog.getAll(
+                order.getItems().stream().map(OrderItems::getProductId).distinct().toList());
+        double total = 0;
+        for (OrderItems item : order.getItems()) {
+            ProductCatalog.Product product = products.get(item.getProductId());
+            if (product == null) {
+                return ResponseEntity.status(400).body(Map.of("error", "Invalid Product ID: " + item.getProductId()));
+            }
+            ProductCatalog.Offer offer = product.offer(item.getMerchantId());
+            if (offer == null) {
+                product = productCatalog.getWithOffer(item.getProductId(), item.getMerchantId());
+                offer = product != null ? product.offer(item.getMerchantId()) : null;
+            }
+            if (offer == null) {
+                return ResponseEntity.status(400).body(Map.of("error",
+                        "Product " + item.getProductId() + " is not sold by merchant " + item.getMerchantId()));
+            }
+            item.setPrice(offer.price());
+            total += offer.price() * item.getQuantity();
+        }
+        order.setTotalAmount(total);
+        return null;
+    }
 
+    private static ResponseEntity<?> placed(Order order) {
         return ResponseEntity.ok(Map.of(
                 "success", true,
-                "orderId", savedOrder.getId(),
-                "totalAmount", savedOrder.getTotalAmount()
+                "orderId", order.getId(),
+                "totalAmount", order.getTotalAmount()
         ));
     }
 
-    private int getAvailableStock(Object productData, String merchantIdStr) {
+    // Checkout start: holds the items until the order is placed or the hold expires
+    public ResponseEntity<?> reserve(String authHeader, Order order) {
+        var claims = authValidator.validateToken(authHeader);
+        if (!"END_USER".equalsIgnoreCase((String) claims.get("role"))) {
+            return ResponseEntity.status(403).body(Map.of("error", "Only END_USER can place orders."));
+        }
+
         try {
-            // Using @SuppressWarnings to avoid warnings for unchecked casting
-            @SuppressWarnings("unchecked")
-            Map<String, Object> product = (Map<String, Object>) productData;
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> merchants = (List<Map<String, Object>>) product.get("merchants");
-
-            // Use Long for ID parsing for better safety
-            long merchantId = Long.parseLong(merchantIdStr);
-            for (Map<String, Object> m : merchants) {
-                long mid = Long.parseLong(m.get("merchant_id").toString());
-                if (mid == merchantId) {
-                    return Integer.parseInt(m.get("stock").toString());
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error parsing product stock: " + e.getMessage());
+            InventoryReservations.Hold hold = inventoryReservations.hold(order.getUserId(), order.getItems());
+            return ResponseEntity.ok(Map.of(
+                    "reservationId", hold.id(),
+                    "expiresAt", hold.expiresAt().toString()
+            ));
+        } catch (InventoryReservations.InsufficientStockException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
         }
-        return 0;
     }
 
-    public List<Order> getOrders(String authHeader, Long userId) {
+    public ResponseEntity<?> cancelReservation(String authHeader, String reservationId, Long userId) {
         authValidator.validateToken(authHeader);
-        return orderRepo.findByUserId(userId);
+        if (!inventoryReservations.release(reservationId, userId)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Reservation not found"));
+        }
+        return ResponseEntity.ok(Map.of("reservationId", reservationId, "released", true));
+    }
+
+    /**
+     * One page of a user's orders, newest first. Pages are keyset-paginated on
+     * (createdAt, id); the cursor for the next page goes out in {@code X-Next-Cursor}
+     * and is absent on the last page. The summary view leaves out the items.
+     * Pages are read from the hot tables first and continue into {@link OrderArchive}
+     * once a user's recent orders run out, if the user has archived orders at all.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getOrders(String authHeader, Long userId, String cursor, int size, boolean summary) {
+        authValidator.validateToken(authHeader);
+
+        Instant createdBefore = FIRST_PAGE;
+        long idBefore = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                createdBefore = Instant.parse(parts[0]);
+                idBefore = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor"));
+            }
+        }
+
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // one extra row tells whether there is a next page
+        PageRequest page = PageRequest.of(0, limit + 1);
+
+        List<?> orders;
+        String nextCursor = null;
+        if (summary) {
+            List<OrderSummary> rows = orderRepo.findSummaryPageBefore(userId, createdBefore, idBefore, page);
+            if (rows.size() <= limit && orderArchive.hasArchivedOrders(userId)) {
+                rows = concat(rows, orderArchive.findSummaryPageBefore(userId, createdBefore, idBefore, limit + 1 - rows.size()));
+            }
+            if (rows.size() > limit) {
+                rows = rows.subList(0, limit);
+                OrderSummary last = rows.get(limit - 1);
+                nextCursor = cursor(last.createdAt(), last.id());
+            }
+            orders = rows;
+        } else {
+            List<Order> headers = orderRepo.findPageBefore(userId, createdBefore, idBefore, page);
+            List<Order> archived = headers.size() <= limit && orderArchive.hasArchivedOrders(userId)
+                    ? orderArchive.findPageBefore(userId, createdBefore, idBefore, limit + 1 - headers.size())
+                    : List.of();
+            List<Order> rows = concat(withItems(headers), archived);
+            if (rows.size() > limit) {
+                rows = rows.subList(0, limit);
+                Order last = rows.get(limit - 1);
+                nextCursor = cursor(last.getCreatedAt(), last.getId());
+            }
+            orders = rows;
+        }
+
+        var response = ResponseEntity.ok();
+        if (nextCursor != null) {
+            response.header("X-Next-Cursor", nextCursor);
+        }
+        return response.body(orders);
+    }
+
+    // Loads the items of every order on the page in a single query, keeping the page order
+    private List<Order> withItems(List<Order> headers) {
+        if (headers.isEmpty()) {
+            return headers;
+        }
+        Map<Long, Order> loaded = orderRepo.findWithItemsByIdIn(headers.stream().map(Order::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Order::getId, o -> o));
+        return headers.stream().map(o -> loaded.get(o.getId())).toList();
+    }
+
+    // Archived orders are all older than hot ones, so they follow them on the page
+    private static <T> List<T> concat(List<T> hot, List<T> archived) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<T> rows = new ArrayList<>(hot);
+        rows.addAll(archived);
+        return rows;
+    }
+
+    private static String cursor(Instant createdAt, Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "|" + id).getBytes(StandardCharsets.UTF_8));
     }
 }
\ No newline at end of file
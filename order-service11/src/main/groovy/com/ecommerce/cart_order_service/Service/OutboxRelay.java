@@ -0,0 +1,131 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Delivers outbox events to the downstream services in batches, off the
+ * checkout path. Failures are retried with exponential backoff; events
+ * rejected with a 4xx or out of attempts are marked FAILED and kept.
+ * Order confirmation emails are sent by {@link NotificationDispatcher} on
+ * their own threads, so email health does not hold up stock decrements.
+ */
+@Component
+public class OutboxRelay {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private InventoryReservations inventoryReservations;
+
+    @Value("${product.service.url}")
+    private String productServiceUrl;
+
+    // Subscriber for ORDER_PLACED; when blank the event is only recorded
+    @Value("${outbox.order-placed.url:}")
+    private String orderPlacedUrl;
+
+    @Value("${outbox.relay.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${outbox.relay.initial-backoff:PT5S}")
+    private Duration initialBackoff;
+
+    @Value("${outbox.relay.max-backoff:PT10M}")
+    private Duration maxBackoff;
+
+    static final Set<OutboxEvent.Type> TYPES = EnumSet.of(OutboxEvent.Type.ORDER_PLACED, OutboxEvent.Type.STOCK_DECREMENT);
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval:1000}")
+    public void relay() {
+        List<OutboxEvent> batch = outboxService.claimBatch(TYPES);
+        // every claimed event ends up published, failed or due later, so this drains and stops
+        while (!batch.isEmpty()) {
+            for (OutboxEvent event : batch) {
+                deliver(event);
+            }
+            outboxService.saveResults(batch);
+            batch = outboxService.claimBatch(TYPES);
+        }
+    }
+
+    void deliver(OutboxEvent event) {
+        try {
+            send(event);
+            published(event);
+        } catch (Exception e) {
+            failed(event, e);
+        }
+    }
+
+    void send(OutboxEvent event) {
+        switch (event.getType()) {
+            case STOCK_DECREMENT -> post(productServiceUrl + "/products/updateStock", event);
+            case ORDER_PLACED -> {
+                if (!orderPlacedUrl.isBlank()) {
+                    post(orderPlacedUrl, event);
+                }
+            }
+        }
+    }
+
+    void published(OutboxEvent event) {
+        event.setStatus(OutboxEvent.Status.PUBLISHED);
+        event.setPublishedAt(Instant.now());
+        event.setLastError(null);
+        inventoryReservations.settled(event);
+    }
+
+    void failed(OutboxEvent event, Exception e) {
+        event.setAttempts(event.getAttempts() + 1);
+        event.setLastError(truncate(e.getMessage()));
+        // a 4xx will not succeed on retry
+        if (e instanceof HttpClientErrorException || event.getAttempts() >= maxAttempts) {
+            event.setStatus(OutboxEvent.Status.FAILED);
+            System.err.println("⚠ Giving up on " + event.getType() + " event " + event.getId()
+                    + " for order " + event.getAggregateId() + ": " + e.getMessage());
+            inventoryReservations.settled(event);
+        } else {
+            event.setNextAttemptAt(Instant.now().plus(backoff(event.getAttempts())));
+        }
+    }
+
+    // initialBackoff, doubled after every failed attempt, capped at maxBackoff
+    Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    // The event id lets a receiver drop the duplicate when a delivery is retried
+    void post(String url, OutboxEvent event) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", "outbox-" + event.getId());
+        restTemplate.postForEntity(url, new HttpEntity<>(event.getPayload(), headers), String.class);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= 500 ? message : message.substring(0, 500);
+    }
+}
@@ -0,0 +1,98 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import com.ecommerce.cart_order_service.Repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Service
+public class OutboxService {
+
+    @Autowired
+    private OutboxEventRepository outboxRepo;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${outbox.relay.batch-size:100}")
+    private int batchSize;
+
+    @Value("${outbox.relay.lease:PT1M}")
+    private Duration lease;
+
+    @Value("${http.client.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${http.client.read-timeout:5s}")
+    private Duration readTimeout;
+
+    /**
+     * Queues a side effect; only valid inside the transaction that writes the order,
+     * so the event is committed or rolled back together with it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public OutboxEvent record(OutboxEvent.Type type, Long aggregateId, Object payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + type + " event for order " + aggregateId, e);
+        }
+
+        Instant now = Instant.now();
+        return outboxRepo.save(OutboxEvent.builder()
+                .type(type)
+                .aggregateId(aggregateId)
+                .payload(json)
+                .status(OutboxEvent.Status.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+
+    /**
+     * Claims up to one batch of due events of the given types by moving their next
+     * attempt past the lease. If the relay dies before saving the results, the events
+     * become due again when the lease runs out, so delivery is at least once.
+     */
+    @Transactional
+    public List<OutboxEvent> claimBatch(Collection<OutboxEvent.Type> types) {
+        return claimBatch(types, Math.min(batchSize, leaseCapacity(1)));
+    }
+
+    /**
+     * How many claimed events {@code threads} senders can get through before the
+     * lease runs out, even if every call waits out the connect and read timeouts.
+     * Claiming more would let a slow receiver make events due again while they
+     * are still queued for sending, and they would be delivered twice.
+     */
+    public int leaseCapacity(int threads) {
+        long perEvent = connectTimeout.plus(readTimeout).toMillis();
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, lease.toMillis() / perEvent * threads));
+    }
+
+    @Transactional
+    public List<OutboxEvent> claimBatch(Collection<OutboxEvent.Type> types, int limit) {
+        Instant now = Instant.now();
+        List<OutboxEvent> due = outboxRepo.findDueForUpdate(OutboxEvent.Status.PENDING, types, now, PageRequest.of(0, limit));
+        due.forEach(e -> e.setNextAttemptAt(now.plus(lease)));
+        return due;
+    }
+
+    @Transactional
+    public void saveResults(List<OutboxEvent> events) {
+        outboxRepo.saveAll(events);
+    }
+}
@@ -0,0 +1,146 @@
+package com.ecommerce.cart_order_service.Service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local copy of the product fields the cart and checkout need: name, image and
+ * each merchant's price and stock. Entries are dropped when product-service
+ * reports a change ({@code POST /cart/catalog/invalidate}) and expire after
+ * {@code catalog.cache-ttl} in case a notification was missed. Misses for a
+ * whole cart are loaded with one {@code GET /products/batch} call.
+ */
+@Service
+public class ProductCatalog {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Value("${product.service.url}")
+    private String productServiceUrl;
+
+    @Value("${catalog.cache-ttl:PT60S}")
+    private Duration ttl;
+
+    private static final int BATCH_SIZE = 100;
+
+    public record Offer(double price, int stock) {
+    }
+
+    public record Product(String id, String name, String imageUrl, Map<String, Offer> offers) {
+        public Offer offer(Object merchantId) {
+            return offers.get(String.valueOf(merchantId));
+        }
+    }
+
+    // product is null for ids product-service does not know
+    private record Entry(Product product, long loadedAtNanos) {
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public Product get(String productId) {
+        return getAll(List.of(productId)).get(productId);
+    }
+
+    /**
+     * The known products among {@code productIds}; unknown ids are missing from
+     * the result. Only ids not cached (or expired) are fetched.
+     */
+    public Map<String, Product> getAll(Collection<String> productIds) {
+        Map<String, Product> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        long now = System.nanoTime();
+        for (String id : productIds) {
+            Entry entry = entries.get(id);
+            if (entry == null || now - entry.loadedAtNanos() > ttl.toNanos()) {
+                missing.add(id);
+            } else if (entry.product() != null) {
+                found.put(id, entry.product());
+            }
+        }
+        if (!missing.isEmpty()) {
+            found.putAll(load(missing));
+        }
+        return found;
+    }
+
+    /**
+     * The product with a fresh copy when {@code merchantId} has no offer in the
+     * cached one, as when a merchant has started selling it since it was loaded.
+     */
+    public Product getWithOffer(String productId, Object merchantId) {
+        Product product = get(productId);
+        if (product != null && product.offer(merchantId) == null) {
+            invalidate(productId);
+            product = get(productId);
+        }
+        return product;
+    }
+
+    public void invalidate(String productId) {
+        invalidations.incrementAndGet();
+        entries.remove(productId);
+    }
+
+    private Map<String, Product> load(Set<String> ids) {
+        Map<String, Product> loaded = new HashMap<>();
+        List<String> pending = new ArrayList<>(ids);
+        for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+            List<String> batch = pending.subList(from, Math.min(from + BATCH_SIZE, pending.size()));
+            long invalidationsBefore = invalidations.get();
+            String url = UriComponentsBuilder.fromUriString(productServiceUrl + "/products/batch")
+                    .queryParam("ids", batch.toArray())
+                    .toUriString();
+            List<Map<String, Object>> products = restTemplate.exchange(url, HttpMethod.GET, null,
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {}).getBody();
+
+            long now = System.nanoTime();
+            if (products != null) {
+                for (Map<String, Object> data : products) {
+                    Product product = parse(data);
+                    loaded.put(product.id(), product);
+                }
+            }
+            // a change reported while this batch was in flight may not be in it, so it is not cached
+            if (invalidations.get() == invalidationsBefore) {
+                for (String id : batch) {
+                    entries.put(id, new Entry(loaded.get(id), now));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Product parse(Map<String, Object> data) {
+        Map<String, Offer> offers = new HashMap<>();
+        List<Map<String, Object>> merchants = (List<Map<String, Object>>) data.get("merchants");
+        if (merchants != null) {
+            for (Map<String, Object> m : merchants) {
+                offers.put(String.valueOf(m.get("merchant_id")), new Offer(
+                        Double.parseDouble(m.get("price").toString()),
+                        Integer.parseInt(m.get("stock").toString())));
+            }
+        }
+        return new Product(String.valueOf(data.get("id")), (String) data.get("name"),
+                (String) data.get("imageUrl"), offers);
+    }
+}
@@ -0,0 +1,177 @@
+package com.ecommerce.cart_order_service.util;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Append-only, line-based journal. A single writer thread appends whatever has
+ * queued up and forces it to disk once per batch, so concurrent callers share
+ * one fsync instead of paying one each. When the file grows past
+ * {@link #maxBytes()} it is rewritten from the live records and swapped in
+ * atomically.
+ */
+public abstract class AppendOnlyJournal {
+
+    protected abstract String name();
+
+    protected abstract String path();
+
+    protected abstract long maxBytes();
+
+    protected abstract Duration appendTimeout();
+
+    private record Entry(String line, CompletableFuture<Void> written) {
+    }
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean running;
+    private Supplier<List<String>> liveRecords;
+
+    /**
+     * Every record currently in the journal, oldest first. A torn last line from
+     * a crash mid-write is dropped.
+     */
+    public List<String> replay() throws IOException {
+        Path file = Path.of(path());
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return List.of();
+        }
+        return List.of(content.substring(0, end).split("\n"));
+    }
+
+    /**
+     * Compacts the journal down to {@code liveRecords} and starts the writer.
+     * The supplier is called again for every later compaction.
+     */
+    public synchronized void start(Supplier<List<String>> liveRecords) throws IOException {
+        this.liveRecords = liveRecords;
+        Path file = Path.of(path()).toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        compact();
+        running = true;
+        writer = new Thread(this::writeLoop, name());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a record. With {@code durable} the call returns only once the
+     * record is on disk and fails if it could not be written.
+     */
+    public void append(String record, boolean durable) {
+        CompletableFuture<Void> written = enqueue(record);
+        if (durable) {
+            await(written);
+        }
+    }
+
+    /**
+     * Queues a record without waiting; the future completes once it is on disk.
+     * Records are written in the order they are queued.
+     */
+    public CompletableFuture<Void> enqueue(String record) {
+        Entry entry = new Entry(record, new CompletableFuture<>());
+        queue.add(entry);
+        return entry.written();
+    }
+
+    public void await(CompletableFuture<Void> written) {
+        try {
+            written.get(appendTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing " + name(), e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not write " + name(), e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        if (writer != null) {
+            writer.join(appendTimeout().toMillis());
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+
+                StringBuilder lines = new StringBuilder();
+                batch.forEach(e -> lines.append(e.line()).append('\n'));
+                write(lines.toString());
+                batch.forEach(e -> e.written().complete(null));
+
+                if (channel.size() > maxBytes()) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                System.err.println("⚠ " + name() + " write failed: " + e.getMessage());
+                batch.forEach(entry -> entry.written().completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private synchronized void write(String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    // Records queued but not yet written are not in the snapshot's file; they are appended after the swap
+    private synchronized void compact() throws IOException {
+        Path file = Path.of(path()).toAbsolutePath();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        StringBuilder lines = new StringBuilder();
+        liveRecords.get().forEach(line -> lines.append(line).append('\n'));
+        Files.writeString(tmp, lines, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
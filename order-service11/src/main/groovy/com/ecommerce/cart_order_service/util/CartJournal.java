@@ -0,0 +1,43 @@
+package com.ecommerce.cart_order_service.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Write-ahead log of cart changes not yet flushed to MySQL, compacted past
+ * {@code cart.store.journal.max-bytes}.
+ */
+@Component
+public class CartJournal extends AppendOnlyJournal {
+
+    @Value("${cart.store.journal.path:data/cart.journal}")
+    private String path;
+
+    @Value("${cart.store.journal.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${cart.store.journal.append-timeout:PT5S}")
+    private Duration appendTimeout;
+
+    @Override
+    protected String name() {
+        return "cart-journal";
+    }
+
+    @Override
+    protected String path() {
+        return path;
+    }
+
+    @Override
+    protected long maxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    protected Duration appendTimeout() {
+        return appendTimeout;
+    }
+}
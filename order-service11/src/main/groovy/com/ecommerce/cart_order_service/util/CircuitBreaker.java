@@ -0,0 +1,73 @@
+package com.ecommerce.cart_order_service.util;
+
+import java.time.Duration;
+
+/**
+ * Stops calls to a downstream service after {@code failureThreshold} failures
+ * in a row. While open every call is refused; after {@code openDuration} one
+ * trial call is let through, and its result closes or reopens the circuit.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED -> {
+                return true;
+            }
+            case OPEN -> {
+                if (System.nanoTime() - openedAtNanos < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            }
+            default -> {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            }
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+        trialInFlight = false;
+    }
+
+    // Gives back a trial slot that was not used, leaving the circuit half open
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+}
@@ -3,10 +3,10 @@ package com.ecommerce.cart_order_service.util;
 import com.ecommerce.cart_order_service.Model.Order;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.HashMap;
 import java.util.Map;
 
 @Component
@@ -20,18 +20,27 @@ public class NotificationUtil {
     private String emailServiceUrl;
 
 
-    @Async
+    // Body of the email service's send-order-confirmation call; userEmail may be missing from the token
+    public Map<String, Object> orderConfirmationRequest(Order order, String userEmail) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("orderId", order.getId());
+        requestBody.put("userId", order.getUserId());
+        requestBody.put("userEmail", userEmail);
+        requestBody.put("totalAmount", order.getTotalAmount());
+        requestBody.put("items", order.getItems());
+        return requestBody;
+    }
+
+    /**
+     * Sends the confirmation on the calling thread. Checkout does not use this:
+     * it queues an ORDER_CONFIRMATION outbox event, sent by NotificationDispatcher.
+     */
+    @Deprecated
     public void sendOrderConfirmation(Order order, String userEmail) {
         System.out.println("Calling Email Service for order: " + order.getId());
 
 
-        Map<String, Object> requestBody = Map.of(
-                "orderId", order.getId(),
-                "userId", order.getUserId(),
-                "userEmail", userEmail,
-                "totalAmount", order.getTotalAmount(),
-                "items", order.getItems()
-        );
+        Map<String, Object> requestBody = orderConfirmationRequest(order, userEmail);
 
         try {
 
@@ -0,0 +1,43 @@
+package com.ecommerce.cart_order_service.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Journal behind the inventory holds, compacted past
+ * {@code reservations.journal.max-bytes}.
+ */
+@Component
+public class ReservationJournal extends AppendOnlyJournal {
+
+    @Value("${reservations.journal.path:data/reservations.journal}")
+    private String path;
+
+    @Value("${reservations.journal.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${reservations.journal.append-timeout:PT5S}")
+    private Duration appendTimeout;
+
+    @Override
+    protected String name() {
+        return "reservation-journal";
+    }
+
+    @Override
+    protected String path() {
+        return path;
+    }
+
+    @Override
+    protected long maxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    protected Duration appendTimeout() {
+        return appendTimeout;
+    }
+}
@@ -1,18 +1,21 @@
 package com.ecommerce.cart_order_service.Service;
 
+import com.ecommerce.cart_order_service.Model.CartBatchRequest;
 import com.ecommerce.cart_order_service.Model.CartItems;
+import com.ecommerce.cart_order_service.Model.CartLine;
 import com.ecommerce.cart_order_service.Repository.CartItemsRepository;
 import com.ecommerce.cart_order_service.util.AuthValidator;
+import com.ecommerce.cart_order_service.util.CartJournal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,23 +26,34 @@ class CartItemsServiceTest {
     private CartItemsRepository repo;
 
     @Mock
-    private RestTemplate restTemplate;
+    private ProductCatalog productCatalog;
 
     @Mock
     private AuthValidator authValidator;
 
+    @Mock
+    private CartJournal journal;
+
     @InjectMocks
     private CartItemsService cartService;
 
+    private CartStore cartStore;
+
     private String authHeader;
     private Map<String, Object> claims;
     private CartItems sampleItem;
-    private Object sampleProductResponse;
+    private ProductCatalog.Product sampleProduct;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
 
+        cartStore = new CartStore();
+        ReflectionTestUtils.setField(cartStore, "repo", repo);
+        ReflectionTestUtils.setField(cartStore, "journal", journal);
+        ReflectionTestUtils.setField(cartService, "cartStore", cartStore);
+        when(journal.enqueue(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+
         authHeader = "Bearer mockToken";
         claims = Map.of("userId", 1L, "role", "END_USER");
 
@@ -52,23 +66,16 @@ class CartItemsServiceTest {
                 .price(100.0)
                 .build();
 
-        sampleProductResponse = Map.of(
-                "merchants", List.of(Map.of(
-                        "merchant_id", "1",
-                        "stock", "10"
-                ))
-        );
+        sampleProduct = new ProductCatalog.Product("p123", "Phone", "/img/p123.png",
+                Map.of("1", new ProductCatalog.Offer(120.0, 10)));
     }
 
     @Test
     void addToCart_shouldReturnSuccess_whenValidInput() {
         // Arrange
         when(authValidator.validateToken(authHeader)).thenReturn(claims);
-        when(restTemplate.getForObject(anyString(), eq(Object.class)))
-                .thenReturn(sampleProductResponse);
-        when(repo.findByUserIdAndProductIdAndMerchantId(anyLong(), anyString(), anyLong()))
-                .thenReturn(Optional.empty());
-        when(repo.save(any(CartItems.class))).thenReturn(sampleItem);
+        when(productCatalog.getWithOffer("p123", 1L)).thenReturn(sampleProduct);
+        when(repo.findByUserId(1L)).thenReturn(List.of());
 
         // Act
         ResponseEntity<?> response = cartService.addToCart(authHeader, sampleItem);
@@ -77,7 +84,11 @@ class CartItemsServiceTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         Map<?, ?> body = (Map<?, ?>) response.getBody();
         assertTrue((Boolean) body.get("success"));
-        verify(repo, times(1)).save(any(CartItems.class));
+        // the catalog price replaces the one sent by the client
+        CartItems line = cartStore.withCart(1L, CartStore.Cart::items).get(0);
+        assertEquals(120.0, line.getPrice());
+        assertEquals(2, line.getQuantity());
+        verify(journal, times(1)).enqueue(startsWith("S 1 p123 1 2 120.0"));
     }
 
     @Test
@@ -90,85 +101,174 @@ class CartItemsServiceTest {
 
         // Assert
         assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
-        verify(repo, never()).save(any());
+        verify(journal, never()).enqueue(any());
     }
 
     @Test
     void addToCart_shouldReturnBadRequest_whenProductNotFound() {
         // Arrange
         when(authValidator.validateToken(authHeader)).thenReturn(claims);
-        when(restTemplate.getForObject(anyString(), eq(Object.class)))
-                .thenThrow(new RuntimeException("Product not found"));
+        when(productCatalog.getWithOffer("p123", 1L)).thenReturn(null);
 
         // Act
         ResponseEntity<?> response = cartService.addToCart(authHeader, sampleItem);
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
-        verify(repo, never()).save(any());
+        verify(journal, never()).enqueue(any());
     }
 
     @Test
     void addToCart_shouldReturnError_whenStockInsufficient() {
         // Arrange
         when(authValidator.validateToken(authHeader)).thenReturn(claims);
-        Object lowStock = Map.of("merchants", List.of(Map.of("merchant_id", "1", "stock", "1")));
-        when(restTemplate.getForObject(anyString(), eq(Object.class))).thenReturn(lowStock);
-        when(repo.findByUserIdAndProductIdAndMerchantId(anyLong(), anyString(), anyLong()))
-                .thenReturn(Optional.empty());
+        var lowStock = new ProductCatalog.Product("p123", "Phone", null, Map.of("1", new ProductCatalog.Offer(120.0, 1)));
+        when(productCatalog.getWithOffer("p123", 1L)).thenReturn(lowStock);
+        when(repo.findByUserId(1L)).thenReturn(List.of());
 
         // Act
         ResponseEntity<?> response = cartService.addToCart(authHeader, sampleItem);
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
-        verify(repo, never()).save(any());
+        verify(journal, never()).enqueue(any());
     }
 
     @Test
-    void getCart_shouldReturnUserCart() {
+    void getCart_shouldReturnPricedLinesAndSubtotal() {
+        // Arrange
+        when(authValidator.validateToken(authHeader)).thenReturn(claims);
+        CartItems gone = CartItems.builder().id(2L).userId(1L).productId("p404").merchantId(1L).quantity(1).price(50.0).build();
+        when(repo.findByUserId(1L)).thenReturn(List.of(sampleItem, gone));
+        when(productCatalog.getAll(List.of("p123", "p404"))).thenReturn(Map.of("p123", sampleProduct));
+
+        // Act
+        ResponseEntity<?> response = cartService.getCart(authHeader, 1L);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map<?, ?> body = (Map<?, ?>) response.getBody();
+        List<?> lines = (List<?>) body.get("cartItems");
+        assertEquals(2, lines.size());
+        CartLine line = (CartLine) lines.get(0);
+        assertEquals("Phone", line.name());
+        assertEquals(120.0, line.price());
+        assertEquals(240.0, line.lineTotal());
+        assertTrue(line.available());
+        assertFalse(((CartLine) lines.get(1)).available());
+        // unavailable lines are not counted
+        assertEquals(240.0, body.get("subtotal"));
+        verify(productCatalog, times(1)).getAll(any());
+    }
+
+    @Test
+    void applyBatch_shouldApplyAllOperationsWithOneProductLookup() {
+        // Arrange
+        when(authValidator.validateToken(authHeader)).thenReturn(claims);
+        CartItems other = CartItems.builder().id(2L).userId(1L).productId("p7").merchantId(1L).quantity(1).price(5.0).build();
+        when(repo.findByUserId(1L)).thenReturn(List.of(sampleItem, other));
+        var tablet = new ProductCatalog.Product("p9", "Tablet", null, Map.of("1", new ProductCatalog.Offer(300.0, 5)));
+        when(productCatalog.getAll(List.of("p123", "p9"))).thenReturn(Map.of("p123", sampleProduct, "p9", tablet));
+        var request = new CartBatchRequest(1L, List.of(
+                new CartBatchRequest.Operation("add", "p123", 1L, 1),
+                new CartBatchRequest.Operation("update", "p9", null, 4),
+                new CartBatchRequest.Operation("remove", "p7", 1L, null)));
+
+        // Act
+        ResponseEntity<?> response = cartService.applyBatch(authHeader, request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map<?, ?> body = (Map<?, ?>) response.getBody();
+        assertEquals(2, body.get("itemCount"));
+        assertEquals(3 * 120.0 + 4 * 300.0, body.get("subtotal"));
+        verify(productCatalog, times(1)).getAll(List.of("p123", "p9"));
+        verify(journal).enqueue("S 1 p123 1 3 120.0 1");
+        verify(journal).enqueue("D 1 p7 1");
+    }
+
+    @Test
+    void applyBatch_shouldApplyNothingWhenAnyOperationIsInvalid() {
         // Arrange
         when(authValidator.validateToken(authHeader)).thenReturn(claims);
         when(repo.findByUserId(1L)).thenReturn(List.of(sampleItem));
+        when(productCatalog.getAll(List.of("p123", "p404"))).thenReturn(Map.of("p123", sampleProduct));
+        var request = new CartBatchRequest(1L, List.of(
+                new CartBatchRequest.Operation("add", "p123", 1L, 1),
+                new CartBatchRequest.Operation("add", "p404", 1L, 1),
+                new CartBatchRequest.Operation("update", "p123", 1L, 11)));
 
         // Act
-        List<CartItems> result = cartService.getCart(authHeader, 1L);
+        ResponseEntity<?> response = cartService.applyBatch(authHeader, request);
 
         // Assert
-        assertEquals(1, result.size());
-        assertEquals("p123", result.get(0).getProductId());
-        verify(repo).findByUserId(1L);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        List<?> errors = (List<?>) ((Map<?, ?>) response.getBody()).get("errors");
+        assertEquals(2, errors.size());
+        assertEquals(1, ((Map<?, ?>) errors.get(0)).get("index"));
+        assertEquals(2, ((Map<?, ?>) errors.get(1)).get("index"));
+        verify(journal, never()).enqueue(any());
     }
 
     @Test
     void updateCart_shouldUpdateExistingItem() {
         // Arrange
         when(authValidator.validateToken(authHeader)).thenReturn(claims);
-        when(repo.findByUserIdAndProductIdAndMerchantId(1L, "p123", 1L))
-                .thenReturn(Optional.of(sampleItem));
-        when(repo.save(any(CartItems.class))).thenReturn(sampleItem);
+        when(repo.findByUserId(1L)).thenReturn(List.of(sampleItem));
+        when(productCatalog.getWithOffer("p123", 1L)).thenReturn(sampleProduct);
 
         // Act
         ResponseEntity<?> response = cartService.updateCart(authHeader, sampleItem);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(repo).save(any(CartItems.class));
+        verify(journal).enqueue("S 1 p123 1 2 120.0 1");
     }
 
     @Test
     void updateCart_shouldReturnNotFound_whenItemMissing() {
         // Arrange
         when(authValidator.validateToken(authHeader)).thenReturn(claims);
-        when(repo.findByUserIdAndProductIdAndMerchantId(1L, "p123", 1L))
-                .thenReturn(Optional.empty());
+        when(productCatalog.getWithOffer("p123", 1L)).thenReturn(sampleProduct);
+        when(repo.findByUserId(1L)).thenReturn(List.of());
 
         // Act
         ResponseEntity<?> response = cartService.updateCart(authHeader, sampleItem);
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
-        verify(repo, never()).save(any());
+        verify(journal, never()).enqueue(any());
+    }
+
+    @Test
+    void updateCart_shouldReturnError_whenStockInsufficient() {
+        // Arrange
+        when(authValidator.validateToken(authHeader)).thenReturn(claims);
+        when(repo.findByUserId(1L)).thenReturn(List.of(sampleItem));
+        when(productCatalog.getWithOffer("p123", 1L)).thenReturn(sampleProduct);
+        CartItems tooMany = CartItems.builder().userId(1L).productId("p123").merchantId(1L).quantity(11).build();
+
+        // Act
+        ResponseEntity<?> response = cartService.updateCart(authHeader, tooMany);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(Map.of("error", "Not enough stock! Available: 10"), response.getBody());
+        verify(journal, never()).enqueue(any());
+    }
+
+    @Test
+    void updateCart_shouldReturnServiceUnavailable_whenCatalogFails() {
+        // Arrange
+        when(authValidator.validateToken(authHeader)).thenReturn(claims);
+        when(productCatalog.getWithOffer("p123", 1L)).thenThrow(new IllegalStateException("product-service down"));
+
+        // Act
+        ResponseEntity<?> response = cartService.updateCart(authHeader, sampleItem);
+
+        // Assert
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        verify(journal, never()).enqueue(any());
     }
 
     @Test
@@ -181,7 +281,7 @@ class CartItemsServiceTest {
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(repo).deleteByUserIdAndProductIdAndMerchantId(1L, "p123", 1L);
+        verify(journal).enqueue("D 1 p123 1");
     }
 
     @Test
@@ -194,6 +294,6 @@ class CartItemsServiceTest {
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(repo).deleteByUserId(1L);
+        verify(journal).enqueue("X 1");
     }
 }
@@ -0,0 +1,318 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.CartItems;
+import com.ecommerce.cart_order_service.Repository.CartItemsRepository;
+import com.ecommerce.cart_order_service.util.CartJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CartStoreTest {
+
+    @Mock
+    private CartItemsRepository repo;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path dir;
+
+    private CartJournal journal;
+    private CartStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(repo.findByUserId(anyLong())).thenReturn(List.of());
+        store = start(Duration.ofMinutes(30));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.stop();
+        journal.stop();
+    }
+
+    private CartStore start(Duration idleTtl) throws Exception {
+        return start(idleTtl, Duration.ofHours(1));
+    }
+
+    private CartStore start(Duration idleTtl, Duration flushInterval) throws Exception {
+        journal = new CartJournal();
+        ReflectionTestUtils.setField(journal, "path", dir.resolve("cart.journal").toString());
+        ReflectionTestUtils.setField(journal, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(journal, "appendTimeout", Duration.ofSeconds(5));
+
+        CartStore cartStore = new CartStore();
+        ReflectionTestUtils.setField(cartStore, "repo", repo);
+        ReflectionTestUtils.setField(cartStore, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(cartStore, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(cartStore, "journal", journal);
+        ReflectionTestUtils.setField(cartStore, "flushInterval", flushInterval.toMillis());
+        ReflectionTestUtils.setField(cartStore, "flushBatchSize", 500);
+        ReflectionTestUtils.setField(cartStore, "maxFlushAttempts", 3);
+        ReflectionTestUtils.setField(cartStore, "idleTtl", idleTtl);
+        cartStore.restore();
+        return cartStore;
+    }
+
+    private static CartItems line(Long id, String productId, int quantity) {
+        return CartItems.builder().id(id).userId(1L).productId(productId).merchantId(1L).quantity(quantity).price(10.0).build();
+    }
+
+    private void put(String productId, int quantity) {
+        store.withCart(1L, cart -> cart.put(line(null, productId, quantity)));
+    }
+
+    private List<CartItems> items() {
+        return store.withCart(1L, CartStore.Cart::items);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> batch(String sqlPrefix) {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith(sqlPrefix), rows.capture());
+        return rows.getValue();
+    }
+
+    @Test
+    void withCart_shouldReadThroughOnceAndServeFromMemory() {
+        when(repo.findByUserId(1L)).thenReturn(List.of(line(7L, "p1", 3)));
+
+        assertEquals(3, items().get(0).getQuantity());
+        assertEquals(7L, items().get(0).getId());
+
+        verify(repo, times(1)).findByUserId(1L);
+    }
+
+    @Test
+    void flush_shouldCoalesceChangesIntoOneBatch() {
+        put("p1", 1);
+        put("p1", 2);
+        put("p2", 1);
+        store.withCart(1L, cart -> {
+            cart.remove("p2", 1L);
+            return null;
+        });
+        when(repo.findByUserIdIn(List.of(1L))).thenReturn(List.of(line(42L, "p1", 2)));
+
+        store.flush();
+
+        List<Object[]> upserts = batch("INSERT INTO cart_items");
+        assertEquals(1, upserts.size());
+        assertArrayEquals(new Object[]{1L, "p1", 1L, 2, 10.0}, upserts.get(0));
+        assertArrayEquals(new Object[]{1L, "p2", 1L}, batch("DELETE FROM cart_items WHERE user_id = ? AND").get(0));
+        // the id MySQL assigned is read back
+        assertEquals(42L, items().get(0).getId());
+
+        clearInvocations(jdbcTemplate);
+        store.flush();
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_shouldWriteAgainAfterFailure() {
+        put("p1", 1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(new int[]{1});
+
+        store.flush();
+        put("p1", 4);
+        store.flush();
+
+        verify(jdbcTemplate, times(2)).batchUpdate(startsWith("INSERT INTO cart_items"), anyList());
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        assertEquals(4, rows.getValue().get(0)[3]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_shouldWriteOtherCartsWhenOneCartIsRejected() {
+        put("p1", 1);
+        store.withCart(2L, cart -> cart.put(line(null, "bad", 1)));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            if (rows.stream().anyMatch(row -> row[0].equals(2L))) {
+                throw new DataIntegrityViolationException("Data too long for column 'product_id'");
+            }
+            return new int[rows.size()];
+        });
+
+        store.flush();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(3)).batchUpdate(startsWith("INSERT INTO cart_items"), rows.capture());
+        // both carts together, then each alone
+        assertEquals(2, rows.getAllValues().get(0).size());
+        assertArrayEquals(new Object[]{1L, "p1", 1L, 1, 10.0}, rows.getAllValues().get(1).get(0));
+        assertEquals(2L, rows.getAllValues().get(2).get(0)[0]);
+
+        clearInvocations(jdbcTemplate);
+        store.flush();
+        // only the rejected cart is tried again
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO cart_items"), rows.capture());
+        assertEquals(2L, rows.getValue().get(0)[0]);
+    }
+
+    @Test
+    void flush_shouldDropCartAfterMaxRejectedFlushes() {
+        put("bad", 1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("Data too long for column 'product_id'"));
+
+        store.flush();
+        store.flush();
+        store.flush();
+        store.flush();
+
+        verify(jdbcTemplate, times(3)).batchUpdate(startsWith("INSERT INTO cart_items"), anyList());
+        // the cart is read again from MySQL, where the line never arrived
+        assertTrue(items().isEmpty());
+        verify(repo, times(2)).findByUserId(1L);
+    }
+
+    @Test
+    void flush_shouldKeepRetryingWhileDatabaseIsDown() {
+        put("p1", 1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(new int[]{1});
+
+        for (int i = 0; i < 6; i++) {
+            store.flush();
+        }
+
+        verify(jdbcTemplate, times(5)).batchUpdate(startsWith("INSERT INTO cart_items"), anyList());
+        assertEquals(1, items().size());
+    }
+
+    @Test
+    void restore_shouldReplayUnflushedChangesOverStoredCart() throws Exception {
+        put("p1", 2);
+        store.withCart(2L, cart -> {
+            cart.clear();
+            return null;
+        });
+        store.stop();
+        journal.stop();
+
+        when(repo.findByUserId(1L)).thenReturn(List.of(line(5L, "p0", 1), line(6L, "p1", 1)));
+        when(repo.findByUserId(2L)).thenReturn(List.of(line(8L, "p9", 1)));
+        store = start(Duration.ofMinutes(30));
+
+        List<CartItems> cart = items();
+        assertEquals(2, cart.size());
+        assertEquals(2, cart.stream().filter(l -> l.getProductId().equals("p1")).findFirst().orElseThrow().getQuantity());
+        assertTrue(store.withCart(2L, CartStore.Cart::items).isEmpty());
+
+        store.flush();
+        assertArrayEquals(new Object[]{2L}, batch("DELETE FROM cart_items WHERE user_id = ?").get(0));
+    }
+
+    @Test
+    void evictIdle_shouldOnlyDropFlushedCarts() throws Exception {
+        store.stop();
+        journal.stop();
+        store = start(Duration.ofMillis(-1));
+        put("p1", 1);
+
+        store.evictIdle();
+        assertEquals(1, items().size());
+        verify(repo, times(1)).findByUserId(1L);
+
+        store.flush();
+        store.evictIdle();
+        items();
+        verify(repo, times(2)).findByUserId(1L);
+    }
+
+    @Test
+    void withCart_shouldSerializeChangesPerUser() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(pool.submit(() -> store.withCart(1L, cart -> {
+                int quantity = cart.find("p1", 1L).map(CartItems::getQuantity).orElse(0);
+                return cart.put(line(null, "p1", quantity + 1));
+            })));
+        }
+        for (Future<?> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(200, items().get(0).getQuantity());
+    }
+
+    @Test
+    void restore_shouldFlushOnItsOwnSchedulerThread() throws Exception {
+        store.stop();
+        journal.stop();
+        store = start(Duration.ofMinutes(30), Duration.ofMillis(10));
+        CountDownLatch flushed = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            flushed.countDown();
+            return new int[]{1};
+        });
+
+        put("p1", 1);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals("cart-store-flusher", threads.get(0));
+    }
+
+    @Test
+    void restore_shouldRefuseToStartWhileAnotherInstanceHoldsTheLock() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement("SELECT GET_LOCK(?, 0)")).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt(1)).thenReturn(0);
+
+        CartStore second = new CartStore();
+        ReflectionTestUtils.setField(second, "dataSource", dataSource);
+        ReflectionTestUtils.setField(second, "ownerLock", true);
+
+        assertThrows(IllegalStateException.class, second::restore);
+        verify(statement).setString(1, CartStore.OWNER_LOCK);
+        verify(connection).close();
+    }
+}
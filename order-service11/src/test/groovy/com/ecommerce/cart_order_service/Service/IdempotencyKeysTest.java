@@ -0,0 +1,103 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyKeysTest {
+
+    private IdempotencyKeys keys;
+    private AtomicInteger runs;
+
+    @BeforeEach
+    void setUp() {
+        keys = new IdempotencyKeys();
+        ReflectionTestUtils.setField(keys, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(keys, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(keys, "maxKeys", 100);
+        runs = new AtomicInteger();
+    }
+
+    private ResponseEntity<?> order() {
+        return ResponseEntity.ok(Map.of("orderId", runs.incrementAndGet()));
+    }
+
+    @Test
+    void execute_shouldReplayFirstResponse() throws Exception {
+        var first = keys.execute("1:abc", Map.of("total", 10), this::order).get();
+        var retry = keys.execute("1:abc", Map.of("total", 10), this::order).get();
+
+        assertEquals(1, runs.get());
+        assertSame(first, retry);
+    }
+
+    @Test
+    void execute_shouldRejectKeyReusedForDifferentBody() throws Exception {
+        keys.execute("1:abc", Map.of("total", 10), this::order).get();
+
+        var response = keys.execute("1:abc", Map.of("total", 20), this::order).get();
+
+        assertEquals(422, response.getStatusCode().value());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_shouldLetDuplicatesWaitForInFlightRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<CompletableFuture<ResponseEntity<?>>> leader = CompletableFuture.supplyAsync(() ->
+                keys.execute("1:abc", Map.of("total", 10), () -> {
+                    started.countDown();
+                    try {
+                        finish.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return order();
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        var duplicate = keys.execute("1:abc", Map.of("total", 10), this::order);
+        assertFalse(duplicate.isDone());
+
+        finish.countDown();
+        assertSame(leader.get(5, TimeUnit.SECONDS).get(), duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_shouldForgetKeyAfterServerErrorOrException() throws Exception {
+        keys.execute("1:abc", Map.of(), () -> ResponseEntity.status(503).build()).get();
+        assertThrows(IllegalStateException.class, () -> keys.execute("1:def", Map.of(), () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        keys.execute("1:abc", Map.of(), this::order).get();
+        keys.execute("1:def", Map.of(), this::order).get();
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void evictExpired_shouldDropCompletedEntriesPastTtl() throws Exception {
+        ReflectionTestUtils.setField(keys, "ttl", Duration.ofMillis(-1));
+        keys.execute("1:abc", Map.of(), this::order).get();
+
+        keys.evictExpired();
+
+        assertEquals(0, keys.size());
+        keys.execute("1:abc", Map.of(), this::order).get();
+        assertEquals(2, runs.get());
+    }
+}
@@ -0,0 +1,288 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OrderItems;
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import com.ecommerce.cart_order_service.Repository.OutboxEventRepository;
+import com.ecommerce.cart_order_service.util.ReservationJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InventoryReservationsTest {
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private OutboxEventRepository outboxRepo;
+
+    @TempDir
+    Path dir;
+
+    private ReservationJournal journal;
+    private InventoryReservations reservations;
+    private final Map<String, Integer> stocks = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(outboxRepo.findByTypeAndStatus(any(), any())).thenReturn(List.of());
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), isNull(), productList()))
+                .thenAnswer(invocation -> ResponseEntity.ok(products(invocation.getArgument(0))));
+        stock("p1", 10);
+        stock("p2", 1);
+        reservations = start(Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        journal.stop();
+    }
+
+    private InventoryReservations start(Duration ttl) throws Exception {
+        journal = new ReservationJournal();
+        ReflectionTestUtils.setField(journal, "path", dir.resolve("reservations.journal").toString());
+        ReflectionTestUtils.setField(journal, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(journal, "appendTimeout", Duration.ofSeconds(5));
+
+        InventoryReservations service = new InventoryReservations();
+        ReflectionTestUtils.setField(service, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(service, "journal", journal);
+        ReflectionTestUtils.setField(service, "outboxRepo", outboxRepo);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "productServiceUrl", "http://products");
+        ReflectionTestUtils.setField(service, "holdTtl", ttl);
+        ReflectionTestUtils.setField(service, "stockRefresh", Duration.ofMinutes(1));
+        service.restore();
+        return service;
+    }
+
+    private void stock(String productId, int stock) {
+        stocks.put(productId, stock);
+    }
+
+    // What GET /products/batch returns for the ids in the url
+    private List<Map<String, Object>> products(String url) {
+        return UriComponentsBuilder.fromUriString(url).build().getQueryParams().get("ids").stream()
+                .filter(stocks::containsKey)
+                .map(id -> Map.<String, Object>of("id", id,
+                        "merchants", List.of(Map.of("merchant_id", "1", "stock", String.valueOf(stocks.get(id))))))
+                .toList();
+    }
+
+    private static ParameterizedTypeReference<List<Map<String, Object>>> productList() {
+        return ArgumentMatchers.any();
+    }
+
+    private static OrderItems item(String productId, int quantity) {
+        return OrderItems.builder().productId(productId).merchantId("1").quantity(quantity).price(10.0).build();
+    }
+
+    private static OutboxEvent stockEvent(OutboxEvent.Status status, int quantity) {
+        return OutboxEvent.builder()
+                .id(1L)
+                .type(OutboxEvent.Type.STOCK_DECREMENT)
+                .payload("{\"productId\":\"p1\",\"merchantId\":\"1\",\"quantity\":" + quantity + "}")
+                .status(status)
+                .build();
+    }
+
+    @Test
+    void hold_shouldNeverOversellUnderConcurrentCheckouts() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger held = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            long userId = i;
+            futures.add(pool.submit(() -> {
+                go.await();
+                try {
+                    reservations.hold(userId, List.of(item("p1", 1)));
+                    held.incrementAndGet();
+                } catch (InventoryReservations.InsufficientStockException e) {
+                    // sold out
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(10, held.get());
+        assertEquals(0, reservations.available("p1", "1"));
+    }
+
+    @Test
+    void hold_shouldTakeAllLinesOrNone() {
+        var e = assertThrows(InventoryReservations.InsufficientStockException.class,
+                () -> reservations.hold(1L, List.of(item("p1", 3), item("p2", 2))));
+
+        assertEquals("p2", e.getProductId());
+        assertEquals(10, reservations.available("p1", "1"));
+        assertEquals(1, reservations.available("p2", "1"));
+    }
+
+    @Test
+    void hold_shouldFetchStockForWholeOrderInOneCall() {
+        reservations.hold(1L, List.of(item("p1", 1), item("p2", 1)));
+
+        verify(restTemplate).exchange(eq("http://products/products/batch?ids=p1&ids=p2"),
+                eq(HttpMethod.GET), isNull(), productList());
+
+        // cached for reservations.stock-refresh
+        reservations.hold(2L, List.of(item("p1", 1)));
+        verify(restTemplate, times(1)).exchange(anyString(), any(HttpMethod.class), any(), productList());
+    }
+
+    @Test
+    void hold_shouldTreatUnknownProductAsOutOfStock() {
+        var e = assertThrows(InventoryReservations.InsufficientStockException.class,
+                () -> reservations.hold(1L, List.of(item("p9", 1))));
+
+        assertEquals("p9", e.getProductId());
+    }
+
+    @Test
+    void available_shouldShareOneFetchBetweenConcurrentMisses() throws Exception {
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), isNull(), productList()))
+                .thenAnswer(invocation -> {
+                    called.countDown();
+                    respond.await(5, TimeUnit.SECONDS);
+                    return ResponseEntity.ok(products(invocation.getArgument(0)));
+                });
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        Future<Long> first = pool.submit(() -> reservations.available("p1", "1"));
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        List<Future<Long>> others = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            others.add(pool.submit(() -> reservations.available("p1", "1")));
+        }
+        // give the others time to reach the in-flight call before it returns
+        Thread.sleep(100);
+        respond.countDown();
+
+        assertEquals(10L, first.get(5, TimeUnit.SECONDS));
+        for (Future<Long> f : others) {
+            assertEquals(10L, f.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        verify(restTemplate, times(1)).exchange(anyString(), any(HttpMethod.class), any(), productList());
+    }
+
+    @Test
+    void available_shouldFallBackToCachedStockWhenRefreshFails() throws Exception {
+        assertEquals(10, reservations.available("p1", "1"));
+        ReflectionTestUtils.setField(reservations, "stockRefresh", Duration.ZERO);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), isNull(), productList()))
+                .thenThrow(new ResourceAccessException("down"));
+
+        assertEquals(10, reservations.available("p1", "1"));
+        assertThrows(ResourceAccessException.class, () -> reservations.available("p2", "1"));
+    }
+
+    @Test
+    void hold_shouldAddUpRepeatedLines() {
+        assertThrows(InventoryReservations.InsufficientStockException.class,
+                () -> reservations.hold(1L, List.of(item("p2", 1), item("p2", 1))));
+    }
+
+    @Test
+    void release_shouldFreeUnits() {
+        var hold = reservations.hold(1L, List.of(item("p1", 4)));
+
+        assertFalse(reservations.release(hold.id(), 2L));
+        assertTrue(reservations.release(hold.id(), 1L));
+        assertEquals(10, reservations.available("p1", "1"));
+    }
+
+    @Test
+    void releaseExpired_shouldFreeExpiredHolds() throws Exception {
+        journal.stop();
+        reservations = start(Duration.ofMillis(-1));
+        reservations.hold(1L, List.of(item("p1", 4)));
+        assertEquals(6, reservations.available("p1", "1"));
+
+        reservations.releaseExpired();
+
+        assertEquals(10, reservations.available("p1", "1"));
+    }
+
+    @Test
+    void confirm_shouldKeepUnitsUntilDecrementIsDelivered() {
+        var hold = reservations.hold(1L, List.of(item("p1", 4)));
+        reservations.confirmOnCommit(hold);
+        assertEquals(6, reservations.available("p1", "1"));
+
+        reservations.settled(stockEvent(OutboxEvent.Status.PUBLISHED, 4));
+
+        // the cached stock still says 10, and the applied decrement is subtracted from it
+        assertEquals(6, reservations.available("p1", "1"));
+    }
+
+    @Test
+    void settled_shouldFreeUnitsWhenDecrementFailed() {
+        var hold = reservations.hold(1L, List.of(item("p1", 4)));
+        reservations.confirm(hold.id());
+
+        reservations.settled(stockEvent(OutboxEvent.Status.FAILED, 4));
+
+        assertEquals(10, reservations.available("p1", "1"));
+    }
+
+    @Test
+    void holdFor_shouldReuseMatchingHoldAndReplaceStaleOne() {
+        var hold = reservations.hold(1L, List.of(item("p1", 4)));
+
+        assertSame(hold, reservations.holdFor(hold.id(), 1L, List.of(item("p1", 4))));
+
+        var replaced = reservations.holdFor(hold.id(), 1L, List.of(item("p1", 5)));
+        assertNotEquals(hold.id(), replaced.id());
+        assertEquals(5, reservations.available("p1", "1"));
+    }
+
+    @Test
+    void restore_shouldRecoverLiveHoldsAndPendingDecrements() throws Exception {
+        var kept = reservations.hold(1L, List.of(item("p1", 3)));
+        var confirmed = reservations.hold(2L, List.of(item("p1", 2)));
+        reservations.confirm(confirmed.id());
+        journal.stop();
+
+        when(outboxRepo.findByTypeAndStatus(OutboxEvent.Type.STOCK_DECREMENT, OutboxEvent.Status.PENDING))
+                .thenReturn(List.of(stockEvent(OutboxEvent.Status.PENDING, 2)));
+        reservations = start(Duration.ofMinutes(10));
+
+        assertEquals(5, reservations.available("p1", "1"));
+        assertTrue(reservations.release(kept.id()));
+        assertFalse(reservations.release(confirmed.id()));
+        assertTrue(Instant.now().isBefore(kept.expiresAt()));
+    }
+}
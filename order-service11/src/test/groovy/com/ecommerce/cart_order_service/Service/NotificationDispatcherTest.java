@@ -0,0 +1,198 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import com.ecommerce.cart_order_service.Repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class NotificationDispatcherTest {
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private OutboxEventRepository outboxRepo;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private InventoryReservations inventoryReservations;
+
+    private SimpleMeterRegistry registry;
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(outboxRepo.countByTypeAndStatus(any(), any())).thenReturn(4L);
+        when(outboxService.leaseCapacity(1)).thenReturn(8);
+        dispatcher = start(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dispatcher.stop();
+    }
+
+    private NotificationDispatcher start(Duration openDuration) {
+        // tests call dispatch() themselves; the scheduler does not fire within a test
+        return start(openDuration, Duration.ofHours(1));
+    }
+
+    private NotificationDispatcher start(Duration openDuration, Duration interval) {
+        OutboxRelay relay = new OutboxRelay();
+        ReflectionTestUtils.setField(relay, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(relay, "inventoryReservations", inventoryReservations);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 10);
+        ReflectionTestUtils.setField(relay, "initialBackoff", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(relay, "maxBackoff", Duration.ofSeconds(30));
+
+        registry = new SimpleMeterRegistry();
+        NotificationDispatcher service = new NotificationDispatcher();
+        ReflectionTestUtils.setField(service, "outboxService", outboxService);
+        ReflectionTestUtils.setField(service, "outboxRelay", relay);
+        ReflectionTestUtils.setField(service, "outboxRepo", outboxRepo);
+        ReflectionTestUtils.setField(service, "meterRegistry", registry);
+        ReflectionTestUtils.setField(service, "emailServiceUrl", "http://email");
+        ReflectionTestUtils.setField(service, "interval", interval.toMillis());
+        // one thread so the batch is sent in order
+        ReflectionTestUtils.setField(service, "threads", 1);
+        ReflectionTestUtils.setField(service, "batchSize", 4);
+        ReflectionTestUtils.setField(service, "failureThreshold", 2);
+        ReflectionTestUtils.setField(service, "openDuration", openDuration);
+        service.start();
+        return service;
+    }
+
+    private static List<OutboxEvent> confirmations(int count) {
+        return LongStream.rangeClosed(1, count).mapToObj(id -> OutboxEvent.builder()
+                .id(id)
+                .type(OutboxEvent.Type.ORDER_CONFIRMATION)
+                .aggregateId(id)
+                .payload("{}")
+                .status(OutboxEvent.Status.PENDING)
+                .nextAttemptAt(Instant.now())
+                .createdAt(Instant.now())
+                .build()).toList();
+    }
+
+    @Test
+    void dispatch_shouldSendBatchAndRecordMetrics() {
+        List<OutboxEvent> batch = confirmations(2);
+        when(outboxService.claimBatch(anyCollection(), eq(4))).thenReturn(batch);
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class))).thenReturn(ResponseEntity.ok("ok"));
+        when(outboxRepo.countByTypeAndStatus(any(), any())).thenReturn(2L, 0L);
+
+        dispatcher.dispatch();
+
+        assertTrue(batch.stream().allMatch(e -> e.getStatus() == OutboxEvent.Status.PUBLISHED));
+        verify(restTemplate, times(2)).postForEntity(eq("http://email/email/send-order-confirmation"), any(), eq(String.class));
+        verify(outboxService).saveResults(batch);
+        assertEquals(2, registry.get("notifications.send").tag("outcome", "success").timer().count());
+        assertEquals(2, registry.get("notifications.delivery.lag").timer().count());
+        assertEquals(0, registry.get("notifications.queue.depth").gauge().value());
+    }
+
+    @Test
+    void dispatch_shouldOpenCircuitAndStopClaimingAfterRepeatedFailures() {
+        List<OutboxEvent> batch = confirmations(4);
+        when(outboxService.claimBatch(anyCollection(), eq(4))).thenReturn(batch);
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Read timed out"));
+
+        Instant before = Instant.now();
+        dispatcher.dispatch();
+
+        assertEquals(1, batch.get(0).getAttempts());
+        assertEquals(1, batch.get(1).getAttempts());
+        // the rest wait out the open circuit without using an attempt
+        assertEquals(0, batch.get(3).getAttempts());
+        assertFalse(batch.get(3).getNextAttemptAt().isBefore(before.plus(Duration.ofMinutes(1))));
+        verify(restTemplate, times(2)).postForEntity(anyString(), any(), eq(String.class));
+        assertEquals(1, registry.get("notifications.circuit.open").gauge().value());
+
+        dispatcher.dispatch();
+        verify(outboxService, times(1)).claimBatch(anyCollection(), anyInt());
+    }
+
+    @Test
+    void dispatch_shouldTryOneEventAfterOpenDurationThenResume() throws Exception {
+        dispatcher.stop();
+        dispatcher = start(Duration.ZERO);
+        when(outboxService.claimBatch(anyCollection(), eq(4))).thenReturn(confirmations(4)).thenReturn(List.of());
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+        dispatcher.dispatch();
+        assertEquals(1, registry.get("notifications.circuit.open").gauge().value());
+
+        List<OutboxEvent> trial = confirmations(1);
+        clearInvocations(outboxService);
+        doReturn(ResponseEntity.ok("ok")).when(restTemplate).postForEntity(anyString(), any(), eq(String.class));
+        when(outboxService.claimBatch(anyCollection(), eq(1))).thenReturn(trial);
+        when(outboxService.claimBatch(anyCollection(), eq(4))).thenReturn(List.of());
+        dispatcher.dispatch();
+
+        assertEquals(OutboxEvent.Status.PUBLISHED, trial.get(0).getStatus());
+        verify(outboxService).claimBatch(anyCollection(), eq(1));
+        // closed again, so the next claim is a full batch
+        verify(outboxService).claimBatch(anyCollection(), eq(4));
+        assertEquals(0, registry.get("notifications.circuit.open").gauge().value());
+    }
+
+    @Test
+    void dispatch_shouldNotClaimMoreThanFitsInLease() throws Exception {
+        dispatcher.stop();
+        when(outboxService.leaseCapacity(1)).thenReturn(3);
+        dispatcher = start(Duration.ofMinutes(1));
+        when(outboxService.claimBatch(anyCollection(), anyInt())).thenReturn(List.of());
+
+        dispatcher.dispatch();
+
+        verify(outboxService).claimBatch(anyCollection(), eq(3));
+    }
+
+    @Test
+    void start_shouldDispatchOnItsOwnSchedulerThread() throws Exception {
+        dispatcher.stop();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(outboxService.claimBatch(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return List.of();
+        });
+
+        dispatcher = start(Duration.ofMinutes(1), Duration.ofMillis(10));
+
+        verify(outboxService, timeout(2000).atLeast(2)).claimBatch(anyCollection(), anyInt());
+        assertTrue(threads.stream().allMatch("notification-scheduler"::equals), threads.toString());
+    }
+
+    @Test
+    void start_shouldKeepDispatchingAfterFailedRun() throws Exception {
+        dispatcher.stop();
+        when(outboxService.claimBatch(anyCollection(), anyInt()))
+                .thenThrow(new IllegalStateException("Connection is closed"))
+                .thenReturn(List.of());
+
+        dispatcher = start(Duration.ofMinutes(1), Duration.ofMillis(10));
+
+        verify(outboxService, timeout(2000).atLeast(2)).claimBatch(anyCollection(), anyInt());
+    }
+}
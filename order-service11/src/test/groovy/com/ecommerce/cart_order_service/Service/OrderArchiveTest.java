@@ -0,0 +1,109 @@
+package com.ecommerce.cart_order_service.Service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OrderArchiveTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        archive = new OrderArchive();
+        ReflectionTestUtils.setField(archive, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(archive, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(archive, "archiveAfter", Duration.ofDays(180));
+        ReflectionTestUtils.setField(archive, "batchSize", 2);
+        ReflectionTestUtils.setField(archive, "maxBatches", 3);
+    }
+
+    @Test
+    void archive_shouldMoveDueOrdersInBatchesUntilNoneLeft() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT id FROM orders"), eq(Long.class), any(), eq(2)))
+                .thenReturn(List.of(1L, 2L))
+                .thenReturn(List.of(3L));
+
+        Instant before = Instant.now();
+        archive.archive();
+
+        ArgumentCaptor<Timestamp> cutoff = ArgumentCaptor.forClass(Timestamp.class);
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(Long.class), cutoff.capture(), eq(2));
+        assertFalse(cutoff.getValue().toInstant().isAfter(Instant.now().minus(Duration.ofDays(180))));
+        assertFalse(cutoff.getValue().toInstant().isBefore(before.minus(Duration.ofDays(180))));
+
+        InOrder moves = inOrder(jdbcTemplate);
+        moves.verify(jdbcTemplate).update(startsWith("INSERT INTO orders_archive"), eq(1L), eq(2L));
+        moves.verify(jdbcTemplate).update(startsWith("INSERT INTO order_items_archive"), eq(1L), eq(2L));
+        moves.verify(jdbcTemplate).update(startsWith("INSERT IGNORE INTO order_archive_users"), eq(1L), eq(2L));
+        moves.verify(jdbcTemplate).update("DELETE FROM order_items WHERE order_id IN (?, ?)", 1L, 2L);
+        moves.verify(jdbcTemplate).update("DELETE FROM orders WHERE id IN (?, ?)", 1L, 2L);
+        moves.verify(jdbcTemplate).update(startsWith("INSERT INTO orders_archive"), eq(3L));
+        moves.verify(jdbcTemplate).update("DELETE FROM orders WHERE id IN (?)", 3L);
+        // one transaction per batch
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void archive_shouldLeaveBacklogBeyondMaxBatchesForNextRun() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(), eq(2))).thenReturn(List.of(1L, 2L));
+
+        archive.archive();
+
+        verify(jdbcTemplate, times(3)).queryForList(anyString(), eq(Long.class), any(), eq(2));
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void archive_shouldDoNothingWhenNoOrderIsDue() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(), anyInt())).thenReturn(List.of());
+
+        archive.archive();
+
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void archive_shouldRollBackBatchAndStopOnDatabaseError() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(), anyInt())).thenReturn(List.of(1L, 2L));
+        when(jdbcTemplate.update(startsWith("DELETE FROM order_items"), any(Object[].class)))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertDoesNotThrow(() -> archive.archive());
+
+        verify(transactionManager).rollback(any());
+        verify(jdbcTemplate, never()).update(startsWith("DELETE FROM orders"), any(Object[].class));
+    }
+
+    @Test
+    void hasArchivedOrders_shouldLookUpUserMarker() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*) FROM order_archive_users"), eq(Integer.class), eq(1L)))
+                .thenReturn(1);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*) FROM order_archive_users"), eq(Integer.class), eq(2L)))
+                .thenReturn(0);
+
+        assertTrue(archive.hasArchivedOrders(1L));
+        assertFalse(archive.hasArchivedOrders(2L));
+    }
+}
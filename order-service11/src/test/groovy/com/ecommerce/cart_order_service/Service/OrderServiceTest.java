@@ -1,122 +1,313 @@
 package com.ecommerce.cart_order_service.Service;
 
-import com.ecommerce.cart_order_service.Model.CartItems;
 import com.ecommerce.cart_order_service.Model.Order;
 import com.ecommerce.cart_order_service.Model.OrderItems;
-import com.ecommerce.cart_order_service.Repository.CartItemsRepository;
+import com.ecommerce.cart_order_service.Model.OrderSummary;
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
 import com.ecommerce.cart_order_service.Repository.OrderRepository;
 import com.ecommerce.cart_order_service.util.AuthValidator;
 import com.ecommerce.cart_order_service.util.NotificationUtil;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
 import org.springframework.http.ResponseEntity;
-import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
-@Service
-public class OrderServiceTest {
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
-    @Autowired
-    private OrderRepository orderRepo;
-
-    @Autowired
-    private CartItemsRepository cartRepo;
+class OrderServiceTest {
 
-    @Autowired
-    private RestTemplate restTemplate;
+    @Mock
+    private OrderRepository orderRepo;
 
-    @Autowired
+    @Mock
     private AuthValidator authValidator;
 
-    @Autowired
+    @Mock
     private NotificationUtil notificationUtil;
 
-    public ResponseEntity<?> placeOrder(String authHeader, Order order) {
-        try {
-            Map<String, Object> claims = authValidator.validateToken(authHeader);
-            String role = (String) claims.get("role");
-            Long userId = Long.valueOf(claims.get("userId").toString());
-
-            if (!"END_USER".equals(role)) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(Map.of("error", "Only END_USER can place orders"));
-            }
-
-            // Verify product stock for each item
-            for (OrderItems item : order.getItems()) {
-                String productUrl = "http://product-service/api/products/" + item.getProductId();
-                Object response = restTemplate.getForObject(productUrl, Object.class);
-
-                if (!(response instanceof Map<?, ?> responseMap)) {
-                    return ResponseEntity.badRequest().body(Map.of("error", "Invalid product response"));
-                }
-
-                List<Map<String, Object>> merchants = (List<Map<String, Object>>) responseMap.get("merchants");
-                Optional<Map<String, Object>> merchantData = merchants.stream()
-                        .filter(m -> m.get("merchant_id").equals(item.getMerchantId()))
-                        .findFirst();
-
-                if (merchantData.isEmpty()) {
-                    return ResponseEntity.badRequest()
-                            .body(Map.of("error", "Merchant not found for product " + item.getProductId()));
-                }
-
-                int stock = Integer.parseInt(merchantData.get().get("stock").toString());
-                if (item.getQuantity() > stock) {
-                    return ResponseEntity.badRequest()
-                            .body(Map.of("error", "Insufficient stock for product " + item.getProductId()));
-                }
-            }
-
-            // Save order
-            order.setUserId(userId);
-            Order savedOrder = orderRepo.save(order);
-
-            // Clear cart
-            cartRepo.deleteByUserId(userId);
-
-            // Update stock
-            for (OrderItems item : order.getItems()) {
-                try {
-                    String updateUrl = "http://product-service/api/products/" + item.getProductId()
-                            + "/update-stock?merchantId=" + item.getMerchantId()
-                            + "&quantity=" + item.getQuantity();
-                    restTemplate.postForEntity(updateUrl, null, Void.class);
-                } catch (Exception e) {
-                    System.err.println("Failed to update stock for product " + item.getProductId() + ": " + e.getMessage());
-                }
-            }
-
-            // Send async notification
-            try {
-                notificationUtil.sendOrderConfirmation(savedOrder, "user@example.com"); // replace with actual user email if available
-            } catch (Exception e) {
-                System.err.println("Failed to send order confirmation: " + e.getMessage());
-            }
-
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "orderId", savedOrder.getId()
-            ));
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Unexpected error: " + e.getMessage()));
-        }
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private ProductCatalog productCatalog;
+
+    @Mock
+    private OrderArchive orderArchive;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // Real clearOnCommit/confirmOnCommit, so the transaction outcome decides what happens to the cart and the hold
+    private CartStore cartStore;
+    private InventoryReservations inventoryReservations;
+
+    private OrderService orderService;
+    private InventoryReservations.Hold hold;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        cartStore = spy(new CartStore());
+        doNothing().when(cartStore).clear(anyLong());
+        inventoryReservations = spy(new InventoryReservations());
+        hold = new InventoryReservations.Hold("h1", 1L, Map.of(), Instant.now().plusSeconds(600));
+        doReturn(hold).when(inventoryReservations).holdFor(any(), anyLong(), anyList());
+        doReturn(true).when(inventoryReservations).confirm(anyString());
+        doReturn(true).when(inventoryReservations).release(anyString());
+
+        orderService = new OrderService(orderRepo, cartStore, authValidator, notificationUtil, outboxService,
+                inventoryReservations, productCatalog, orderArchive, new TransactionTemplate(transactionManager));
+
+        when(authValidator.validateToken("Bearer token")).thenReturn(Map.of("role", "END_USER", "email", "user@example.com"));
+        when(orderRepo.findByUserIdAndIdempotencyKey(anyLong(), anyString())).thenReturn(Optional.empty());
+        when(orderRepo.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(42L);
+            return order;
+        });
+        when(productCatalog.getAll(anyCollection())).thenReturn(Map.of(
+                "p1", product("p1", 100.0),
+                "p2", product("p2", 25.0)));
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static ProductCatalog.Product product(String id, double price) {
+        return new ProductCatalog.Product(id, id, null, Map.of("1", new ProductCatalog.Offer(price, 10)));
     }
 
-    public List<Order> getOrders(String authHeader, Long userId) {
-        Map<String, Object> claims = authValidator.validateToken(authHeader);
-        String role = (String) claims.get("role");
-        Long tokenUserId = Long.valueOf(claims.get("userId").toString());
+    private static OrderItems item(String productId, int quantity) {
+        return OrderItems.builder().productId(productId).merchantId("1").quantity(quantity).price(0.01).build();
+    }
 
-        if (!"END_USER".equals(role) || !tokenUserId.equals(userId)) {
-            throw new RuntimeException("Access denied");
+    // The client's own total and prices, which checkout must not trust
+    private static Order order(OrderItems... items) {
+        return Order.builder().userId(1L).totalAmount(0.01).items(new ArrayList<>(List.of(items))).build();
+    }
+
+    private ResponseEntity<?> place(Order order) {
+        return orderService.placeOrder("Bearer token", "h1", "key-1", order);
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
         }
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+    }
+
+    @Test
+    void placeOrder_shouldPriceItemsFromCatalogIgnoringClientTotal() {
+        Order order = order(item("p1", 2), item("p2", 1));
+
+        ResponseEntity<?> response = place(order);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(Map.of("success", true, "orderId", 42L, "totalAmount", 225.0), response.getBody());
+        assertEquals(100.0, order.getItems().get(0).getPrice());
+        assertEquals(25.0, order.getItems().get(1).getPrice());
+        assertEquals(225.0, order.getTotalAmount());
+        assertEquals("key-1", order.getIdempotencyKey());
+    }
+
+    @Test
+    void placeOrder_shouldPriceAndHoldBeforeTransactionOpens() {
+        place(order(item("p1", 1)));
+
+        InOrder inOrder = inOrder(productCatalog, inventoryReservations, transactionManager, orderRepo);
+        inOrder.verify(productCatalog).getAll(anyCollection());
+        inOrder.verify(inventoryReservations).holdFor(eq("h1"), eq(1L), anyList());
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(orderRepo).save(any(Order.class));
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void placeOrder_shouldReleaseHoldWhenTransactionFails() {
+        when(orderRepo.save(any(Order.class))).thenThrow(new IllegalStateException("db down"));
+
+        assertThrows(IllegalStateException.class, () -> place(order(item("p1", 1))));
+
+        verify(transactionManager).rollback(any());
+        verify(inventoryReservations).release("h1");
+        verify(inventoryReservations, never()).confirm(anyString());
+    }
+
+    @Test
+    void placeOrder_shouldReplayOrderCommittedWhilePricing() {
+        Order existing = Order.builder().id(7L).userId(1L).totalAmount(125.0).build();
+        when(orderRepo.findByUserIdAndIdempotencyKey(1L, "key-1"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(existing));
+
+        ResponseEntity<?> response = place(order(item("p1", 1)));
+
+        assertEquals(Map.of("success", true, "orderId", 7L, "totalAmount", 125.0), response.getBody());
+        verify(inventoryReservations).release("h1");
+        verify(orderRepo, never()).save(any());
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void placeOrder_shouldRejectUnknownProduct() {
+        ResponseEntity<?> response = place(order(item("p1", 1), item("p9", 1)));
+
+        assertEquals(400, response.getStatusCode().value());
+        assertEquals(Map.of("error", "Invalid Product ID: p9"), response.getBody());
+        verify(inventoryReservations, never()).holdFor(any(), anyLong(), anyList());
+        verify(orderRepo, never()).save(any());
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void placeOrder_shouldRejectOfferMerchantDoesNotSell() {
+        OrderItems item = item("p1", 1);
+        item.setMerchantId("7");
+        when(productCatalog.getWithOffer("p1", "7")).thenReturn(product("p1", 100.0));
+
+        ResponseEntity<?> response = place(order(item));
+
+        assertEquals(400, response.getStatusCode().value());
+        assertEquals(Map.of("error", "Product p1 is not sold by merchant 7"), response.getBody());
+        // re-read in case the merchant started selling it since it was cached
+        verify(productCatalog).getWithOffer("p1", "7");
+        verify(orderRepo, never()).save(any());
+    }
+
+    @Test
+    void placeOrder_shouldRejectWhenStockCannotBeHeld() {
+        doThrow(new InventoryReservations.InsufficientStockException("p1"))
+                .when(inventoryReservations).holdFor(any(), anyLong(), anyList());
+
+        ResponseEntity<?> response = place(order(item("p1", 1)));
+
+        assertEquals(400, response.getStatusCode().value());
+        verify(orderRepo, never()).save(any());
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void placeOrder_shouldReplayOrderPlacedUnderSameKey() {
+        Order existing = Order.builder().id(7L).userId(1L).totalAmount(125.0).build();
+        when(orderRepo.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(existing));
+
+        ResponseEntity<?> response = place(order(item("p1", 1)));
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(Map.of("success", true, "orderId", 7L, "totalAmount", 125.0), response.getBody());
+        verify(orderRepo, never()).save(any());
+        verify(inventoryReservations, never()).holdFor(any(), anyLong(), anyList());
+        verifyNoInteractions(outboxService, productCatalog);
+    }
+
+    @Test
+    void placeOrder_shouldRecordOutboxEventsInOrderTransaction() {
+        Map<String, Object> confirmation = Map.of("orderId", 42L);
+        when(notificationUtil.orderConfirmationRequest(any(Order.class), eq("user@example.com"))).thenReturn(confirmation);
+
+        place(order(item("p1", 2), item("p2", 1)));
+
+        InOrder inOrder = inOrder(orderRepo, outboxService);
+        inOrder.verify(orderRepo).save(any(Order.class));
+        inOrder.verify(outboxService).record(OutboxEvent.Type.ORDER_PLACED, 42L,
+                Map.of("orderId", 42L, "userId", 1L, "totalAmount", 225.0));
+        inOrder.verify(outboxService).record(OutboxEvent.Type.STOCK_DECREMENT, 42L,
+                Map.of("productId", "p1", "merchantId", "1", "quantity", 2));
+        inOrder.verify(outboxService).record(OutboxEvent.Type.STOCK_DECREMENT, 42L,
+                Map.of("productId", "p2", "merchantId", "1", "quantity", 1));
+        inOrder.verify(outboxService).record(OutboxEvent.Type.ORDER_CONFIRMATION, 42L, confirmation);
+        verifyNoMoreInteractions(outboxService);
+    }
+
+    @Test
+    void placeOrder_shouldClearCartAndConfirmHoldOnCommit() {
+        place(order(item("p1", 1)));
+        verify(cartStore, never()).clear(anyLong());
+        verify(inventoryReservations, never()).confirm(anyString());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(cartStore).clear(1L);
+        verify(inventoryReservations).confirm("h1");
+        verify(inventoryReservations, never()).release(anyString());
+    }
+
+    @Test
+    void placeOrder_shouldKeepCartAndReleaseHoldOnRollback() {
+        place(order(item("p1", 1)));
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(cartStore, never()).clear(anyLong());
+        verify(inventoryReservations).release("h1");
+        verify(inventoryReservations, never()).confirm(anyString());
+    }
+
+    @Test
+    void placeOrder_shouldRejectNonEndUser() {
+        when(authValidator.validateToken("Bearer token")).thenReturn(Map.of("role", "MERCHANT"));
+
+        ResponseEntity<?> response = place(order(item("p1", 1)));
+
+        assertEquals(403, response.getStatusCode().value());
+        verifyNoInteractions(orderRepo, outboxService, productCatalog);
+    }
+
+    @Test
+    void getOrders_shouldSkipArchiveForUserWithoutArchivedOrders() {
+        OrderSummary recent = new OrderSummary(5L, 100.0, Instant.now(), 1);
+        when(orderRepo.findSummaryPageBefore(eq(1L), any(), anyLong(), any())).thenReturn(List.of(recent));
+
+        ResponseEntity<?> response = orderService.getOrders("Bearer token", 1L, null, 10, true);
+
+        assertEquals(List.of(recent), response.getBody());
+        verify(orderArchive).hasArchivedOrders(1L);
+        verify(orderArchive, never()).findSummaryPageBefore(anyLong(), any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void getOrders_shouldContinueIntoArchiveWhenRecentOrdersRunOut() {
+        OrderSummary recent = new OrderSummary(5L, 100.0, Instant.now(), 1);
+        OrderSummary archived = new OrderSummary(2L, 50.0, Instant.now().minus(Duration.ofDays(400)), 2);
+        when(orderRepo.findSummaryPageBefore(eq(1L), any(), anyLong(), any())).thenReturn(List.of(recent));
+        when(orderArchive.hasArchivedOrders(1L)).thenReturn(true);
+        when(orderArchive.findSummaryPageBefore(eq(1L), any(), anyLong(), eq(10))).thenReturn(List.of(archived));
+
+        ResponseEntity<?> response = orderService.getOrders("Bearer token", 1L, null, 10, true);
+
+        assertEquals(List.of(recent, archived), response.getBody());
+    }
+
+    @Test
+    void getOrders_shouldNotCheckArchiveWhenRecentOrdersFillPage() {
+        Instant now = Instant.now();
+        when(orderRepo.findSummaryPageBefore(eq(1L), any(), anyLong(), any())).thenReturn(List.of(
+                new OrderSummary(5L, 100.0, now, 1), new OrderSummary(4L, 80.0, now.minusSeconds(60), 1)));
+
+        ResponseEntity<?> response = orderService.getOrders("Bearer token", 1L, null, 1, true);
 
-        return orderRepo.findByUserId(userId);
+        assertEquals(1, ((List<?>) response.getBody()).size());
+        assertNotNull(response.getHeaders().getFirst("X-Next-Cursor"));
+        verifyNoInteractions(orderArchive);
     }
 }
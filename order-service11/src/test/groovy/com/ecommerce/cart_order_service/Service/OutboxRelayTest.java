@@ -0,0 +1,156 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private InventoryReservations inventoryReservations;
+
+    @Captor
+    private ArgumentCaptor<HttpEntity<String>> request;
+
+    @InjectMocks
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(relay, "productServiceUrl", "http://products");
+        ReflectionTestUtils.setField(relay, "orderPlacedUrl", "");
+        ReflectionTestUtils.setField(relay, "maxAttempts", 3);
+        ReflectionTestUtils.setField(relay, "initialBackoff", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(relay, "maxBackoff", Duration.ofSeconds(30));
+    }
+
+    private OutboxEvent event(OutboxEvent.Type type) {
+        return OutboxEvent.builder()
+                .id(7L)
+                .type(type)
+                .aggregateId(42L)
+                .payload("{\"productId\":\"p1\",\"merchantId\":\"1\",\"quantity\":2}")
+                .status(OutboxEvent.Status.PENDING)
+                .attempts(0)
+                .nextAttemptAt(Instant.now())
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    @Test
+    void relay_shouldPublishClaimedEventsAndSaveResults() {
+        OutboxEvent stock = event(OutboxEvent.Type.STOCK_DECREMENT);
+        OutboxEvent placed = event(OutboxEvent.Type.ORDER_PLACED);
+        when(outboxService.claimBatch(OutboxRelay.TYPES)).thenReturn(List.of(stock, placed)).thenReturn(List.of());
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class))).thenReturn(ResponseEntity.ok("ok"));
+
+        relay.relay();
+
+        assertEquals(OutboxEvent.Status.PUBLISHED, stock.getStatus());
+        assertEquals(OutboxEvent.Status.PUBLISHED, placed.getStatus());
+        assertNotNull(stock.getPublishedAt());
+        verify(restTemplate).postForEntity(eq("http://products/products/updateStock"), any(), eq(String.class));
+        verify(outboxService).saveResults(List.of(stock, placed));
+        verify(outboxService, times(2)).claimBatch(OutboxRelay.TYPES);
+        verify(inventoryReservations).settled(stock);
+    }
+
+    @Test
+    void relay_shouldLeaveOrderConfirmationsToDispatcher() {
+        assertFalse(OutboxRelay.TYPES.contains(OutboxEvent.Type.ORDER_CONFIRMATION));
+    }
+
+    @Test
+    void deliver_shouldSendPayloadWithIdempotencyKey() {
+        OutboxEvent stock = event(OutboxEvent.Type.STOCK_DECREMENT);
+
+        relay.deliver(stock);
+
+        verify(restTemplate).postForEntity(anyString(), request.capture(), eq(String.class));
+        assertEquals(stock.getPayload(), request.getValue().getBody());
+        assertEquals("outbox-7", request.getValue().getHeaders().getFirst("Idempotency-Key"));
+    }
+
+    @Test
+    void deliver_shouldScheduleRetryOnTransientFailure() {
+        OutboxEvent stock = event(OutboxEvent.Type.STOCK_DECREMENT);
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        Instant before = Instant.now();
+        relay.deliver(stock);
+
+        assertEquals(OutboxEvent.Status.PENDING, stock.getStatus());
+        assertEquals(1, stock.getAttempts());
+        assertEquals("Connection refused", stock.getLastError());
+        assertFalse(stock.getNextAttemptAt().isBefore(before.plusSeconds(5)));
+        verify(inventoryReservations, never()).settled(any());
+    }
+
+    @Test
+    void deliver_shouldFailImmediatelyOnClientError() {
+        OutboxEvent stock = event(OutboxEvent.Type.STOCK_DECREMENT);
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        relay.deliver(stock);
+
+        assertEquals(OutboxEvent.Status.FAILED, stock.getStatus());
+        assertEquals(1, stock.getAttempts());
+    }
+
+    @Test
+    void deliver_shouldFailAfterMaxAttempts() {
+        OutboxEvent stock = event(OutboxEvent.Type.STOCK_DECREMENT);
+        stock.setAttempts(2);
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Read timed out"));
+
+        relay.deliver(stock);
+
+        assertEquals(OutboxEvent.Status.FAILED, stock.getStatus());
+        assertEquals(3, stock.getAttempts());
+    }
+
+    @Test
+    void deliver_shouldPublishOrderPlacedWithoutSubscriber() {
+        OutboxEvent placed = event(OutboxEvent.Type.ORDER_PLACED);
+
+        relay.deliver(placed);
+
+        assertEquals(OutboxEvent.Status.PUBLISHED, placed.getStatus());
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void backoff_shouldDoubleUpToMax() {
+        assertEquals(Duration.ofSeconds(5), relay.backoff(1));
+        assertEquals(Duration.ofSeconds(10), relay.backoff(2));
+        assertEquals(Duration.ofSeconds(20), relay.backoff(3));
+        assertEquals(Duration.ofSeconds(30), relay.backoff(4));
+        assertEquals(Duration.ofSeconds(30), relay.backoff(40));
+    }
+}
@@ -0,0 +1,57 @@
+package com.ecommerce.cart_order_service.Service;
+
+import com.ecommerce.cart_order_service.Model.OutboxEvent;
+import com.ecommerce.cart_order_service.Repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxServiceTest {
+
+    @Mock
+    private OutboxEventRepository outboxRepo;
+
+    @InjectMocks
+    private OutboxService outboxService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(outboxService, "batchSize", 100);
+        ReflectionTestUtils.setField(outboxService, "lease", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(outboxService, "connectTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(outboxService, "readTimeout", Duration.ofSeconds(5));
+    }
+
+    @Test
+    void leaseCapacity_shouldFitWorstCaseSendsInLease() {
+        // 60s / (2s + 5s) per event
+        assertEquals(8, outboxService.leaseCapacity(1));
+        assertEquals(32, outboxService.leaseCapacity(4));
+
+        ReflectionTestUtils.setField(outboxService, "lease", Duration.ofSeconds(5));
+        assertEquals(1, outboxService.leaseCapacity(1));
+    }
+
+    @Test
+    void claimBatch_shouldClaimNoMoreThanFitsInLease() {
+        OutboxEvent event = OutboxEvent.builder().id(1L).type(OutboxEvent.Type.STOCK_DECREMENT).build();
+        when(outboxRepo.findDueForUpdate(any(), anyCollection(), any(), any())).thenReturn(List.of(event));
+
+        Instant before = Instant.now();
+        outboxService.claimBatch(OutboxRelay.TYPES);
+
+        verify(outboxRepo).findDueForUpdate(eq(OutboxEvent.Status.PENDING), eq(OutboxRelay.TYPES), any(), eq(PageRequest.of(0, 8)));
+        assertFalse(event.getNextAttemptAt().isBefore(before.plus(Duration.ofMinutes(1))));
+    }
+}
@@ -0,0 +1,105 @@
+package com.ecommerce.cart_order_service.Service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProductCatalogTest {
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @InjectMocks
+    private ProductCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(catalog, "productServiceUrl", "http://products");
+        ReflectionTestUtils.setField(catalog, "ttl", Duration.ofMinutes(1));
+    }
+
+    private static Map<String, Object> product(String id, String merchantId, double price) {
+        return Map.of("id", id, "name", "Product " + id, "imageUrl", "/img/" + id,
+                "merchants", List.of(Map.of("merchant_id", merchantId, "price", price, "stock", 5)));
+    }
+
+    @SafeVarargs
+    private void batch(Map<String, Object>... products) {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), isNull(), productList()))
+                .thenReturn(ResponseEntity.ok(List.of(products)));
+    }
+
+    private static ParameterizedTypeReference<List<Map<String, Object>>> productList() {
+        return ArgumentMatchers.any();
+    }
+
+    private void verifyBatchCalls(int times) {
+        verify(restTemplate, times(times))
+                .exchange(anyString(), eq(HttpMethod.GET), isNull(), productList());
+    }
+
+    @Test
+    void getAll_shouldLoadMissesInOneCallAndCacheThem() {
+        batch(product("p1", "1", 10.0), product("p2", "1", 20.0));
+
+        var first = catalog.getAll(List.of("p1", "p2", "p3"));
+        var second = catalog.getAll(List.of("p1", "p2", "p3"));
+
+        assertEquals(2, first.size());
+        assertEquals(20.0, first.get("p2").offer(1L).price());
+        assertEquals(5, first.get("p1").offer("1").stock());
+        assertEquals(first, second);
+        // p3 is unknown and cached as such
+        verifyBatchCalls(1);
+        verify(restTemplate).exchange(eq("http://products/products/batch?ids=p1&ids=p2&ids=p3"),
+                eq(HttpMethod.GET), isNull(), productList());
+    }
+
+    @Test
+    void getAll_shouldReloadExpiredEntries() {
+        ReflectionTestUtils.setField(catalog, "ttl", Duration.ofMillis(-1));
+        batch(product("p1", "1", 10.0));
+
+        catalog.get("p1");
+        catalog.get("p1");
+
+        verifyBatchCalls(2);
+    }
+
+    @Test
+    void invalidate_shouldDropCachedProduct() {
+        batch(product("p1", "1", 10.0));
+        catalog.get("p1");
+
+        batch(product("p1", "1", 12.5));
+        catalog.invalidate("p1");
+
+        assertEquals(12.5, catalog.get("p1").offer(1L).price());
+        verifyBatchCalls(2);
+    }
+
+    @Test
+    void getWithOffer_shouldRefetchWhenMerchantIsMissing() {
+        batch(product("p1", "1", 10.0));
+        catalog.get("p1");
+
+        batch(product("p1", "2", 11.0));
+        var product = catalog.getWithOffer("p1", 2L);
+
+        assertEquals(11.0, product.offer(2L).price());
+        verifyBatchCalls(2);
+    }
+}
@@ -0,0 +1,136 @@
+package com.ecommerce.product_services.config;
+
+import com.ecommerce.product_services.model.Product;
+import com.ecommerce.product_services.service.ProductChangeNotifier;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates the indexes declared on {@link Product} once the application is up
+ * and fills in dedupe keys for products written before the key existed.
+ * Products written before then may share a key; they are merged into the
+ * oldest one first, or the unique dedupe index could not be built.
+ */
+@Configuration
+public class MongoIndexConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private static final int BACKFILL_BATCH = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private ProductChangeNotifier productChangeNotifier;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        try {
+            // keys and merges first, so the unique dedupe index can be built over them
+            backfillDedupeKeys();
+            mergeDuplicates();
+        } catch (Exception e) {
+            log.error("Could not backfill or merge product dedupe keys", e);
+        }
+
+        // one failed index must not keep the others from being built
+        boolean dedupeIndexed = false;
+        IndexOperations indexOps = mongoTemplate.indexOps(Product.class);
+        for (IndexDefinition index : new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(Product.class)) {
+            try {
+                indexOps.createIndex(index);
+                dedupeIndexed |= index.getIndexKeys().containsKey("dedupeKey");
+            } catch (Exception e) {
+                log.error("Could not create product index {}", index.getIndexKeys(), e);
+            }
+        }
+        if (!dedupeIndexed) {
+            log.error("Unique dedupeKey index is missing; concurrent adds of the same product can create duplicates until it is built");
+        }
+    }
+
+    private void backfillDedupeKeys() {
+        Query missing = Query.query(Criteria.where("dedupeKey").exists(false)).limit(BACKFILL_BATCH);
+        missing.fields().include("name").include("brand");
+
+        List<Product> batch;
+        while (!(batch = mongoTemplate.find(missing, Product.class)).isEmpty()) {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+            for (Product p : batch) {
+                ops.updateOne(Query.query(Criteria.where("_id").is(p.getId())),
+                        Update.update("dedupeKey", Product.dedupeKeyOf(p.getName(), p.getBrand())));
+            }
+            ops.execute();
+        }
+    }
+
+    // Folds the offers of products sharing a dedupe key into the oldest of them and deletes the rest
+    void mergeDuplicates() {
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("dedupeKey").ne(null)),
+                Aggregation.sort(Sort.by("_id")),
+                Aggregation.group("dedupeKey").push("_id").as("ids").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1))
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        int merged = 0;
+        for (Document group : mongoTemplate.aggregate(duplicates, Product.class, Document.class)) {
+            List<Product> products = mongoTemplate.find(
+                    Query.query(Criteria.where("_id").in(group.getList("ids", Object.class))).with(Sort.by("_id")),
+                    Product.class);
+            if (products.size() < 2) {
+                continue;
+            }
+            Product kept = products.get(0);
+            List<Product.Merchant> merchants = new ArrayList<>(kept.getMerchants() != null ? kept.getMerchants() : List.of());
+            Set<Integer> listed = new HashSet<>();
+            merchants.forEach(m -> listed.add(m.getMerchant_id()));
+            List<String> removed = new ArrayList<>();
+            for (Product duplicate : products.subList(1, products.size())) {
+                if (duplicate.getMerchants() != null) {
+                    // the oldest listing of a merchant's offer wins
+                    duplicate.getMerchants().stream().filter(m -> listed.add(m.getMerchant_id())).forEach(merchants::add);
+                }
+                removed.add(duplicate.getId());
+            }
+
+            // kept product first, so a crash in between only leaves duplicates to merge again next start
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(kept.getId())),
+                    Update.update("merchants", merchants), Product.class);
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(removed)), Product.class);
+            productChangeNotifier.productChanged(kept.getId());
+            removed.forEach(productChangeNotifier::productChanged);
+            log.warn("Merged duplicate products {} into {} ({})", removed, kept.getId(), group.get("_id"));
+            merged += removed.size();
+        }
+        if (merged > 0) {
+            log.info("Merged {} duplicate products", merged);
+        }
+    }
+}
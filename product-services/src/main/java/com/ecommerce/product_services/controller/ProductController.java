@@ -1,13 +1,17 @@
 package com.ecommerce.product_services.controller;
 
 import com.ecommerce.product_services.model.Product;
+import com.ecommerce.product_services.service.ProductImportService;
 import com.ecommerce.product_services.service.ProductService;
 import com.ecommerce.product_services.util.AuthValidator;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -18,6 +22,9 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductImportService productImportService;
+
     @Autowired
     private AuthValidator authValidator;
 
@@ -41,6 +48,33 @@ public class ProductController {
         return productService.addProduct(product, imageFile);
     }
 
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<?> importProducts(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request) throws IOException {
+
+        if (!isMerchant(authHeader)) {
+            return ResponseEntity.status(403)
+                    .body(Map.of("error", "Access denied. Only MERCHANTS can import products."));
+        }
+
+        return productImportService.importProductsResponse(request.getInputStream(), request.getContentType());
+    }
+
+    @GetMapping("/by-merchant/{merchantId}")
+    public ResponseEntity<?> getProductsByMerchant(
+            @PathVariable int merchantId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return productService.getProductsByMerchantResponse(merchantId, page, size);
+    }
+
+    // ?ids=a&ids=b
+    @GetMapping("/batch")
+    public ResponseEntity<?> getProductsByIds(@RequestParam("ids") List<String> ids) {
+        return productService.getProductsByIdsResponse(ids);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getProductById(@PathVariable String id) {
         return productService.getProductByIdResponse(id);
@@ -85,8 +119,10 @@ public class ProductController {
     }
 
     @PostMapping("/updateStock")
-    public ResponseEntity<?> updateStock(@RequestBody Map<String, Object> request) {
-        return productService.updateStockResponse(request);
+    public ResponseEntity<?> updateStock(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestBody Map<String, Object> request) {
+        return productService.updateStockResponse(request, idempotencyKey);
     }
 }
 
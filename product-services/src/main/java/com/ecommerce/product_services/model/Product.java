@@ -1,9 +1,13 @@
 package com.ecommerce.product_services.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 @Data
 @Document(collection = "productsNew")
@@ -18,6 +22,15 @@ public class Product {
     private java.util.Map<String, String> attributes;
     private List<Merchant> merchants;
     private String imageUrl;
+    private String imageChecksum;
+
+    // normalized "name|brand", one document per product across merchants
+    @Indexed(unique = true, sparse = true)
+    private String dedupeKey;
+
+    // Idempotency-Keys of the latest stock decrements applied, so a retried one is not applied twice
+    @JsonIgnore
+    private List<String> stockUpdates;
 
     public static final List<String> VALID_CATEGORIES = List.of(
         "Electronics",
@@ -29,6 +42,19 @@ public class Product {
         "Toys & Baby Products"
     );
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public static String dedupeKeyOf(String name, String brand) {
+        return normalize(name) + "|" + normalize(brand);
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(value.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
    /* @Data
     public static class Attributes {
         private String storage;
@@ -37,6 +63,8 @@ public class Product {
 
     @Data
     public static class Merchant {
+        // multikey index on merchants.merchant_id for per-merchant lookups
+        @Indexed
         private int merchant_id;
         private String name;
         private double price;
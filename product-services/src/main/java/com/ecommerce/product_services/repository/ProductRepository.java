@@ -12,9 +12,6 @@ public interface ProductRepository extends MongoRepository<Product, String> {
     @Query("{ 'category': { $regex: ?0, $options: 'i' } }")
     List<Product> findByCategory(String category);
 
-    @Query("{ 'name': { $regex: ?0, $options: 'i' } }")
-    List<Product> findByNameIgnoreCase(String name);
-    
     @Query("{ $or: [ " +
            "{ 'name': { $regex: ?0, $options: 'i' } }, " +
            "{ 'brand': { $regex: ?0, $options: 'i' } }, " +
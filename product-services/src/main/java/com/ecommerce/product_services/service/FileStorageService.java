@@ -1,20 +1,64 @@
 package com.ecommerce.product_services.service;
 
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class FileStorageService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<String, String> ALLOWED_CONTENT_TYPES = Map.of(
+            "image/jpeg", ".jpg",
+            "image/png", ".png",
+            "image/gif", ".gif",
+            "image/webp", ".webp"
+    );
+
     private final Path rootLocation;
 
+    // fsync runs off the request thread; CallerRunsPolicy pushes back once the queue is full
+    private final ThreadPoolExecutor syncExecutor = new ThreadPoolExecutor(
+            1, 2, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000),
+            r -> {
+                Thread t = new Thread(r, "image-fsync");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    @Value("${product.images.max-bytes:5242880}")
+    private long maxImageBytes = 5 * 1024 * 1024;
+
     public FileStorageService() {
-        this.rootLocation = Paths.get("product-images");
+        this(Paths.get("product-images"));
+    }
+
+    FileStorageService(Path rootLocation) {
+        this.rootLocation = rootLocation;
         try {
             Files.createDirectories(rootLocation);
         } catch (IOException e) {
@@ -22,43 +66,107 @@ public class FileStorageService {
         }
     }
 
+    public record StoredImage(String url, long size, String checksum) {
+    }
+
     public String store(MultipartFile file) {
-        try {
-            if (file.isEmpty()) {
-                throw new RuntimeException("Failed to store empty file.");
-            }
+        return storeImage(file).url();
+    }
 
-            
-            String originalFilename = file.getOriginalFilename();
-            String extension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+    /**
+     * Streams the upload into the storage directory through a file channel,
+     * enforcing size and image type while copying and computing a SHA-256
+     * checksum on the fly. The file is renamed into place before returning;
+     * the fsync of the file and then of the directory holding the rename
+     * happens asynchronously.
+     */
+    public StoredImage storeImage(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("Failed to store empty file.");
+        }
+        if (file.getSize() > maxImageBytes) {
+            throw new IllegalArgumentException("Image exceeds maximum size of " + maxImageBytes + " bytes");
+        }
+        String contentType = file.getContentType() == null ? "" : file.getContentType().toLowerCase();
+        if (!ALLOWED_CONTENT_TYPES.containsKey(contentType)) {
+            throw new IllegalArgumentException("Unsupported image type: " + file.getContentType());
+        }
+
+        String name = UUID.randomUUID().toString();
+        Path partFile = rootLocation.resolve(name + ".part").normalize().toAbsolutePath();
+        Path destinationFile = rootLocation.resolve(name + ALLOWED_CONTENT_TYPES.get(contentType))
+                .normalize().toAbsolutePath();
+
+        MessageDigest digest = sha256();
+        long written = 0;
+
+        try (InputStream in = file.getInputStream();
+             ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel target = FileChannel.open(partFile,
+                     StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (buffer.position() < 12 && source.read(buffer) != -1) {
+                // the type check needs the first 12 bytes of the file
+            }
+            buffer.flip();
+            if (!matchesContentType(buffer, contentType)) {
+                throw new IllegalArgumentException("File content does not match " + contentType);
             }
 
-            
-            String uniqueFilename = UUID.randomUUID().toString() + extension;
+            while (buffer.hasRemaining()) {
+                written += buffer.remaining();
+                if (written > maxImageBytes) {
+                    throw new IllegalArgumentException("Image exceeds maximum size of " + maxImageBytes + " bytes");
+                }
 
-           
-            Path destinationFile = this.rootLocation.resolve(Paths.get(uniqueFilename))
-                    .normalize().toAbsolutePath();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
 
-            Files.copy(file.getInputStream(), destinationFile);
+                buffer.clear();
+                if (source.read(buffer) == -1) {
+                    break;
+                }
+                buffer.flip();
+            }
 
-          
-            return "/images/" + uniqueFilename;
+            if (written == 0) {
+                throw new IllegalArgumentException("Failed to store empty file.");
+            }
+        } catch (IOException e) {
+            deleteQuietly(partFile);
+            throw new RuntimeException("Failed to store file.", e);
+        } catch (RuntimeException e) {
+            deleteQuietly(partFile);
+            throw e;
+        }
 
+        try {
+            Files.move(partFile, destinationFile, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
+            deleteQuietly(partFile);
             throw new RuntimeException("Failed to store file.", e);
         }
+
+        syncExecutor.execute(() -> {
+            fsync(destinationFile, StandardOpenOption.WRITE);
+            // the rename is only durable once the directory entry is
+            fsync(destinationFile.getParent(), StandardOpenOption.READ);
+        });
+
+        return new StoredImage("/images/" + destinationFile.getFileName(), written,
+                HexFormat.of().formatHex(digest.digest()));
     }
 
     public void delete(String imageUrl) {
         if (imageUrl == null || imageUrl.isEmpty()) {
-            return; 
+            return;
         }
 
         try {
-            
+
             String filename = imageUrl.substring(imageUrl.lastIndexOf("/") + 1);
             Path filePath = this.rootLocation.resolve(filename).normalize().toAbsolutePath();
 
@@ -68,4 +176,55 @@ public class FileStorageService {
             System.err.println("Could not delete file: " + imageUrl + ". Error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        syncExecutor.shutdown();
+        syncExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static boolean matchesContentType(ByteBuffer buffer, String contentType) {
+        int p = buffer.position();
+        int n = buffer.remaining();
+        return switch (contentType) {
+            case "image/jpeg" -> n >= 3
+                    && (buffer.get(p) & 0xFF) == 0xFF && (buffer.get(p + 1) & 0xFF) == 0xD8
+                    && (buffer.get(p + 2) & 0xFF) == 0xFF;
+            case "image/png" -> n >= 4
+                    && (buffer.get(p) & 0xFF) == 0x89 && buffer.get(p + 1) == 'P'
+                    && buffer.get(p + 2) == 'N' && buffer.get(p + 3) == 'G';
+            case "image/gif" -> n >= 4
+                    && buffer.get(p) == 'G' && buffer.get(p + 1) == 'I'
+                    && buffer.get(p + 2) == 'F' && buffer.get(p + 3) == '8';
+            case "image/webp" -> n >= 12
+                    && buffer.get(p) == 'R' && buffer.get(p + 1) == 'I'
+                    && buffer.get(p + 2) == 'F' && buffer.get(p + 3) == 'F'
+                    && buffer.get(p + 8) == 'W' && buffer.get(p + 9) == 'E'
+                    && buffer.get(p + 10) == 'B' && buffer.get(p + 11) == 'P';
+            default -> false;
+        };
+    }
+
+    private static void fsync(Path path, StandardOpenOption mode) {
+        try (FileChannel channel = FileChannel.open(path, mode)) {
+            channel.force(true);
+        } catch (IOException e) {
+            System.err.println("Could not fsync file: " + path + ". Error: " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
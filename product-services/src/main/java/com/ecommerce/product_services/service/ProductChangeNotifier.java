@@ -0,0 +1,74 @@
+package com.ecommerce.product_services.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells services that cache product prices and stock (order-service's cart
+ * catalog) that a product changed, so they drop their copy instead of
+ * waiting for it to expire. Best effort: posts run off the request thread and
+ * a missed notification only means the subscriber's TTL applies.
+ */
+@Service
+public class ProductChangeNotifier {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private final List<String> subscribers;
+
+    // Lets subscribers tell these posts from anyone else's
+    @Value("${product.change.secret:}")
+    private String secret;
+
+    // Full queue drops the notification; subscribers still expire their copy on their own
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000),
+            r -> {
+                Thread t = new Thread(r, "product-change-notifier");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    public ProductChangeNotifier(@Value("${product.change.subscribers:}") String subscribers) {
+        this.subscribers = Arrays.stream(subscribers.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+    }
+
+    public void productChanged(String productId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Catalog-Secret", secret);
+        HttpEntity<Map<String, String>> request = new HttpEntity<>(Map.of("productId", productId), headers);
+        for (String url : subscribers) {
+            executor.execute(() -> {
+                try {
+                    restTemplate.postForEntity(url, request, Void.class);
+                } catch (Exception e) {
+                    System.err.println("Could not notify " + url + " about product " + productId + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
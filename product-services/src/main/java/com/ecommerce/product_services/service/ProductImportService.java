@@ -0,0 +1,381 @@
+package com.ecommerce.product_services.service;
+
+import com.ecommerce.product_services.model.Product;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Bulk catalog import. Rows are read as a stream (CSV with a header line, or
+ * NDJSON), grouped by dedupe key and written in unordered bulk batches:
+ * new products are upserted on the unique dedupe key, offers for known
+ * products are pushed onto the existing document.
+ */
+@Service
+public class ProductImportService {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final TypeReference<Map<String, Object>> ROW_TYPE = new TypeReference<>() {
+    };
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public record RowResult(int row, String status, String productId, String error) {
+
+        static RowResult failed(int row, String error) {
+            return new RowResult(row, "FAILED", null, error);
+        }
+    }
+
+    // one queued bulk operation and the rows it covers, in queue order
+    private record QueuedOp(boolean upsert, String dedupeKey, String productId, List<ImportRow> rows) {
+    }
+
+    private record ImportRow(int row, Product product) {
+
+        Product.Merchant offer() {
+            return product.getMerchants().get(0);
+        }
+    }
+
+    public ResponseEntity<?> importProductsResponse(InputStream body, String contentType) {
+        try {
+            boolean csv = contentType != null && contentType.toLowerCase().startsWith("text/csv");
+            return ResponseEntity.ok(importProducts(body, csv));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Could not read import file"));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Import failed"));
+        }
+    }
+
+    public Map<String, Object> importProducts(InputStream body, boolean csv) throws IOException {
+        List<RowResult> results = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            List<String> header = null;
+            if (csv) {
+                String headerLine = reader.readLine();
+                if (headerLine == null) {
+                    return report(results);
+                }
+                header = parseCsvLine(headerLine).stream().map(h -> h.trim().toLowerCase()).toList();
+            }
+
+            List<ImportRow> batch = new ArrayList<>(BATCH_SIZE);
+            int rowNum = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                rowNum++;
+                try {
+                    Map<String, Object> fields = csv ? toFields(header, parseCsvLine(line))
+                            : objectMapper.readValue(line, ROW_TYPE);
+                    batch.add(new ImportRow(rowNum, toProduct(fields)));
+                } catch (Exception e) {
+                    results.add(RowResult.failed(rowNum, e.getMessage()));
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    results.addAll(writeBatch(batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                results.addAll(writeBatch(batch));
+            }
+        }
+
+        return report(results);
+    }
+
+    private List<RowResult> writeBatch(List<ImportRow> rows) {
+        Map<String, List<ImportRow>> byKey = new LinkedHashMap<>();
+        for (ImportRow row : rows) {
+            byKey.computeIfAbsent(row.product().getDedupeKey(), k -> new ArrayList<>()).add(row);
+        }
+
+        Query lookup = Query.query(Criteria.where("dedupeKey").in(byKey.keySet()));
+        lookup.fields().include("dedupeKey").include("merchants.merchant_id");
+        Map<String, Product> existing = new HashMap<>();
+        for (Product p : mongoTemplate.find(lookup, Product.class)) {
+            existing.putIfAbsent(p.getDedupeKey(), p);
+        }
+
+        List<RowResult> results = new ArrayList<>();
+        List<QueuedOp> queued = new ArrayList<>();
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+
+        for (Map.Entry<String, List<ImportRow>> entry : byKey.entrySet()) {
+            Product target = existing.get(entry.getKey());
+            Set<Integer> offered = new HashSet<>();
+            if (target != null && target.getMerchants() != null) {
+                target.getMerchants().forEach(m -> offered.add(m.getMerchant_id()));
+            }
+
+            Product created = null;
+            List<ImportRow> covered = new ArrayList<>();
+
+            for (ImportRow row : entry.getValue()) {
+                Product.Merchant offer = row.offer();
+                if (!offered.add(offer.getMerchant_id())) {
+                    results.add(RowResult.failed(row.row(),
+                            "Merchant " + offer.getMerchant_id() + " already offers this product"));
+                    continue;
+                }
+
+                if (target != null) {
+                    ops.updateOne(
+                            Query.query(Criteria.where("_id").is(target.getId())
+                                    .and("merchants.merchant_id").ne(offer.getMerchant_id())),
+                            new Update().push("merchants", offer));
+                    queued.add(new QueuedOp(false, entry.getKey(), target.getId(), List.of(row)));
+                } else if (created == null) {
+                    created = row.product();
+                    created.setId(new ObjectId().toHexString());
+                    created.setMerchants(new ArrayList<>(created.getMerchants()));
+                    covered.add(row);
+                } else {
+                    created.getMerchants().add(offer);
+                    covered.add(row);
+                }
+            }
+
+            if (created != null) {
+                // upsert rather than insert so a product created concurrently absorbs these offers
+                List<Integer> merchantIds = created.getMerchants().stream().map(Product.Merchant::getMerchant_id).toList();
+                Update create = new Update().push("merchants").each(created.getMerchants().toArray())
+                        .setOnInsert("_id", new ObjectId(created.getId()))
+                        .setOnInsert("name", created.getName())
+                        .setOnInsert("category", created.getCategory())
+                        .setOnInsert("brand", created.getBrand())
+                        .setOnInsert("description", created.getDescription())
+                        .setOnInsert("attributes", created.getAttributes())
+                        .setOnInsert("imageUrl", created.getImageUrl());
+                ops.upsert(Query.query(Criteria.where("dedupeKey").is(entry.getKey())
+                        .and("merchants.merchant_id").nin(merchantIds)), create);
+                queued.add(new QueuedOp(true, entry.getKey(), created.getId(), covered));
+            }
+        }
+
+        if (queued.isEmpty()) {
+            return results;
+        }
+
+        BulkWriteResult written;
+        Map<Integer, String> failedOps = new HashMap<>();
+        try {
+            written = ops.execute();
+        } catch (BulkOperationException e) {
+            written = e.getResult();
+            for (BulkWriteError error : e.getErrors()) {
+                failedOps.put(error.getIndex(), error.getMessage());
+            }
+        }
+        results.addAll(rowResults(queued, written, failedOps));
+        return results;
+    }
+
+    /**
+     * Row statuses from what the bulk write reports: an upsert listed in
+     * {@link BulkWriteResult#getUpserts()} created its product, any other
+     * upsert without an error matched one created concurrently and merged into
+     * it. The result only counts matched offer pushes in total, so when that
+     * count falls short the pushed offers are read back to tell which landed.
+     */
+    private List<RowResult> rowResults(List<QueuedOp> queued, BulkWriteResult written, Map<Integer, String> failedOps) {
+        Set<Integer> upserted = new HashSet<>();
+        written.getUpserts().forEach(u -> upserted.add(u.getIndex()));
+
+        int expectedMatches = 0;
+        Set<String> mergedKeys = new HashSet<>();
+        for (int i = 0; i < queued.size(); i++) {
+            if (!failedOps.containsKey(i) && !upserted.contains(i)) {
+                expectedMatches++;
+                if (queued.get(i).upsert()) {
+                    mergedKeys.add(queued.get(i).dedupeKey());
+                }
+            }
+        }
+        boolean pushesMissing = written.getMatchedCount() < expectedMatches;
+
+        // product ids for upserts that merged into a concurrent insert, and offers as stored when a push may have missed
+        Map<String, Product> byKey = new HashMap<>();
+        if (!mergedKeys.isEmpty() || pushesMissing) {
+            Set<String> keys = new HashSet<>(mergedKeys);
+            if (pushesMissing) {
+                queued.stream().filter(op -> !op.upsert()).forEach(op -> keys.add(op.dedupeKey()));
+            }
+            Query lookup = Query.query(Criteria.where("dedupeKey").in(keys));
+            lookup.fields().include("dedupeKey").include("merchants");
+            for (Product p : mongoTemplate.find(lookup, Product.class)) {
+                byKey.put(p.getDedupeKey(), p);
+            }
+        }
+
+        List<RowResult> results = new ArrayList<>();
+        for (int i = 0; i < queued.size(); i++) {
+            QueuedOp op = queued.get(i);
+            String error = failedOps.get(i);
+            for (int r = 0; r < op.rows().size(); r++) {
+                ImportRow row = op.rows().get(r);
+                if (error != null) {
+                    results.add(RowResult.failed(row.row(), error));
+                } else if (upserted.contains(i)) {
+                    results.add(new RowResult(row.row(), r == 0 ? "CREATED" : "MERGED", op.productId(), null));
+                } else if (op.upsert()) {
+                    Product merged = byKey.get(op.dedupeKey());
+                    results.add(new RowResult(row.row(), "MERGED", merged != null ? merged.getId() : null, null));
+                } else if (!pushesMissing || hasOffer(byKey.get(op.dedupeKey()), row.offer())) {
+                    results.add(new RowResult(row.row(), "MERGED", op.productId(), null));
+                } else {
+                    results.add(RowResult.failed(row.row(),
+                            "Merchant " + row.offer().getMerchant_id() + " already offers this product"));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean hasOffer(Product product, Product.Merchant offer) {
+        return product != null && product.getMerchants() != null
+                && product.getMerchants().stream().anyMatch(m -> m.equals(offer));
+    }
+
+    private Product toProduct(Map<String, Object> fields) {
+        Product.Merchant merchant = new Product.Merchant();
+        merchant.setMerchant_id(toInt(fields.get("merchant_id"), "merchant_id"));
+        merchant.setName(toStr(fields.get("merchant_name")));
+        merchant.setPrice(toDouble(fields.get("price"), "price"));
+        merchant.setStock(toInt(fields.get("stock"), "stock"));
+
+        if (merchant.getMerchant_id() <= 0)
+            throw new IllegalArgumentException("merchant_id must be positive");
+        if (merchant.getPrice() <= 0)
+            throw new IllegalArgumentException("price must be greater than 0");
+        if (merchant.getStock() < 0)
+            throw new IllegalArgumentException("stock cannot be negative");
+
+        Product product = new Product();
+        product.setName(toStr(fields.get("name")));
+        product.setCategory(toStr(fields.get("category")));
+        product.setBrand(toStr(fields.get("brand")));
+        product.setDescription(toStr(fields.get("description")));
+        product.setImageUrl(toStr(fields.get("imageurl") != null ? fields.get("imageurl") : fields.get("imageUrl")));
+        product.setMerchants(List.of(merchant));
+
+        if (fields.get("attributes") instanceof Map<?, ?> attrs) {
+            Map<String, String> attributes = new HashMap<>();
+            attrs.forEach((k, v) -> attributes.put(String.valueOf(k), String.valueOf(v)));
+            product.setAttributes(attributes);
+        }
+
+        ProductService.validateProductInput(product);
+        product.setDedupeKey(Product.dedupeKeyOf(product.getName(), product.getBrand()));
+        return product;
+    }
+
+    private static Map<String, Object> report(List<RowResult> results) {
+        results.sort(Comparator.comparingInt(RowResult::row));
+        long created = results.stream().filter(r -> "CREATED".equals(r.status())).count();
+        long merged = results.stream().filter(r -> "MERGED".equals(r.status())).count();
+        long failed = results.stream().filter(r -> "FAILED".equals(r.status())).count();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("total", results.size());
+        report.put("created", created);
+        report.put("merged", merged);
+        report.put("failed", failed);
+        report.put("rows", results);
+        return report;
+    }
+
+    private static Map<String, Object> toFields(List<String> header, List<String> values) {
+        if (values.size() > header.size())
+            throw new IllegalArgumentException("Row has more columns than the header");
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(header.get(i), values.get(i));
+        }
+        return fields;
+    }
+
+    // Splits one CSV line; quoted fields may contain commas and "" escapes but not line breaks.
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private static String toStr(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String s = value.toString().trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    private static int toInt(Object value, String field) {
+        try {
+            return value instanceof Number n ? n.intValue() : Integer.parseInt(value.toString().trim());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid " + field);
+        }
+    }
+
+    private static double toDouble(Object value, String field) {
+        try {
+            return value instanceof Number n ? n.doubleValue() : Double.parseDouble(value.toString().trim());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid " + field);
+        }
+    }
+}
@@ -3,7 +3,18 @@ package com.ecommerce.product_services.service;
 import com.ecommerce.product_services.model.Product;
 import com.ecommerce.product_services.repository.ProductRepository;
 import com.ecommerce.product_services.util.InputSanitizer;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -19,31 +30,69 @@ public class ProductService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ProductChangeNotifier productChangeNotifier;
+
+    private static final int MAX_BATCH_IDS = 100;
+    // per product; far more decrements than arrive while one is still being retried
+    private static final int STOCK_UPDATE_KEYS = 1000;
+
 
     public ResponseEntity<?> addProduct(Product product, MultipartFile imageFile) {
         try {
             validateProductInput(product);
 
+            String dedupeKey = Product.dedupeKeyOf(product.getName(), product.getBrand());
+            Product.Merchant newMerchant = product.getMerchants().get(0);
+            Query offerNotListed = Query.query(Criteria.where("dedupeKey").is(dedupeKey)
+                    .and("merchants.merchant_id").ne(newMerchant.getMerchant_id()));
+
+            // Known product: attach the offer without touching the image
+            Update addOffer = new Update().push("merchants", newMerchant);
+            Product merged = mongoTemplate.findAndModify(offerNotListed, addOffer,
+                    FindAndModifyOptions.options().returnNew(true), Product.class);
+            if (merged != null) {
+                return ResponseEntity.ok(merged);
+            }
+            // checked before storing the image, which is only needed for a new product
+            if (mongoTemplate.exists(Query.query(Criteria.where("dedupeKey").is(dedupeKey)
+                    .and("merchants.merchant_id").is(newMerchant.getMerchant_id())), Product.class)) {
+                throw new IllegalArgumentException("You already added this product.");
+            }
 
-            List<Product> existing = productRepository.findByNameIgnoreCase(product.getName());
-            if (!existing.isEmpty()) {
-                for (Product ex : existing) {
-                    if (Objects.equals(ex.getBrand(), product.getBrand())) {
-                        Product.Merchant newMerchant = product.getMerchants().get(0);
-                        boolean exists = ex.getMerchants().stream()
-                                .anyMatch(m -> m.getMerchant_id() == newMerchant.getMerchant_id());
-                        if (exists)
-                            throw new IllegalArgumentException("You already added this product.");
-                        ex.getMerchants().add(newMerchant);
-                        return ResponseEntity.ok(productRepository.save(ex));
-                    }
+            FileStorageService.StoredImage image = fileStorageService.storeImage(imageFile);
+            Update create = new Update().push("merchants", newMerchant)
+                    .setOnInsert("name", product.getName())
+                    .setOnInsert("category", product.getCategory())
+                    .setOnInsert("brand", product.getBrand())
+                    .setOnInsert("description", product.getDescription())
+                    .setOnInsert("attributes", product.getAttributes())
+                    .setOnInsert("imageUrl", image.url())
+                    .setOnInsert("imageChecksum", image.checksum());
+
+            Product saved;
+            try {
+                saved = mongoTemplate.findAndModify(offerNotListed, create,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), Product.class);
+            } catch (DuplicateKeyException e) {
+                // Another merchant created the product first; MongoDB does not retry the upsert
+                // because of the $ne, so merge into it here. Null means this merchant is already on it.
+                fileStorageService.delete(image.url());
+                saved = mongoTemplate.findAndModify(offerNotListed, addOffer,
+                        FindAndModifyOptions.options().returnNew(true), Product.class);
+                if (saved == null) {
+                    throw new IllegalArgumentException("You already added this product.");
                 }
+                return ResponseEntity.ok(saved);
             }
 
-
-            String imageUrl = fileStorageService.store(imageFile);
-            product.setImageUrl(imageUrl);
-            Product saved = productRepository.save(product);
+            // another request created the product first and our offer was merged into it
+            if (saved != null && !image.url().equals(saved.getImageUrl())) {
+                fileStorageService.delete(image.url());
+            }
             return ResponseEntity.ok(saved);
 
         } catch (IllegalArgumentException e) {
@@ -60,6 +109,16 @@ public class ProductService {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Products for a set of ids in one call, e.g. every product in a cart; unknown ids are left out
+    public ResponseEntity<?> getProductsByIdsResponse(List<String> ids) {
+        if (ids == null || ids.isEmpty())
+            return ResponseEntity.badRequest().body(Map.of("error", "ids cannot be empty"));
+        if (ids.size() > MAX_BATCH_IDS)
+            return ResponseEntity.badRequest().body(Map.of("error", "At most " + MAX_BATCH_IDS + " ids per request"));
+
+        return ResponseEntity.ok(productRepository.findAllById(new LinkedHashSet<>(ids)));
+    }
+
     public ResponseEntity<?> getAllProductsResponse(String category) {
         try {
             if (category != null && !category.isEmpty()) {
@@ -78,6 +137,43 @@ public class ProductService {
         }
     }
 
+    public ResponseEntity<?> getProductsByMerchantResponse(int merchantId, int page, int size) {
+        try {
+            if (page < 0 || size < 1 || size > 100)
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid page or size"));
+
+            Criteria offeredBy = Criteria.where("merchants.merchant_id").is(merchantId);
+
+            // $elemMatch projection returns only this merchant's entry in the merchants array
+            Query query = Query.query(offeredBy).with(PageRequest.of(page, size, Sort.by("_id")));
+            query.fields().elemMatch("merchants", Criteria.where("merchant_id").is(merchantId));
+            List<Product> products = mongoTemplate.find(query, Product.class);
+
+            Aggregation totals = Aggregation.newAggregation(
+                    Aggregation.match(offeredBy),
+                    Aggregation.unwind("merchants"),
+                    Aggregation.match(offeredBy),
+                    Aggregation.group()
+                            .count().as("productCount")
+                            .sum("merchants.stock").as("totalStock")
+                            .sum(ArithmeticOperators.Multiply.valueOf("merchants.price").multiplyBy("merchants.stock"))
+                            .as("inventoryValue"));
+            Document summary = mongoTemplate.aggregate(totals, Product.class, Document.class).getUniqueMappedResult();
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("merchantId", merchantId);
+            response.put("page", page);
+            response.put("size", size);
+            response.put("total", summary == null ? 0 : ((Number) summary.get("productCount")).intValue());
+            response.put("totalStock", summary == null ? 0 : ((Number) summary.get("totalStock")).longValue());
+            response.put("inventoryValue", summary == null ? 0.0 : ((Number) summary.get("inventoryValue")).doubleValue());
+            response.put("products", products);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to fetch merchant products"));
+        }
+    }
+
     public ResponseEntity<?> searchProductsResponse(String q) {
         try {
             if (q == null || q.trim().isEmpty())
@@ -97,22 +193,35 @@ public class ProductService {
 
     public ResponseEntity<?> updateProductResponse(String id, Product details, MultipartFile imageFile) {
         return productRepository.findById(id)
-                .map(existing -> {
+                .<ResponseEntity<?>>map(existing -> {
                     existing.setName(details.getName());
                     existing.setCategory(details.getCategory());
                     existing.setBrand(details.getBrand());
                     existing.setDescription(details.getDescription());
                     existing.setAttributes(details.getAttributes());
                     existing.setMerchants(details.getMerchants());
+                    existing.setDedupeKey(Product.dedupeKeyOf(details.getName(), details.getBrand()));
 
+                    String oldUrl = existing.getImageUrl();
+                    FileStorageService.StoredImage image = null;
                     if (imageFile != null && !imageFile.isEmpty()) {
-                        String oldUrl = existing.getImageUrl();
-                        String newUrl = fileStorageService.store(imageFile);
-                        existing.setImageUrl(newUrl);
-                        if (oldUrl != null) fileStorageService.delete(oldUrl);
+                        image = fileStorageService.storeImage(imageFile);
+                        existing.setImageUrl(image.url());
+                        existing.setImageChecksum(image.checksum());
                     }
 
-                    return ResponseEntity.ok(productRepository.save(existing));
+                    Product saved;
+                    try {
+                        saved = productRepository.save(existing);
+                    } catch (DuplicateKeyException e) {
+                        // renamed onto the name and brand of another product
+                        if (image != null) fileStorageService.delete(image.url());
+                        return ResponseEntity.status(409)
+                                .body(Map.of("error", "A product with this name and brand already exists"));
+                    }
+                    if (image != null && oldUrl != null) fileStorageService.delete(oldUrl);
+                    productChangeNotifier.productChanged(id);
+                    return ResponseEntity.ok(saved);
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -124,44 +233,62 @@ public class ProductService {
             if (product.getImageUrl() != null)
                 fileStorageService.delete(product.getImageUrl());
             productRepository.deleteById(id);
+            productChangeNotifier.productChanged(id);
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
     }
 
-    public ResponseEntity<?> updateStockResponse(Map<String, Object> request) {
+    /**
+     * Takes {@code quantity} off the merchant's stock, not going below zero. A
+     * request with an {@code Idempotency-Key} already applied to the product is
+     * acknowledged without decrementing again, so a retried delivery counts once.
+     */
+    public ResponseEntity<?> updateStockResponse(Map<String, Object> request, String idempotencyKey) {
         try {
             String productId = (String) request.get("productId");
             int merchantId = Integer.parseInt(request.get("merchantId").toString());
             int quantity = (Integer) request.get("quantity");
 
-            Optional<Product> optional = productRepository.findById(productId);
-            if (optional.isEmpty())
-                return ResponseEntity.status(404).body(Map.of("error", "Product not found"));
-
-            Product product = optional.get();
-            boolean updated = false;
-
-            for (Product.Merchant m : product.getMerchants()) {
-                if (m.getMerchant_id() == merchantId) {
-                    m.setStock(Math.max(0, m.getStock() - quantity));
-                    updated = true;
-                    break;
+            while (true) {
+                // each is a single conditional update, so neither a retry nor a concurrent decrement is miscounted
+                if (decrementStock(productId, idempotencyKey,
+                        Criteria.where("merchant_id").is(merchantId).and("stock").gte(quantity),
+                        new Update().inc("merchants.$.stock", -quantity))
+                        || decrementStock(productId, idempotencyKey,
+                        Criteria.where("merchant_id").is(merchantId).and("stock").lt(quantity),
+                        new Update().set("merchants.$.stock", 0))) {
+                    productChangeNotifier.productChanged(productId);
+                    return ResponseEntity.ok(Map.of("success", true, "message", "Stock updated"));
                 }
-            }
 
-            if (!updated)
-                return ResponseEntity.status(404).body(Map.of("error", "Merchant not found"));
-
-            productRepository.save(product);
-            return ResponseEntity.ok(Map.of("success", true, "message", "Stock updated"));
+                Product product = mongoTemplate.findById(productId, Product.class);
+                if (product == null)
+                    return ResponseEntity.status(404).body(Map.of("error", "Product not found"));
+                if (idempotencyKey != null && product.getStockUpdates() != null
+                        && product.getStockUpdates().contains(idempotencyKey))
+                    return ResponseEntity.ok(Map.of("success", true, "message", "Stock already updated"));
+                if (product.getMerchants() == null
+                        || product.getMerchants().stream().noneMatch(m -> m.getMerchant_id() == merchantId))
+                    return ResponseEntity.status(404).body(Map.of("error", "Merchant not found"));
+                // the stock moved across quantity between the two updates; try again
+            }
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .body(Map.of("error", "Failed to update stock"));
         }
     }
 
-    private void validateProductInput(Product product) {
+    private boolean decrementStock(String productId, String idempotencyKey, Criteria merchant, Update update) {
+        Criteria criteria = Criteria.where("_id").is(productId).and("merchants").elemMatch(merchant);
+        if (idempotencyKey != null) {
+            criteria.and("stockUpdates").ne(idempotencyKey);
+            update.push("stockUpdates").slice(-STOCK_UPDATE_KEYS).each(idempotencyKey);
+        }
+        return mongoTemplate.updateFirst(Query.query(criteria), update, Product.class).getModifiedCount() > 0;
+    }
+
+    static void validateProductInput(Product product) {
         if (product.getName() == null || product.getName().isBlank())
             throw new IllegalArgumentException("Product name cannot be empty");
 
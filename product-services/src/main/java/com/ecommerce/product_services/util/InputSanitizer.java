@@ -1,27 +1,51 @@
 package com.ecommerce.product_services.util;
 
-import java.util.regex.Pattern;
+/**
+ * Every method is a single scan over a fixed ASCII lookup table and returns
+ * the (trimmed) input itself when nothing has to change, so the common case
+ * allocates nothing. The same implementation lives in search-microservice.
+ */
+public class InputSanitizer {
 
+    private static final int MAX_SEARCH_LENGTH = 100;
+    private static final int MAX_CATEGORY_LENGTH = 50;
+    private static final int MAX_PRODUCT_NAME_LENGTH = 200;
 
-public class InputSanitizer {
-    private static final Pattern REGEX_SPECIAL_CHARS = Pattern.compile("[.^$*+?()\\[\\]{}|\\\\]");
+    // Whitespace as matched by \s
+    private static final String WHITESPACE = " \t\n\u000B\f\r";
+
+    // Regex special characters that need to be escaped
+    private static final boolean[] REGEX_SPECIAL_CHARS = charTable(".^$*+?()[]{}|\\", false);
 
-    private static final Pattern NOSQL_INJECTION_PATTERN = Pattern.compile(".*[{}$\\[\\]].*");
+    // Characters that signal a potential NoSQL injection attempt
+    private static final boolean[] NOSQL_INJECTION_CHARS = charTable("{}$[]", false);
+
+    private static final boolean[] CATEGORY_CHARS = charTable(WHITESPACE + "&-", true);
+
+    private static final boolean[] PRODUCT_NAME_CHARS = charTable(WHITESPACE + "'\".,!&()-", true);
 
     public static String sanitizeForRegex(String input) {
         if (input == null || input.isEmpty()) {
             return "";
         }
 
-        String sanitized = input.trim();
+        String trimmed = input.trim();
+        int end = Math.min(trimmed.length(), MAX_SEARCH_LENGTH);
 
-        if (sanitized.length() > 100) {
-            sanitized = sanitized.substring(0, 100);
+        int first = indexOfAny(trimmed, end, REGEX_SPECIAL_CHARS);
+        if (first < 0) {
+            return end == trimmed.length() ? trimmed : trimmed.substring(0, end);
         }
 
-        sanitized = REGEX_SPECIAL_CHARS.matcher(sanitized).replaceAll("\\\\$0");
-        
-        return sanitized;
+        StringBuilder sanitized = new StringBuilder(end + 8).append(trimmed, 0, first);
+        for (int i = first; i < end; i++) {
+            char c = trimmed.charAt(i);
+            if (in(REGEX_SPECIAL_CHARS, c)) {
+                sanitized.append('\\');
+            }
+            sanitized.append(c);
+        }
+        return sanitized.toString();
     }
 
     public static boolean isValidInput(String input) {
@@ -29,42 +53,67 @@ public class InputSanitizer {
             return true;
         }
 
-        if (NOSQL_INJECTION_PATTERN.matcher(input).matches()) {
-            return false;
-        }
-        
-        return true;
+        return indexOfAny(input, input.length(), NOSQL_INJECTION_CHARS) < 0;
     }
 
     public static String sanitizeCategory(String category) {
         if (category == null || category.isEmpty()) {
             return "";
         }
-        
-        String sanitized = category.trim();
-        sanitized = sanitized.replaceAll("[^a-zA-Z0-9\\s&-]", "");
-
-        if (sanitized.length() > 50) {
-            sanitized = sanitized.substring(0, 50);
-        }
-        
-        return sanitized;
+        return keepOnly(category.trim(), CATEGORY_CHARS, MAX_CATEGORY_LENGTH);
     }
 
     public static String sanitizeProductName(String name) {
         if (name == null || name.isEmpty()) {
             return "";
         }
-        
-        String sanitized = name.trim();
+        return keepOnly(name.trim(), PRODUCT_NAME_CHARS, MAX_PRODUCT_NAME_LENGTH);
+    }
+
+    // Drops characters outside the table, then limits the length
+    private static String keepOnly(String input, boolean[] allowed, int maxLength) {
+        int length = input.length();
+        int kept = 0;
+        while (kept < length && in(allowed, input.charAt(kept))) {
+            kept++;
+        }
+        if (kept == length) {
+            return length <= maxLength ? input : input.substring(0, maxLength);
+        }
 
-        sanitized = sanitized.replaceAll("[^a-zA-Z0-9\\s'\".,!&()-]", "");
+        StringBuilder sanitized = new StringBuilder(Math.min(length, maxLength)).append(input, 0, Math.min(kept, maxLength));
+        for (int i = kept + 1; i < length && sanitized.length() < maxLength; i++) {
+            char c = input.charAt(i);
+            if (in(allowed, c)) {
+                sanitized.append(c);
+            }
+        }
+        return sanitized.toString();
+    }
 
-        if (sanitized.length() > 200) {
-            sanitized = sanitized.substring(0, 200);
+    private static int indexOfAny(String input, int end, boolean[] table) {
+        for (int i = 0; i < end; i++) {
+            if (in(table, input.charAt(i))) {
+                return i;
+            }
         }
-        
-        return sanitized;
+        return -1;
     }
-}
 
+    private static boolean in(boolean[] table, char c) {
+        return c < table.length && table[c];
+    }
+
+    private static boolean[] charTable(String chars, boolean alphanumeric) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+        if (alphanumeric) {
+            for (char c = '0'; c <= '9'; c++) table[c] = true;
+            for (char c = 'a'; c <= 'z'; c++) table[c] = true;
+            for (char c = 'A'; c <= 'Z'; c++) table[c] = true;
+        }
+        return table;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ecommerce.product_services.config;
+
+import com.ecommerce.product_services.model.Product;
+import com.ecommerce.product_services.service.ProductChangeNotifier;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MongoIndexConfigTest {
+
+    @Mock private MongoTemplate mongoTemplate;
+    @Mock private IndexOperations indexOps;
+    @Mock private ProductChangeNotifier productChangeNotifier;
+
+    private MongoIndexConfig config;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        config = new MongoIndexConfig();
+        ReflectionTestUtils.setField(config, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(config, "mappingContext", new MongoMappingContext());
+        ReflectionTestUtils.setField(config, "productChangeNotifier", productChangeNotifier);
+        when(mongoTemplate.indexOps(Product.class)).thenReturn(indexOps);
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of());
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Product.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+    }
+
+    private static Product product(String id, int... merchantIds) {
+        Product product = new Product();
+        product.setId(id);
+        product.setMerchants(Arrays.stream(merchantIds).mapToObj(mid -> {
+            Product.Merchant m = new Product.Merchant();
+            m.setMerchant_id(mid);
+            m.setPrice(mid);
+            return m;
+        }).toList());
+        return product;
+    }
+
+    @Test
+    void mergeDuplicates_shouldFoldOffersIntoOldestProduct() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Product.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(
+                        List.of(new Document("_id", "iphone|apple").append("ids", List.of("a", "b", "c")).append("count", 3)),
+                        new Document()));
+        Product b = product("b", 101, 102);
+        b.getMerchants().get(0).setPrice(1);
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(product("a", 101), b, product("c", 103)));
+
+        config.mergeDuplicates();
+
+        ArgumentCaptor<Query> kept = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(kept.capture(), update.capture(), eq(Product.class));
+        assertEquals("a", kept.getValue().getQueryObject().get("_id"));
+        @SuppressWarnings("unchecked")
+        List<Product.Merchant> merchants = (List<Product.Merchant>) update.getValue().getUpdateObject()
+                .get("$set", Document.class).get("merchants");
+        assertEquals(List.of(101, 102, 103), merchants.stream().map(Product.Merchant::getMerchant_id).toList());
+        // a merchant already on the oldest product keeps that offer
+        assertEquals(101.0, merchants.get(0).getPrice());
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(Product.class));
+        assertEquals(new Document("$in", List.of("b", "c")), removed.getValue().getQueryObject().get("_id"));
+        verify(productChangeNotifier).productChanged("a");
+        verify(productChangeNotifier).productChanged("b");
+        verify(productChangeNotifier).productChanged("c");
+    }
+
+    @Test
+    void ensureIndexes_shouldBuildRemainingIndexesWhenOneFails() {
+        doThrow(new RuntimeException("E11000 duplicate key"))
+                .when(indexOps).createIndex(argThat(index -> index.getIndexKeys().containsKey("dedupeKey")));
+
+        config.ensureIndexes();
+
+        ArgumentCaptor<IndexDefinition> indexes = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOps, times(2)).createIndex(indexes.capture());
+        assertTrue(indexes.getAllValues().stream()
+                .anyMatch(index -> index.getIndexKeys().equals(new Document("merchants.merchant_id", 1))));
+    }
+
+    @Test
+    void ensureIndexes_shouldBuildIndexesWhenMergeFails() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Product.class), eq(Document.class)))
+                .thenThrow(new RuntimeException("timed out"));
+
+        config.ensureIndexes();
+
+        verify(indexOps, times(2)).createIndex(any(IndexDefinition.class));
+        verifyNoInteractions(productChangeNotifier);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ecommerce.product_services.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStorageServiceTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    @TempDir
+    Path dir;
+
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new FileStorageService(dir);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        storage.shutdown();
+    }
+
+    @Test
+    void storeImage_shouldStreamFileAndComputeChecksum() {
+        MockMultipartFile file = new MockMultipartFile("image", "a.png", "image/png", PNG);
+
+        FileStorageService.StoredImage image = storage.storeImage(file);
+
+        assertTrue(image.url().startsWith("/images/") && image.url().endsWith(".png"));
+        assertEquals(PNG.length, image.size());
+        assertEquals("02a3e298f1533f62558c58e4c70edcab9af5a50d62d925fd5390942020fb0fb8", image.checksum());
+        assertTrue(Files.exists(dir.resolve(image.url().substring("/images/".length()))));
+        // only the renamed file is left, no .part
+        assertEquals(1, dir.toFile().list().length);
+    }
+
+    @Test
+    void storeImage_shouldRejectContentThatDoesNotMatchType() {
+        MockMultipartFile file = new MockMultipartFile("image", "a.png", "image/png", "not an image".getBytes());
+
+        assertThrows(IllegalArgumentException.class, () -> storage.storeImage(file));
+        assertEquals(0, dir.toFile().list().length);
+    }
+
+    @Test
+    void storeImage_shouldLeaveNoFileWhenCopyFails() {
+        byte[] content = Arrays.copyOf(PNG, 200 * 1024);
+        MockMultipartFile file = new MockMultipartFile("image", "a.png", "image/png", content) {
+            @Override
+            public InputStream getInputStream() {
+                // fails after the first buffer has been written to the .part file
+                return new SequenceInputStream(new ByteArrayInputStream(content, 0, 100 * 1024), new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("connection reset");
+                    }
+                });
+            }
+        };
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> storage.storeImage(file));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(0, dir.toFile().list().length);
+    }
+
+    @Test
+    void storeImage_shouldRejectUnsupportedContentType() {
+        MockMultipartFile file = new MockMultipartFile("image", "a.svg", "image/svg+xml", "<svg/>".getBytes());
+
+        assertThrows(IllegalArgumentException.class, () -> storage.storeImage(file));
+    }
+
+    @Test
+    void storeImage_shouldRejectEmptyFile() {
+        MockMultipartFile file = new MockMultipartFile("image", "a.png", "image/png", new byte[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> storage.storeImage(file));
+    }
+}
@@ -0,0 +1,194 @@
+package com.ecommerce.product_services.service;
+
+import com.ecommerce.product_services.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ProductImportServiceTest {
+
+    @Mock private MongoTemplate mongoTemplate;
+    @Mock private BulkOperations bulkOperations;
+    @Spy private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks private ProductImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(Product.class))).thenReturn(bulkOperations);
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(new ArrayList<>());
+    }
+
+    private static BulkWriteResult result(int matched, int... upsertedOps) {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        for (int index : upsertedOps) {
+            upserts.add(new BulkWriteUpsert(index, new BsonObjectId(new ObjectId())));
+        }
+        return BulkWriteResult.acknowledged(0, matched, 0, matched, upserts, List.of());
+    }
+
+    private static Product product(String id, Product.Merchant... offers) {
+        Product p = new Product();
+        p.setId(id);
+        p.setDedupeKey("iphone 15|apple");
+        p.setMerchants(List.of(offers));
+        return p;
+    }
+
+    private static Product.Merchant offer(int merchantId, double price, int stock) {
+        Product.Merchant m = new Product.Merchant();
+        m.setMerchant_id(merchantId);
+        m.setPrice(price);
+        m.setStock(stock);
+        return m;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ProductImportService.RowResult> rows(Map<String, Object> report) {
+        return (List<ProductImportService.RowResult>) report.get("rows");
+    }
+
+    @Test
+    void importProducts_shouldCreateAndMergeRowsFromCsv() throws IOException {
+        String csv = """
+                name,category,brand,description,imageUrl,merchant_id,merchant_name,price,stock
+                iPhone 15,Electronics,Apple,"Phone, 128GB",/images/a.png,101,Shop A,999,5
+                iphone  15,Electronics,apple,Phone,/images/a.png,102,Shop B,989,3
+                Bad,NotACategory,X,,,101,Shop A,1,1
+                """;
+        when(bulkOperations.execute()).thenReturn(result(0, 0));
+
+        Map<String, Object> report = importService.importProducts(stream(csv), true);
+
+        assertEquals(3, report.get("total"));
+        assertEquals(1L, report.get("created"));
+        assertEquals(1L, report.get("merged"));
+        assertEquals(1L, report.get("failed"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations).upsert(query.capture(), update.capture());
+        assertEquals("iphone 15|apple", query.getValue().getQueryObject().get("dedupeKey"));
+        org.bson.Document setOnInsert = (org.bson.Document) update.getValue().getUpdateObject().get("$setOnInsert");
+        assertEquals("Phone, 128GB", setOnInsert.get("description"));
+        verify(bulkOperations).execute();
+    }
+
+    @Test
+    void importProducts_shouldPushOfferOntoExistingProductFromNdjson() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(product("p1", offer(101, 999, 5))));
+        when(bulkOperations.execute()).thenReturn(result(1));
+
+        String ndjson = """
+                {"name":"iPhone 15","category":"Electronics","brand":"Apple","merchant_id":102,"price":989,"stock":3}
+                {"name":"iPhone 15","category":"Electronics","brand":"Apple","merchant_id":101,"price":999,"stock":5}
+                """;
+
+        Map<String, Object> report = importService.importProducts(stream(ndjson), false);
+
+        assertEquals(1L, report.get("merged"));
+        assertEquals(1L, report.get("failed"));
+        verify(bulkOperations).updateOne(any(Query.class), any(Update.class));
+        verify(bulkOperations, never()).upsert(any(Query.class), any(Update.class));
+    }
+
+    @Test
+    void importProducts_shouldReportMergeWhenProductWasCreatedConcurrently() throws IOException {
+        // the upsert matched a product another request created between lookup and write
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(product("p9", offer(300, 1, 1), offer(101, 999, 5))));
+        when(bulkOperations.execute()).thenReturn(result(1));
+
+        Map<String, Object> report = importService.importProducts(stream("""
+                {"name":"iPhone 15","category":"Electronics","brand":"Apple","merchant_id":101,"price":999,"stock":5}
+                """), false);
+
+        assertEquals(0L, report.get("created"));
+        assertEquals(1L, report.get("merged"));
+        assertEquals("p9", rows(report).get(0).productId());
+    }
+
+    @Test
+    void importProducts_shouldReadBackOffersWhenFewerPushesMatched() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(product("p1", offer(101, 1, 1))))
+                // 103 was added by someone else with other terms, so only 102 is ours
+                .thenReturn(List.of(product("p1", offer(101, 1, 1), offer(102, 989, 3), offer(103, 5, 5))));
+        when(bulkOperations.execute()).thenReturn(result(1));
+
+        Map<String, Object> report = importService.importProducts(stream("""
+                {"name":"iPhone 15","category":"Electronics","brand":"Apple","merchant_id":102,"price":989,"stock":3}
+                {"name":"iPhone 15","category":"Electronics","brand":"Apple","merchant_id":103,"price":979,"stock":2}
+                """), false);
+
+        assertEquals(1L, report.get("merged"));
+        assertEquals(1L, report.get("failed"));
+        assertEquals("MERGED", rows(report).get(0).status());
+        assertEquals("Merchant 103 already offers this product", rows(report).get(1).error());
+    }
+
+    @Test
+    void importProducts_shouldFailOnlyRowsOfRejectedOperations() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(product("p1", offer(101, 1, 1))));
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1);
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("bulk failed",
+                new MongoBulkWriteException(result(1), List.of(duplicate), null, new ServerAddress(), Set.of())));
+
+        Map<String, Object> report = importService.importProducts(stream("""
+                {"name":"iPhone 15","category":"Electronics","brand":"Apple","merchant_id":102,"price":989,"stock":3}
+                {"name":"Pixel 9","category":"Electronics","brand":"Google","merchant_id":102,"price":799,"stock":3}
+                """), false);
+
+        assertEquals("MERGED", rows(report).get(0).status());
+        assertEquals("FAILED", rows(report).get(1).status());
+        assertEquals("E11000 duplicate key", rows(report).get(1).error());
+    }
+
+    @Test
+    void importProducts_shouldReportUnparseableRows() throws IOException {
+        Map<String, Object> report = importService.importProducts(stream("{not json}\n"), false);
+
+        assertEquals(1L, report.get("failed"));
+        verify(bulkOperations, never()).execute();
+    }
+
+    @Test
+    void parseCsvLine_shouldHandleQuotedFields() {
+        assertEquals(List.of("a", "b, c", "say \"hi\"", ""),
+                ProductImportService.parseCsvLine("a,\"b, c\",\"say \"\"hi\"\"\","));
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
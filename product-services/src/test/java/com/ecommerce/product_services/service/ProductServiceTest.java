@@ -2,11 +2,21 @@ package com.ecommerce.product_services.service;
 
 import com.ecommerce.product_services.model.Product;
 import com.ecommerce.product_services.repository.ProductRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -21,6 +31,8 @@ class ProductServiceTest {
     @Mock private ProductRepository productRepository;
     @Mock private FileStorageService fileStorageService;
     @Mock private MultipartFile mockFile;
+    @Mock private MongoTemplate mongoTemplate;
+    @Mock private ProductChangeNotifier productChangeNotifier;
 
     @InjectMocks private ProductService productService;
 
@@ -50,33 +62,76 @@ class ProductServiceTest {
 
     @Test
     void addProduct_shouldSaveNewProductSuccessfully() {
-        when(productRepository.findByNameIgnoreCase("iPhone")).thenReturn(Collections.emptyList());
-        when(fileStorageService.store(mockFile)).thenReturn("/images/new.png");
-        when(productRepository.save(any(Product.class))).thenReturn(sampleProduct);
+        Product created = new Product();
+        created.setImageUrl("/images/new.png");
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(null)
+                .thenReturn(created);
+        when(fileStorageService.storeImage(mockFile))
+                .thenReturn(new FileStorageService.StoredImage("/images/new.png", 10, "abc"));
 
         ResponseEntity<?> response = productService.addProduct(sampleProduct, mockFile);
 
         assertEquals(200, response.getStatusCode().value());
-        verify(productRepository).save(any(Product.class));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class));
+        verify(fileStorageService, never()).delete(anyString());
     }
 
     @Test
-    void addProduct_shouldThrowIfSameMerchantExists() {
-        Product existing = new Product();
-        existing.setName("iPhone");
-        existing.setBrand("Apple");
-        existing.setMerchants(new ArrayList<>(List.of(merchant)));
+    void addProduct_shouldMergeOfferWithoutStoringImage() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(sampleProduct);
+
+        ResponseEntity<?> response = productService.addProduct(sampleProduct, mockFile);
 
-        when(productRepository.findByNameIgnoreCase("iPhone")).thenReturn(List.of(existing));
+        assertEquals(200, response.getStatusCode().value());
+        verify(fileStorageService, never()).storeImage(any());
+    }
 
-        Product.Merchant dup = new Product.Merchant();
-        dup.setMerchant_id(101);
-        dup.setName("Merchant A");
-        sampleProduct.setMerchants(List.of(dup));
+    @Test
+    void addProduct_shouldRejectSameMerchantWithoutStoringImage() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(null);
+        when(mongoTemplate.exists(any(Query.class), eq(Product.class))).thenReturn(true);
 
         ResponseEntity<?> response = productService.addProduct(sampleProduct, mockFile);
+
         assertEquals(400, response.getStatusCode().value());
         assertTrue(response.getBody().toString().contains("already added"));
+        verify(fileStorageService, never()).storeImage(any());
+    }
+
+    @Test
+    void addProduct_shouldMergeIntoProductCreatedConcurrentlyByAnotherMerchant() {
+        // both merchants miss the merge, the other one's upsert wins and ours hits the unique key
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(null)
+                .thenThrow(new DuplicateKeyException("dedupeKey"))
+                .thenReturn(sampleProduct);
+        when(fileStorageService.storeImage(mockFile))
+                .thenReturn(new FileStorageService.StoredImage("/images/new.png", 10, "abc"));
+
+        ResponseEntity<?> response = productService.addProduct(sampleProduct, mockFile);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertSame(sampleProduct, response.getBody());
+        verify(fileStorageService).delete("/images/new.png");
+    }
+
+    @Test
+    void addProduct_shouldReportDuplicateWhenRetriedMergeFindsMerchantListed() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(null)
+                .thenThrow(new DuplicateKeyException("dedupeKey"))
+                .thenReturn(null);
+        when(fileStorageService.storeImage(mockFile))
+                .thenReturn(new FileStorageService.StoredImage("/images/new.png", 10, "abc"));
+
+        ResponseEntity<?> response = productService.addProduct(sampleProduct, mockFile);
+
+        assertEquals(400, response.getStatusCode().value());
+        assertTrue(response.getBody().toString().contains("already added"));
+        verify(fileStorageService).delete("/images/new.png");
     }
 
 
@@ -97,8 +152,7 @@ class ProductServiceTest {
 
     @Test
     void addProduct_shouldHandleFileStorageException() {
-        when(productRepository.findByNameIgnoreCase("iPhone")).thenReturn(Collections.emptyList());
-        when(fileStorageService.store(mockFile)).thenThrow(new RuntimeException("storage failed"));
+        when(fileStorageService.storeImage(mockFile)).thenThrow(new RuntimeException("storage failed"));
 
         ResponseEntity<?> response = productService.addProduct(sampleProduct, mockFile);
 
@@ -156,6 +210,30 @@ class ProductServiceTest {
         assertEquals(500, response.getStatusCode().value());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void getProductsByMerchantResponse_shouldReturnOffersAndTotals() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(sampleProduct));
+        Document summary = new Document("productCount", 1).append("totalStock", 50).append("inventoryValue", 5000.0);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Product.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(summary), new Document()));
+
+        ResponseEntity<?> response = productService.getProductsByMerchantResponse(101, 0, 20);
+
+        assertEquals(200, response.getStatusCode().value());
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertEquals(1, body.get("total"));
+        assertEquals(50L, body.get("totalStock"));
+        assertEquals(5000.0, body.get("inventoryValue"));
+        assertEquals(List.of(sampleProduct), body.get("products"));
+    }
+
+    @Test
+    void getProductsByMerchantResponse_shouldRejectOversizedPage() {
+        ResponseEntity<?> response = productService.getProductsByMerchantResponse(101, 0, 500);
+        assertEquals(400, response.getStatusCode().value());
+    }
+
     @Test
     void searchProductsResponse_shouldReturnOk() {
         when(productRepository.searchByMultipleFields("iphone")).thenReturn(List.of(sampleProduct));
@@ -193,7 +271,8 @@ class ProductServiceTest {
     void updateProductResponse_shouldUpdateImageIfProvided() {
         when(productRepository.findById("1")).thenReturn(Optional.of(sampleProduct));
         when(mockFile.isEmpty()).thenReturn(false);
-        when(fileStorageService.store(mockFile)).thenReturn("/images/new.png");
+        when(fileStorageService.storeImage(mockFile))
+                .thenReturn(new FileStorageService.StoredImage("/images/new.png", 10, "abc"));
         when(productRepository.save(any(Product.class))).thenReturn(sampleProduct);
 
         ResponseEntity<?> response = productService.updateProductResponse("1", sampleProduct, mockFile);
@@ -201,6 +280,23 @@ class ProductServiceTest {
         verify(fileStorageService).delete("/images/old.png");
     }
 
+    @Test
+    void updateProductResponse_shouldReturnConflictWhenRenamedOntoExistingProduct() {
+        when(productRepository.findById("1")).thenReturn(Optional.of(sampleProduct));
+        when(mockFile.isEmpty()).thenReturn(false);
+        when(fileStorageService.storeImage(mockFile))
+                .thenReturn(new FileStorageService.StoredImage("/images/new.png", 10, "abc"));
+        when(productRepository.save(any(Product.class))).thenThrow(new DuplicateKeyException("dedupeKey"));
+
+        ResponseEntity<?> response = productService.updateProductResponse("1", sampleProduct, mockFile);
+
+        assertEquals(409, response.getStatusCode().value());
+        // the stored product keeps its old image
+        verify(fileStorageService).delete("/images/new.png");
+        verify(fileStorageService, never()).delete("/images/old.png");
+        verifyNoInteractions(productChangeNotifier);
+    }
+
     @Test
     void updateProductResponse_shouldReturnNotFound() {
         when(productRepository.findById("1")).thenReturn(Optional.empty());
@@ -214,6 +310,7 @@ class ProductServiceTest {
         ResponseEntity<?> response = productService.deleteProductResponse("1");
         assertEquals(204, response.getStatusCode().value());
         verify(productRepository).deleteById("1");
+        verify(productChangeNotifier).productChanged("1");
     }
 
     @Test
@@ -223,19 +320,97 @@ class ProductServiceTest {
         assertEquals(404, response.getStatusCode().value());
     }
 
+    @Test
+    void getProductsByIdsResponse_shouldLoadAllIdsInOneQuery() {
+        when(productRepository.findAllById(any())).thenReturn(List.of(sampleProduct));
+
+        ResponseEntity<?> response = productService.getProductsByIdsResponse(List.of("1", "2", "1"));
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(List.of(sampleProduct), response.getBody());
+        verify(productRepository).findAllById(new LinkedHashSet<>(List.of("1", "2")));
+    }
+
+    @Test
+    void getProductsByIdsResponse_shouldRejectTooManyIds() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 101; i++) ids.add(String.valueOf(i));
+
+        assertEquals(400, productService.getProductsByIdsResponse(ids).getStatusCode().value());
+        verifyNoInteractions(productRepository);
+    }
+
     @Test
     void updateStockResponse_shouldUpdateMerchantStock() {
-        when(productRepository.findById("1")).thenReturn(Optional.of(sampleProduct));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Product.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Map<String, Object> req = Map.of("productId", "1", "merchantId", 101, "quantity", 5);
+
+        ResponseEntity<?> response = productService.updateStockResponse(req, "outbox-7");
+
+        assertEquals(200, response.getStatusCode().value());
+        verify(productChangeNotifier).productChanged("1");
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(Product.class));
+        // one conditional update: skipped if the key was applied, the key recorded with the decrement
+        Document filter = query.getValue().getQueryObject();
+        assertEquals(new Document("$ne", "outbox-7"), filter.get("stockUpdates"));
+        assertEquals(new Document("$elemMatch", new Document("merchant_id", 101).append("stock", new Document("$gte", 5))),
+                filter.get("merchants"));
+        Document changes = update.getValue().getUpdateObject();
+        assertEquals(new Document("merchants.$.stock", -5), changes.get("$inc"));
+        assertTrue(changes.get("$push", Document.class).containsKey("stockUpdates"));
+    }
+
+    @Test
+    void updateStockResponse_shouldZeroStockWhenQuantityExceedsIt() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Product.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Map<String, Object> req = Map.of("productId", "1", "merchantId", 101, "quantity", 80);
+
+        assertEquals(200, productService.updateStockResponse(req, "outbox-7").getStatusCode().value());
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), update.capture(), eq(Product.class));
+        assertEquals(new Document("merchants.$.stock", 0), update.getValue().getUpdateObject().get("$set"));
+    }
+
+    @Test
+    void updateStockResponse_shouldAcknowledgeRetryWithoutDecrementingAgain() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Product.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        sampleProduct.setStockUpdates(List.of("outbox-6", "outbox-7"));
+        when(mongoTemplate.findById("1", Product.class)).thenReturn(sampleProduct);
         Map<String, Object> req = Map.of("productId", "1", "merchantId", 101, "quantity", 5);
-        ResponseEntity<?> response = productService.updateStockResponse(req);
+
+        ResponseEntity<?> response = productService.updateStockResponse(req, "outbox-7");
+
         assertEquals(200, response.getStatusCode().value());
+        assertEquals(50, merchant.getStock());
+        verifyNoInteractions(productChangeNotifier);
+    }
+
+    @Test
+    void updateStockResponse_shouldNotRecordKeyWithoutOne() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Product.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Map<String, Object> req = Map.of("productId", "1", "merchantId", 101, "quantity", 5);
+
+        assertEquals(200, productService.updateStockResponse(req, null).getStatusCode().value());
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(Product.class));
+        assertNull(update.getValue().getUpdateObject().get("$push"));
     }
 
     @Test
     void updateStockResponse_shouldReturnNotFoundIfProductMissing() {
-        when(productRepository.findById("1")).thenReturn(Optional.empty());
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Product.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
         Map<String, Object> req = Map.of("productId", "1", "merchantId", 101, "quantity", 5);
-        ResponseEntity<?> response = productService.updateStockResponse(req);
+        ResponseEntity<?> response = productService.updateStockResponse(req, "outbox-7");
         assertEquals(404, response.getStatusCode().value());
     }
 
@@ -245,17 +420,19 @@ class ProductServiceTest {
         m.setMerchant_id(999);
         sampleProduct.setMerchants(List.of(m));
 
-        when(productRepository.findById("1")).thenReturn(Optional.of(sampleProduct));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Product.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(mongoTemplate.findById("1", Product.class)).thenReturn(sampleProduct);
         Map<String, Object> req = Map.of("productId", "1", "merchantId", 101, "quantity", 5);
 
-        ResponseEntity<?> response = productService.updateStockResponse(req);
+        ResponseEntity<?> response = productService.updateStockResponse(req, "outbox-7");
         assertEquals(404, response.getStatusCode().value());
     }
 
     @Test
     void updateStockResponse_shouldReturnErrorOnException() {
         Map<String, Object> req = Map.of("productId", "1", "merchantId", "invalid", "quantity", 5);
-        ResponseEntity<?> response = productService.updateStockResponse(req);
+        ResponseEntity<?> response = productService.updateStockResponse(req, "outbox-7");
         assertEquals(500, response.getStatusCode().value());
     }
 }
@@ -0,0 +1,134 @@
+package com.ecommerce.product_services.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputSanitizerTest {
+
+    // The regex implementation InputSanitizer replaced; outputs must not change
+    private static final Pattern REGEX_SPECIAL_CHARS = Pattern.compile("[.^$*+?()\\[\\]{}|\\\\]");
+    private static final Pattern NOSQL_INJECTION_PATTERN = Pattern.compile(".*[{}$\\[\\]].*");
+
+    // Letters, whitespace, every special character, non-ASCII letters, surrogate halves and line separators
+    private static final String ALPHABET = "aZ09 \t\n\u000B\f\r.^$*+?()[]{}|\\'\",!&-#@%_~éßЖ中😀\u0085\u2028\u2029";
+
+    @Test
+    void shouldMatchRegexImplementationOnRandomInput() {
+        Random random = new Random(42);
+        for (int n = 0; n < 20_000; n++) {
+            String input = randomInput(random);
+
+            assertEquals(oldSanitizeForRegex(input), InputSanitizer.sanitizeForRegex(input), input);
+            assertEquals(oldSanitizeCategory(input), InputSanitizer.sanitizeCategory(input), input);
+            assertEquals(oldSanitizeProductName(input), InputSanitizer.sanitizeProductName(input), input);
+            if (input.chars().noneMatch(InputSanitizerTest::isLineTerminator)) {
+                assertEquals(oldIsValidInput(input), InputSanitizer.isValidInput(input), input);
+            }
+        }
+    }
+
+    @Test
+    void shouldHandleNullAndEmptyInput() {
+        assertEquals("", InputSanitizer.sanitizeForRegex(null));
+        assertEquals("", InputSanitizer.sanitizeForRegex(""));
+        assertEquals("", InputSanitizer.sanitizeCategory(null));
+        assertEquals("", InputSanitizer.sanitizeProductName(null));
+        assertTrue(InputSanitizer.isValidInput(null));
+        assertTrue(InputSanitizer.isValidInput(""));
+    }
+
+    @Test
+    void sanitizeForRegex_shouldReturnCleanInputItself() {
+        String input = "samsung galaxy";
+
+        assertSame(input, InputSanitizer.sanitizeForRegex(input));
+    }
+
+    @Test
+    void sanitizeForRegex_shouldTrimLimitAndEscape() {
+        assertEquals("a\\.b\\*", InputSanitizer.sanitizeForRegex("  a.b*  "));
+        assertEquals("x".repeat(100), InputSanitizer.sanitizeForRegex("x".repeat(150)));
+    }
+
+    @Test
+    void isValidInput_shouldRejectOperatorCharacters() {
+        assertTrue(InputSanitizer.isValidInput("iphone 15 (128 GB)"));
+        assertFalse(InputSanitizer.isValidInput("{\"$gt\": \"\"}"));
+        assertFalse(InputSanitizer.isValidInput("price[$ne]=1"));
+        assertFalse(InputSanitizer.isValidInput("$where"));
+        assertFalse(InputSanitizer.isValidInput("phone]"));
+    }
+
+    @Test
+    void isValidInput_shouldRejectOperatorCharactersAfterLineBreak() {
+        // ".*" stopped at line terminators, so the regex version let these through
+        assertTrue(oldIsValidInput("phone\n{$gt: 1}"));
+
+        assertFalse(InputSanitizer.isValidInput("phone\n{$gt: 1}"));
+        assertFalse(InputSanitizer.isValidInput("phone\r\n$where"));
+        assertFalse(InputSanitizer.isValidInput("phone [0]"));
+    }
+
+    @Test
+    void sanitizeCategory_shouldKeepAllowedCharactersAndLimitLength() {
+        assertEquals("Home & Kitchen", InputSanitizer.sanitizeCategory(" Home & Kitchen; "));
+        assertEquals("a".repeat(50), InputSanitizer.sanitizeCategory("#" + "a".repeat(60)));
+    }
+
+    @Test
+    void sanitizeProductName_shouldKeepCommonPunctuation() {
+        assertEquals("Levi's 501 (Blue), \"Slim\"!", InputSanitizer.sanitizeProductName("Levi's 501 (Blue), \"Slim\"!"));
+        assertEquals("Caf Crme", InputSanitizer.sanitizeProductName("Café Crème"));
+    }
+
+    private static String randomInput(Random random) {
+        int length = random.nextInt(5) == 0 ? 90 + random.nextInt(150) : random.nextInt(20);
+        StringBuilder input = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // mostly plain letters, like real queries
+            input.append(random.nextInt(3) == 0
+                    ? ALPHABET.charAt(random.nextInt(ALPHABET.length()))
+                    : (char) ('a' + random.nextInt(26)));
+        }
+        return input.toString();
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static String oldSanitizeForRegex(String input) {
+        if (input == null || input.isEmpty()) {
+            return "";
+        }
+        String sanitized = input.trim();
+        if (sanitized.length() > 100) {
+            sanitized = sanitized.substring(0, 100);
+        }
+        return REGEX_SPECIAL_CHARS.matcher(sanitized).replaceAll("\\\\$0");
+    }
+
+    private static boolean oldIsValidInput(String input) {
+        return input == null || !NOSQL_INJECTION_PATTERN.matcher(input).matches();
+    }
+
+    private static String oldSanitizeCategory(String category) {
+        if (category == null || category.isEmpty()) {
+            return "";
+        }
+        String sanitized = category.trim().replaceAll("[^a-zA-Z0-9\\s&-]", "");
+        return sanitized.length() > 50 ? sanitized.substring(0, 50) : sanitized;
+    }
+
+    private static String oldSanitizeProductName(String name) {
+        if (name == null || name.isEmpty()) {
+            return "";
+        }
+        String sanitized = name.trim().replaceAll("[^a-zA-Z0-9\\s'\".,!&()-]", "");
+        return sanitized.length() > 200 ? sanitized.substring(0, 200) : sanitized;
+    }
+}
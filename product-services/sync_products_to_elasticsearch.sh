@@ -36,6 +36,19 @@ for p in products:
         ]
     }
     
+    # Best-offer summary used by search filters and sorting
+    prices = [m['price'] for m in es_product['merchants'] if m.get('price') is not None]
+    es_product['minPrice'] = min(prices) if prices else es_product['price']
+    es_product['maxPrice'] = max(prices) if prices else es_product['price']
+    es_product['inStock'] = any((m.get('stock') or 0) > 0 for m in es_product['merchants'])
+    es_product['offerCount'] = len(prices)
+
+    # Type-ahead inputs for /products/suggest
+    es_product['suggest'] = {
+        'input': [p['name'], f"{p['brand']} {p['name']}"] if p.get('brand') else [p['name']],
+        'weight': max(1, len(prices))
+    }
+
     # Index to Elasticsearch
     url = f'http://localhost:9200/products_final/_doc/{product_id}'
     data = json.dumps(es_product).encode('utf-8')
@@ -50,3 +63,5 @@ for p in products:
 print('\n✅ All products synced to Elasticsearch!')
 EOF
 
+# Documents were written straight to Elasticsearch, so tell the search service to drop cached results
+curl -s -X POST http://localhost:8090/products/cache/invalidate > /dev/null
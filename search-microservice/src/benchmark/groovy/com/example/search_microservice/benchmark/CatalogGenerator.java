@@ -0,0 +1,121 @@
+package com.example.search_microservice.benchmark;
+
+import java.util.*;
+
+/**
+ * Deterministic synthetic catalog. Every product is "<adjective> <noun> <model>"
+ * from a fixed brand in one of the catalog categories, so relevance can be
+ * judged from the generation rules alone. Products are produced lazily, so
+ * catalogs of millions of products never sit in memory at once.
+ */
+public class CatalogGenerator {
+
+    // same list as Product.VALID_CATEGORIES in product-services
+    static final List<String> CATEGORIES = List.of(
+            "Electronics",
+            "Fashion",
+            "Home & Kitchen",
+            "Beauty & Personal Care",
+            "Sports & Outdoors",
+            "Books & Stationery",
+            "Toys & Baby Products"
+    );
+
+    static final Map<String, List<String>> NOUNS = Map.of(
+            "Electronics", List.of("smartphone", "laptop", "headphones", "television", "smartwatch", "tablet", "camera", "speaker", "monitor", "router"),
+            "Fashion", List.of("t-shirt", "jeans", "sneakers", "jacket", "dress", "hoodie", "sunglasses", "backpack", "wallet", "watch"),
+            "Home & Kitchen", List.of("mixer", "cookware", "refrigerator", "sofa", "lamp", "kettle", "blender", "mattress", "vacuum", "curtains"),
+            "Beauty & Personal Care", List.of("shampoo", "moisturizer", "perfume", "trimmer", "lipstick", "sunscreen", "serum", "hairdryer", "cleanser", "toothbrush"),
+            "Sports & Outdoors", List.of("football", "treadmill", "dumbbells", "tent", "bicycle", "racket", "yoga mat", "helmet", "bottle", "gloves"),
+            "Books & Stationery", List.of("notebook", "novel", "pen", "planner", "dictionary", "textbook", "diary", "markers", "calculator", "atlas"),
+            "Toys & Baby Products", List.of("puzzle", "doll", "stroller", "blocks", "teddy bear", "rattle", "car seat", "crib", "board game", "kite")
+    );
+
+    static final Map<String, List<String>> BRANDS = Map.of(
+            "Electronics", List.of("Samsung", "Apple", "Sony", "Lenovo", "Boat", "Dell", "Xiaomi", "Canon"),
+            "Fashion", List.of("Nike", "Levis", "Adidas", "Puma", "Zara", "Fossil", "Wildcraft", "Allen Solly"),
+            "Home & Kitchen", List.of("Prestige", "Philips", "Ikea", "Bajaj", "Havells", "Pigeon", "Wakefit", "Eureka"),
+            "Beauty & Personal Care", List.of("Lakme", "Nivea", "Dove", "Loreal", "Mamaearth", "Braun", "Biotique", "Colgate"),
+            "Sports & Outdoors", List.of("Decathlon", "Yonex", "Cosco", "Nivia", "Hero", "Quechua", "Spalding", "Milton"),
+            "Books & Stationery", List.of("Penguin", "Classmate", "Parker", "Oxford", "Faber-Castell", "Casio", "Camlin", "Harper"),
+            "Toys & Baby Products", List.of("Lego", "Hasbro", "Mattel", "Funskool", "Chicco", "Fisher-Price", "Hamleys", "Luvlap")
+    );
+
+    static final List<String> ADJECTIVES = List.of(
+            "Classic", "Premium", "Wireless", "Compact", "Ultra", "Smart", "Eco", "Deluxe", "Pro", "Lite", "Portable", "Vintage");
+
+    private static final double[] BASE_PRICE = {25000, 1500, 4000, 600, 3000, 400, 1200};
+
+    public record SyntheticProduct(String productId, String name, String brand, String category, String noun,
+                                   String description, double price, List<Map<String, Object>> merchants) {
+    }
+
+    private final long seed;
+
+    public CatalogGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public Iterator<SyntheticProduct> products(long count) {
+        return new Iterator<>() {
+            private long next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public SyntheticProduct next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return product(next++);
+            }
+        };
+    }
+
+    // Product i depends only on (seed, i), so any slice can be regenerated
+    SyntheticProduct product(long i) {
+        Random random = new Random(seed * 31 + i);
+        int c = random.nextInt(CATEGORIES.size());
+        String category = CATEGORIES.get(c);
+        String noun = pick(random, NOUNS.get(category));
+        String brand = pick(random, BRANDS.get(category));
+        String adjective = pick(random, ADJECTIVES);
+        String model = (char) ('A' + random.nextInt(26)) + String.valueOf(100 + random.nextInt(900));
+        String name = adjective + " " + capitalize(noun) + " " + model;
+
+        double price = Math.round(BASE_PRICE[c] * (0.2 + random.nextDouble() * 3) * 100) / 100.0;
+        int offers = 1 + random.nextInt(3);
+        List<Map<String, Object>> merchants = new ArrayList<>();
+        for (int m = 0; m < offers; m++) {
+            merchants.add(Map.of(
+                    "merchantId", 1 + random.nextInt(50),
+                    "name", "Merchant " + (1 + random.nextInt(50)),
+                    "price", Math.round(price * (0.9 + random.nextDouble() * 0.2) * 100) / 100.0,
+                    // roughly one offer in six is out of stock
+                    "stock", random.nextInt(6) == 0 ? 0 : 1 + random.nextInt(100),
+                    "discount", 0));
+        }
+
+        String description = adjective.toLowerCase(Locale.ROOT) + " " + noun + " by " + brand
+                + " for everyday use, model " + model;
+        return new SyntheticProduct(String.format("bench-%09d", i), name, brand, category, noun, description, price, merchants);
+    }
+
+    private static String pick(Random random, List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static String capitalize(String noun) {
+        StringBuilder out = new StringBuilder();
+        for (String word : noun.split(" ")) {
+            if (!out.isEmpty()) {
+                out.append(' ');
+            }
+            out.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.search_microservice.benchmark;
+
+import com.example.search_microservice.benchmark.QueryLog.LoggedQuery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Graded relevance (0-3) of a hit for a query, and nDCG@k over a ranked result list.
+ * Synthetic judgments follow from the catalog generation rules; labeled judgments
+ * come from a TSV file of {@code query<TAB>productId<TAB>grade} lines.
+ */
+public abstract class Judgments {
+
+    public record Hit(String productId, String name, String brand, String category) {
+    }
+
+    /**
+     * Grade of one hit, or -1 when the query is not judged.
+     */
+    abstract int grade(LoggedQuery query, Hit hit);
+
+    /**
+     * Best possible grades for the query in descending order (at least k of them, or all there are).
+     */
+    abstract List<Integer> ideal(LoggedQuery query, int k);
+
+    /**
+     * nDCG@k of the ranked hits, or NaN when the query is not judged or nothing is relevant.
+     */
+    public double ndcg(LoggedQuery query, List<Hit> hits, int k) {
+        List<Integer> ideal = ideal(query, k);
+        if (ideal == null) {
+            return Double.NaN;
+        }
+        double idcg = dcg(ideal, k);
+        if (idcg == 0) {
+            return Double.NaN;
+        }
+        List<Integer> grades = new ArrayList<>();
+        for (Hit hit : hits) {
+            grades.add(Math.max(0, grade(query, hit)));
+        }
+        return dcg(grades, k) / idcg;
+    }
+
+    private static double dcg(List<Integer> grades, int k) {
+        double dcg = 0;
+        for (int i = 0; i < Math.min(k, grades.size()); i++) {
+            dcg += (Math.pow(2, grades.get(i)) - 1) / (Math.log(i + 2) / Math.log(2));
+        }
+        return dcg;
+    }
+
+    public static Judgments synthetic(CatalogGenerator catalog, long products) {
+        return new Synthetic(catalog, products);
+    }
+
+    public static Judgments fromFile(Path path) throws IOException {
+        Map<String, Map<String, Integer>> labels = new HashMap<>();
+        for (String line : Files.readAllLines(path)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\t");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected query<TAB>productId<TAB>grade: " + line);
+            }
+            labels.computeIfAbsent(parts[0].trim(), q -> new HashMap<>())
+                    .put(parts[1].trim(), Integer.parseInt(parts[2].trim()));
+        }
+        return new Labeled(labels);
+    }
+
+    private static class Labeled extends Judgments {
+
+        private final Map<String, Map<String, Integer>> labels;
+
+        Labeled(Map<String, Map<String, Integer>> labels) {
+            this.labels = labels;
+        }
+
+        @Override
+        int grade(LoggedQuery query, Hit hit) {
+            Map<String, Integer> forQuery = labels.get(query.text());
+            return forQuery == null ? -1 : forQuery.getOrDefault(hit.productId(), 0);
+        }
+
+        @Override
+        List<Integer> ideal(LoggedQuery query, int k) {
+            Map<String, Integer> forQuery = labels.get(query.text());
+            if (forQuery == null) {
+                return null;
+            }
+            return forQuery.values().stream().sorted(Comparator.reverseOrder()).limit(k).toList();
+        }
+    }
+
+    /**
+     * Exact brand + term match is 3, the right kind of product is 2,
+     * the right kind from another brand or style is 1, anything else 0.
+     */
+    private static class Synthetic extends Judgments {
+
+        // how many catalog products carry each noun, brand|noun, adjective|noun, brand and category
+        private final Map<String, Long> counts = new HashMap<>();
+
+        Synthetic(CatalogGenerator catalog, long products) {
+            Iterator<CatalogGenerator.SyntheticProduct> it = catalog.products(products);
+            while (it.hasNext()) {
+                CatalogGenerator.SyntheticProduct p = it.next();
+                String adjective = p.name().substring(0, p.name().indexOf(' '));
+                for (String key : List.of("n:" + p.noun(), "bn:" + p.brand() + "|" + p.noun(),
+                        "an:" + adjective + "|" + p.noun(), "b:" + p.brand(), "c:" + p.category())) {
+                    counts.merge(key, 1L, Long::sum);
+                }
+            }
+        }
+
+        @Override
+        int grade(LoggedQuery query, Hit hit) {
+            if (query.intent() == null) {
+                return -1;
+            }
+            String[] words = hit.name() == null ? new String[0] : hit.name().split(" ");
+            if (words.length < 3) {
+                return 0;
+            }
+            String adjective = words[0];
+            String noun = String.join(" ", Arrays.copyOfRange(words, 1, words.length - 1)).toLowerCase(Locale.ROOT);
+            boolean nounMatch = noun.equals(query.noun());
+
+            return switch (query.intent()) {
+                case BRAND_NOUN -> nounMatch ? (query.brand().equals(hit.brand()) ? 3 : 1) : 0;
+                case ADJECTIVE_NOUN -> nounMatch ? (query.adjective().equals(adjective) ? 3 : 1) : 0;
+                case NOUN, TYPO -> nounMatch ? 2 : 0;
+                case BRAND -> query.brand().equals(hit.brand()) ? 2 : 0;
+                case CATEGORY -> query.category().equals(hit.category()) ? 1 : 0;
+            };
+        }
+
+        @Override
+        List<Integer> ideal(LoggedQuery query, int k) {
+            if (query.intent() == null) {
+                return null;
+            }
+            List<Integer> ideal = new ArrayList<>();
+            switch (query.intent()) {
+                case BRAND_NOUN -> {
+                    long exact = count("bn:" + query.brand() + "|" + query.noun());
+                    fill(ideal, 3, exact, k);
+                    fill(ideal, 1, count("n:" + query.noun()) - exact, k);
+                }
+                case ADJECTIVE_NOUN -> {
+                    long exact = count("an:" + query.adjective() + "|" + query.noun());
+                    fill(ideal, 3, exact, k);
+                    fill(ideal, 1, count("n:" + query.noun()) - exact, k);
+                }
+                case NOUN, TYPO -> fill(ideal, 2, count("n:" + query.noun()), k);
+                case BRAND -> fill(ideal, 2, count("b:" + query.brand()), k);
+                case CATEGORY -> fill(ideal, 1, count("c:" + query.category()), k);
+            }
+            return ideal;
+        }
+
+        private long count(String key) {
+            return counts.getOrDefault(key, 0L);
+        }
+
+        private static void fill(List<Integer> ideal, int grade, long available, int k) {
+            for (long i = 0; i < available && ideal.size() < k; i++) {
+                ideal.add(grade);
+            }
+        }
+    }
+}
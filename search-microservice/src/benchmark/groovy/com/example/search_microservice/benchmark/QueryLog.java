@@ -0,0 +1,110 @@
+package com.example.search_microservice.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Query logs to replay. Synthetic logs draw from the catalog vocabulary
+ * (brand + noun, adjective + noun, noun, misspelled noun, brand, category)
+ * with Zipf-distributed popularity: a short head of very frequent queries
+ * and a long tail seen once or twice, like a real search log.
+ */
+public class QueryLog {
+
+    public enum Intent { BRAND_NOUN, ADJECTIVE_NOUN, NOUN, TYPO, BRAND, CATEGORY }
+
+    /**
+     * One query; intent and the catalog terms behind it are null for queries read from a file.
+     */
+    public record LoggedQuery(String text, Intent intent, String brand, String adjective, String noun, String category) {
+
+        static LoggedQuery plain(String text) {
+            return new LoggedQuery(text, null, null, null, null, null);
+        }
+    }
+
+    public static List<LoggedQuery> generate(long seed, int count, double zipfExponent) {
+        Random random = new Random(seed);
+        List<LoggedQuery> vocabulary = vocabulary(random);
+
+        // cumulative Zipf weights over popularity rank
+        double[] cumulative = new double[vocabulary.size()];
+        double sum = 0;
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            sum += 1 / Math.pow(rank + 1, zipfExponent);
+            cumulative[rank] = sum;
+        }
+
+        List<LoggedQuery> log = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            log.add(vocabulary.get(rank >= 0 ? rank : Math.min(-rank - 1, cumulative.length - 1)));
+        }
+        return log;
+    }
+
+    // One query per line; blank lines and lines starting with # are skipped
+    public static List<LoggedQuery> read(Path path) throws IOException {
+        return Files.readAllLines(path).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(LoggedQuery::plain)
+                .toList();
+    }
+
+    private static List<LoggedQuery> vocabulary(Random random) {
+        List<LoggedQuery> vocabulary = new ArrayList<>();
+        for (String category : CatalogGenerator.CATEGORIES) {
+            vocabulary.add(new LoggedQuery(category.toLowerCase(Locale.ROOT), Intent.CATEGORY, null, null, null, category));
+            for (String brand : CatalogGenerator.BRANDS.get(category)) {
+                vocabulary.add(new LoggedQuery(brand.toLowerCase(Locale.ROOT), Intent.BRAND, brand, null, null, category));
+            }
+            for (String noun : CatalogGenerator.NOUNS.get(category)) {
+                vocabulary.add(new LoggedQuery(noun, Intent.NOUN, null, null, noun, category));
+                if (noun.length() >= 5) {
+                    vocabulary.add(new LoggedQuery(misspell(random, noun), Intent.TYPO, null, null, noun, category));
+                }
+                for (String brand : CatalogGenerator.BRANDS.get(category)) {
+                    vocabulary.add(new LoggedQuery(brand.toLowerCase(Locale.ROOT) + " " + noun, Intent.BRAND_NOUN,
+                            brand, null, noun, category));
+                }
+                for (String adjective : CatalogGenerator.ADJECTIVES) {
+                    vocabulary.add(new LoggedQuery(adjective.toLowerCase(Locale.ROOT) + " " + noun, Intent.ADJECTIVE_NOUN,
+                            null, adjective, noun, category));
+                }
+            }
+        }
+        // popularity rank is random, but the broad single-term queries lead the head
+        Collections.shuffle(vocabulary, random);
+        vocabulary.sort(Comparator.comparingInt(q -> q.text().split(" ").length));
+        return vocabulary;
+    }
+
+    // One edit after the first character: deletion, transposition or substitution; never the word itself
+    private static String misspell(Random random, String word) {
+        char[] chars = word.toCharArray();
+        int at = 1 + random.nextInt(chars.length - 2);
+        int edit = random.nextInt(3);
+        if (edit == 1 && chars[at] == chars[at + 1]) {
+            edit = 0;
+        }
+        switch (edit) {
+            case 0:
+                return word.substring(0, at) + word.substring(at + 1);
+            case 1:
+                char c = chars[at];
+                chars[at] = chars[at + 1];
+                chars[at + 1] = c;
+                return new String(chars);
+            default:
+                char substitute;
+                do {
+                    substitute = (char) ('a' + random.nextInt(26));
+                } while (substitute == chars[at]);
+                chars[at] = substitute;
+                return new String(chars);
+        }
+    }
+}
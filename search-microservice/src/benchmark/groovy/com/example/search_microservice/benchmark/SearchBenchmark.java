@@ -0,0 +1,290 @@
+package com.example.search_microservice.benchmark;
+
+import com.example.search_microservice.benchmark.Judgments.Hit;
+import com.example.search_microservice.benchmark.QueryLog.LoggedQuery;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Relevance and latency benchmark for a running search-microservice.
+ * <p>
+ * Generates (and with {@code --load} indexes) a synthetic catalog, replays a
+ * Zipf-distributed query log with a fixed number of concurrent clients and
+ * reports latency percentiles, throughput and nDCG@10. Run it before and
+ * after a search change with the same seed and compare the reports:
+ * <pre>
+ * ./gradlew benchmark -PbenchmarkArgs="--products=100000 --load --queries=20000 --concurrency=16 --out=build/benchmark/before.json"
+ * </pre>
+ * Options (all {@code --name=value}):
+ * base-url (http://localhost:8090), products (10000), load (off), batch (1000),
+ * queries (10000), warmup (1000), concurrency (8), zipf (1.07), seed (42),
+ * mode (advanced | simple), query-log (file, one query per line),
+ * judgments (TSV query, productId, grade), out (JSON report path).
+ * <p>
+ * Synthetic judgments assume the index holds exactly the generated catalog
+ * of {@code products} items; use a labeled judgments file otherwise.
+ */
+public class SearchBenchmark {
+
+    private static final int K = 10;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, String> options;
+    private final String baseUrl;
+    private final HttpClient http;
+
+    private SearchBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.baseUrl = option("base-url", "http://localhost:8090");
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        new SearchBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        long seed = Long.parseLong(option("seed", "42"));
+        long products = Long.parseLong(option("products", "10000"));
+        int concurrency = Integer.parseInt(option("concurrency", "8"));
+        boolean advanced = !"simple".equals(option("mode", "advanced"));
+        CatalogGenerator catalog = new CatalogGenerator(seed);
+
+        if (Boolean.parseBoolean(option("load", "false"))) {
+            load(catalog, products, Integer.parseInt(option("batch", "1000")));
+        }
+
+        List<LoggedQuery> log = options.containsKey("query-log")
+                ? QueryLog.read(Path.of(options.get("query-log")))
+                : QueryLog.generate(seed, Integer.parseInt(option("queries", "10000")),
+                Double.parseDouble(option("zipf", "1.07")));
+        Judgments judgments = options.containsKey("judgments")
+                ? Judgments.fromFile(Path.of(options.get("judgments")))
+                : Judgments.synthetic(catalog, products);
+
+        // start from a cold result cache so runs are comparable
+        send(HttpRequest.newBuilder(URI.create(baseUrl + "/products/cache/invalidate"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build());
+
+        int warmup = Math.min(log.size(), Integer.parseInt(option("warmup", "1000")));
+        replay(log.subList(0, warmup), concurrency, advanced, null, null);
+
+        long[] latencies = new long[log.size()];
+        Map<String, List<Hit>> firstResults = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        int errors = replay(log, concurrency, advanced, latencies, firstResults);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(log, latencies, errors, seconds, concurrency, advanced, firstResults, judgments);
+    }
+
+    private void load(CatalogGenerator catalog, long products, int batchSize) throws IOException, InterruptedException {
+        Iterator<CatalogGenerator.SyntheticProduct> it = catalog.products(products);
+        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+        long loaded = 0;
+        long start = System.nanoTime();
+        while (it.hasNext()) {
+            CatalogGenerator.SyntheticProduct p = it.next();
+            Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("productId", p.productId());
+            doc.put("name", p.name());
+            doc.put("category", p.category());
+            doc.put("brand", p.brand());
+            doc.put("description", p.description());
+            doc.put("imageUrl", "");
+            doc.put("price", p.price());
+            doc.put("merchants", p.merchants());
+            batch.add(doc);
+
+            if (batch.size() == batchSize || !it.hasNext()) {
+                HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/products/addAll"))
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofMinutes(5))
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(batch)))
+                        .build());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Loading failed with " + response.statusCode() + ": " + response.body());
+                }
+                loaded += batch.size();
+                batch.clear();
+                if (loaded % 100_000 == 0 || !it.hasNext()) {
+                    System.out.printf("Loaded %d / %d products (%.0f docs/s)%n",
+                            loaded, products, loaded / ((System.nanoTime() - start) / 1e9));
+                }
+            }
+        }
+    }
+
+    // Replays the log with a fixed pool of clients; returns the number of failed requests
+    private int replay(List<LoggedQuery> log, int concurrency, boolean advanced,
+                       long[] latencies, Map<String, List<Hit>> firstResults) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        for (int c = 0; c < concurrency; c++) {
+            clients.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < log.size()) {
+                    LoggedQuery query = log.get(i);
+                    long started = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = send(searchRequest(query.text(), advanced));
+                        if (latencies != null) {
+                            latencies[i] = System.nanoTime() - started;
+                        }
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        } else if (firstResults != null && !firstResults.containsKey(query.text())) {
+                            firstResults.putIfAbsent(query.text(), hits(response.body(), advanced));
+                        }
+                    } catch (Exception e) {
+                        if (latencies != null) {
+                            latencies[i] = System.nanoTime() - started;
+                        }
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.DAYS);
+        return errors.get();
+    }
+
+    private HttpRequest searchRequest(String query, boolean advanced) throws IOException {
+        if (!advanced) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/products/search?q="
+                    + URLEncoder.encode(query, StandardCharsets.UTF_8))).timeout(Duration.ofSeconds(30)).GET().build();
+        }
+        byte[] body = MAPPER.writeValueAsBytes(Map.of("query", query, "size", K, "sortBy", "relevance"));
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/products/advanced-search"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static List<Hit> hits(String body, boolean advanced) throws IOException {
+        JsonNode root = MAPPER.readTree(body);
+        JsonNode products = advanced ? root.path("products") : root;
+        List<Hit> hits = new ArrayList<>();
+        for (JsonNode p : products) {
+            if (hits.size() == K) {
+                break;
+            }
+            hits.add(new Hit(p.path("productId").asText(null), p.path("name").asText(null),
+                    p.path("brand").asText(null), p.path("category").asText(null)));
+        }
+        return hits;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void report(List<LoggedQuery> log, long[] latencies, int errors, double seconds, int concurrency,
+                        boolean advanced, Map<String, List<Hit>> firstResults, Judgments judgments) throws IOException {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0) / 1e6;
+
+        // nDCG per distinct query, and weighted by how often each query appears in the log
+        Map<String, LoggedQuery> distinct = new LinkedHashMap<>();
+        Map<String, Integer> frequency = new HashMap<>();
+        for (LoggedQuery q : log) {
+            distinct.putIfAbsent(q.text(), q);
+            frequency.merge(q.text(), 1, Integer::sum);
+        }
+        double ndcgSum = 0;
+        double weightedSum = 0;
+        long weight = 0;
+        int judged = 0;
+        int zeroResults = 0;
+        for (LoggedQuery q : distinct.values()) {
+            List<Hit> hits = firstResults.get(q.text());
+            if (hits == null) {
+                continue;
+            }
+            if (hits.isEmpty()) {
+                zeroResults++;
+            }
+            double ndcg = judgments.ndcg(q, hits, K);
+            if (Double.isNaN(ndcg)) {
+                continue;
+            }
+            judged++;
+            ndcgSum += ndcg;
+            weightedSum += ndcg * frequency.get(q.text());
+            weight += frequency.get(q.text());
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", advanced ? "advanced" : "simple");
+        report.put("queries", log.size());
+        report.put("distinctQueries", distinct.size());
+        report.put("concurrency", concurrency);
+        report.put("errors", errors);
+        report.put("seconds", round(seconds));
+        report.put("throughputQps", round(log.size() / seconds));
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", round(mean));
+        latency.put("p50", percentile(sorted, 50));
+        latency.put("p90", percentile(sorted, 90));
+        latency.put("p99", percentile(sorted, 99));
+        latency.put("p999", percentile(sorted, 99.9));
+        latency.put("max", round(sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6));
+        report.put("latencyMs", latency);
+        report.put("zeroResultRate", round(distinct.isEmpty() ? 0 : (double) zeroResults / distinct.size()));
+        report.put("judgedQueries", judged);
+        report.put("ndcgAt10", round(judged == 0 ? 0 : ndcgSum / judged));
+        report.put("ndcgAt10LogWeighted", round(weight == 0 ? 0 : weightedSum / weight));
+
+        System.out.println(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        if (options.containsKey("out")) {
+            Path out = Path.of(options.get("out"));
+            if (out.getParent() != null) {
+                Files.createDirectories(out.getParent());
+            }
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+}
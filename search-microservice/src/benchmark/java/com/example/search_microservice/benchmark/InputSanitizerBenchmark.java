@@ -0,0 +1,73 @@
+package com.example.search_microservice.benchmark;
+
+import com.example.search_microservice.util.InputSanitizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Sanitizer cost per search request, against the regex implementation it
+ * replaced. With {@code ./gradlew jmh -PjmhArgs="InputSanitizerBenchmark -prof gc"}
+ * the {@code clean} inputs should report a gc.alloc.rate.norm of about 0 B/op
+ * for the current methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputSanitizerBenchmark {
+
+    private static final Pattern REGEX_SPECIAL_CHARS = Pattern.compile("[.^$*+?()\\[\\]{}|\\\\]");
+    private static final Pattern NOSQL_INJECTION_PATTERN = Pattern.compile(".*[{}$\\[\\]].*");
+
+    // clean: a typical typed query; special: one that needs escaping and filtering
+    @Param({"clean", "special"})
+    public String kind;
+
+    private String query;
+    private String category;
+
+    @Setup
+    public void setUp() {
+        query = kind.equals("clean") ? "samsung 55 inch smart tv" : "c++ (primer) 5th ed.";
+        category = kind.equals("clean") ? "Home & Kitchen" : "Home & Kitchen!";
+    }
+
+    @Benchmark
+    public String sanitizeForSearch() {
+        return InputSanitizer.sanitizeForSearch(query);
+    }
+
+    @Benchmark
+    public boolean isValidInput() {
+        return InputSanitizer.isValidInput(query);
+    }
+
+    @Benchmark
+    public String sanitizeCategory() {
+        return InputSanitizer.sanitizeCategory(category);
+    }
+
+    @Benchmark
+    public String regexSanitizeForSearch() {
+        String sanitized = query.trim();
+        if (sanitized.length() > 100) {
+            sanitized = sanitized.substring(0, 100);
+        }
+        return REGEX_SPECIAL_CHARS.matcher(sanitized).replaceAll("\\\\$0");
+    }
+
+    @Benchmark
+    public boolean regexIsValidInput() {
+        return !NOSQL_INJECTION_PATTERN.matcher(query).matches();
+    }
+
+    @Benchmark
+    public String regexSanitizeCategory() {
+        String sanitized = category.trim().replaceAll("[^a-zA-Z0-9\\s&-]", "");
+        return sanitized.length() > 50 ? sanitized.substring(0, 50) : sanitized;
+    }
+}
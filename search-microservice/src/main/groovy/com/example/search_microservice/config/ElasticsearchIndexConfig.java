@@ -0,0 +1,125 @@
+package com.example.search_microservice.config;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.add_block.IndicesBlockOptions;
+import com.example.search_microservice.model.Product;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves {@code products_final} as an alias over a versioned index built from {@link Product}.
+ * <p>
+ * Elasticsearch cannot change a field's analysis on a live index, so a mapping change that is
+ * not purely additive bumps {@link #MAPPING_VERSION}. On the next start the new index is
+ * created, the products are copied over with their offer summary and suggest inputs rebuilt,
+ * and the alias is moved in one atomic step; the old index is write-blocked while it is copied
+ * and dropped with the swap. This also migrates the pre-alias {@code products_final} index.
+ * Any failure stops startup instead of serving from a half-migrated index.
+ */
+@Configuration
+@ConditionalOnProperty(name = "search.backend", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchIndexConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchIndexConfig.class);
+
+    public static final String PRODUCT_ALIAS = "products_final";
+    static final int MAPPING_VERSION = 2;
+    static final String PRODUCT_INDEX = PRODUCT_ALIAS + "_v" + MAPPING_VERSION;
+
+    private static final int COPY_BATCH = 500;
+
+    @Autowired
+    private ElasticsearchOperations operations;
+
+    @Autowired
+    private ElasticsearchClient elasticsearchClient;
+
+    // Runs before the web server starts, so no request reads or writes the alias mid-migration
+    @PostConstruct
+    public void ensureIndex() {
+        IndexOperations aliasOps = operations.indexOps(IndexCoordinates.of(PRODUCT_ALIAS));
+        List<String> current = aliasOps.exists()
+                ? aliasOps.getInformation().stream().map(IndexInformation::getName).toList()
+                : List.of();
+
+        IndexOperations indexOps = operations.indexOps(IndexCoordinates.of(PRODUCT_INDEX));
+        if (current.equals(List.of(PRODUCT_INDEX))) {
+            try {
+                // same version: only new fields, which Elasticsearch adds in place
+                indexOps.putMapping(Product.class);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Product mapping changed incompatibly; bump ElasticsearchIndexConfig.MAPPING_VERSION to reindex", e);
+            }
+            return;
+        }
+
+        if (!indexOps.exists()) {
+            indexOps.create(indexOps.createSettings(Product.class), indexOps.createMapping(Product.class));
+        }
+        for (String source : current) {
+            copy(source);
+        }
+        swapAlias(current);
+        log.info("{} now serves {}, migrated from {}", PRODUCT_ALIAS, PRODUCT_INDEX, current);
+    }
+
+    private void copy(String source) {
+        try {
+            // writes still aimed at the old index fail instead of being lost with it
+            elasticsearchClient.indices().addBlock(b -> b.index(source).block(IndicesBlockOptions.Write));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        IndexCoordinates target = IndexCoordinates.of(PRODUCT_INDEX);
+        long copied = 0;
+        try (SearchHitsIterator<Product> hits = operations.searchForStream(Query.findAll(), Product.class, IndexCoordinates.of(source))) {
+            List<Product> batch = new ArrayList<>(COPY_BATCH);
+            while (hits.hasNext()) {
+                Product product = hits.next().getContent();
+                product.summarizeOffers();
+                product.buildSuggest();
+                batch.add(product);
+                if (batch.size() == COPY_BATCH) {
+                    operations.save(batch, target);
+                    copied += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                operations.save(batch, target);
+                copied += batch.size();
+            }
+        }
+        log.info("Copied {} products from {} to {}", copied, source, PRODUCT_INDEX);
+    }
+
+    private void swapAlias(List<String> previous) {
+        AliasActions actions = new AliasActions(new AliasAction.Add(AliasActionParameters.builder()
+                .withIndices(PRODUCT_INDEX)
+                .withAliases(PRODUCT_ALIAS)
+                .build()));
+        for (String index : previous) {
+            actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(index).build()));
+        }
+        operations.indexOps(IndexCoordinates.of(PRODUCT_INDEX)).alias(actions);
+    }
+}
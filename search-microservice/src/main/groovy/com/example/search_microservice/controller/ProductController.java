@@ -1,13 +1,19 @@
 package com.example.search_microservice.controller;
 
+import com.example.search_microservice.dto.AdvancedSearchRequest;
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
 import com.example.search_microservice.model.Product;
 import com.example.search_microservice.service.ProductService;
+import com.example.search_microservice.service.SearchLimiter;
+import com.example.search_microservice.service.SuggestService;
 import com.example.search_microservice.util.InputSanitizer;
 import jakarta.validation.Valid;
-import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -18,6 +24,12 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private SuggestService suggestService;
+
+    @Autowired
+    private SearchLimiter searchLimiter;
+
     @PostMapping("/add")
     public Product addProduct(@Valid @RequestBody Product product) {
         return productService.saveProduct(product);
@@ -28,6 +40,29 @@ public class ProductController {
         return productService.saveAll(products);
     }
 
+    // Body: [{"merchantId": "3", "stock": 12}, ...]
+    @PatchMapping("/{id}/stock")
+    public ResponseEntity<?> updateStock(@PathVariable("id") String id, @RequestBody List<StockUpdate> updates) {
+        try {
+            if (!productService.updateStock(id, updates)) {
+                return ResponseEntity.status(404).body(Map.of("error", "Product not found"));
+            }
+            return ResponseEntity.ok(Map.of("productId", id, "updated", true));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/cache/invalidate")
+    public Map<String, Object> invalidateCaches() {
+        return Map.of("generation", productService.invalidateCaches());
+    }
+
+    @PostMapping("/synonyms/reload")
+    public Map<String, Object> reloadSynonyms() throws IOException {
+        return productService.reloadSynonyms();
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Product> getProduct(@PathVariable("id") String id) {
         return productService.getProductById(id)
@@ -51,7 +86,7 @@ public class ProductController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Category name too long"));
             }
 
-            List<Product> products = productService.getProductsByCategory(category);
+            List<Product> products = searchLimiter.execute(() -> productService.getProductsByCategory(category));
             return ResponseEntity.ok(products);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -69,37 +104,32 @@ public class ProductController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Search query too long"));
             }
 
-            List<Product> products = productService.searchProductsByName(q);
+            List<ProductCard> products = searchLimiter.execute(() -> productService.searchProductsByName(q));
             return ResponseEntity.ok(products);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    @GetMapping("/suggest")
+    public ResponseEntity<?> suggest(@RequestParam("q") String q,
+                                     @RequestParam(value = "size", defaultValue = "8") int size) {
+        if (q == null || q.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Prefix cannot be empty"));
+        }
+        if (q.length() > 50) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Prefix too long"));
+        }
+        if (!InputSanitizer.isValidInput(q)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid prefix"));
+        }
+        int limit = Math.max(1, Math.min(size, 20));
+        return ResponseEntity.ok(searchLimiter.execute(() -> suggestService.suggest(q, limit)));
+    }
+
     @PostMapping("/advanced-search")
     public ResponseEntity<Map<String, Object>> advancedSearch(@Valid @RequestBody AdvancedSearchRequest request) {
-        Map<String, Object> results = productService.searchProducts(
-                request.getQuery(),
-                request.getCategory(),
-                request.getMinPrice(),
-                request.getMaxPrice(),
-                request.getPage(),
-                request.getSize(),
-                request.getSortBy(),
-                request.getSortOrder()
-        );
+        Map<String, Object> results = searchLimiter.execute(() -> productService.searchProducts(request));
         return ResponseEntity.ok(results);
     }
-
-    @Data
-    public static class AdvancedSearchRequest {
-        private String query;
-        private String category;
-        private Double minPrice;
-        private Double maxPrice;
-        private int page = 0;
-        private int size = 10;
-        private String sortBy = "name";
-        private String sortOrder = "asc";
-    }
 }
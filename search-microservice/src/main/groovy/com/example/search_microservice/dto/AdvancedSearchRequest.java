@@ -0,0 +1,63 @@
+package com.example.search_microservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+@Data
+public class AdvancedSearchRequest {
+    private String query;
+    private String category;
+    // multi-select facet values; category above is kept for single-select callers
+    private List<String> categories;
+    private List<String> brands;
+    private Double minPrice;
+    private Double maxPrice;
+    private Boolean inStockOnly;
+    private int page = 0;
+    private int size = 10;
+    // name, price or relevance; unset means relevance for a text query and name order when browsing
+    private String sortBy;
+    private String sortOrder = "asc";
+
+    /**
+     * Cache key that treats equivalent requests alike: case, surrounding
+     * whitespace and the order of multi-select values do not matter.
+     */
+    public String normalizedKey() {
+        TreeSet<String> allCategories = new TreeSet<>(normalize(categories));
+        if (category != null && !category.isBlank()) {
+            allCategories.add(category.trim().toLowerCase(Locale.ROOT));
+        }
+        return String.join("\u0001",
+                query == null ? "" : query.trim().toLowerCase(Locale.ROOT),
+                String.join(",", allCategories),
+                String.join(",", new TreeSet<>(normalize(brands))),
+                String.valueOf(minPrice),
+                String.valueOf(maxPrice),
+                String.valueOf(Boolean.TRUE.equals(inStockOnly)),
+                String.valueOf(page),
+                String.valueOf(size),
+                effectiveSortBy(),
+                "desc".equalsIgnoreCase(sortOrder) ? "desc" : "asc");
+    }
+
+    public String effectiveSortBy() {
+        if ("name".equals(sortBy) || "price".equals(sortBy) || "relevance".equals(sortBy)) {
+            return sortBy;
+        }
+        return query != null && !query.isBlank() ? "relevance" : "name";
+    }
+
+    private static List<String> normalize(List<String> values) {
+        if (values == null) {
+            return List.of();
+        }
+        return values.stream()
+                .filter(v -> v != null && !v.isBlank())
+                .map(v -> v.trim().toLowerCase(Locale.ROOT))
+                .toList();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.search_microservice.dto;
+
+import com.example.search_microservice.model.Product;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a search result card shows. Full documents, with description and
+ * merchants, are served by {@code GET /products/{id}}.
+ */
+@Data
+public class ProductCard {
+
+    // _source fields a card is built from; price covers documents indexed before minPrice existed
+    public static final String[] SOURCE_FIELDS = {
+            "name", "brand", "category", "imageUrl", "price", "minPrice", "maxPrice", "inStock", "offerCount"};
+
+    private String productId;
+    private String name;
+    private String brand;
+    private String category;
+    private String imageUrl;
+    private Double minPrice;
+    private Double maxPrice;
+    private Boolean inStock;
+    private Integer offerCount;
+
+    // Matched fragments per field (name, description) with terms wrapped in <em>; text is HTML-escaped
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, List<String>> highlights;
+
+    public static ProductCard of(Product product, Map<String, List<String>> highlights) {
+        ProductCard card = new ProductCard();
+        card.setProductId(product.getProductId());
+        card.setName(product.getName());
+        card.setBrand(product.getBrand());
+        card.setCategory(product.getCategory());
+        card.setImageUrl(product.getImageUrl());
+        card.setMinPrice(product.getMinPrice() != null ? product.getMinPrice() : product.getPrice());
+        card.setMaxPrice(product.getMaxPrice() != null ? product.getMaxPrice() : product.getPrice());
+        card.setInStock(product.getInStock());
+        card.setOfferCount(product.getOfferCount());
+        card.setHighlights(highlights);
+        return card;
+    }
+}
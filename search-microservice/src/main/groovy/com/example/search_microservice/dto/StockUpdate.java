@@ -0,0 +1,12 @@
+package com.example.search_microservice.dto;
+
+import lombok.Data;
+
+/**
+ * New stock level of one merchant's offer; merchantId matches {@code merchants[].merchantId}.
+ */
+@Data
+public class StockUpdate {
+    private String merchantId;
+    private Integer stock;
+}
@@ -21,6 +21,18 @@ public class RestExceptionHandler {
         return new ResponseEntity<>(errors, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(SearchOverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleOverloaded(SearchOverloadedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(SearchTimeoutException.class)
+    public ResponseEntity<Map<String, String>> handleTimeout(SearchTimeoutException ex) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of("error", ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, String>> handleOtherExceptions(Exception ex) {
         Map<String, String> error = new HashMap<>();
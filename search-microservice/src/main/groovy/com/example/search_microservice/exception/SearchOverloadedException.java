@@ -0,0 +1,11 @@
+package com.example.search_microservice.exception;
+
+/**
+ * Thrown when a search cannot start because too many are already running.
+ */
+public class SearchOverloadedException extends RuntimeException {
+
+    public SearchOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.search_microservice.exception;
+
+/**
+ * Thrown when a search does not finish within the request deadline.
+ */
+public class SearchTimeoutException extends RuntimeException {
+
+    public SearchTimeoutException(String message) {
+        super(message);
+    }
+}
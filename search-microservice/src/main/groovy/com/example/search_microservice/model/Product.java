@@ -2,25 +2,36 @@ package com.example.search_microservice.model;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.CompletionField;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 @Data
-@Document(indexName = "products_final")
+// products_final is an alias; ElasticsearchIndexConfig creates and migrates the index behind it
+@Document(indexName = "products_final", createIndex = false)
+@Setting(settingPath = "elasticsearch/product-settings.json")
 public class Product {
 
     @Id
     private String productId;
 
     @NotBlank(message = "Product name is required")
-    @Field(type = FieldType.Text)
+    @MultiField(
+            mainField = @Field(type = FieldType.Text, analyzer = "product_text", searchAnalyzer = "product_text_search"),
+            otherFields = @InnerField(suffix = "sort", type = FieldType.Keyword, normalizer = "sort_normalizer")
+    )
     private String name;
 
     @NotBlank(message = "Category is required")
@@ -31,7 +42,7 @@ public class Product {
     @Field(type = FieldType.Keyword)
     private String brand;
 
-    @Field(type = FieldType.Text)
+    @Field(type = FieldType.Text, analyzer = "product_text", searchAnalyzer = "product_text_search")
     private String description;
 
     @Field(type = FieldType.Keyword)
@@ -42,4 +53,69 @@ public class Product {
     private Double price;
 
     private List<Map<String, Object>> merchants;
+
+    // Best-offer summary across merchants, filled in at index time for filtering and sorting
+    @Field(type = FieldType.Double)
+    private Double minPrice;
+
+    @Field(type = FieldType.Double)
+    private Double maxPrice;
+
+    @Field(type = FieldType.Boolean)
+    private Boolean inStock;
+
+    @Field(type = FieldType.Integer)
+    private Integer offerCount;
+
+    // Type-ahead inputs (name, "brand name"), filled in at index time
+    @CompletionField(maxInputLength = 100)
+    private Completion suggest;
+
+    public void buildSuggest() {
+        List<String> inputs = new ArrayList<>();
+        if (name != null && !name.isBlank()) {
+            inputs.add(name);
+            if (brand != null && !brand.isBlank()) {
+                inputs.add(brand + " " + name);
+            }
+        }
+        if (inputs.isEmpty()) {
+            suggest = null;
+            return;
+        }
+        suggest = new Completion(inputs);
+        // products with more offers rank higher among equal prefixes
+        suggest.setWeight(Math.max(1, offerCount == null ? 0 : offerCount));
+    }
+
+    public void summarizeOffers() {
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        boolean stocked = false;
+        int count = 0;
+
+        if (merchants != null) {
+            for (Map<String, Object> m : merchants) {
+                if (!(m.get("price") instanceof Number p)) {
+                    continue;
+                }
+                count++;
+                min = Math.min(min, p.doubleValue());
+                max = Math.max(max, p.doubleValue());
+                if (m.get("stock") instanceof Number s && s.intValue() > 0) {
+                    stocked = true;
+                }
+            }
+        }
+
+        if (count == 0) {
+            minPrice = price;
+            maxPrice = price;
+        } else {
+            minPrice = min;
+            maxPrice = max;
+        }
+        inStock = stocked;
+        offerCount = count;
+    }
 }
@@ -0,0 +1,384 @@
+package com.example.search_microservice.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.mapping.FieldType;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionBoostMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Suggester;
+import co.elastic.clients.json.JsonData;
+import com.example.search_microservice.config.ElasticsearchIndexConfig;
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
+import com.example.search_microservice.model.Product;
+import com.example.search_microservice.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregation;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.HighlightQuery;
+import org.springframework.data.elasticsearch.core.query.highlight.Highlight;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightField;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightFieldParameters;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightParameters;
+import org.springframework.data.elasticsearch.core.suggest.response.CompletionSuggestion;
+import org.springframework.data.elasticsearch.core.suggest.response.Suggest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Default backend: the {@code products_final} alias on the cluster at
+ * {@code spring.elasticsearch.uris}.
+ * <p>
+ * Category, brand and price are applied as a post filter, and each facet's
+ * counts are computed with every facet filter except its own. Result hits
+ * fetch only the card fields from {@code _source}; highlighting runs in the
+ * cluster. Stock updates are applied in place by a script, so only the
+ * {@code merchants} stock and {@code inStock} fields change.
+ */
+@Component
+@ConditionalOnProperty(name = "search.backend", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchSearchBackend implements SearchBackend {
+
+    private static final String PRODUCT_INDEX = ElasticsearchIndexConfig.PRODUCT_ALIAS;
+    private static final String SUGGESTION_NAME = "product-suggest";
+    private static final int TEXT_LIMIT = 100;
+    private static final int DESCRIPTION_FRAGMENT_SIZE = 150;
+
+    // params.stock maps merchantId to the new stock; inStock follows the rule in Product.summarizeOffers
+    private static final String UPDATE_STOCK_SCRIPT = """
+            boolean changed = false;
+            boolean stocked = false;
+            if (ctx._source.merchants != null) {
+              for (def m : ctx._source.merchants) {
+                def stock = params.stock.get(String.valueOf(m.merchantId));
+                if (stock != null && m.stock != stock) {
+                  m.stock = stock;
+                  changed = true;
+                }
+                if (m.price instanceof Number && m.stock instanceof Number && m.stock > 0) {
+                  stocked = true;
+                }
+              }
+            }
+            if (changed) {
+              ctx._source.inStock = stocked;
+            } else {
+              ctx.op = 'noop';
+            }
+            """;
+
+    private static final FetchSourceFilter CARD_SOURCE = new FetchSourceFilter(true, ProductCard.SOURCE_FIELDS, null);
+
+    // Whole name, one description fragment; the html encoder escapes the text around the tags
+    private static final HighlightQuery CARD_HIGHLIGHT = new HighlightQuery(new Highlight(
+            HighlightParameters.builder()
+                    .withPreTags("<em>")
+                    .withPostTags("</em>")
+                    .withEncoder("html")
+                    .build(),
+            List.of(new HighlightField("name", HighlightFieldParameters.builder()
+                            .withNumberOfFragments(0)
+                            .build()),
+                    new HighlightField("description", HighlightFieldParameters.builder()
+                            .withFragmentSize(DESCRIPTION_FRAGMENT_SIZE)
+                            .withNumberOfFragments(1)
+                            .build()))),
+            Product.class);
+
+    private static final List<AggregationRange> PRICE_RANGES = SearchCriteria.PRICE_BUCKETS.stream()
+            .map(b -> AggregationRange.of(r -> {
+                r.key(b.key());
+                if (b.from() != null) r.from(b.from());
+                if (b.to() != null) r.to(b.to());
+                return r;
+            }))
+            .toList();
+
+    // server-side bound; the client socket timeout and SearchLimiter bound the whole request
+    @Value("${search.request-timeout:2s}")
+    private Duration requestTimeout;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Autowired
+    private ElasticsearchClient elasticsearchClient;
+
+    @Override
+    public Product save(Product product) {
+        return productRepository.save(product);
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        return (List<Product>) productRepository.saveAll(products);
+    }
+
+    @Override
+    public Optional<Product> findById(String id) {
+        return productRepository.findById(id);
+    }
+
+    @Override
+    public boolean updateStock(String id, List<StockUpdate> updates) {
+        Map<String, Integer> stock = new HashMap<>();
+        updates.forEach(u -> stock.put(u.getMerchantId(), u.getStock()));
+        try {
+            elasticsearchClient.update(u -> u
+                    .index(PRODUCT_INDEX)
+                    .id(id)
+                    .script(s -> s.source(UPDATE_STOCK_SCRIPT).params("stock", JsonData.of(stock)))
+                    .retryOnConflict(3)
+                    .refresh(Refresh.WaitFor), Product.class);
+            return true;
+        } catch (ElasticsearchException e) {
+            if (e.status() == 404) {
+                return false;
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Iterable<Product> findAll() {
+        return productRepository.findAll();
+    }
+
+    @Override
+    public List<Product> findByCategory(String category) {
+        return productRepository.findByCategory(category);
+    }
+
+    @Override
+    public List<ProductCard> searchByText(String text, boolean fuzzy) {
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(ranked(textQuery(text, fuzzy)))
+                .withSourceFilter(CARD_SOURCE)
+                .withHighlightQuery(CARD_HIGHLIGHT)
+                .withMaxResults(TEXT_LIMIT)
+                .withTimeout(requestTimeout)
+                .build();
+        return cards(elasticsearchOperations.search(query, Product.class));
+    }
+
+    @Override
+    public SearchPage search(SearchCriteria criteria) {
+        Query categoryFilter = anyOf("category", criteria.categories());
+        Query brandFilter = anyOf("brand", criteria.brands());
+        Query priceFilter = priceRange(criteria.minPrice(), criteria.maxPrice());
+
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+
+        // An empty query lists everything
+        if (!criteria.text().isEmpty()) {
+            bool.must(textQuery(criteria.text(), criteria.fuzzy()));
+        }
+
+        if (criteria.inStockOnly()) {
+            bool.filter(f -> f.term(t -> t.field("inStock").value(true)));
+        }
+
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(ranked(Query.of(q -> q.bool(bool.build()))))
+                .withFilter(allOf(categoryFilter, brandFilter, priceFilter))
+                .withAggregation("categories", Aggregation.of(a -> a
+                        .filter(allOf(brandFilter, priceFilter))
+                        .aggregations("values", t -> t.terms(v -> v.field("category").size(SearchCriteria.FACET_SIZE)))))
+                .withAggregation("brands", Aggregation.of(a -> a
+                        .filter(allOf(categoryFilter, priceFilter))
+                        .aggregations("values", t -> t.terms(v -> v.field("brand").size(SearchCriteria.FACET_SIZE)))))
+                .withAggregation("prices", Aggregation.of(a -> a
+                        .filter(allOf(categoryFilter, brandFilter))
+                        .aggregations("values", r -> r.range(v -> v.field("minPrice").ranges(PRICE_RANGES)))))
+                .withSort(sortOf(criteria))
+                .withPageable(PageRequest.of(criteria.page(), criteria.size()))
+                .withTrackTotalHits(true)
+                .withSourceFilter(CARD_SOURCE)
+                .withHighlightQuery(CARD_HIGHLIGHT)
+                .withTimeout(requestTimeout)
+                .build();
+
+        SearchHits<Product> hits = elasticsearchOperations.search(query, Product.class);
+        return new SearchPage(hits.getTotalHits(), cards(hits), facets(hits));
+    }
+
+    @Override
+    public List<Map<String, String>> suggest(String prefix, int size) {
+        NativeQuery query = NativeQuery.builder()
+                .withSuggester(Suggester.of(s -> s.suggesters(SUGGESTION_NAME, f -> f
+                        .prefix(prefix)
+                        .completion(c -> c.field("suggest").size(size).skipDuplicates(true)))))
+                .withSourceFilter(new FetchSourceFilter(true, new String[]{"name"}, null))
+                .withMaxResults(0)
+                .build();
+
+        SearchHits<Product> hits = elasticsearchOperations.search(query, Product.class);
+        Suggest suggest = hits.getSuggest();
+        if (suggest == null || !(suggest.getSuggestion(SUGGESTION_NAME) instanceof CompletionSuggestion<?> completion)) {
+            return List.of();
+        }
+
+        List<Map<String, String>> suggestions = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        for (CompletionSuggestion.Entry<?> entry : completion.getEntries()) {
+            for (CompletionSuggestion.Entry.Option<?> option : entry.getOptions()) {
+                SearchHit<?> hit = option.getSearchHit();
+                if (hit == null || !seenIds.add(hit.getId())) {
+                    continue;
+                }
+                String text = hit.getContent() instanceof Product p && p.getName() != null ? p.getName() : option.getText();
+                suggestions.add(Map.of("id", hit.getId(), "text", text));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Asks Elasticsearch to re-read the synonyms file used by the search analyzer.
+     */
+    @Override
+    public void reloadSynonyms() throws IOException {
+        elasticsearchClient.indices().reloadSearchAnalyzers(r -> r.index(PRODUCT_INDEX));
+    }
+
+    // unmappedType keeps the sort working on an index whose mapping predates the field
+    static SortOptions sortOf(SearchCriteria criteria) {
+        SortOrder order = criteria.descending() ? SortOrder.Desc : SortOrder.Asc;
+        return switch (criteria.sortBy()) {
+            case "relevance" -> SortOptions.of(s -> s.score(sc -> sc.order(SortOrder.Desc)));
+            case "price" -> SortOptions.of(s -> s.field(f -> f.field("minPrice").order(order).unmappedType(FieldType.Double)));
+            default -> SortOptions.of(s -> s.field(f -> f.field("name.sort").order(order).unmappedType(FieldType.Keyword)));
+        };
+    }
+
+    /**
+     * Phrase-prefix on name (boost 3), brand (boost 2) and category. The fuzzy variant adds a
+     * bounded edit-distance match; exact phrase hits still score higher through the boosts.
+     */
+    private static Query textQuery(String text, boolean fuzzy) {
+        return Query.of(q -> q.bool(b -> {
+            b.should(s -> s.matchPhrasePrefix(p -> p.field("name").query(text).boost(3f)))
+                    .should(s -> s.matchPhrasePrefix(p -> p.field("brand").query(text).boost(2f)))
+                    .should(s -> s.matchPhrasePrefix(p -> p.field("category").query(text)));
+            if (fuzzy) {
+                b.should(s -> s.multiMatch(m -> m
+                        .query(text)
+                        .fields("name^2", "brand", "description^0.5")
+                        .fuzziness("AUTO")
+                        .prefixLength(1)
+                        .maxExpansions(50)));
+            }
+            return b.minimumShouldMatch("1");
+        }));
+    }
+
+    // Multiplies the score by OUT_OF_STOCK_WEIGHT and MULTI_OFFER_WEIGHT where they apply
+    private static Query ranked(Query query) {
+        return Query.of(q -> q.functionScore(fs -> fs
+                .query(query)
+                .functions(f -> f
+                        .filter(n -> n.term(t -> t.field("inStock").value(false)))
+                        .weight((double) SearchCriteria.OUT_OF_STOCK_WEIGHT))
+                .functions(f -> f
+                        .filter(n -> n.range(r -> r.number(x -> x.field("offerCount").gte((double) SearchCriteria.MULTI_OFFER_MIN))))
+                        .weight((double) SearchCriteria.MULTI_OFFER_WEIGHT))
+                .scoreMode(FunctionScoreMode.Multiply)
+                .boostMode(FunctionBoostMode.Multiply)));
+    }
+
+    private static Query anyOf(String field, List<String> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        return Query.of(q -> q.bool(b -> {
+            values.forEach(v -> b.should(s -> s.term(t -> t.field(field).value(v).caseInsensitive(true))));
+            return b.minimumShouldMatch("1");
+        }));
+    }
+
+    private static Query priceRange(Double minPrice, Double maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return null;
+        }
+        return Query.of(q -> q.range(r -> r.number(n -> {
+            n.field("minPrice");
+            if (minPrice != null) n.gte(minPrice);
+            if (maxPrice != null) n.lte(maxPrice);
+            return n;
+        })));
+    }
+
+    private static Query allOf(Query... filters) {
+        List<Query> present = new ArrayList<>();
+        for (Query f : filters) {
+            if (f != null) {
+                present.add(f);
+            }
+        }
+        if (present.isEmpty()) {
+            return Query.of(q -> q.matchAll(m -> m));
+        }
+        return Query.of(q -> q.bool(b -> b.filter(present)));
+    }
+
+    private static List<ProductCard> cards(SearchHits<Product> hits) {
+        return hits.getSearchHits().stream()
+                .map(hit -> ProductCard.of(hit.getContent(), hit.getHighlightFields()))
+                .toList();
+    }
+
+    private static Map<String, Object> facets(SearchHits<Product> hits) {
+        Map<String, Object> facets = new HashMap<>();
+        if (!(hits.getAggregations() instanceof ElasticsearchAggregations aggregations)) {
+            return facets;
+        }
+        Map<String, ElasticsearchAggregation> byName = aggregations.aggregationsAsMap();
+
+        for (String name : List.of("categories", "brands")) {
+            List<Map<String, Object>> buckets = new ArrayList<>();
+            byName.get(name).aggregation().getAggregate().filter().aggregations().get("values")
+                    .sterms().buckets().array()
+                    .forEach(b -> buckets.add(Map.of("value", b.key().stringValue(), "count", b.docCount())));
+            facets.put(name, buckets);
+        }
+
+        List<Map<String, Object>> prices = new ArrayList<>();
+        byName.get("prices").aggregation().getAggregate().filter().aggregations().get("values")
+                .range().buckets().array()
+                .forEach(b -> {
+                    Map<String, Object> bucket = new HashMap<>();
+                    bucket.put("key", b.key());
+                    bucket.put("from", b.from());
+                    bucket.put("to", b.to());
+                    bucket.put("count", b.docCount());
+                    prices.add(bucket);
+                });
+        facets.put("prices", prices);
+
+        return facets;
+    }
+}
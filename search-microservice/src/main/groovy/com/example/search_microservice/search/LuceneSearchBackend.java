@@ -0,0 +1,753 @@
+package com.example.search_microservice.search;
+
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
+import com.example.search_microservice.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.FlattenGraphFilter;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.miscellaneous.WordDelimiterGraphFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.*;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.StringDocValuesReaderState;
+import org.apache.lucene.facet.StringValueFacetCounts;
+import org.apache.lucene.facet.range.DoubleRange;
+import org.apache.lucene.facet.range.DoubleRangeFacetCounts;
+import org.apache.lucene.index.*;
+import org.apache.lucene.queries.function.FunctionScoreQuery;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.search.uhighlight.WholeBreakIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.graph.GraphTokenStreamFiniteStrings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.BreakIterator;
+import java.text.Normalizer;
+import java.text.ParseException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Embedded backend: a Lucene index on local disk (memory-mapped), searched
+ * in-process. Mirrors the Elasticsearch mapping and queries closely enough
+ * that both backends return the same response shapes: the same analyzers
+ * (word delimiter at index time, synonyms at search time), phrase-prefix
+ * text matching with a fuzzy fallback, post-filtered facets and the same
+ * sort fields. Highlights are computed by re-analyzing the stored name and
+ * description of each returned hit.
+ * <p>
+ * Lucene cannot update part of a stored document, so a stock update
+ * rewrites the product from its stored source with the new stock levels.
+ * All writes are serialized, so that source is never older than the last save.
+ * <p>
+ * Every write commits and refreshes the searcher, so a save is visible to
+ * the next search. Meant for a single node; there is no replication.
+ */
+@Component
+@ConditionalOnProperty(name = "search.backend", havingValue = "lucene")
+public class LuceneSearchBackend implements SearchBackend {
+
+    // same limit as index.max_result_window in Elasticsearch
+    private static final int MAX_RESULT_WINDOW = 10_000;
+    private static final int TEXT_LIMIT = 100;
+    private static final int MAX_EXPANSIONS = 50;
+    private static final int DESCRIPTION_FRAGMENT_SIZE = 150;
+
+    private static final String ID = "_id";
+    private static final String SOURCE = "_source";
+
+    @Value("${search.lucene.path:search-index}")
+    private String indexPath;
+
+    @Value("${search.lucene.synonyms:classpath:elasticsearch/analysis/product-synonyms.txt}")
+    private Resource synonyms;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private volatile Analyzer searchAnalyzer;
+    private volatile FacetState facetState;
+    private UnifiedHighlighter nameHighlighter;
+    private UnifiedHighlighter descriptionHighlighter;
+
+    // Ordinal maps for the keyword facets, rebuilt only when the searcher changes
+    private record FacetState(IndexReader reader, StringDocValuesReaderState categories,
+                              StringDocValuesReaderState brands) {
+    }
+
+    @FunctionalInterface
+    private interface SearcherCall<T> {
+        T apply(IndexSearcher searcher) throws IOException;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path path = Path.of(indexPath);
+        Files.createDirectories(path);
+        directory = new MMapDirectory(path);
+        Analyzer indexAnalyzer = indexAnalyzer();
+        IndexWriterConfig config = new IndexWriterConfig(indexAnalyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+        searchAnalyzer = searchAnalyzer(loadSynonyms());
+        nameHighlighter = highlighter(indexAnalyzer, WholeBreakIterator::new);
+        descriptionHighlighter = highlighter(indexAnalyzer, () -> LengthGoalBreakIterator.createClosestToLength(
+                BreakIterator.getSentenceInstance(Locale.ROOT), DESCRIPTION_FRAGMENT_SIZE, 0.5f));
+    }
+
+    // Same tags and escaping as the Elasticsearch highlight request; fields without a match are left out
+    private static UnifiedHighlighter highlighter(Analyzer analyzer, Supplier<BreakIterator> breaks) {
+        return UnifiedHighlighter.builderWithoutSearcher(analyzer)
+                .withFormatter(new DefaultPassageFormatter("<em>", "</em>", "... ", true))
+                .withBreakIterator(breaks)
+                .withMaxNoHighlightPassages(0)
+                .build();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    // Writes hold the backend's lock so a stock update cannot overwrite a concurrent save
+    @Override
+    public synchronized Product save(Product product) {
+        try {
+            writer.updateDocument(new Term(ID, assignId(product)), toDocument(product));
+            commit();
+            return product;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<Product> saveAll(List<Product> products) {
+        try {
+            for (Product product : products) {
+                writer.updateDocument(new Term(ID, assignId(product)), toDocument(product));
+            }
+            commit();
+            return products;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<Product> findById(String id) {
+        return withSearcher(searcher -> {
+            TopDocs top = searcher.search(new TermQuery(new Term(ID, id)), 1);
+            if (top.scoreDocs.length == 0) {
+                return Optional.empty();
+            }
+            return Optional.of(load(searcher.storedFields(), top.scoreDocs[0].doc));
+        });
+    }
+
+    // Read-modify-write under the same lock as save, so no concurrent write is lost
+    @Override
+    public synchronized boolean updateStock(String id, List<StockUpdate> updates) {
+        Product product = withSearcher(searcher -> {
+            TopDocs top = searcher.search(new TermQuery(new Term(ID, id)), 1);
+            return top.scoreDocs.length == 0 ? null : readSource(searcher.storedFields(), top.scoreDocs[0].doc);
+        });
+        if (product == null) {
+            return false;
+        }
+
+        Map<String, Integer> stock = new HashMap<>();
+        updates.forEach(u -> stock.put(u.getMerchantId(), u.getStock()));
+        boolean changed = false;
+        if (product.getMerchants() != null) {
+            for (Map<String, Object> m : product.getMerchants()) {
+                Integer newStock = stock.get(String.valueOf(m.get("merchantId")));
+                if (newStock != null && !newStock.equals(m.get("stock"))) {
+                    m.put("stock", newStock);
+                    changed = true;
+                }
+            }
+        }
+        if (!changed) {
+            return true;
+        }
+
+        product.summarizeOffers();
+        product.buildSuggest();
+        try {
+            writer.updateDocument(new Term(ID, id), toDocument(product));
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public Iterable<Product> findAll() {
+        return withSearcher(searcher -> loadAll(searcher,
+                searcher.search(MatchAllDocsQuery.INSTANCE, Math.max(1, searcher.getIndexReader().numDocs()), Sort.INDEXORDER)));
+    }
+
+    @Override
+    public List<Product> findByCategory(String category) {
+        return withSearcher(searcher -> loadAll(searcher,
+                searcher.search(new TermQuery(new Term("category", category)), MAX_RESULT_WINDOW)));
+    }
+
+    @Override
+    public List<ProductCard> searchByText(String text, boolean fuzzy) {
+        return withSearcher(searcher -> {
+            Query query = textQuery(searcher.getIndexReader(), text, fuzzy);
+            TopDocs top = searcher.search(ranked(query), TEXT_LIMIT);
+            List<ProductCard> cards = new ArrayList<>(top.scoreDocs.length);
+            StoredFields storedFields = searcher.storedFields();
+            for (ScoreDoc hit : top.scoreDocs) {
+                cards.add(card(storedFields, hit.doc, query));
+            }
+            return cards;
+        });
+    }
+
+    @Override
+    public SearchPage search(SearchCriteria criteria) {
+        if (criteria.page() < 0 || criteria.size() < 1) {
+            throw new IllegalArgumentException("Page must not be negative and size must be at least 1");
+        }
+        if ((long) (criteria.page() + 1) * criteria.size() > MAX_RESULT_WINDOW) {
+            throw new IllegalArgumentException("Result window is too large, page * size must be at most " + MAX_RESULT_WINDOW);
+        }
+
+        return withSearcher(searcher -> {
+            IndexReader reader = searcher.getIndexReader();
+            Query categoryFilter = anyOf("category.lc", criteria.categories());
+            Query brandFilter = anyOf("brand.lc", criteria.brands());
+            Query priceFilter = priceRange(criteria.minPrice(), criteria.maxPrice());
+
+            // An empty query lists everything and has nothing to highlight
+            Query text = criteria.text().isEmpty() ? null : textQuery(reader, criteria.text(), criteria.fuzzy());
+            BooleanQuery.Builder base = new BooleanQuery.Builder();
+            base.add(text == null ? MatchAllDocsQuery.INSTANCE : text, BooleanClause.Occur.MUST);
+            if (criteria.inStockOnly()) {
+                base.add(new TermQuery(new Term("inStock", "true")), BooleanClause.Occur.FILTER);
+            }
+            Query query = base.build();
+
+            int window = (criteria.page() + 1) * criteria.size();
+            FacetsCollectorManager.FacetsResult result = FacetsCollectorManager.search(searcher,
+                    allOf(ranked(query), categoryFilter, brandFilter, priceFilter), window, sort(criteria), new FacetsCollectorManager());
+
+            long total = 0;
+            for (FacetsCollector.MatchingDocs docs : result.facetsCollector().getMatchingDocs()) {
+                total += docs.totalHits();
+            }
+
+            List<ProductCard> products = new ArrayList<>();
+            ScoreDoc[] hits = result.topDocs().scoreDocs;
+            StoredFields storedFields = searcher.storedFields();
+            for (int i = criteria.page() * criteria.size(); i < hits.length; i++) {
+                products.add(card(storedFields, hits[i].doc, text));
+            }
+
+            // Each facet counts with every facet filter except its own; without
+            // its own filter the facet query is the result query itself.
+            FacetsCollector all = result.facetsCollector();
+            FacetState state = facetState(reader);
+            Map<String, Object> facets = new HashMap<>();
+            facets.put("categories", terms(state.categories(), "category.facet",
+                    categoryFilter == null ? all : collect(searcher, allOf(query, brandFilter, priceFilter))));
+            facets.put("brands", terms(state.brands(), "brand.facet",
+                    brandFilter == null ? all : collect(searcher, allOf(query, categoryFilter, priceFilter))));
+            facets.put("prices", prices(
+                    priceFilter == null ? all : collect(searcher, allOf(query, categoryFilter, brandFilter))));
+
+            return new SearchPage(total, products, facets);
+        });
+    }
+
+    @Override
+    public List<Map<String, String>> suggest(String prefix, int size) {
+        return withSearcher(searcher -> {
+            Sort byWeight = new Sort(new SortField("suggest.weight", SortField.Type.LONG, true),
+                    new SortField("name.sort", SortField.Type.STRING));
+            // fetch extra to make up for products sharing a name
+            TopDocs top = searcher.search(new PrefixQuery(new Term("suggest", fold(prefix))), size * 2, byWeight);
+
+            List<Map<String, String>> suggestions = new ArrayList<>();
+            Set<String> seenTexts = new HashSet<>();
+            StoredFields storedFields = searcher.storedFields();
+            for (ScoreDoc hit : top.scoreDocs) {
+                Product product = load(storedFields, hit.doc);
+                if (product.getName() == null || !seenTexts.add(product.getName())) {
+                    continue;
+                }
+                suggestions.add(Map.of("id", product.getProductId(), "text", product.getName()));
+                if (suggestions.size() == size) {
+                    break;
+                }
+            }
+            return suggestions;
+        });
+    }
+
+    /**
+     * Re-reads the synonyms file; the next search uses the new analyzer.
+     */
+    @Override
+    public void reloadSynonyms() throws IOException {
+        searchAnalyzer = searchAnalyzer(loadSynonyms());
+    }
+
+    private void commit() throws IOException {
+        writer.commit();
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    private <T> T withSearcher(SearcherCall<T> call) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            return call.apply(searcher);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    System.err.println("Could not release index searcher: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String assignId(Product product) {
+        if (product.getProductId() == null || product.getProductId().isBlank()) {
+            product.setProductId(UUID.randomUUID().toString());
+        }
+        return product.getProductId();
+    }
+
+    // Field layout follows the Elasticsearch mapping on Product
+    private Document toDocument(Product product) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField(ID, product.getProductId(), Field.Store.YES));
+
+        // suggest is rebuilt on load rather than stored
+        ObjectNode source = objectMapper.valueToTree(product);
+        source.remove("suggest");
+        doc.add(new StoredField(SOURCE, objectMapper.writeValueAsBytes(source)));
+
+        if (product.getName() != null) {
+            doc.add(new TextField("name", product.getName(), Field.Store.NO));
+            doc.add(new SortedDocValuesField("name.sort", new BytesRef(fold(product.getName()))));
+        }
+        if (product.getDescription() != null) {
+            doc.add(new TextField("description", product.getDescription(), Field.Store.NO));
+        }
+        addKeyword(doc, "category", product.getCategory());
+        addKeyword(doc, "brand", product.getBrand());
+
+        if (product.getMinPrice() != null) {
+            doc.add(new DoublePoint("minPrice", product.getMinPrice()));
+            doc.add(new DoubleDocValuesField("minPrice", product.getMinPrice()));
+        }
+        doc.add(new StringField("inStock", String.valueOf(Boolean.TRUE.equals(product.getInStock())), Field.Store.NO));
+        if (product.getOfferCount() != null) {
+            doc.add(new IntPoint("offerCount", product.getOfferCount()));
+        }
+
+        if (product.getSuggest() != null) {
+            for (String input : product.getSuggest().getInput()) {
+                doc.add(new StringField("suggest", fold(input), Field.Store.NO));
+            }
+            doc.add(new NumericDocValuesField("suggest.weight", product.getSuggest().getWeight()));
+        }
+        return doc;
+    }
+
+    // Exact value, case-insensitive value for filters and prefix matches, doc values for facets
+    private static void addKeyword(Document doc, String field, String value) {
+        if (value == null) {
+            return;
+        }
+        doc.add(new StringField(field, value, Field.Store.NO));
+        doc.add(new StringField(field + ".lc", fold(value), Field.Store.NO));
+        doc.add(new SortedSetDocValuesField(field + ".facet", new BytesRef(value)));
+    }
+
+    private Product load(StoredFields storedFields, int doc) throws IOException {
+        Product product = readSource(storedFields, doc);
+        product.buildSuggest();
+        return product;
+    }
+
+    private Product readSource(StoredFields storedFields, int doc) throws IOException {
+        BytesRef source = storedFields.document(doc, Set.of(SOURCE)).getBinaryValue(SOURCE);
+        return objectMapper.readValue(source.bytes, source.offset, source.length, Product.class);
+    }
+
+    private ProductCard card(StoredFields storedFields, int doc, Query text) throws IOException {
+        Product product = readSource(storedFields, doc);
+        Map<String, List<String>> highlights = new HashMap<>();
+        if (text != null) {
+            highlight(highlights, nameHighlighter, "name", text, product.getName());
+            highlight(highlights, descriptionHighlighter, "description", text, product.getDescription());
+        }
+        return ProductCard.of(product, highlights);
+    }
+
+    private static void highlight(Map<String, List<String>> highlights, UnifiedHighlighter highlighter,
+                                  String field, Query query, String content) throws IOException {
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        Object fragment = highlighter.highlightWithoutSearcher(field, query, content, 1);
+        if (fragment instanceof String s && !s.isEmpty()) {
+            highlights.put(field, List.of(s.strip()));
+        }
+    }
+
+    private List<Product> loadAll(IndexSearcher searcher, TopDocs top) throws IOException {
+        List<Product> products = new ArrayList<>(top.scoreDocs.length);
+        StoredFields storedFields = searcher.storedFields();
+        for (ScoreDoc hit : top.scoreDocs) {
+            products.add(load(storedFields, hit.doc));
+        }
+        return products;
+    }
+
+    /**
+     * match_phrase_prefix on name (boost 3), prefix on brand (boost 2) and category,
+     * plus a best-field fuzzy match when {@code fuzzy} is set.
+     */
+    private Query textQuery(IndexReader reader, String text, boolean fuzzy) throws IOException {
+        List<List<String>> paths = analyzePaths("name", text);
+        String keyword = fold(text);
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        Query name = phrasePrefix(reader, "name", paths);
+        if (name != null) {
+            query.add(new BoostQuery(name, 3f), BooleanClause.Occur.SHOULD);
+        }
+        query.add(new BoostQuery(new PrefixQuery(new Term("brand.lc", keyword)), 2f), BooleanClause.Occur.SHOULD);
+        query.add(new PrefixQuery(new Term("category.lc", keyword)), BooleanClause.Occur.SHOULD);
+
+        if (fuzzy) {
+            Set<String> tokens = new LinkedHashSet<>();
+            paths.forEach(tokens::addAll);
+            query.add(new DisjunctionMaxQuery(List.of(
+                    new BoostQuery(anyFuzzy("name", tokens), 2f),
+                    fuzzyTerm("brand.lc", keyword),
+                    new BoostQuery(anyFuzzy("description", tokens), 0.5f)), 0f), BooleanClause.Occur.SHOULD);
+        }
+        return query.setMinimumNumberShouldMatch(1).build();
+    }
+
+    // One token list per path through the (synonym) token graph
+    private List<List<String>> analyzePaths(String field, String text) throws IOException {
+        List<List<String>> paths = new ArrayList<>();
+        try (TokenStream stream = searchAnalyzer.tokenStream(field, text)) {
+            Iterator<TokenStream> finiteStrings = new GraphTokenStreamFiniteStrings(stream).getFiniteStrings();
+            while (finiteStrings.hasNext()) {
+                TokenStream path = finiteStrings.next();
+                CharTermAttribute term = path.addAttribute(CharTermAttribute.class);
+                List<String> tokens = new ArrayList<>();
+                while (path.incrementToken()) {
+                    tokens.add(term.toString());
+                }
+                if (!tokens.isEmpty()) {
+                    paths.add(tokens);
+                }
+            }
+        }
+        return paths;
+    }
+
+    // Phrase over each path with the last token expanded to at most MAX_EXPANSIONS indexed terms
+    private static Query phrasePrefix(IndexReader reader, String field, List<List<String>> paths) throws IOException {
+        BooleanQuery.Builder anyPath = new BooleanQuery.Builder();
+        boolean matchable = false;
+        for (List<String> tokens : paths) {
+            Term[] expansions = expand(reader, field, tokens.get(tokens.size() - 1));
+            if (expansions.length == 0) {
+                continue;
+            }
+            MultiPhraseQuery.Builder phrase = new MultiPhraseQuery.Builder();
+            for (int i = 0; i < tokens.size() - 1; i++) {
+                phrase.add(new Term(field, tokens.get(i)));
+            }
+            phrase.add(expansions);
+            anyPath.add(phrase.build(), BooleanClause.Occur.SHOULD);
+            matchable = true;
+        }
+        return matchable ? anyPath.build() : null;
+    }
+
+    private static Term[] expand(IndexReader reader, String field, String prefix) throws IOException {
+        Terms terms = MultiTerms.getTerms(reader, field);
+        if (terms == null) {
+            return new Term[0];
+        }
+        BytesRef prefixBytes = new BytesRef(prefix);
+        TermsEnum termsEnum = terms.iterator();
+        List<Term> expansions = new ArrayList<>();
+        if (termsEnum.seekCeil(prefixBytes) != TermsEnum.SeekStatus.END) {
+            do {
+                if (!StringHelper.startsWith(termsEnum.term(), prefixBytes)) {
+                    break;
+                }
+                expansions.add(new Term(field, BytesRef.deepCopyOf(termsEnum.term())));
+            } while (expansions.size() < MAX_EXPANSIONS && termsEnum.next() != null);
+        }
+        return expansions.toArray(new Term[0]);
+    }
+
+    private static Query anyFuzzy(String field, Collection<String> tokens) {
+        BooleanQuery.Builder any = new BooleanQuery.Builder();
+        tokens.forEach(token -> any.add(fuzzyTerm(field, token), BooleanClause.Occur.SHOULD));
+        return any.build();
+    }
+
+    // fuzziness AUTO: exact up to 2 chars, 1 edit up to 5, 2 edits beyond; first char must match
+    private static Query fuzzyTerm(String field, String value) {
+        int edits = value.length() <= 2 ? 0 : value.length() <= 5 ? 1 : 2;
+        return new FuzzyQuery(new Term(field, value), edits, 1, MAX_EXPANSIONS, true);
+    }
+
+    private static Query anyOf(String field, List<String> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        BooleanQuery.Builder any = new BooleanQuery.Builder();
+        values.forEach(v -> any.add(new TermQuery(new Term(field, fold(v))), BooleanClause.Occur.SHOULD));
+        return any.build();
+    }
+
+    private static Query priceRange(Double minPrice, Double maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return null;
+        }
+        return DoublePoint.newRangeQuery("minPrice",
+                minPrice == null ? Double.NEGATIVE_INFINITY : minPrice,
+                maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice);
+    }
+
+    // Same weights as the function_score in the Elasticsearch backend
+    private static Query ranked(Query query) {
+        Query stocked = FunctionScoreQuery.boostByQuery(query,
+                new TermQuery(new Term("inStock", "false")), SearchCriteria.OUT_OF_STOCK_WEIGHT);
+        return FunctionScoreQuery.boostByQuery(stocked,
+                IntPoint.newRangeQuery("offerCount", SearchCriteria.MULTI_OFFER_MIN, Integer.MAX_VALUE),
+                SearchCriteria.MULTI_OFFER_WEIGHT);
+    }
+
+    private static Query allOf(Query query, Query... filters) {
+        BooleanQuery.Builder all = new BooleanQuery.Builder().add(query, BooleanClause.Occur.MUST);
+        for (Query filter : filters) {
+            if (filter != null) {
+                all.add(filter, BooleanClause.Occur.FILTER);
+            }
+        }
+        return all.build();
+    }
+
+    // Missing values sort last in both directions, as in Elasticsearch
+    private static Sort sort(SearchCriteria criteria) {
+        boolean desc = criteria.descending();
+        switch (criteria.sortBy()) {
+            case "relevance":
+                return Sort.RELEVANCE;
+            case "price":
+                return new Sort(new SortField("minPrice", SortField.Type.DOUBLE, desc,
+                        desc ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY));
+            default:
+                return new Sort(new SortField("name.sort", SortField.Type.STRING, desc,
+                        desc ? SortField.STRING_FIRST : SortField.STRING_LAST));
+        }
+    }
+
+    private static FacetsCollector collect(IndexSearcher searcher, Query query) throws IOException {
+        return searcher.search(query, new FacetsCollectorManager());
+    }
+
+    private FacetState facetState(IndexReader reader) throws IOException {
+        FacetState state = facetState;
+        if (state == null || state.reader() != reader) {
+            state = new FacetState(reader, docValuesState(reader, "category.facet"), docValuesState(reader, "brand.facet"));
+            facetState = state;
+        }
+        return state;
+    }
+
+    private static StringDocValuesReaderState docValuesState(IndexReader reader, String field) throws IOException {
+        if (FieldInfos.getMergedFieldInfos(reader).fieldInfo(field) == null) {
+            return null;
+        }
+        return new StringDocValuesReaderState(reader, field);
+    }
+
+    private static List<Map<String, Object>> terms(StringDocValuesReaderState state, String field,
+                                                   FacetsCollector hits) throws IOException {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        if (state == null) {
+            return buckets;
+        }
+        FacetResult result = new StringValueFacetCounts(state, hits).getTopChildren(SearchCriteria.FACET_SIZE, field);
+        if (result != null) {
+            for (LabelAndValue lv : result.labelValues) {
+                buckets.add(Map.of("value", lv.label, "count", lv.value.longValue()));
+            }
+        }
+        return buckets;
+    }
+
+    private static List<Map<String, Object>> prices(FacetsCollector hits) throws IOException {
+        List<SearchCriteria.PriceBucket> buckets = SearchCriteria.PRICE_BUCKETS;
+        DoubleRange[] ranges = buckets.stream()
+                .map(b -> new DoubleRange(b.key(),
+                        b.from() == null ? Double.NEGATIVE_INFINITY : b.from(), true,
+                        b.to() == null ? Double.POSITIVE_INFINITY : b.to(), false))
+                .toArray(DoubleRange[]::new);
+        FacetResult result = new DoubleRangeFacetCounts("minPrice", hits, ranges).getAllChildren("minPrice");
+
+        Map<String, Long> counts = new HashMap<>();
+        for (LabelAndValue lv : result.labelValues) {
+            counts.put(lv.label, lv.value.longValue());
+        }
+
+        List<Map<String, Object>> prices = new ArrayList<>();
+        for (SearchCriteria.PriceBucket b : buckets) {
+            Map<String, Object> bucket = new HashMap<>();
+            bucket.put("key", b.key());
+            bucket.put("from", b.from());
+            bucket.put("to", b.to());
+            bucket.put("count", counts.getOrDefault(b.key(), 0L));
+            prices.add(bucket);
+        }
+        return prices;
+    }
+
+    // Lowercase and strip accents, like the sort_normalizer
+    private static String fold(String value) {
+        if (isAscii(value)) {
+            return value.toLowerCase(Locale.ROOT).trim();
+        }
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ) {
+            int cp = decomposed.codePointAt(i);
+            if (!isMark(cp)) {
+                folded.appendCodePoint(cp);
+            }
+            i += Character.charCount(cp);
+        }
+        return folded.toString().toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same categories as \p{M}
+    private static boolean isMark(int cp) {
+        int type = Character.getType(cp);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    // product_text: whitespace, word_delimiter_graph (catenate_all, preserve_original), lowercase, asciifolding
+    private static Analyzer indexAnalyzer() {
+        int flags = WordDelimiterGraphFilter.GENERATE_WORD_PARTS
+                | WordDelimiterGraphFilter.GENERATE_NUMBER_PARTS
+                | WordDelimiterGraphFilter.SPLIT_ON_NUMERICS
+                | WordDelimiterGraphFilter.STEM_ENGLISH_POSSESSIVE
+                | WordDelimiterGraphFilter.CATENATE_ALL
+                | WordDelimiterGraphFilter.PRESERVE_ORIGINAL;
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer source = new WhitespaceTokenizer();
+                TokenStream result = new WordDelimiterGraphFilter(source, flags, null);
+                result = new FlattenGraphFilter(result);
+                result = new ASCIIFoldingFilter(new LowerCaseFilter(result));
+                return new TokenStreamComponents(source, result);
+            }
+        };
+    }
+
+    // product_text_search: standard, lowercase, asciifolding, synonym_graph
+    private static Analyzer searchAnalyzer(SynonymMap synonymMap) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer source = new StandardTokenizer();
+                TokenStream result = new ASCIIFoldingFilter(new LowerCaseFilter(source));
+                if (synonymMap != null) {
+                    result = new SynonymGraphFilter(result, synonymMap, true);
+                }
+                return new TokenStreamComponents(source, result);
+            }
+        };
+    }
+
+    private SynonymMap loadSynonyms() throws IOException {
+        if (!synonyms.exists()) {
+            System.err.println("Synonyms file not found, searching without synonyms: " + synonyms);
+            return null;
+        }
+        SolrSynonymParser parser = new SolrSynonymParser(true, true, searchAnalyzer(null));
+        try (Reader reader = new InputStreamReader(synonyms.getInputStream(), StandardCharsets.UTF_8)) {
+            parser.parse(reader);
+        } catch (ParseException e) {
+            throw new IOException("Invalid synonyms file: " + e.getMessage(), e);
+        }
+        SynonymMap map = parser.build();
+        return map.fst == null ? null : map;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.search_microservice.search;
+
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
+import com.example.search_microservice.model.Product;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Storage and query engine behind ProductService. Selected with
+ * {@code search.backend}: {@code elasticsearch} (default) or {@code lucene}
+ * for an embedded index on local disk.
+ * <p>
+ * Inputs are already sanitized; products are already prepared for indexing.
+ */
+public interface SearchBackend {
+
+    Product save(Product product);
+
+    List<Product> saveAll(List<Product> products);
+
+    Optional<Product> findById(String id);
+
+    /**
+     * Sets the stock of the listed merchant offers and recomputes {@code inStock},
+     * leaving the rest of the document as indexed. Unknown merchants are ignored.
+     *
+     * @return false when no product has this id
+     */
+    boolean updateStock(String id, List<StockUpdate> updates);
+
+    Iterable<Product> findAll();
+
+    List<Product> findByCategory(String category);
+
+    /**
+     * Phrase-prefix match on name, brand and category; the fuzzy variant
+     * also tolerates typos in name, brand and description. Returns at most
+     * 100 cards, highlighted and weighted like {@link #search} results.
+     */
+    List<ProductCard> searchByText(String text, boolean fuzzy);
+
+    /**
+     * Loads only the card fields of each hit and highlights matches of the
+     * text query in name (whole value) and description (one fragment).
+     * Scores are weighted by stock and offer count (see {@link SearchCriteria}).
+     */
+    SearchPage search(SearchCriteria criteria);
+
+    /**
+     * Type-ahead completions as {@code {id, text}} pairs.
+     */
+    List<Map<String, String>> suggest(String prefix, int size);
+
+    void reloadSynonyms() throws IOException;
+}
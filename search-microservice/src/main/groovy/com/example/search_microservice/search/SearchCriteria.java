@@ -0,0 +1,45 @@
+package com.example.search_microservice.search;
+
+import java.util.List;
+
+/**
+ * Sanitized advanced-search input handed to a {@link SearchBackend}.
+ * Category, brand and price are facet filters; {@code text} is empty to list everything.
+ */
+public record SearchCriteria(
+        String text,
+        boolean fuzzy,
+        List<String> categories,
+        List<String> brands,
+        Double minPrice,
+        Double maxPrice,
+        boolean inStockOnly,
+        String sortBy,
+        boolean descending,
+        int page,
+        int size) {
+
+    public static final int FACET_SIZE = 20;
+
+    // Buckets over the best-offer price; from is inclusive, to exclusive
+    public static final List<PriceBucket> PRICE_BUCKETS = List.of(
+            new PriceBucket("under-500", null, 500.0),
+            new PriceBucket("500-1000", 500.0, 1000.0),
+            new PriceBucket("1000-5000", 1000.0, 5000.0),
+            new PriceBucket("5000-20000", 5000.0, 20000.0),
+            new PriceBucket("20000-plus", 20000.0, null)
+    );
+
+    public record PriceBucket(String key, Double from, Double to) {
+    }
+
+    // Score multipliers applied by both backends: out-of-stock products sink, multi-offer products rise
+    public static final float OUT_OF_STOCK_WEIGHT = 0.2f;
+    public static final int MULTI_OFFER_MIN = 2;
+    public static final float MULTI_OFFER_WEIGHT = 1.25f;
+
+    public SearchCriteria withFuzzy(boolean fuzzy) {
+        return new SearchCriteria(text, fuzzy, categories, brands, minPrice, maxPrice,
+                inStockOnly, sortBy, descending, page, size);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.search_microservice.search;
+
+import com.example.search_microservice.dto.ProductCard;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of advanced-search results as cards, plus facet counts
+ * ({@code categories}, {@code brands}, {@code prices}).
+ */
+public record SearchPage(long total, List<ProductCard> products, Map<String, Object> facets) {
+}
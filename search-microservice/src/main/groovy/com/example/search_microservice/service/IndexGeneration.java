@@ -0,0 +1,24 @@
+package com.example.search_microservice.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter bumped on every write to the products index. Cached search and
+ * suggest results remember the generation they were computed at and are
+ * discarded once it moves on.
+ */
+@Component
+public class IndexGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    public long current() {
+        return generation.get();
+    }
+
+    public long bump() {
+        return generation.incrementAndGet();
+    }
+}
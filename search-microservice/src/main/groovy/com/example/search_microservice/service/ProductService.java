@@ -1,12 +1,18 @@
 package com.example.search_microservice.service;
 
+import com.example.search_microservice.dto.AdvancedSearchRequest;
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
 import com.example.search_microservice.model.Product;
-import com.example.search_microservice.repository.ProductRepository;
+import com.example.search_microservice.search.SearchBackend;
+import com.example.search_microservice.search.SearchCriteria;
+import com.example.search_microservice.search.SearchPage;
 import com.example.search_microservice.util.InputSanitizer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,19 +21,73 @@ import java.util.Optional;
 @Service
 public class ProductService {
 
+    private static final int MAX_CACHED_PAGE_SIZE = 50;
+
+    // below this many exact hits the typo-tolerant stage runs
+    private static final int FUZZY_MIN_HITS = 3;
+
+    @Autowired
+    private SearchBackend searchBackend;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
     @Autowired
-    private ProductRepository productRepository;
+    private IndexGeneration indexGeneration;
 
     public Product saveProduct(Product product) {
-        return productRepository.save(product);
+        prepareForIndex(product);
+        Product saved = searchBackend.save(product);
+        indexGeneration.bump();
+        return saved;
     }
 
     public List<Product> saveAll(List<Product> products) {
-        return (List<Product>) productRepository.saveAll(products);
+        products.forEach(ProductService::prepareForIndex);
+        List<Product> saved = searchBackend.saveAll(products);
+        indexGeneration.bump();
+        return saved;
+    }
+
+    /**
+     * Applies live stock levels from the inventory owner without reindexing the
+     * product, so ranking and the in-stock filter see them on the next search.
+     *
+     * @return false when the product is not indexed
+     */
+    public boolean updateStock(String productId, List<StockUpdate> updates) {
+        if (updates == null || updates.isEmpty()) {
+            throw new IllegalArgumentException("At least one stock update is required");
+        }
+        for (StockUpdate update : updates) {
+            if (update.getMerchantId() == null || update.getMerchantId().isBlank()) {
+                throw new IllegalArgumentException("merchantId is required");
+            }
+            if (update.getStock() == null || update.getStock() < 0) {
+                throw new IllegalArgumentException("stock must be zero or more");
+            }
+        }
+
+        boolean found = searchBackend.updateStock(productId, updates);
+        if (found) {
+            indexGeneration.bump();
+        }
+        return found;
+    }
+
+    // Called after documents were written to the index outside this service (e.g. the sync script)
+    public long invalidateCaches() {
+        return indexGeneration.bump();
+    }
+
+    // Fields derived from the document itself, computed before every write
+    private static void prepareForIndex(Product product) {
+        product.summarizeOffers();
+        product.buildSuggest();
     }
 
     public Optional<Product> getProductById(String id) {
-        return productRepository.findById(id);
+        return searchBackend.findById(id);
     }
 
     public List<Product> getProductsByCategory(String category) {
@@ -39,10 +99,10 @@ public class ProductService {
             throw new IllegalArgumentException("Invalid category input detected");
         }
 
-        return productRepository.findByCategory(sanitizedCategory);
+        return searchBackend.findByCategory(sanitizedCategory);
     }
 
-    public List<Product> searchProductsByName(String name) {
+    public List<ProductCard> searchProductsByName(String name) {
         // Sanitize search query to prevent injection
         String sanitizedName = InputSanitizer.sanitizeForSearch(name);
 
@@ -52,26 +112,49 @@ public class ProductService {
         }
 
         // Use multi-field search to search across name, brand, description, and category
-        return productRepository.searchByMultipleFields(sanitizedName);
+        List<ProductCard> results = searchBackend.searchByText(sanitizedName, false);
+        if (results.size() >= FUZZY_MIN_HITS) {
+            return results;
+        }
+
+        // Too few exact matches: retry once with typo tolerance
+        return searchBackend.searchByText(sanitizedName, true);
+    }
+
+    /**
+     * Re-reads the synonyms used by the search analyzer and drops cached results.
+     */
+    public Map<String, Object> reloadSynonyms() throws IOException {
+        searchBackend.reloadSynonyms();
+        return Map.of("reloaded", true, "generation", indexGeneration.bump());
     }
 
     public Iterable<Product> getAllProducts() {
-        return productRepository.findAll();
+        return searchBackend.findAll();
     }
 
     /**
-     * Advanced search with optional filters, pagination, sorting
+     * Advanced search with optional filters, pagination, sorting and facet counts.
+     * Filtering, sorting and paging all run inside the search backend; price filters
+     * and price sorts use the best offer ({@code minPrice}) across merchants.
+     * <p>
+     * Category, brand and price are facets: they are applied as a post filter,
+     * and each facet's counts are computed with every facet filter except its
+     * own, so a multi-select sidebar keeps showing the other options.
+     * <p>
+     * Responses for small pages are cached until the index generation changes.
      */
-    public Map<String, Object> searchProducts(String query,
-                                              String category,
-                                              Double minPrice,
-                                              Double maxPrice,
-                                              int page,
-                                              int size,
-                                              String sortBy,
-                                              String sortOrder) {
+    public Map<String, Object> searchProducts(AdvancedSearchRequest request) {
+        if (request.getSize() > MAX_CACHED_PAGE_SIZE) {
+            return executeSearch(request);
+        }
+        return searchResultCache.get(request.normalizedKey(), () -> executeSearch(request));
+    }
+
+    private Map<String, Object> executeSearch(AdvancedSearchRequest request) {
 
         // Sanitize and validate query input
+        String query = request.getQuery();
         String sanitizedQuery = "";
         if (query != null && !query.isEmpty()) {
             if (!InputSanitizer.isValidInput(query)) {
@@ -80,55 +163,62 @@ public class ProductService {
             sanitizedQuery = InputSanitizer.sanitizeForSearch(query);
         }
 
-        // Fetch all products matching query using multi-field search
-        List<Product> allProducts = productRepository.searchByMultipleFields(sanitizedQuery);
-
-        // Filter by category
-        if (category != null && !category.isEmpty()) {
-            // Sanitize category input
-            if (!InputSanitizer.isValidInput(category)) {
-                throw new IllegalArgumentException("Invalid category input detected");
-            }
-            String sanitizedCategory = InputSanitizer.sanitizeCategory(category);
-            allProducts.removeIf(p -> !p.getCategory().equalsIgnoreCase(sanitizedCategory));
+        // Facet filters
+        List<String> categories = new ArrayList<>();
+        if (request.getCategory() != null && !request.getCategory().isEmpty()) {
+            categories.add(request.getCategory());
         }
-
-        // Filter by price
-        if (minPrice != null) {
-            allProducts.removeIf(p -> p.getPrice() < minPrice);
+        if (request.getCategories() != null) {
+            categories.addAll(request.getCategories());
         }
-        if (maxPrice != null) {
-            allProducts.removeIf(p -> p.getPrice() > maxPrice);
-        }
-
-        // Sort
-        allProducts.sort((p1, p2) -> {
-            int result = 0;
-            switch (sortBy) {
-                case "name":
-                    result = p1.getName().compareToIgnoreCase(p2.getName());
-                    break;
-                case "price":
-                    result = Double.compare(p1.getPrice(), p2.getPrice());
-                    break;
-                default:
-                    result = p1.getName().compareToIgnoreCase(p2.getName());
-            }
-            return sortOrder.equalsIgnoreCase("desc") ? -result : result;
-        });
 
-        // Pagination
-        int start = page * size;
-        int end = Math.min(start + size, allProducts.size());
-        List<Product> pagedProducts = start < end ? allProducts.subList(start, end) : List.of();
+        SearchCriteria criteria = new SearchCriteria(
+                sanitizedQuery,
+                false,
+                sanitizeFacetValues(categories, true),
+                sanitizeFacetValues(request.getBrands(), false),
+                request.getMinPrice(),
+                request.getMaxPrice(),
+                Boolean.TRUE.equals(request.getInStockOnly()),
+                request.effectiveSortBy(),
+                "desc".equalsIgnoreCase(request.getSortOrder()),
+                request.getPage(),
+                request.getSize());
+
+        SearchPage page = searchBackend.search(criteria);
+
+        // Fuzzy matching only runs when the exact stage comes back (nearly) empty
+        boolean fuzzy = !sanitizedQuery.isEmpty() && page.total() < FUZZY_MIN_HITS;
+        if (fuzzy) {
+            page = searchBackend.search(criteria.withFuzzy(true));
+        }
 
         // Build response
         Map<String, Object> response = new HashMap<>();
-        response.put("total", allProducts.size());
-        response.put("page", page);
-        response.put("size", size);
-        response.put("products", pagedProducts);
+        response.put("total", page.total());
+        response.put("page", request.getPage());
+        response.put("size", request.getSize());
+        response.put("products", page.products());
+        response.put("facets", page.facets());
+        response.put("fuzzy", fuzzy);
 
         return response;
     }
+
+    private static List<String> sanitizeFacetValues(List<String> values, boolean category) {
+        List<String> sanitized = new ArrayList<>();
+        if (values == null) {
+            return sanitized;
+        }
+        for (String value : values) {
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            if (!InputSanitizer.isValidInput(value)) {
+                throw new IllegalArgumentException("Invalid filter input detected");
+            }
+            sanitized.add(category ? InputSanitizer.sanitizeCategory(value) : InputSanitizer.sanitizeProductName(value));
+        }
+        return sanitized;
+    }
 }
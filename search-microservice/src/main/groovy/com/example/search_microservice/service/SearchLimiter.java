@@ -0,0 +1,101 @@
+package com.example.search_microservice.service;
+
+import com.example.search_microservice.exception.SearchOverloadedException;
+import com.example.search_microservice.exception.SearchTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Bounds how many searches run against the backend at once and how long
+ * each may take. Requests run on virtual threads, so waiting on the backend
+ * does not pin a platform thread; the permit count, not the servlet thread
+ * pool, is what limits load on the search engine.
+ * <p>
+ * A request that cannot get a permit within the queue timeout is shed with
+ * {@link SearchOverloadedException}; one that runs past the request timeout
+ * gets {@link SearchTimeoutException}. The permit is held until the backend
+ * call actually returns, so abandoned work still counts against the limit.
+ */
+@Component
+public class SearchLimiter {
+
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final Duration queueTimeout;
+    private final Duration requestTimeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Counter rejected;
+    private final Counter timedOut;
+
+    public SearchLimiter(@Value("${search.limiter.max-concurrent:64}") int maxConcurrent,
+                         @Value("${search.limiter.queue-timeout:50ms}") Duration queueTimeout,
+                         @Value("${search.request-timeout:2s}") Duration requestTimeout,
+                         MeterRegistry registry) {
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+        this.queueTimeout = queueTimeout;
+        this.requestTimeout = requestTimeout;
+        this.rejected = registry.counter("search.requests.rejected");
+        this.timedOut = registry.counter("search.requests.timeout");
+        Gauge.builder("search.requests.inflight", permits, p -> maxConcurrent - p.availablePermits())
+                .register(registry);
+    }
+
+    public <T> T execute(Supplier<T> search) {
+        long deadline = System.nanoTime() + requestTimeout.toNanos();
+        try {
+            if (!permits.tryAcquire(queueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new SearchOverloadedException("Search is overloaded, " + maxConcurrent + " requests in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchOverloadedException("Interrupted while waiting for a search slot");
+        }
+
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                try {
+                    return search.get();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw new SearchOverloadedException("Search is shutting down");
+        }
+
+        try {
+            return result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            timedOut.increment();
+            throw new SearchTimeoutException("Search did not finish within " + requestTimeout.toMillis() + " ms");
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SearchTimeoutException("Interrupted while waiting for search results");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
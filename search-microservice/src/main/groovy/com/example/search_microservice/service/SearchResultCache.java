@@ -0,0 +1,78 @@
+package com.example.search_microservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of advanced-search responses, keyed by the normalized
+ * request and tagged with the {@link IndexGeneration} they were computed at.
+ */
+@Component
+public class SearchResultCache {
+
+    private static final int CAPACITY = 10_000;
+
+    private record Entry(long generation, long createdAt, Map<String, Object> response) {
+    }
+
+    private final IndexGeneration indexGeneration;
+
+    private final Map<String, Entry> entries = Collections.synchronizedMap(
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > CAPACITY;
+                }
+            });
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter staleDrops;
+    private final DistributionSummary hitAge;
+
+    public SearchResultCache(IndexGeneration indexGeneration, MeterRegistry registry) {
+        this.indexGeneration = indexGeneration;
+        this.hits = registry.counter("search.cache.requests", "result", "hit");
+        this.misses = registry.counter("search.cache.requests", "result", "miss");
+        this.staleDrops = registry.counter("search.cache.stale");
+        this.hitAge = DistributionSummary.builder("search.cache.hit.age")
+                .description("Age of cached results when served")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("search.cache.size", entries, Map::size).register(registry);
+        Gauge.builder("search.index.generation", indexGeneration, IndexGeneration::current).register(registry);
+    }
+
+    public Map<String, Object> get(String key, Supplier<Map<String, Object>> loader) {
+        long generation = indexGeneration.current();
+        Entry entry = entries.get(key);
+
+        if (entry != null) {
+            if (entry.generation() == generation) {
+                hits.increment();
+                hitAge.record(System.currentTimeMillis() - entry.createdAt());
+                return entry.response();
+            }
+            entries.remove(key);
+            staleDrops.increment();
+        }
+
+        misses.increment();
+        // tagged with the generation read before the query, so a concurrent write makes it stale
+        Map<String, Object> response = Collections.unmodifiableMap(loader.get());
+        entries.put(key, new Entry(generation, System.currentTimeMillis(), response));
+        return response;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
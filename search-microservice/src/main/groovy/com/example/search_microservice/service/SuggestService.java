@@ -0,0 +1,63 @@
+package com.example.search_microservice.service;
+
+import com.example.search_microservice.search.SearchBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Type-ahead suggestions from the {@code suggest} completion field.
+ * Results are id + display string only. The shortest prefixes are the
+ * hottest and the most expensive, so they are kept in a small LRU cache
+ * until the index generation moves on (or a short TTL passes).
+ */
+@Service
+public class SuggestService {
+
+    private static final int CACHED_PREFIX_LENGTH = 3;
+    private static final int CACHE_CAPACITY = 5000;
+    private static final long CACHE_TTL_MILLIS = 60_000;
+
+    @Autowired
+    private SearchBackend searchBackend;
+
+    @Autowired
+    private IndexGeneration indexGeneration;
+
+    private record CachedSuggestions(List<Map<String, String>> suggestions, long generation, long expiresAt) {
+    }
+
+    private final Map<String, CachedSuggestions> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedSuggestions> eldest) {
+                    return size() > CACHE_CAPACITY;
+                }
+            });
+
+    public List<Map<String, String>> suggest(String prefix, int size) {
+        String normalized = prefix.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+
+        boolean cacheable = normalized.length() <= CACHED_PREFIX_LENGTH;
+        String key = normalized + "|" + size;
+        long generation = indexGeneration.current();
+        if (cacheable) {
+            CachedSuggestions cached = cache.get(key);
+            if (cached != null && cached.generation() == generation
+                    && cached.expiresAt() > System.currentTimeMillis()) {
+                return cached.suggestions();
+            }
+        }
+
+        List<Map<String, String>> suggestions = searchBackend.suggest(normalized, size);
+        if (cacheable) {
+            cache.put(key, new CachedSuggestions(suggestions, generation,
+                    System.currentTimeMillis() + CACHE_TTL_MILLIS));
+        }
+        return suggestions;
+    }
+}
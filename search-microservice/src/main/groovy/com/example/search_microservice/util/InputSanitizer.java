@@ -1,22 +1,35 @@
 package com.example.search_microservice.util;
 
-import java.util.regex.Pattern;
-
 /**
  * Utility class to sanitize user input and prevent NoSQL injection attacks
+ * <p>
+ * Every method is a single scan over a fixed ASCII lookup table and returns
+ * the (trimmed) input itself when nothing has to change, so the common case
+ * allocates nothing. The same implementation lives in product-services.
  */
 public class InputSanitizer {
 
+    private static final int MAX_SEARCH_LENGTH = 100;
+    private static final int MAX_CATEGORY_LENGTH = 50;
+    private static final int MAX_PRODUCT_NAME_LENGTH = 200;
+
+    // Whitespace as matched by \s
+    private static final String WHITESPACE = " \t\n\u000B\f\r";
+
     // Regex special characters that need to be escaped
-    private static final Pattern REGEX_SPECIAL_CHARS = Pattern.compile("[.^$*+?()\\[\\]{}|\\\\]");
-    
-    // Pattern to detect potential NoSQL injection attempts
-    private static final Pattern NOSQL_INJECTION_PATTERN = Pattern.compile(".*[{}$\\[\\]].*");
-    
+    private static final boolean[] REGEX_SPECIAL_CHARS = charTable(".^$*+?()[]{}|\\", false);
+
+    // Characters that signal a potential NoSQL injection attempt
+    private static final boolean[] NOSQL_INJECTION_CHARS = charTable("{}$[]", false);
+
+    private static final boolean[] CATEGORY_CHARS = charTable(WHITESPACE + "&-", true);
+
+    private static final boolean[] PRODUCT_NAME_CHARS = charTable(WHITESPACE + "'\".,!&()-", true);
+
     /**
      * Sanitize input for use in Elasticsearch queries
      * Escapes all regex special characters to prevent injection
-     * 
+     *
      * @param input The user input to sanitize
      * @return Sanitized string safe for queries
      */
@@ -24,24 +37,31 @@ public class InputSanitizer {
         if (input == null || input.isEmpty()) {
             return "";
         }
-        
-        // Trim whitespace
-        String sanitized = input.trim();
-        
-        // Limit length to prevent DoS attacks
-        if (sanitized.length() > 100) {
-            sanitized = sanitized.substring(0, 100);
+
+        // Trim whitespace and limit length to prevent DoS attacks
+        String trimmed = input.trim();
+        int end = Math.min(trimmed.length(), MAX_SEARCH_LENGTH);
+
+        int first = indexOfAny(trimmed, end, REGEX_SPECIAL_CHARS);
+        if (first < 0) {
+            return end == trimmed.length() ? trimmed : trimmed.substring(0, end);
         }
-        
+
         // Escape all regex special characters
-        sanitized = REGEX_SPECIAL_CHARS.matcher(sanitized).replaceAll("\\\\$0");
-        
-        return sanitized;
+        StringBuilder sanitized = new StringBuilder(end + 8).append(trimmed, 0, first);
+        for (int i = first; i < end; i++) {
+            char c = trimmed.charAt(i);
+            if (in(REGEX_SPECIAL_CHARS, c)) {
+                sanitized.append('\\');
+            }
+            sanitized.append(c);
+        }
+        return sanitized.toString();
     }
-    
+
     /**
      * Validate input to detect potential NoSQL injection attempts
-     * 
+     *
      * @param input The user input to validate
      * @return true if input is safe, false if it contains suspicious patterns
      */
@@ -49,19 +69,15 @@ public class InputSanitizer {
         if (input == null) {
             return true;
         }
-        
-        // Check for NoSQL injection patterns
-        if (NOSQL_INJECTION_PATTERN.matcher(input).matches()) {
-            return false;
-        }
-        
-        return true;
+
+        // Check for NoSQL injection characters anywhere in the input
+        return indexOfAny(input, input.length(), NOSQL_INJECTION_CHARS) < 0;
     }
-    
+
     /**
      * Sanitize category input
      * Only allows alphanumeric characters, spaces, hyphens, and ampersands
-     * 
+     *
      * @param category The category to sanitize
      * @return Sanitized category string
      */
@@ -69,24 +85,13 @@ public class InputSanitizer {
         if (category == null || category.isEmpty()) {
             return "";
         }
-        
-        String sanitized = category.trim();
-        
-        // Remove any characters that aren't alphanumeric, space, hyphen, or ampersand
-        sanitized = sanitized.replaceAll("[^a-zA-Z0-9\\s&-]", "");
-        
-        // Limit length
-        if (sanitized.length() > 50) {
-            sanitized = sanitized.substring(0, 50);
-        }
-        
-        return sanitized;
+        return keepOnly(category.trim(), CATEGORY_CHARS, MAX_CATEGORY_LENGTH);
     }
-    
+
     /**
      * Sanitize product name input
      * Allows alphanumeric characters, spaces, and common punctuation
-     * 
+     *
      * @param name The product name to sanitize
      * @return Sanitized name string
      */
@@ -94,18 +99,53 @@ public class InputSanitizer {
         if (name == null || name.isEmpty()) {
             return "";
         }
-        
-        String sanitized = name.trim();
-        
-        // Remove any characters that aren't alphanumeric, space, or common punctuation
-        sanitized = sanitized.replaceAll("[^a-zA-Z0-9\\s'\".,!&()-]", "");
-        
-        // Limit length
-        if (sanitized.length() > 200) {
-            sanitized = sanitized.substring(0, 200);
+        return keepOnly(name.trim(), PRODUCT_NAME_CHARS, MAX_PRODUCT_NAME_LENGTH);
+    }
+
+    // Drops characters outside the table, then limits the length
+    private static String keepOnly(String input, boolean[] allowed, int maxLength) {
+        int length = input.length();
+        int kept = 0;
+        while (kept < length && in(allowed, input.charAt(kept))) {
+            kept++;
+        }
+        if (kept == length) {
+            return length <= maxLength ? input : input.substring(0, maxLength);
         }
-        
-        return sanitized;
+
+        StringBuilder sanitized = new StringBuilder(Math.min(length, maxLength)).append(input, 0, Math.min(kept, maxLength));
+        for (int i = kept + 1; i < length && sanitized.length() < maxLength; i++) {
+            char c = input.charAt(i);
+            if (in(allowed, c)) {
+                sanitized.append(c);
+            }
+        }
+        return sanitized.toString();
+    }
+
+    private static int indexOfAny(String input, int end, boolean[] table) {
+        for (int i = 0; i < end; i++) {
+            if (in(table, input.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean in(boolean[] table, char c) {
+        return c < table.length && table[c];
     }
-}
 
+    private static boolean[] charTable(String chars, boolean alphanumeric) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+        if (alphanumeric) {
+            for (char c = '0'; c <= '9'; c++) table[c] = true;
+            for (char c = 'a'; c <= 'z'; c++) table[c] = true;
+            for (char c = 'A'; c <= 'Z'; c++) table[c] = true;
+        }
+        return table;
+    }
+}
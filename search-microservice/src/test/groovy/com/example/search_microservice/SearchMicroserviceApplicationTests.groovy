@@ -2,8 +2,10 @@ package com.example.search_microservice
 
 import org.junit.jupiter.api.Test
 import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
 
-@SpringBootTest
+@SpringBootTest(properties = "search.lucene.path=build/test-search-index")
+@ActiveProfiles("lucene")
 class SearchMicroserviceApplicationTests {
 
 	@Test
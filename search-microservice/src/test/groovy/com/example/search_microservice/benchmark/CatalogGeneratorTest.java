@@ -0,0 +1,44 @@
+package com.example.search_microservice.benchmark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogGeneratorTest {
+
+    @Test
+    void product_shouldDependOnlyOnSeedAndIndex() {
+        assertEquals(new CatalogGenerator(42).product(1234), new CatalogGenerator(42).product(1234));
+        assertNotEquals(new CatalogGenerator(42).product(1234), new CatalogGenerator(43).product(1234));
+    }
+
+    @Test
+    void product_shouldFollowNamingRules() {
+        CatalogGenerator catalog = new CatalogGenerator(42);
+        for (int i = 0; i < 1000; i++) {
+            CatalogGenerator.SyntheticProduct p = catalog.product(i);
+
+            assertTrue(CatalogGenerator.NOUNS.get(p.category()).contains(p.noun()), p.name());
+            assertTrue(CatalogGenerator.BRANDS.get(p.category()).contains(p.brand()), p.name());
+            assertTrue(CatalogGenerator.ADJECTIVES.contains(p.name().substring(0, p.name().indexOf(' '))), p.name());
+            assertTrue(p.name().toLowerCase().contains(p.noun()), p.name());
+            assertTrue(p.name().matches(".* [A-Z][0-9]{3}"), p.name());
+            assertFalse(p.merchants().isEmpty());
+            assertEquals(String.format("bench-%09d", i), p.productId());
+        }
+    }
+
+    @Test
+    void products_shouldStopAfterCount() {
+        Iterator<CatalogGenerator.SyntheticProduct> products = new CatalogGenerator(42).products(2);
+
+        products.next();
+        products.next();
+
+        assertFalse(products.hasNext());
+        assertThrows(NoSuchElementException.class, products::next);
+    }
+}
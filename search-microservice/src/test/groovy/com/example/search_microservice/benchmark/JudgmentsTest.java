@@ -0,0 +1,104 @@
+package com.example.search_microservice.benchmark;
+
+import com.example.search_microservice.benchmark.Judgments.Hit;
+import com.example.search_microservice.benchmark.QueryLog.Intent;
+import com.example.search_microservice.benchmark.QueryLog.LoggedQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JudgmentsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ndcg_shouldBeOneForIdealRanking() throws IOException {
+        Judgments judgments = labeled("phone\tp1\t3", "phone\tp2\t2", "phone\tp3\t0");
+
+        assertEquals(1.0, judgments.ndcg(LoggedQuery.plain("phone"), hits("p1", "p2", "p3"), 10), 1e-9);
+    }
+
+    @Test
+    void ndcg_shouldDiscountRelevantHitsRankedLower() throws IOException {
+        Judgments judgments = labeled("phone\tp1\t3", "phone\tp2\t2");
+
+        // (3 + 7 / log2(3)) / (7 + 3 / log2(3))
+        double expected = (3 + 7 / log2(3)) / (7 + 3 / log2(3));
+        assertEquals(expected, judgments.ndcg(LoggedQuery.plain("phone"), hits("p2", "p1"), 10), 1e-9);
+    }
+
+    @Test
+    void ndcg_shouldCutOffAtK() throws IOException {
+        Judgments judgments = labeled("phone\tp1\t3");
+
+        assertEquals(0.0, judgments.ndcg(LoggedQuery.plain("phone"), hits("p9", "p1"), 1), 1e-9);
+    }
+
+    @Test
+    void ndcg_shouldBeNaNForUnjudgedOrIrrelevantQueries() throws IOException {
+        Judgments judgments = labeled("# comment", "", "phone\tp1\t0");
+
+        assertTrue(Double.isNaN(judgments.ndcg(LoggedQuery.plain("laptop"), hits("p1"), 10)));
+        assertTrue(Double.isNaN(judgments.ndcg(LoggedQuery.plain("phone"), hits("p1"), 10)));
+    }
+
+    @Test
+    void fromFile_shouldRejectMalformedLines() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> labeled("phone p1 3"));
+    }
+
+    @Test
+    void synthetic_shouldGradeBrandNounQueriesByBrandAndNoun() {
+        CatalogGenerator catalog = new CatalogGenerator(7);
+        Judgments judgments = Judgments.synthetic(catalog, 500);
+        CatalogGenerator.SyntheticProduct target = catalog.product(0);
+        LoggedQuery query = new LoggedQuery(target.brand().toLowerCase() + " " + target.noun(), Intent.BRAND_NOUN,
+                target.brand(), null, target.noun(), target.category());
+
+        assertEquals(3, judgments.grade(query, hit(target)));
+        assertEquals(1, judgments.grade(query, new Hit("x", target.name(), "Other", target.category())));
+        assertEquals(0, judgments.grade(query, new Hit("y", "Classic Kite Z100", target.brand(), target.category())));
+        assertEquals(-1, judgments.grade(LoggedQuery.plain("anything"), hit(target)));
+    }
+
+    @Test
+    void synthetic_shouldRankExactMatchesFirstInIdeal() {
+        CatalogGenerator catalog = new CatalogGenerator(7);
+        Judgments judgments = Judgments.synthetic(catalog, 500);
+        CatalogGenerator.SyntheticProduct target = catalog.product(0);
+        LoggedQuery query = new LoggedQuery(target.noun(), Intent.NOUN, null, null, target.noun(), target.category());
+
+        List<Integer> ideal = judgments.ideal(query, 10);
+
+        assertFalse(ideal.isEmpty());
+        assertTrue(ideal.size() <= 10);
+        assertTrue(ideal.stream().allMatch(g -> g == 2));
+        assertEquals(1.0, judgments.ndcg(query, List.of(hit(target)), 1), 1e-9);
+    }
+
+    private Judgments labeled(String... lines) throws IOException {
+        Path file = dir.resolve("judgments.tsv");
+        Files.write(file, List.of(lines));
+        return Judgments.fromFile(file);
+    }
+
+    private static List<Hit> hits(String... ids) {
+        return Arrays.stream(ids).map(id -> new Hit(id, null, null, null)).toList();
+    }
+
+    private static Hit hit(CatalogGenerator.SyntheticProduct product) {
+        return new Hit(product.productId(), product.name(), product.brand(), product.category());
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
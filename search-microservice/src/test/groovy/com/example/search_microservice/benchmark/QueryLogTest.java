@@ -0,0 +1,66 @@
+package com.example.search_microservice.benchmark;
+
+import com.example.search_microservice.benchmark.QueryLog.Intent;
+import com.example.search_microservice.benchmark.QueryLog.LoggedQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryLogTest {
+
+    @Test
+    void generate_shouldBeReproducibleForSeed() {
+        assertEquals(QueryLog.generate(1, 500, 1.1), QueryLog.generate(1, 500, 1.1));
+        assertEquals(500, QueryLog.generate(1, 500, 1.1).size());
+    }
+
+    @Test
+    void generate_shouldFollowZipfPopularity() {
+        List<LoggedQuery> log = QueryLog.generate(42, 10_000, 1.07);
+        List<Long> frequencies = log.stream()
+                .collect(Collectors.groupingBy(LoggedQuery::text, Collectors.counting()))
+                .values().stream().sorted(Comparator.reverseOrder()).toList();
+
+        // a short head of very frequent queries and a long tail seen once or twice
+        long head = frequencies.stream().limit(frequencies.size() / 100).mapToLong(Long::longValue).sum();
+        long tail = frequencies.stream().filter(n -> n <= 2).count();
+        assertTrue(head > log.size() / 3, "top 1% of queries are " + head + " of " + log.size() + " searches");
+        assertTrue(tail > frequencies.size() / 3, tail + " of " + frequencies.size() + " queries seen at most twice");
+    }
+
+    @Test
+    void generate_shouldKeepCatalogTermsBehindEachQuery() {
+        Map<String, LoggedQuery> distinct = QueryLog.generate(1, 5000, 1.0).stream()
+                .collect(Collectors.toMap(LoggedQuery::text, Function.identity(), (a, b) -> a));
+
+        for (LoggedQuery q : distinct.values()) {
+            assertNotNull(q.intent());
+            assertTrue(CatalogGenerator.CATEGORIES.contains(q.category()), q.text());
+            if (q.intent() == Intent.BRAND_NOUN) {
+                assertEquals(q.brand().toLowerCase() + " " + q.noun(), q.text());
+            }
+            if (q.intent() == Intent.TYPO) {
+                assertNotEquals(q.noun(), q.text());
+                assertEquals(q.noun().charAt(0), q.text().charAt(0));
+            }
+        }
+    }
+
+    @Test
+    void read_shouldSkipBlankAndCommentLines(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("queries.txt");
+        Files.write(file, List.of("# production sample", "", "  red shoes ", "laptop"));
+
+        assertEquals(List.of(LoggedQuery.plain("red shoes"), LoggedQuery.plain("laptop")), QueryLog.read(file));
+    }
+}
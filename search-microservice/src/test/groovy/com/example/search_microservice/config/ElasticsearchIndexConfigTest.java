@@ -0,0 +1,131 @@
+package com.example.search_microservice.config;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.example.search_microservice.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ElasticsearchIndexConfigTest {
+
+    @Mock private ElasticsearchOperations operations;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS) private ElasticsearchClient elasticsearchClient;
+    @Mock private IndexOperations aliasOps;
+    @Mock private IndexOperations indexOps;
+
+    @InjectMocks private ElasticsearchIndexConfig config;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(operations.indexOps(IndexCoordinates.of("products_final"))).thenReturn(aliasOps);
+        when(operations.indexOps(IndexCoordinates.of("products_final_v2"))).thenReturn(indexOps);
+    }
+
+    private void aliasPointsTo(String index) {
+        when(aliasOps.exists()).thenReturn(true);
+        when(aliasOps.getInformation()).thenReturn(List.of(IndexInformation.of(index, null, null, null)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void indexHolds(String index, Product... products) {
+        Iterator<SearchHit<Product>> found = Arrays.stream(products).map(p -> {
+            SearchHit<Product> hit = mock(SearchHit.class);
+            when(hit.getContent()).thenReturn(p);
+            return hit;
+        }).toList().iterator();
+        SearchHitsIterator<Product> hits = mock(SearchHitsIterator.class);
+        when(hits.hasNext()).thenAnswer(i -> found.hasNext());
+        when(hits.next()).thenAnswer(i -> found.next());
+        when(operations.searchForStream(any(Query.class), eq(Product.class), eq(IndexCoordinates.of(index)))).thenReturn(hits);
+    }
+
+    private AliasActions swappedAlias() {
+        ArgumentCaptor<AliasActions> actions = ArgumentCaptor.forClass(AliasActions.class);
+        verify(indexOps).alias(actions.capture());
+        return actions.getValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ensureIndex_shouldMigrateIndexCreatedBeforeTheAlias() throws Exception {
+        aliasPointsTo("products_final");
+        Product legacy = new Product();
+        legacy.setProductId("p1");
+        legacy.setName("Apple iPhone 15");
+        legacy.setBrand("Apple");
+        legacy.setPrice(999.0);
+        legacy.setMerchants(List.of(Map.of("merchantId", "1", "price", 950.0, "stock", 3)));
+        indexHolds("products_final", legacy);
+
+        config.ensureIndex();
+
+        verify(indexOps).create(any(), any());
+        verify(elasticsearchClient.indices()).addBlock(any(Function.class));
+        verify(operations).save(List.of(legacy), IndexCoordinates.of("products_final_v2"));
+        // offer summary and suggest inputs the old mapping never had
+        assertEquals(950.0, legacy.getMinPrice());
+        assertTrue(legacy.getInStock());
+        assertNotNull(legacy.getSuggest());
+
+        List<AliasAction> actions = swappedAlias().getActions();
+        assertEquals(2, actions.size());
+        assertInstanceOf(AliasAction.Add.class, actions.get(0));
+        assertArrayEquals(new String[]{"products_final_v2"}, actions.get(0).getParameters().getIndices());
+        assertArrayEquals(new String[]{"products_final"}, actions.get(0).getParameters().getAliases());
+        assertInstanceOf(AliasAction.RemoveIndex.class, actions.get(1));
+        assertArrayEquals(new String[]{"products_final"}, actions.get(1).getParameters().getIndices());
+    }
+
+    @Test
+    void ensureIndex_shouldCreateIndexAndAliasOnEmptyCluster() {
+        when(aliasOps.exists()).thenReturn(false);
+
+        config.ensureIndex();
+
+        verify(indexOps).create(any(), any());
+        verify(operations, never()).searchForStream(any(Query.class), eq(Product.class), any(IndexCoordinates.class));
+        List<AliasAction> actions = swappedAlias().getActions();
+        assertEquals(1, actions.size());
+        assertInstanceOf(AliasAction.Add.class, actions.get(0));
+    }
+
+    @Test
+    void ensureIndex_shouldOnlyAddNewFieldsToCurrentVersion() {
+        aliasPointsTo("products_final_v2");
+
+        config.ensureIndex();
+
+        verify(indexOps).putMapping(Product.class);
+        verify(indexOps, never()).create(any(), any());
+        verify(indexOps, never()).alias(any());
+    }
+
+    @Test
+    void ensureIndex_shouldFailStartupWhenCurrentVersionRejectsMapping() {
+        aliasPointsTo("products_final_v2");
+        when(indexOps.putMapping(Product.class)).thenThrow(new RuntimeException("mapper [name] cannot be changed"));
+
+        assertThrows(IllegalStateException.class, () -> config.ensureIndex());
+        verify(indexOps, never()).alias(any());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.search_microservice.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdvancedSearchRequestTest {
+
+    @Test
+    void normalizedKey_shouldIgnoreCaseWhitespaceAndFacetOrder() {
+        AdvancedSearchRequest first = new AdvancedSearchRequest();
+        first.setQuery(" Phone ");
+        first.setCategory("Mobiles");
+        first.setCategories(List.of("Tablets"));
+        first.setBrands(List.of("Samsung", "apple"));
+
+        AdvancedSearchRequest second = new AdvancedSearchRequest();
+        second.setQuery("phone");
+        second.setCategories(List.of("tablets ", "MOBILES", ""));
+        second.setBrands(List.of("Apple", "samsung"));
+        second.setSortBy("unknown");
+        second.setSortOrder("ASC");
+
+        assertEquals(first.normalizedKey(), second.normalizedKey());
+    }
+
+    @Test
+    void normalizedKey_shouldSeparateDifferentPagesAndFilters() {
+        AdvancedSearchRequest base = new AdvancedSearchRequest();
+        AdvancedSearchRequest nextPage = new AdvancedSearchRequest();
+        nextPage.setPage(1);
+        AdvancedSearchRequest inStock = new AdvancedSearchRequest();
+        inStock.setInStockOnly(true);
+        AdvancedSearchRequest cheaper = new AdvancedSearchRequest();
+        cheaper.setMaxPrice(500.0);
+
+        assertNotEquals(base.normalizedKey(), nextPage.normalizedKey());
+        assertNotEquals(base.normalizedKey(), inStock.normalizedKey());
+        assertNotEquals(base.normalizedKey(), cheaper.normalizedKey());
+    }
+
+    @Test
+    void effectiveSortBy_shouldRankTextQueriesByRelevanceAndBrowseByName() {
+        AdvancedSearchRequest browse = new AdvancedSearchRequest();
+        AdvancedSearchRequest text = new AdvancedSearchRequest();
+        text.setQuery("phone");
+        AdvancedSearchRequest byPrice = new AdvancedSearchRequest();
+        byPrice.setQuery("phone");
+        byPrice.setSortBy("price");
+
+        assertEquals("name", browse.effectiveSortBy());
+        assertEquals("relevance", text.effectiveSortBy());
+        assertEquals("price", byPrice.effectiveSortBy());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.search_microservice.dto;
+
+import com.example.search_microservice.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCardTest {
+
+    @Test
+    void of_shouldCopyCardFieldsOnly() {
+        Product product = new Product();
+        product.setProductId("p1");
+        product.setName("Galaxy S24");
+        product.setBrand("Samsung");
+        product.setCategory("Mobiles");
+        product.setImageUrl("/images/s24.png");
+        product.setDescription("Android flagship");
+        product.setPrice(75000.0);
+        product.setMinPrice(70000.0);
+        product.setMaxPrice(72000.0);
+        product.setInStock(true);
+        product.setOfferCount(2);
+
+        ProductCard card = ProductCard.of(product, Map.of("name", List.of("<em>Galaxy</em> S24")));
+
+        assertEquals("p1", card.getProductId());
+        assertEquals("/images/s24.png", card.getImageUrl());
+        assertEquals(70000.0, card.getMinPrice());
+        assertEquals(72000.0, card.getMaxPrice());
+        assertTrue(card.getInStock());
+        assertEquals(2, card.getOfferCount());
+        assertEquals(List.of("<em>Galaxy</em> S24"), card.getHighlights().get("name"));
+    }
+
+    @Test
+    void of_shouldFallBackToListPriceForOlderDocuments() {
+        Product product = new Product();
+        product.setProductId("p1");
+        product.setPrice(75000.0);
+
+        ProductCard card = ProductCard.of(product, Map.of());
+
+        assertEquals(75000.0, card.getMinPrice());
+        assertEquals(75000.0, card.getMaxPrice());
+    }
+
+    @Test
+    void shouldLeaveEmptyHighlightsOutOfJson() throws Exception {
+        ProductCard card = new ProductCard();
+        card.setProductId("p1");
+        card.setHighlights(Map.of());
+
+        Map<?, ?> json = new ObjectMapper().readValue(new ObjectMapper().writeValueAsString(card), Map.class);
+
+        assertFalse(json.containsKey("highlights"));
+        assertFalse(json.containsKey("description"));
+    }
+}
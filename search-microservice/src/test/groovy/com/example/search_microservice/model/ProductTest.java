@@ -0,0 +1,111 @@
+package com.example.search_microservice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductTest {
+
+    @Test
+    void summarizeOffers_shouldTakeBestAndWorstOfferPrice() {
+        Product product = product(1000.0, offer(950.0, 0), offer(1100.0, 3), offer(990.0, 0));
+
+        product.summarizeOffers();
+
+        assertEquals(950.0, product.getMinPrice());
+        assertEquals(1100.0, product.getMaxPrice());
+        assertEquals(3, product.getOfferCount());
+        assertTrue(product.getInStock());
+    }
+
+    @Test
+    void summarizeOffers_shouldBeOutOfStockWhenNoOfferHasStock() {
+        Product product = product(1000.0, offer(950.0, 0), offer(1100.0, 0));
+
+        product.summarizeOffers();
+
+        assertFalse(product.getInStock());
+    }
+
+    @Test
+    void summarizeOffers_shouldFallBackToListPriceWithoutOffers() {
+        Product product = product(1000.0);
+
+        product.summarizeOffers();
+
+        assertEquals(1000.0, product.getMinPrice());
+        assertEquals(1000.0, product.getMaxPrice());
+        assertEquals(0, product.getOfferCount());
+        assertFalse(product.getInStock());
+    }
+
+    @Test
+    void summarizeOffers_shouldSkipOffersWithoutNumericPrice() {
+        Map<String, Object> broken = new HashMap<>();
+        broken.put("merchantId", "m9");
+        broken.put("price", "cheap");
+        broken.put("stock", 5);
+        Product product = product(1000.0, offer(1200.0, 1), broken);
+
+        product.summarizeOffers();
+
+        assertEquals(1200.0, product.getMinPrice());
+        assertEquals(1, product.getOfferCount());
+    }
+
+    @Test
+    void buildSuggest_shouldSuggestNameAndBrandName() {
+        Product product = product(1000.0, offer(950.0, 1), offer(990.0, 1), offer(999.0, 0));
+        product.summarizeOffers();
+
+        product.buildSuggest();
+
+        assertEquals(List.of("Galaxy S24", "Samsung Galaxy S24"), List.of(product.getSuggest().getInput()));
+        assertEquals(3, product.getSuggest().getWeight());
+    }
+
+    @Test
+    void buildSuggest_shouldWeighProductsWithoutOffersAsOne() {
+        Product product = product(1000.0);
+        product.setBrand(" ");
+
+        product.buildSuggest();
+
+        assertEquals(List.of("Galaxy S24"), List.of(product.getSuggest().getInput()));
+        assertEquals(1, product.getSuggest().getWeight());
+    }
+
+    @Test
+    void buildSuggest_shouldClearSuggestWithoutName() {
+        Product product = product(1000.0);
+        product.buildSuggest();
+        product.setName("");
+
+        product.buildSuggest();
+
+        assertNull(product.getSuggest());
+    }
+
+    @SafeVarargs
+    private static Product product(Double price, Map<String, Object>... offers) {
+        Product product = new Product();
+        product.setName("Galaxy S24");
+        product.setBrand("Samsung");
+        product.setPrice(price);
+        product.setMerchants(new ArrayList<>(List.of(offers)));
+        return product;
+    }
+
+    private static Map<String, Object> offer(double price, int stock) {
+        Map<String, Object> offer = new HashMap<>();
+        offer.put("merchantId", "m" + price);
+        offer.put("price", price);
+        offer.put("stock", stock);
+        return offer;
+    }
+}
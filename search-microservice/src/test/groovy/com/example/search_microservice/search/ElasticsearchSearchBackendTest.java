@@ -0,0 +1,67 @@
+package com.example.search_microservice.search;
+
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.mapping.FieldType;
+import com.example.search_microservice.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ElasticsearchSearchBackendTest {
+
+    @Mock private ElasticsearchOperations elasticsearchOperations;
+    @Mock private SearchHits<Product> hits;
+
+    @InjectMocks private ElasticsearchSearchBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(backend, "requestTimeout", Duration.ofSeconds(2));
+        when(elasticsearchOperations.search(any(NativeQuery.class), eq(Product.class))).thenReturn(hits);
+    }
+
+    private static SearchCriteria sortedBy(String sortBy) {
+        return new SearchCriteria("", false, List.of(), List.of(), null, null, false, sortBy, false, 0, 20);
+    }
+
+    private SortOptions sentSort(SearchCriteria criteria) {
+        backend.search(criteria);
+        ArgumentCaptor<NativeQuery> query = ArgumentCaptor.forClass(NativeQuery.class);
+        verify(elasticsearchOperations).search(query.capture(), eq(Product.class));
+        return query.getValue().getSortOptions().get(0);
+    }
+
+    // An index created before name.sort existed has no such field; without unmapped_type every shard fails the sort
+    @Test
+    void search_shouldSortByNameOnIndexWithoutSortField() {
+        SortOptions sort = sentSort(sortedBy("name"));
+
+        assertEquals("name.sort", sort.field().field());
+        assertEquals(FieldType.Keyword, sort.field().unmappedType());
+    }
+
+    @Test
+    void search_shouldSortByPriceOnIndexWithoutOfferSummary() {
+        SortOptions sort = sentSort(sortedBy("price"));
+
+        assertEquals("minPrice", sort.field().field());
+        assertEquals(FieldType.Double, sort.field().unmappedType());
+    }
+
+    @Test
+    void search_shouldSortByScoreForRelevance() {
+        assertTrue(sentSort(sortedBy("relevance")).isScore());
+    }
+}
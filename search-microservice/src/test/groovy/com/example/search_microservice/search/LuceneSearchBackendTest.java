@@ -0,0 +1,455 @@
+package com.example.search_microservice.search;
+
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
+import com.example.search_microservice.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LuceneSearchBackendTest {
+
+    @TempDir
+    Path indexDir;
+
+    private final PausingObjectMapper objectMapper = new PausingObjectMapper();
+
+    private LuceneSearchBackend backend;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        backend = new LuceneSearchBackend();
+        ReflectionTestUtils.setField(backend, "indexPath", indexDir.toString());
+        ReflectionTestUtils.setField(backend, "synonyms", new ClassPathResource("elasticsearch/analysis/product-synonyms.txt"));
+        ReflectionTestUtils.setField(backend, "objectMapper", objectMapper);
+        backend.open();
+
+        backend.saveAll(List.of(
+                product("p1", "Apple iPhone 15", "Mobiles", "Apple", "A phone with a great camera", 80000.0,
+                        offer("m1", 80000.0, 5), offer("m2", 79000.0, 0)),
+                product("p2", "Samsung Galaxy S24", "Mobiles", "Samsung", "Android flagship", 70000.0,
+                        offer("m1", 70000.0, 0)),
+                product("p3", "Dell XPS Laptop", "Laptops", "Dell", "Thin and light", 150000.0,
+                        offer("m3", 150000.0, 2)),
+                product("p4", "Cotton T-Shirt", "Clothing", "Puma", "Regular fit", 499.0,
+                        offer("m4", 499.0, 10)),
+                product("p5", "Émile Sneakers", "Footwear", "Nike", "Everyday trainers", 2999.0,
+                        offer("m5", 2999.0, 3)),
+                product("p6", "Zebra Sofa", "Furniture", "Ikea", "Three seater", null)));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        backend.close();
+    }
+
+    @Test
+    void search_shouldListEverythingForEmptyText() {
+        SearchPage page = backend.search(criteria(""));
+
+        assertEquals(6, page.total());
+        assertEquals(6, page.products().size());
+    }
+
+    @Test
+    void search_shouldMatchNamePrefix() {
+        SearchPage page = backend.search(criteria("iph"));
+
+        assertEquals(List.of("p1"), ids(page));
+    }
+
+    @Test
+    void search_shouldFilterByCategoryIgnoringCase() {
+        SearchPage page = backend.search(criteria("", List.of("mobiles"), List.of(), null, null, false, "name", false, 0, 10));
+
+        assertEquals(List.of("p1", "p2"), ids(page));
+    }
+
+    @Test
+    void search_shouldCombineCategoryAndBrandFilters() {
+        SearchPage page = backend.search(criteria("", List.of("Mobiles"), List.of("Samsung"), null, null, false, "name", false, 0, 10));
+
+        assertEquals(List.of("p2"), ids(page));
+    }
+
+    @Test
+    void search_shouldFilterByBestOfferPrice() {
+        SearchPage page = backend.search(criteria("", List.of(), List.of(), 1000.0, 80000.0, false, "price", false, 0, 10));
+
+        // p1 lists at 80000 but its best offer is 79000
+        assertEquals(List.of("p5", "p2", "p1"), ids(page));
+    }
+
+    @Test
+    void search_shouldDropOutOfStockProductsWhenAsked() {
+        SearchPage page = backend.search(criteria("", List.of(), List.of(), null, null, true, "name", false, 0, 10));
+
+        assertEquals(List.of("p1", "p4", "p3", "p5"), ids(page));
+    }
+
+    @Test
+    void search_shouldSortByFoldedName() {
+        assertEquals(List.of("p1", "p4", "p3", "p5", "p2", "p6"),
+                ids(backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 0, 10))));
+        assertEquals(List.of("p6", "p2", "p5", "p3", "p4", "p1"),
+                ids(backend.search(criteria("", List.of(), List.of(), null, null, false, "name", true, 0, 10))));
+    }
+
+    @Test
+    void search_shouldSortByPriceWithMissingPricesLastBothWays() {
+        assertEquals(List.of("p4", "p5", "p2", "p1", "p3", "p6"),
+                ids(backend.search(criteria("", List.of(), List.of(), null, null, false, "price", false, 0, 10))));
+        assertEquals(List.of("p3", "p1", "p2", "p5", "p4", "p6"),
+                ids(backend.search(criteria("", List.of(), List.of(), null, null, false, "price", true, 0, 10))));
+    }
+
+    @Test
+    void search_shouldCountFacetsWithoutTheirOwnFilter() {
+        SearchPage page = backend.search(criteria("", List.of("Mobiles"), List.of(), null, null, false, "name", false, 0, 10));
+
+        // the category facet ignores the category filter, the others apply it
+        assertEquals(Map.of("Mobiles", 2L, "Laptops", 1L, "Clothing", 1L, "Footwear", 1L, "Furniture", 1L),
+                counts(page, "categories"));
+        assertEquals(Map.of("Apple", 1L, "Samsung", 1L), counts(page, "brands"));
+        assertEquals(Map.of("under-500", 0L, "500-1000", 0L, "1000-5000", 0L, "5000-20000", 0L, "20000-plus", 2L),
+                priceCounts(page));
+    }
+
+    @Test
+    void search_shouldKeepOtherOptionsCountedForMultiSelectFacets() {
+        SearchPage page = backend.search(criteria("", List.of("Mobiles", "Laptops"), List.of("Apple", "Dell"),
+                null, null, false, "name", false, 0, 10));
+
+        assertEquals(List.of("p1", "p3"), ids(page));
+        // categories are counted under the brand filter only, brands under the category filter only
+        assertEquals(Map.of("Mobiles", 1L, "Laptops", 1L), counts(page, "categories"));
+        assertEquals(Map.of("Apple", 1L, "Samsung", 1L, "Dell", 1L), counts(page, "brands"));
+    }
+
+    @Test
+    void search_shouldCountPriceFacetWithoutPriceFilter() {
+        SearchPage page = backend.search(criteria("", List.of(), List.of(), null, 1000.0, false, "name", false, 0, 10));
+
+        assertEquals(List.of("p4"), ids(page));
+        // the price facet ignores the price filter
+        assertEquals(Map.of("under-500", 1L, "500-1000", 0L, "1000-5000", 1L, "5000-20000", 0L, "20000-plus", 3L),
+                priceCounts(page));
+        assertEquals(Map.of("Clothing", 1L), counts(page, "categories"));
+    }
+
+    @Test
+    void search_shouldBucketBestOfferPrices() {
+        SearchPage page = backend.search(criteria(""));
+
+        assertEquals(Map.of("under-500", 1L, "500-1000", 0L, "1000-5000", 1L, "5000-20000", 0L, "20000-plus", 3L),
+                priceCounts(page));
+    }
+
+    @Test
+    void search_shouldPageThroughSortedResults() {
+        SearchPage first = backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 0, 4));
+        SearchPage second = backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 1, 4));
+        SearchPage past = backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 2, 4));
+
+        assertEquals(List.of("p1", "p4", "p3", "p5"), ids(first));
+        assertEquals(List.of("p2", "p6"), ids(second));
+        assertTrue(past.products().isEmpty());
+        assertEquals(6, first.total());
+        assertEquals(6, second.total());
+        assertEquals(6, past.total());
+    }
+
+    @Test
+    void search_shouldRejectPagesOutsideTheResultWindow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, -1, 10)));
+        assertThrows(IllegalArgumentException.class,
+                () -> backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 0, 0)));
+        assertThrows(IllegalArgumentException.class,
+                () -> backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 100, 100)));
+        assertDoesNotThrow(
+                () -> backend.search(criteria("", List.of(), List.of(), null, null, false, "name", false, 99, 100)));
+    }
+
+    @Test
+    void search_shouldReturnBestOfferFieldsOnCards() {
+        ProductCard card = backend.search(criteria("iph")).products().get(0);
+
+        assertEquals(79000.0, card.getMinPrice());
+        assertEquals(80000.0, card.getMaxPrice());
+        assertEquals(2, card.getOfferCount());
+        assertTrue(card.getInStock());
+    }
+
+    @Test
+    void searchByText_shouldExpandSynonymsAtSearchTime() {
+        assertEquals(List.of("p3"), cardIds(backend.searchByText("notebook", false)));
+        assertEquals(List.of("p4"), cardIds(backend.searchByText("tee", false)));
+        assertEquals(List.of("p6"), cardIds(backend.searchByText("couch", false)));
+    }
+
+    @Test
+    void searchByText_shouldSplitAndJoinWordParts() {
+        assertEquals(List.of("p4"), cardIds(backend.searchByText("tshirt", false)));
+        assertEquals(List.of("p4"), cardIds(backend.searchByText("t shirt", false)));
+        assertEquals(List.of("p2"), cardIds(backend.searchByText("galaxy s24", false)));
+    }
+
+    @Test
+    void searchByText_shouldTolerateTyposOnlyWhenFuzzy() {
+        assertTrue(backend.searchByText("samsnug", false).isEmpty());
+        assertEquals(List.of("p2"), cardIds(backend.searchByText("samsnug", true)));
+        assertEquals(List.of("p1"), cardIds(backend.searchByText("iphnoe", true)));
+    }
+
+    @Test
+    void searchByText_shouldRankOutOfStockProductsLower() {
+        backend.save(product("p7", "Samsung Galaxy S23", "Mobiles", "Samsung", null, 50000.0,
+                offer("m1", 50000.0, 3)));
+
+        // p2 is out of stock
+        assertEquals(List.of("p7", "p2"), cardIds(backend.searchByText("samsung galaxy", false)));
+    }
+
+    @Test
+    void reloadSynonyms_shouldApplyEditedFileToNextSearch(@TempDir Path configDir) throws IOException {
+        Path file = configDir.resolve("product-synonyms.txt");
+        Files.writeString(file, "laptop, notebook\n");
+        ReflectionTestUtils.setField(backend, "synonyms", new FileSystemResource(file));
+        backend.reloadSynonyms();
+        assertTrue(backend.searchByText("settee", false).isEmpty());
+
+        Files.writeString(file, "sofa, settee\n");
+        backend.reloadSynonyms();
+
+        assertEquals(List.of("p6"), cardIds(backend.searchByText("settee", false)));
+    }
+
+    @Test
+    void suggest_shouldMatchNameOrBrandAndNamePrefix() {
+        assertEquals(List.of(Map.of("id", "p4", "text", "Cotton T-Shirt")), backend.suggest("cot", 5));
+        assertEquals(List.of(Map.of("id", "p4", "text", "Cotton T-Shirt")), backend.suggest("puma cot", 5));
+        // inputs match from their start only
+        assertTrue(backend.suggest("shirt", 5).isEmpty());
+    }
+
+    @Test
+    void suggest_shouldFoldCaseAndAccents() {
+        assertEquals(List.of(Map.of("id", "p5", "text", "Émile Sneakers")), backend.suggest("EMI", 5));
+    }
+
+    @Test
+    void suggest_shouldRankByOfferCountAndDropRepeatedNames() {
+        backend.saveAll(List.of(
+                product("p7", "Samsung Galaxy Tab", "Tablets", "Samsung", null, 30000.0,
+                        offer("m1", 30000.0, 1), offer("m2", 31000.0, 1), offer("m3", 32000.0, 0)),
+                product("p8", "Samsung Galaxy S24", "Mobiles", "Samsung", null, 72000.0,
+                        offer("m9", 72000.0, 1))));
+
+        List<Map<String, String>> suggestions = backend.suggest("samsung gal", 5);
+
+        assertEquals(List.of("Samsung Galaxy Tab", "Samsung Galaxy S24"),
+                suggestions.stream().map(s -> s.get("text")).toList());
+        assertEquals(1, backend.suggest("samsung gal", 1).size());
+    }
+
+    @Test
+    void search_shouldHighlightMatchedNameTerms() {
+        ProductCard card = backend.search(criteria("iphone")).products().get(0);
+
+        assertEquals(Map.of("name", List.of("Apple <em>iPhone</em> 15")), card.getHighlights());
+    }
+
+    @Test
+    void searchByText_shouldHighlightDescriptionForFuzzyMatches() {
+        ProductCard card = backend.searchByText("camra", true).get(0);
+
+        assertEquals("p1", card.getProductId());
+        assertEquals(List.of("A phone with a great <em>camera</em>"), card.getHighlights().get("description"));
+        assertFalse(card.getHighlights().containsKey("name"));
+    }
+
+    @Test
+    void search_shouldEscapeHtmlInHighlights() {
+        backend.save(product("p7", "Kettle <b>1.5L</b>", "Kitchen", "Pigeon", null, 900.0, offer("m1", 900.0, 1)));
+
+        ProductCard card = backend.search(criteria("kettle")).products().get(0);
+
+        assertEquals(List.of("<em>Kettle</em> &lt;b&gt;1.5L&lt;&#x2F;b&gt;"), card.getHighlights().get("name"));
+    }
+
+    @Test
+    void search_shouldNotHighlightListingWithoutText() {
+        assertTrue(backend.search(criteria("")).products().stream().allMatch(c -> c.getHighlights().isEmpty()));
+    }
+
+    @Test
+    void findById_shouldReturnStoredProduct() {
+        Product product = backend.findById("p5").orElseThrow();
+
+        assertEquals("Émile Sneakers", product.getName());
+        assertEquals(2999.0, product.getMinPrice());
+        assertTrue(backend.findById("missing").isEmpty());
+    }
+
+    @Test
+    void updateStock_shouldRewriteStockAndBestOfferSummary() {
+        assertTrue(backend.updateStock("p2", List.of(stock("m1", 4))));
+
+        Product product = backend.findById("p2").orElseThrow();
+        assertEquals(4, product.getMerchants().get(0).get("stock"));
+        assertTrue(product.getInStock());
+        assertEquals(List.of("p1", "p4", "p3", "p5", "p2"),
+                ids(backend.search(criteria("", List.of(), List.of(), null, null, true, "name", false, 0, 10))));
+    }
+
+    @Test
+    void updateStock_shouldMarkProductOutOfStockWhenLastOfferSellsOut() {
+        assertTrue(backend.updateStock("p3", List.of(stock("m3", 0))));
+
+        assertFalse(backend.findById("p3").orElseThrow().getInStock());
+        assertEquals(List.of("p1", "p4", "p5"),
+                ids(backend.search(criteria("", List.of(), List.of(), null, null, true, "name", false, 0, 10))));
+    }
+
+    @Test
+    void updateStock_shouldReportUnknownProduct() {
+        assertFalse(backend.updateStock("missing", List.of(stock("m1", 1))));
+    }
+
+    @Test
+    void save_shouldWaitForStockUpdateInProgress() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            objectMapper.pauseNextRead();
+            Future<Boolean> update = pool.submit(() -> backend.updateStock("p1", List.of(stock("m2", 7))));
+            assertTrue(objectMapper.reading.await(10, TimeUnit.SECONDS));
+
+            // the update has read the stored source and not yet written it back
+            Future<Product> save = pool.submit(() -> backend.save(product("p1", "Apple iPhone 15", "Mobiles",
+                    "Apple", "Renamed", 80000.0, offer("m1", 80000.0, 5), offer("m2", 79000.0, 0))));
+            assertThrows(TimeoutException.class, () -> save.get(500, TimeUnit.MILLISECONDS));
+
+            objectMapper.release.countDown();
+            assertTrue(update.get(10, TimeUnit.SECONDS));
+            save.get(10, TimeUnit.SECONDS);
+        } finally {
+            objectMapper.release.countDown();
+            pool.shutdownNow();
+        }
+
+        assertEquals("Renamed", backend.findById("p1").orElseThrow().getDescription());
+    }
+
+    @SafeVarargs
+    static Product product(String id, String name, String category, String brand, String description,
+                           Double price, Map<String, Object>... offers) {
+        Product product = new Product();
+        product.setProductId(id);
+        product.setName(name);
+        product.setCategory(category);
+        product.setBrand(brand);
+        product.setDescription(description);
+        product.setPrice(price);
+        product.setMerchants(new ArrayList<>(List.of(offers)));
+        product.summarizeOffers();
+        product.buildSuggest();
+        return product;
+    }
+
+    static Map<String, Object> offer(String merchantId, double price, int stock) {
+        Map<String, Object> offer = new HashMap<>();
+        offer.put("merchantId", merchantId);
+        offer.put("price", price);
+        offer.put("stock", stock);
+        return offer;
+    }
+
+    // Blocks the next source read until released, to hold a stock update between its read and write
+    static class PausingObjectMapper extends ObjectMapper {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean pause;
+
+        void pauseNextRead() {
+            pause = true;
+        }
+
+        @Override
+        public <T> T readValue(byte[] src, int offset, int len, Class<T> valueType) throws IOException {
+            T value = super.readValue(src, offset, len, valueType);
+            if (pause) {
+                pause = false;
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return value;
+        }
+    }
+
+    static StockUpdate stock(String merchantId, int stock) {
+        StockUpdate update = new StockUpdate();
+        update.setMerchantId(merchantId);
+        update.setStock(stock);
+        return update;
+    }
+
+    static SearchCriteria criteria(String text) {
+        return criteria(text, List.of(), List.of(), null, null, false, "name", false, 0, 10);
+    }
+
+    static SearchCriteria criteria(String text, List<String> categories, List<String> brands, Double minPrice,
+                                   Double maxPrice, boolean inStockOnly, String sortBy, boolean descending,
+                                   int page, int size) {
+        return new SearchCriteria(text, false, categories, brands, minPrice, maxPrice, inStockOnly,
+                sortBy, descending, page, size);
+    }
+
+    static List<String> cardIds(List<ProductCard> cards) {
+        return cards.stream().map(ProductCard::getProductId).toList();
+    }
+
+    static List<String> ids(SearchPage page) {
+        return page.products().stream().map(ProductCard::getProductId).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> counts(SearchPage page, String facet) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map<String, Object> bucket : (List<Map<String, Object>>) page.facets().get(facet)) {
+            counts.put((String) bucket.get("value"), (Long) bucket.get("count"));
+        }
+        return counts;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> priceCounts(SearchPage page) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map<String, Object> bucket : (List<Map<String, Object>>) page.facets().get("prices")) {
+            counts.put((String) bucket.get("key"), (Long) bucket.get("count"));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.search_microservice.service;
+
+import com.example.search_microservice.dto.AdvancedSearchRequest;
+import com.example.search_microservice.dto.ProductCard;
+import com.example.search_microservice.dto.StockUpdate;
+import com.example.search_microservice.model.Product;
+import com.example.search_microservice.search.SearchBackend;
+import com.example.search_microservice.search.SearchCriteria;
+import com.example.search_microservice.search.SearchPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProductServiceTest {
+
+    @Mock private SearchBackend searchBackend;
+    @Mock private SearchResultCache searchResultCache;
+    @Mock private IndexGeneration indexGeneration;
+
+    @InjectMocks private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(searchResultCache.get(anyString(), ArgumentMatchers.<Supplier<Map<String, Object>>>any()))
+                .thenAnswer(invocation -> invocation.<Supplier<Map<String, Object>>>getArgument(1).get());
+    }
+
+    @Test
+    void saveProduct_shouldIndexBestOfferSummaryAndBumpGeneration() {
+        Product product = product("Galaxy S24", offer("m1", 70000.0, 0), offer("m2", 68000.0, 4));
+        when(searchBackend.save(product)).thenReturn(product);
+
+        productService.saveProduct(product);
+
+        ArgumentCaptor<Product> saved = ArgumentCaptor.forClass(Product.class);
+        verify(searchBackend).save(saved.capture());
+        assertEquals(68000.0, saved.getValue().getMinPrice());
+        assertEquals(70000.0, saved.getValue().getMaxPrice());
+        assertEquals(2, saved.getValue().getOfferCount());
+        assertTrue(saved.getValue().getInStock());
+        verify(indexGeneration).bump();
+    }
+
+    @Test
+    void saveAll_shouldSummarizeEveryProduct() {
+        Product first = product("Galaxy S24", offer("m1", 70000.0, 0));
+        Product second = product("iPhone 15", offer("m1", 80000.0, 2));
+        List<Product> products = List.of(first, second);
+        when(searchBackend.saveAll(products)).thenReturn(products);
+
+        productService.saveAll(products);
+
+        assertFalse(first.getInStock());
+        assertTrue(second.getInStock());
+        assertEquals(80000.0, second.getMinPrice());
+        verify(indexGeneration, times(1)).bump();
+    }
+
+    @Test
+    void updateStock_shouldBumpGenerationOnlyWhenProductIsIndexed() {
+        when(searchBackend.updateStock(eq("p1"), anyList())).thenReturn(true);
+        when(searchBackend.updateStock(eq("missing"), anyList())).thenReturn(false);
+
+        assertTrue(productService.updateStock("p1", List.of(stock("m1", 3))));
+        assertFalse(productService.updateStock("missing", List.of(stock("m1", 3))));
+
+        verify(indexGeneration, times(1)).bump();
+    }
+
+    @Test
+    void updateStock_shouldRejectInvalidUpdatesBeforeTouchingIndex() {
+        assertThrows(IllegalArgumentException.class, () -> productService.updateStock("p1", List.of()));
+        assertThrows(IllegalArgumentException.class, () -> productService.updateStock("p1", List.of(stock(" ", 3))));
+        assertThrows(IllegalArgumentException.class, () -> productService.updateStock("p1", List.of(stock("m1", -1))));
+        assertThrows(IllegalArgumentException.class, () -> productService.updateStock("p1", List.of(stock("m1", null))));
+
+        verify(searchBackend, never()).updateStock(anyString(), anyList());
+        verify(indexGeneration, never()).bump();
+    }
+
+    @Test
+    void searchProducts_shouldPassSanitizedFacetFiltersToBackend() {
+        when(searchBackend.search(any())).thenReturn(new SearchPage(4, List.of(), Map.of()));
+        AdvancedSearchRequest request = new AdvancedSearchRequest();
+        request.setCategory("Mobiles");
+        request.setCategories(List.of("Home & Kitchen;", ""));
+        request.setBrands(List.of("Levi's", "H&M<script>"));
+        request.setMinPrice(500.0);
+        request.setMaxPrice(1000.0);
+        request.setInStockOnly(true);
+        request.setSortBy("price");
+        request.setSortOrder("DESC");
+        request.setPage(2);
+        request.setSize(20);
+
+        productService.searchProducts(request);
+
+        ArgumentCaptor<SearchCriteria> criteria = ArgumentCaptor.forClass(SearchCriteria.class);
+        verify(searchBackend).search(criteria.capture());
+        assertEquals(new SearchCriteria("", false, List.of("Mobiles", "Home & Kitchen"), List.of("Levi's", "H&Mscript"),
+                500.0, 1000.0, true, "price", true, 2, 20), criteria.getValue());
+    }
+
+    @Test
+    void searchProducts_shouldRankTextQueryByRelevanceByDefault() {
+        when(searchBackend.search(any())).thenReturn(new SearchPage(40, List.of(), Map.of()));
+        AdvancedSearchRequest request = new AdvancedSearchRequest();
+        request.setQuery("iphone");
+
+        productService.searchProducts(request);
+
+        ArgumentCaptor<SearchCriteria> criteria = ArgumentCaptor.forClass(SearchCriteria.class);
+        verify(searchBackend).search(criteria.capture());
+        assertEquals("relevance", criteria.getValue().sortBy());
+    }
+
+    @Test
+    void searchProducts_shouldReturnFacetsWithPage() {
+        Map<String, Object> facets = Map.of("categories", List.of(Map.of("value", "Mobiles", "count", 4L)));
+        when(searchBackend.search(any())).thenReturn(new SearchPage(4, List.of(), facets));
+
+        Map<String, Object> response = productService.searchProducts(new AdvancedSearchRequest());
+
+        assertEquals(4L, response.get("total"));
+        assertEquals(facets, response.get("facets"));
+        assertEquals(false, response.get("fuzzy"));
+    }
+
+    @Test
+    void searchProducts_shouldRejectOperatorCharactersInFilters() {
+        AdvancedSearchRequest request = new AdvancedSearchRequest();
+        request.setBrands(List.of("{$ne: 1}"));
+
+        assertThrows(IllegalArgumentException.class, () -> productService.searchProducts(request));
+        verify(searchBackend, never()).search(any());
+    }
+
+    @Test
+    void searchProducts_shouldCacheSmallPagesOnly() {
+        when(searchBackend.search(any())).thenReturn(new SearchPage(0, List.of(), Map.of()));
+        AdvancedSearchRequest small = new AdvancedSearchRequest();
+        AdvancedSearchRequest large = new AdvancedSearchRequest();
+        large.setSize(100);
+
+        productService.searchProducts(small);
+        productService.searchProducts(large);
+
+        verify(searchResultCache).get(eq(small.normalizedKey()), ArgumentMatchers.<Supplier<Map<String, Object>>>any());
+        verify(searchResultCache, never()).get(eq(large.normalizedKey()), ArgumentMatchers.<Supplier<Map<String, Object>>>any());
+        verify(searchBackend, times(2)).search(any());
+    }
+
+    @Test
+    void searchProductsByName_shouldRetryWithTyposWhenFewExactHits() {
+        List<ProductCard> fuzzy = List.of(card("p2"));
+        when(searchBackend.searchByText("samsnug", false)).thenReturn(List.of());
+        when(searchBackend.searchByText("samsnug", true)).thenReturn(fuzzy);
+
+        assertEquals(fuzzy, productService.searchProductsByName(" samsnug "));
+    }
+
+    @Test
+    void searchProductsByName_shouldSkipFuzzyStageWithEnoughExactHits() {
+        List<ProductCard> exact = List.of(card("p1"), card("p2"), card("p3"));
+        when(searchBackend.searchByText("phone", false)).thenReturn(exact);
+
+        assertEquals(exact, productService.searchProductsByName("phone"));
+        verify(searchBackend, never()).searchByText(anyString(), eq(true));
+    }
+
+    @Test
+    void searchProducts_shouldRetryWithTyposAndFlagResponse() {
+        when(searchBackend.search(any())).thenReturn(new SearchPage(1, List.of(card("p9")), Map.of()),
+                new SearchPage(2, List.of(card("p2"), card("p7")), Map.of()));
+        AdvancedSearchRequest request = new AdvancedSearchRequest();
+        request.setQuery("samsnug");
+
+        Map<String, Object> response = productService.searchProducts(request);
+
+        ArgumentCaptor<SearchCriteria> criteria = ArgumentCaptor.forClass(SearchCriteria.class);
+        verify(searchBackend, times(2)).search(criteria.capture());
+        assertFalse(criteria.getAllValues().get(0).fuzzy());
+        assertTrue(criteria.getAllValues().get(1).fuzzy());
+        assertEquals(2L, response.get("total"));
+        assertEquals(true, response.get("fuzzy"));
+    }
+
+    @Test
+    void searchProducts_shouldNotRetryListingWithoutQuery() {
+        when(searchBackend.search(any())).thenReturn(new SearchPage(0, List.of(), Map.of()));
+
+        Map<String, Object> response = productService.searchProducts(new AdvancedSearchRequest());
+
+        verify(searchBackend, times(1)).search(any());
+        assertEquals(false, response.get("fuzzy"));
+    }
+
+    @SafeVarargs
+    private static Product product(String name, Map<String, Object>... offers) {
+        Product product = new Product();
+        product.setName(name);
+        product.setBrand("Brand");
+        product.setCategory("Mobiles");
+        product.setPrice(99999.0);
+        product.setMerchants(new ArrayList<>(List.of(offers)));
+        return product;
+    }
+
+    private static Map<String, Object> offer(String merchantId, double price, int stock) {
+        Map<String, Object> offer = new HashMap<>();
+        offer.put("merchantId", merchantId);
+        offer.put("price", price);
+        offer.put("stock", stock);
+        return offer;
+    }
+
+    private static ProductCard card(String id) {
+        ProductCard card = new ProductCard();
+        card.setProductId(id);
+        return card;
+    }
+
+    private static StockUpdate stock(String merchantId, Integer stock) {
+        StockUpdate update = new StockUpdate();
+        update.setMerchantId(merchantId);
+        update.setStock(stock);
+        return update;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.search_microservice.service;
+
+import com.example.search_microservice.exception.SearchOverloadedException;
+import com.example.search_microservice.exception.SearchTimeoutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchLimiterTest {
+
+    private SimpleMeterRegistry registry;
+    private SearchLimiter limiter;
+    private ExecutorService callers;
+
+    // Holds searches inside the backend call until released; ignores interrupts like a stuck driver call
+    private final Semaphore gate = new Semaphore(0);
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gate.release(100);
+        callers.shutdownNow();
+        if (limiter != null) {
+            limiter.shutdown();
+        }
+    }
+
+    @Test
+    void execute_shouldReturnSearchResult() {
+        limiter = limiter(2, Duration.ofMillis(50), Duration.ofSeconds(2));
+
+        assertEquals("hits", limiter.execute(() -> "hits"));
+        assertEquals(0.0, inflight());
+    }
+
+    @Test
+    void execute_shouldRejectWhenNoPermitFreesUpWithinQueueTimeout() throws Exception {
+        limiter = limiter(1, Duration.ofMillis(50), Duration.ofSeconds(5));
+        Future<String> running = callers.submit(() -> limiter.execute(this::blocked));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        assertEquals(1.0, inflight());
+
+        assertThrows(SearchOverloadedException.class, () -> limiter.execute(() -> "hits"));
+        assertEquals(1.0, registry.counter("search.requests.rejected").count());
+
+        gate.release();
+        assertEquals("slow hits", running.get(5, TimeUnit.SECONDS));
+        assertEquals("hits", limiter.execute(() -> "hits"));
+    }
+
+    @Test
+    void execute_shouldWaitForPermitWithinQueueTimeout() throws Exception {
+        limiter = limiter(1, Duration.ofSeconds(5), Duration.ofSeconds(5));
+        Future<String> running = callers.submit(() -> limiter.execute(this::blocked));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        Future<String> queued = callers.submit(() -> limiter.execute(() -> "hits"));
+        assertThrows(TimeoutException.class, () -> queued.get(100, TimeUnit.MILLISECONDS));
+
+        gate.release();
+        assertEquals("slow hits", running.get(5, TimeUnit.SECONDS));
+        assertEquals("hits", queued.get(5, TimeUnit.SECONDS));
+        assertEquals(0.0, registry.counter("search.requests.rejected").count());
+    }
+
+    @Test
+    void execute_shouldTimeOutAndKeepPermitUntilBackendReturns() throws Exception {
+        limiter = limiter(1, Duration.ofMillis(50), Duration.ofMillis(200));
+
+        assertThrows(SearchTimeoutException.class, () -> limiter.execute(this::blocked));
+        assertEquals(1.0, registry.counter("search.requests.timeout").count());
+
+        // the abandoned search is still running against the backend
+        assertEquals(1.0, inflight());
+        assertThrows(SearchOverloadedException.class, () -> limiter.execute(() -> "hits"));
+
+        gate.release();
+        assertEquals("hits", callers.submit(() -> awaitPermit()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void execute_shouldRethrowBackendExceptionAndReleasePermit() {
+        limiter = limiter(1, Duration.ofMillis(50), Duration.ofSeconds(2));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> limiter.execute(() -> {
+                    throw new IllegalArgumentException("Result window is too large");
+                }));
+        assertEquals("Result window is too large", e.getMessage());
+        assertEquals("hits", limiter.execute(() -> "hits"));
+    }
+
+    @Test
+    void execute_shouldRejectAfterShutdown() {
+        limiter = limiter(1, Duration.ofMillis(50), Duration.ofSeconds(2));
+        limiter.shutdown();
+
+        assertThrows(SearchOverloadedException.class, () -> limiter.execute(() -> "hits"));
+        assertEquals(0.0, inflight());
+    }
+
+    private SearchLimiter limiter(int maxConcurrent, Duration queueTimeout, Duration requestTimeout) {
+        return new SearchLimiter(maxConcurrent, queueTimeout, requestTimeout, registry);
+    }
+
+    private String blocked() {
+        entered.countDown();
+        gate.acquireUninterruptibly();
+        return "slow hits";
+    }
+
+    private String awaitPermit() throws InterruptedException {
+        while (true) {
+            try {
+                return limiter.execute(() -> "hits");
+            } catch (SearchOverloadedException e) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private double inflight() {
+        return registry.get("search.requests.inflight").gauge().value();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.search_microservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+
+    // SearchResultCache.CAPACITY
+    private static final int CAPACITY = 10_000;
+
+    private IndexGeneration indexGeneration;
+    private SimpleMeterRegistry registry;
+    private SearchResultCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        indexGeneration = new IndexGeneration();
+        registry = new SimpleMeterRegistry();
+        cache = new SearchResultCache(indexGeneration, registry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_shouldLoadOnceAndServeRepeatsFromCache() {
+        Map<String, Object> first = get("q=phone");
+        Map<String, Object> second = get("q=phone");
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, registry.counter("search.cache.requests", "result", "hit").count());
+        assertEquals(1.0, registry.counter("search.cache.requests", "result", "miss").count());
+    }
+
+    @Test
+    void get_shouldReloadAfterIndexGenerationMoves() {
+        Map<String, Object> before = get("q=phone");
+        indexGeneration.bump();
+        Map<String, Object> after = get("q=phone");
+
+        assertNotSame(before, after);
+        assertEquals(2, loads.get());
+        assertEquals(1.0, registry.counter("search.cache.stale").count());
+
+        // the reloaded entry is current again
+        get("q=phone");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldTagEntriesWithGenerationReadBeforeLoading() {
+        // a write lands while the query runs, so its result may miss that write
+        cache.get("q=phone", () -> {
+            indexGeneration.bump();
+            return Map.of("load", loads.incrementAndGet());
+        });
+
+        get("q=phone");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldEvictLeastRecentlyUsedEntryPastCapacity() {
+        for (int i = 0; i < CAPACITY; i++) {
+            get("q=" + i);
+        }
+        // touch the oldest entry so the second oldest becomes the eviction candidate
+        get("q=0");
+        get("q=new");
+        assertEquals(CAPACITY + 1, loads.get());
+
+        get("q=0");
+        assertEquals(CAPACITY + 1, loads.get());
+        get("q=1");
+        assertEquals(CAPACITY + 2, loads.get());
+        assertEquals((double) CAPACITY, registry.get("search.cache.size").gauge().value());
+    }
+
+    @Test
+    void clear_shouldDropEveryEntry() {
+        get("q=phone");
+        cache.clear();
+        get("q=phone");
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldReturnUnmodifiableResponse() {
+        Map<String, Object> response = cache.get("q=phone", () -> new HashMap<>(Map.of("total", 1)));
+
+        assertThrows(UnsupportedOperationException.class, () -> response.put("total", 2));
+    }
+
+    private Map<String, Object> get(String key) {
+        return cache.get(key, () -> Map.of("load", loads.incrementAndGet()));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.search_microservice.service;
+
+import com.example.search_microservice.search.SearchBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class SuggestServiceTest {
+
+    @Mock private SearchBackend searchBackend;
+    @Mock private IndexGeneration indexGeneration;
+
+    @InjectMocks private SuggestService suggestService;
+
+    private final List<Map<String, String>> apple = List.of(Map.of("id", "p1", "text", "Apple iPhone 15"));
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(searchBackend.suggest(anyString(), anyInt())).thenReturn(apple);
+    }
+
+    @Test
+    void suggest_shouldReturnNothingForBlankPrefix() {
+        assertTrue(suggestService.suggest("   ", 5).isEmpty());
+
+        verify(searchBackend, never()).suggest(anyString(), anyInt());
+    }
+
+    @Test
+    void suggest_shouldNormalizePrefixBeforeLookup() {
+        assertEquals(apple, suggestService.suggest("  APPLE iP ", 5));
+
+        verify(searchBackend).suggest("apple ip", 5);
+    }
+
+    @Test
+    void suggest_shouldCacheShortPrefixes() {
+        suggestService.suggest("app", 5);
+        suggestService.suggest("APP ", 5);
+
+        verify(searchBackend, times(1)).suggest("app", 5);
+    }
+
+    @Test
+    void suggest_shouldNotCacheLongerPrefixes() {
+        suggestService.suggest("appl", 5);
+        suggestService.suggest("appl", 5);
+
+        verify(searchBackend, times(2)).suggest("appl", 5);
+    }
+
+    @Test
+    void suggest_shouldCacheEachSizeSeparately() {
+        suggestService.suggest("app", 5);
+        suggestService.suggest("app", 10);
+
+        verify(searchBackend).suggest("app", 5);
+        verify(searchBackend).suggest("app", 10);
+    }
+
+    @Test
+    void suggest_shouldReloadAfterIndexGenerationMoves() {
+        when(indexGeneration.current()).thenReturn(1L, 2L);
+
+        suggestService.suggest("app", 5);
+        suggestService.suggest("app", 5);
+
+        verify(searchBackend, times(2)).suggest("app", 5);
+    }
+}
@@ -4,6 +4,9 @@ import { createContext, useContext, useState,useEffect  } from "react";
 import { userAPI } from "../api/http";
 import axios from "axios";
 
+// POST /cart/batch accepts at most this many operations per request
+const CART_BATCH_SIZE = 100;
+
 const AuthContext = createContext();
 
 export function AuthProvider({ children }) {
@@ -37,79 +40,44 @@ export function AuthProvider({ children }) {
 
       console.log(`📦 Merging ${guestCart.length} guest cart items with user cart...`);
 
-      // Step 1: Get user's existing cart from backend
-      let existingCart = [];
-      try {
-        const cartRes = await axios.get(
-          `${import.meta.env.VITE_CHECKOUT_SERVICE_URL}/cart/get/${userId}`,
-          {
-            headers: {
-              Authorization: `Bearer ${token}`,
-            },
+      // Batched requests for the whole cart; the guest cart quantity wins for items already in the user's cart
+      const url = `${import.meta.env.VITE_CHECKOUT_SERVICE_URL}/cart/batch`;
+      const headers = { Authorization: `Bearer ${token}` };
+      const operations = guestCart.map((item) => ({
+        op: "update",
+        productId: item.productId,
+        merchantId: item.merchantId,
+        quantity: item.quantity,
+      }));
+
+      // Posts up to one batch; nothing in it is applied when an item is invalid, so retry once without the rejected items
+      const postBatch = async (batch) => {
+        try {
+          await axios.post(url, { userId: Number(userId), operations: batch }, { headers });
+          return batch.length;
+        } catch (err) {
+          const rejected = new Set((err.response?.data?.errors || []).map((e) => e.index));
+          if (rejected.size === 0) throw err;
+          console.error("❌ Some guest cart items could not be merged:", err.response.data.errors);
+          const accepted = batch.filter((_, index) => !rejected.has(index));
+          if (accepted.length > 0) {
+            await axios.post(url, { userId: Number(userId), operations: accepted }, { headers });
           }
-        );
-        existingCart = cartRes.data || [];
-        console.log(`📦 User has ${existingCart.length} items in backend cart`);
-      } catch (err) {
-        console.error("⚠️ Failed to fetch existing cart, assuming empty:", err);
-      }
+          return accepted.length;
+        }
+      };
 
-      // Step 2: Merge each guest cart item
-      for (const item of guestCart) {
+      // The endpoint takes at most 100 operations; a batch that fails outright does not stop the others
+      let merged = 0;
+      for (let start = 0; start < operations.length; start += CART_BATCH_SIZE) {
+        const batch = operations.slice(start, start + CART_BATCH_SIZE);
         try {
-          // Check if item already exists in user's cart
-          const existingItem = existingCart.find(
-            (cartItem) =>
-              cartItem.productId === item.productId &&
-              cartItem.merchantId === item.merchantId
-          );
-
-          if (existingItem) {
-            // Item exists - use UPDATE to set the quantity (not add)
-            // We'll use the guest cart quantity as the final quantity
-            console.log(`🔄 Item ${item.productId} exists in user cart (qty: ${existingItem.quantity}), updating to guest cart qty: ${item.quantity}`);
-
-            await axios.put(
-              `${import.meta.env.VITE_CHECKOUT_SERVICE_URL}/cart/update`,
-              {
-                userId,
-                productId: item.productId,
-                merchantId: item.merchantId,
-                price: item.price,
-                quantity: item.quantity, // Set to guest cart quantity
-              },
-              {
-                headers: {
-                  Authorization: `Bearer ${token}`,
-                },
-              }
-            );
-            console.log(`✅ Updated item ${item.productId} to quantity ${item.quantity}`);
-          } else {
-            // Item doesn't exist - use ADD
-            console.log(`➕ Item ${item.productId} doesn't exist in user cart, adding with qty: ${item.quantity}`);
-
-            await axios.post(
-              `${import.meta.env.VITE_CHECKOUT_SERVICE_URL}/cart/add`,
-              {
-                userId,
-                productId: item.productId,
-                merchantId: item.merchantId,
-                price: item.price,
-                quantity: item.quantity,
-              },
-              {
-                headers: {
-                  Authorization: `Bearer ${token}`,
-                },
-              }
-            );
-            console.log(`✅ Added item ${item.productId} with quantity ${item.quantity}`);
-          }
+          merged += await postBatch(batch);
         } catch (err) {
-          console.error(`❌ Failed to merge item ${item.productId}:`, err);
+          console.error(`❌ Failed to merge guest cart items ${start + 1}-${start + batch.length}:`, err);
         }
       }
+      console.log(`✅ Merged ${merged} of ${operations.length} guest cart items`);
 
       // Clear guest cart after successful merge
       localStorage.removeItem("guestCart");
@@ -66,10 +66,9 @@ export default function CartPage() {
       console.log(`Found ${data.length} items in cart:`, data);
 
       setCartItems(data);
-      calculateSubtotal(data);
-
-      // Fetch product details (name and image) for all items
-      await fetchProductDetails(data);
+      // Lines come priced, with name, image and stock, so no per-item product calls are needed
+      setSubtotal(res.data.subtotal ?? 0);
+      await applyProductDetails(data);
     } catch (err) {
       console.error("❌ Failed to load cart items:", err);
       console.error("Error details:", err.response?.data);
@@ -79,27 +78,21 @@ export default function CartPage() {
     }
   }
 
-  async function fetchProductDetails(items) {
+  async function applyProductDetails(items) {
     const details = {};
     const itemsToRemove = [];
 
     for (const item of items) {
-      try {
-        const res = await productAPI.get(`/products/${item.productId}`);
-
-        // Find the merchant-specific stock for this item
-        const merchantData = res.data.merchants?.find(m => m.merchant_id === item.merchantId);
-        const availableStock = merchantData?.stock || 0;
-
+      if (item.available) {
         details[item.productId] = {
-          name: res.data.name || `Product ${item.productId}`,
-          imageUrl: res.data.imageUrl || null,
+          name: item.name || `Product ${item.productId}`,
+          imageUrl: item.imageUrl || null,
           exists: true,
-          stock: availableStock, // Store available stock
+          stock: item.stock,
           merchantId: item.merchantId,
         };
-      } catch (err) {
-        console.error(`❌ Product ${item.productId} not found - will auto-remove`, err);
+      } else {
+        console.error(`❌ Product ${item.productId} not found - will auto-remove`);
         details[item.productId] = {
           name: `[DELETED] Product ${item.productId}`,
           imageUrl: null,
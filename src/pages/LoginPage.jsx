@@ -4,6 +4,9 @@ import { useAuth } from "../context/AuthContext";
 import { Lock, Mail, Eye, EyeOff } from "lucide-react";
 import axios from "axios";
 
+// POST /cart/batch accepts at most this many operations per request
+const CART_BATCH_SIZE = 100;
+
 export default function LoginPage() {
   const [email, setEmail] = useState("");
   const [password, setPassword] = useState("");
@@ -24,32 +27,44 @@ export default function LoginPage() {
 
       console.log(`📦 Merging ${guestCart.length} guest cart items to user account...`);
 
-      // Add each guest cart item to the user's cart
-      for (const item of guestCart) {
+      // Add the whole guest cart to the user's cart in batched requests
+      const url = `${import.meta.env.VITE_CHECKOUT_SERVICE_URL}/cart/batch`;
+      const headers = { Authorization: `Bearer ${accessToken}` };
+      const operations = guestCart.map((item) => ({
+        op: "add",
+        productId: item.productId,
+        merchantId: item.merchantId,
+        quantity: item.quantity,
+      }));
+
+      // Posts up to one batch; nothing in it is applied when an item is invalid, so retry once without the rejected items
+      const postBatch = async (batch) => {
+        try {
+          await axios.post(url, { userId: Number(userId), operations: batch }, { headers });
+          return batch.length;
+        } catch (err) {
+          const rejected = new Set((err.response?.data?.errors || []).map((e) => e.index));
+          if (rejected.size === 0) throw err;
+          console.error("❌ Some guest cart items could not be merged:", err.response.data.errors);
+          const accepted = batch.filter((_, index) => !rejected.has(index));
+          if (accepted.length > 0) {
+            await axios.post(url, { userId: Number(userId), operations: accepted }, { headers });
+          }
+          return accepted.length;
+        }
+      };
+
+      // The endpoint takes at most 100 operations; a batch that fails outright does not stop the others
+      let merged = 0;
+      for (let start = 0; start < operations.length; start += CART_BATCH_SIZE) {
+        const batch = operations.slice(start, start + CART_BATCH_SIZE);
         try {
-          const payload = {
-            userId: Number(userId),
-            productId: item.productId,
-            merchantId: item.merchantId,
-            price: item.price,
-            quantity: item.quantity,
-          };
-
-          await axios.post(
-            `${import.meta.env.VITE_CHECKOUT_SERVICE_URL}/cart/add`,
-            payload,
-            {
-              headers: {
-                Authorization: `Bearer ${accessToken}`,
-              },
-            }
-          );
-          console.log(`✅ Merged item: ${item.name}`);
+          merged += await postBatch(batch);
         } catch (err) {
-          console.error(`❌ Failed to merge item ${item.name}:`, err);
-          // Continue with other items even if one fails
+          console.error(`❌ Failed to merge guest cart items ${start + 1}-${start + batch.length}:`, err);
         }
       }
+      console.log(`✅ Merged ${merged} of ${operations.length} guest cart items`);
 
       // Clear guest cart after successful merge
       localStorage.removeItem("guestCart");
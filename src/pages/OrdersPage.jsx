@@ -12,6 +12,8 @@ export default function OrdersPage() {
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState("");
   const [productNames, setProductNames] = useState({});
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
 
   async function loadOrders() {
     if (!userId) {
@@ -28,6 +30,8 @@ export default function OrdersPage() {
       const response = await checkoutAPI.get(`/orders/${userId}`);
       console.log("✅ Full response:", response);
       console.log("✅ Orders data:", response.data);
+      // Orders come a page at a time, newest first; the header is absent on the last page
+      setNextCursor(response.headers["x-next-cursor"] || null);
 
       // Handle both array response and empty array
       if (response.data && Array.isArray(response.data)) {
@@ -82,8 +86,22 @@ export default function OrdersPage() {
     }
   }
 
+  async function loadMoreOrders() {
+    setLoadingMore(true);
+    try {
+      const response = await checkoutAPI.get(`/orders/${userId}`, { params: { cursor: nextCursor } });
+      setOrders((prev) => [...prev, ...response.data]);
+      setNextCursor(response.headers["x-next-cursor"] || null);
+      await fetchProductNames(response.data);
+    } catch (err) {
+      console.error("❌ Failed to load more orders:", err);
+    } finally {
+      setLoadingMore(false);
+    }
+  }
+
   async function fetchProductNames(orders) {
-    const names = {};
+    const names = { ...productNames };
     for (const order of orders) {
       if (order.items) {
         for (const item of order.items) {
@@ -225,6 +243,17 @@ export default function OrdersPage() {
                 </div>
               </div>
             ))}
+            {nextCursor && (
+              <div className="text-center">
+                <button
+                  onClick={loadMoreOrders}
+                  disabled={loadingMore}
+                  className="bg-white hover:bg-gray-50 border border-gray-300 text-gray-900 font-medium px-8 py-3 rounded-lg transition-colors disabled:opacity-50"
+                >
+                  {loadingMore ? "Loading..." : "Load more orders"}
+                </button>
+              </div>
+            )}
           </div>
         )}
       </div>
@@ -76,29 +76,27 @@ export default function MerchantDashboard() {
   }, [userId]);
 
   async function load() {
-    try {
-      const { data } = await productAPI.get("/products");
-      const allProducts = data ?? [];
-      console.log(`📦 Total products in database: ${allProducts.length}`);
+    const effectiveMerchantId = merchantId || parseInt(userId);
+    if (effectiveMerchantId === null || effectiveMerchantId === undefined || Number.isNaN(effectiveMerchantId)) {
+      console.log("⚠️ No merchantId or userId available");
+      setList([]);
+      return;
+    }
 
-      // Filter to show only products for the logged-in merchant
-      const effectiveMerchantId = merchantId || parseInt(userId);
-      console.log("🔍 Filtering for merchantId:", effectiveMerchantId);
-
-      if (effectiveMerchantId !== null && effectiveMerchantId !== undefined) {
-        const myProducts = allProducts.filter(product => {
-          const hasMerchant = product.merchants?.some(m => {
-            console.log(`Checking product ${product.name}: merchant_id=${m.merchant_id}, looking for=${effectiveMerchantId}`);
-            return m.merchant_id === effectiveMerchantId || m.merchantId === effectiveMerchantId;
-          });
-          return hasMerchant;
+    try {
+      // Server returns only this merchant's offer for each product, one page at a time
+      const pageSize = 100;
+      const myProducts = [];
+      for (let page = 0; ; page++) {
+        const { data } = await productAPI.get(`/products/by-merchant/${effectiveMerchantId}`, {
+          params: { page, size: pageSize },
         });
-        console.log(`✅ Showing ${myProducts.length} products for merchant ${effectiveMerchantId}`);
-        setList(myProducts);
-      } else {
-        console.log("⚠️ No merchantId or userId available");
-        setList([]);
+        const products = data?.products ?? [];
+        myProducts.push(...products);
+        if (products.length < pageSize || myProducts.length >= (data?.total ?? 0)) break;
       }
+      console.log(`✅ Showing ${myProducts.length} products for merchant ${effectiveMerchantId}`);
+      setList(myProducts);
     } catch (err) {
       console.error("❌ Failed to load products:", err);
       setList([]);